@@ -0,0 +1,92 @@
+package com.kerby.example.reactive;
+
+import com.kerby.example.api.exceptions.ApiException;
+import com.kerby.example.api.models.responses.ErrorResponse;
+import com.kerby.example.packages.exceptions.PackageNotFoundException;
+import com.kerby.example.reactive.controller.ReactivePackagesController;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.server.ServerWebInputException;
+
+import java.util.Date;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Exception handling for ReactivePackagesController, answering as ApiExceptionHandler does for PackagesController.
+ *
+ * All exceptions that could be thrown are handled to ensure no internal messaging is leaked.
+ */
+@ControllerAdvice(assignableTypes = ReactivePackagesController.class)
+@RequestMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+public class ReactiveApiExceptionHandler {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @ExceptionHandler(ApiException.class)
+    public ResponseEntity<ErrorResponse> handleApiException(ApiException exception) {
+        final ErrorResponse errorResponse = new ErrorResponse(new Date(), ErrorResponse.ErrorCode.INTERNAL_ERROR, exception.getMessage());
+        this.logger.error("An unknown exception occurred in the API", exception);
+        return new ResponseEntity<>(errorResponse, HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<ErrorResponse> handleIllegalArguments(IllegalArgumentException exception) {
+        final ErrorResponse errorResponse = new ErrorResponse(new Date(), ErrorResponse.ErrorCode.INCORRECT_PARAMS, exception.getMessage());
+        this.logger.error("An API request was made with incorrect arguments", exception);
+        return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * WebFlux raises missing or unreadable params and request bodies as a ServerWebInputException
+     * @param exception - ServerWebInputException thrown by WebFlux
+     * @return - 400 and ErrorResponse object
+     */
+    @ExceptionHandler(ServerWebInputException.class)
+    public ResponseEntity<ErrorResponse> handleServerWebInputException(ServerWebInputException exception) {
+        final ErrorResponse errorResponse = new ErrorResponse(new Date(), ErrorResponse.ErrorCode.INCORRECT_PARAMS, exception.getReason());
+        this.logger.error("An API request was made with incorrect params or payload", exception);
+        return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(PackageNotFoundException.class)
+    public ResponseEntity<ErrorResponse> handlePackageNotFoundException(PackageNotFoundException exception) {
+        final ErrorResponse errorResponse = new ErrorResponse(new Date(), ErrorResponse.ErrorCode.PACKAGE_NOT_FOUND, exception.getMessage());
+        this.logger.error("An API request was made with an incorrect package id", exception);
+        return new ResponseEntity<>(errorResponse, HttpStatus.NOT_FOUND);
+    }
+
+    /**
+     * Database work is queued on a bounded scheduler, when it's full the request is rejected rather than queued
+     * without limit.
+     * @param exception - RejectedExecutionException
+     * @return - 503 with a Retry-After and ErrorResponse object
+     */
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<ErrorResponse> handleServiceUnavailable(RejectedExecutionException exception) {
+        final ErrorResponse errorResponse = new ErrorResponse(new Date(), ErrorResponse.ErrorCode.SERVICE_UNAVAILABLE, "The service is busy, please retry later");
+        this.logger.warn("An API request was rejected as the service is busy", exception);
+        final HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "1");
+        return new ResponseEntity<>(errorResponse, headers, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * Generic catch-all encase an exception is not caught by a specific handler
+     * @param exception - Exception thrown by API
+     * @return - 500 and ErrorResponse object
+     */
+    @ExceptionHandler(Exception.class)
+    public ResponseEntity<ErrorResponse> handleException(Exception exception) {
+        final ErrorResponse errorResponse = new ErrorResponse(new Date(), ErrorResponse.ErrorCode.INTERNAL_ERROR, "An internal server error occurred");
+        this.logger.error("An unexpected exception occurred in the API", exception);
+        return new ResponseEntity<>(errorResponse, HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+}
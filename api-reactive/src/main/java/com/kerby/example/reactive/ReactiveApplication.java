@@ -0,0 +1,16 @@
+package com.kerby.example.reactive;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+@SpringBootApplication(scanBasePackages={"com.kerby.example.reactive"})
+public class ReactiveApplication {
+
+    public static void main(String[] args) {
+        final SpringApplication application = new SpringApplication(ReactiveApplication.class);
+        // Spring MVC comes onto the classpath with the models shared with the servlet api, serve with WebFlux regardless
+        application.setWebApplicationType(WebApplicationType.REACTIVE);
+        application.run(args);
+    }
+}
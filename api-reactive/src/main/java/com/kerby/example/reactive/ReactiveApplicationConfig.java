@@ -0,0 +1,33 @@
+package com.kerby.example.reactive;
+
+import com.kerby.example.api.MetricsConfig;
+import com.kerby.example.database.DatabaseConfig;
+import com.kerby.example.packages.PackageConfig;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Packages and the database are shared with the servlet api. Currency conversion is not, see ReactiveFixerCurrencyService.
+ */
+@Configuration
+@Import(value = {PackageConfig.class, DatabaseConfig.class, MetricsConfig.class})
+@PropertySource("classpath:config/fixer-service.properties")
+public class ReactiveApplicationConfig {
+
+    public static final String DATABASE_SCHEDULER = "packagesDatabaseScheduler";
+
+    /**
+     * JPA blocks, so database work is moved off the event loop onto the bounded packages database executor.
+     * Database connections are only ever held by its threads, work beyond its queue is rejected.
+     */
+    @Bean(name = DATABASE_SCHEDULER)
+    public Scheduler databaseScheduler(@Qualifier(PackageConfig.DATABASE_EXECUTOR) ThreadPoolTaskExecutor databaseExecutor) {
+        return Schedulers.fromExecutor(databaseExecutor);
+    }
+}
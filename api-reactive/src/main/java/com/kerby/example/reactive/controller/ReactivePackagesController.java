@@ -0,0 +1,199 @@
+package com.kerby.example.reactive.controller;
+
+import com.kerby.example.api.exceptions.ApiException;
+import com.kerby.example.api.mapping.CurrencyDtoMapper;
+import com.kerby.example.api.mapping.PackageDtoMapper;
+import com.kerby.example.api.mapping.ProductDtoMapper;
+import com.kerby.example.api.models.dtos.PackageDto;
+import com.kerby.example.api.models.requests.PackageRequest;
+import com.kerby.example.api.models.responses.CurrenciesResponse;
+import com.kerby.example.api.models.responses.PackageResponse;
+import com.kerby.example.api.models.responses.PackagesResponse;
+import com.kerby.example.common.logging.PayloadLogging;
+import com.kerby.example.packages.exceptions.PackageNotFoundException;
+import com.kerby.example.packages.exceptions.PackageServiceException;
+import com.kerby.example.packages.models.Product;
+import com.kerby.example.reactive.service.ReactivePackageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.Assert;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+/**
+ * REST API for CRUD access to Packages, and Currency codes, served by WebFlux.
+ *
+ * Mirrors the paths, requests and responses of PackagesController so the two can be load tested side by side.
+ * Conditional requests, the response cache, bulk create and export are only served by PackagesController.
+ */
+@RestController
+@RequestMapping(value = "/packages-api")
+public class ReactivePackagesController {
+
+    private static final String DEFAULT_PAGE_SIZE = "100";
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final Logger payloadLogger = LoggerFactory.getLogger(PayloadLogging.LOGGER_NAME);
+
+    private ReactivePackageService reactivePackageService;
+
+    public ReactivePackagesController(@Autowired ReactivePackageService reactivePackageService) {
+        this.reactivePackageService = reactivePackageService;
+    }
+
+    @RequestMapping(value = "/currency",
+            method = RequestMethod.GET,
+            produces = "application/json")
+    public Mono<ResponseEntity<CurrenciesResponse>> getCurrencyCodes() {
+        return this.reactivePackageService.getCurrencies()
+                .map(CurrencyDtoMapper.INSTANCE::currencyToDto)
+                .collectList()
+                // return 200 with currencies
+                .map(currencyDtos -> new ResponseEntity<>(new CurrenciesResponse(currencyDtos), HttpStatus.OK))
+                // wrap any exceptions to hide internal messages from checked and unchecked exceptions
+                .onErrorMap(e -> new ApiException("There was a problem handling your request to get currencies", e));
+    }
+
+    @RequestMapping(value = "/package",
+            method = RequestMethod.POST,
+            produces = "application/json",
+            consumes = "application/json")
+    public Mono<ResponseEntity<Integer>> createPackage(@RequestBody() final PackageRequest packageRequest) {
+        Assert.notNull(packageRequest, "Request body is required to create package");
+        Assert.notNull(packageRequest.getPackageDto(), "Packages in request body are required to create package");
+
+        final PackageDto packageDto = packageRequest.getPackageDto();
+        // create package
+        return this.reactivePackageService.createPackage(
+                        packageDto.getName(),
+                        packageDto.getDescription(),
+                        packageDto.getProductDtos().stream().map(ProductDtoMapper.INSTANCE::dtoToProduct).toArray(Product[]::new))
+                // return 201 with packageId
+                .map(packageId -> new ResponseEntity<>(packageId, HttpStatus.CREATED))
+                // wrap any exceptions to hide internal messages from checked and unchecked exceptions
+                .onErrorMap(e -> !(e instanceof IllegalArgumentException || e instanceof RejectedExecutionException), e -> {
+                    this.logger.error("Something went wrong in create package API endpoint. Package name: [{}]", packageDto.getName());
+                    this.payloadLogger.debug("Failed to create package. Request body: [{}]", packageRequest);
+                    return e instanceof PackageServiceException
+                            ? new ApiException("There was a problem creating a new package", e)
+                            : new ApiException("There was a problem handling your request to create a package", e);
+                });
+    }
+
+    @RequestMapping(value = "/package",
+            produces = MediaType.APPLICATION_JSON_VALUE,
+            method = RequestMethod.GET)
+    public Mono<ResponseEntity<PackagesResponse>> getPackages(@RequestParam(value = "currency", required = false) final String currency,
+                                                              @RequestParam(value = "cursor", required = false) final String cursor,
+                                                              @RequestParam(value = "limit", defaultValue = DEFAULT_PAGE_SIZE) final int limit) {
+        Assert.isTrue(limit > 0 && limit <= MAX_PAGE_SIZE, String.format("limit must be between 1 and %d", MAX_PAGE_SIZE));
+
+        // get a page of packages
+        return this.reactivePackageService.getPackages(currency, cursor, limit)
+                .map(page -> page.getPackages().isEmpty()
+                        // no packages - return empty 200
+                        ? new ResponseEntity<PackagesResponse>(HttpStatus.OK)
+                        // return 200 with packages
+                        : new ResponseEntity<>(new PackagesResponse(
+                                page.getPackages().stream().map(PackageDtoMapper.INSTANCE::packageToDto).collect(Collectors.toList()),
+                                page.getNextCursor()), HttpStatus.OK))
+                // wrap any exceptions to hide internal messages from checked and unchecked exceptions
+                .onErrorMap(e -> !(e instanceof RejectedExecutionException), e -> {
+                    this.logger.error("Something went wrong in read packages API endpoint. Currency param: [{}] Cursor param: [{}]", currency, cursor);
+                    return e instanceof PackageServiceException
+                            ? new ApiException("There was a problem looking up packages", e)
+                            : new ApiException("There was a problem handling your request to read packages", e);
+                });
+    }
+
+    @RequestMapping(value = "/package/{id}",
+            produces = MediaType.APPLICATION_JSON_VALUE,
+            method = RequestMethod.GET)
+    public Mono<ResponseEntity<PackageResponse>> readPackage(@PathVariable("id") final int id,
+                                                             @RequestParam(value = "currency", required = false) final String currency) {
+        Assert.isTrue(id > 0, "id is required to lookup package");
+
+        // get package
+        return this.reactivePackageService.getPackage(currency, id)
+                // return 200 with package
+                .map(aPackage -> new ResponseEntity<>(new PackageResponse(PackageDtoMapper.INSTANCE.packageToDto(aPackage)), HttpStatus.OK))
+                // wrap any exceptions to hide internal messages from checked and unchecked exceptions
+                .onErrorMap(e -> !(e instanceof RejectedExecutionException), e -> {
+                    if (e instanceof PackageNotFoundException) {
+                        return new PackageNotFoundException(String.format("No package found with id [%d]", id), e);
+                    }
+                    this.logger.error("Something went wrong in read package API endpoint. Id param: [{}], Currency param: [{}]", id, currency);
+                    return e instanceof PackageServiceException
+                            ? new ApiException(String.format("There was a problem looking up package with id [%d]", id), e)
+                            : new ApiException(String.format("There was a problem handling your request to read package [%d]", id), e);
+                });
+    }
+
+    @RequestMapping(value = "/package/{id}", method = RequestMethod.PUT)
+    public Mono<ResponseEntity<Void>> updatePackage(@PathVariable("id") final int id,
+                                                    @RequestBody() final PackageRequest packageRequest) {
+        Assert.isTrue(id > 0, "id is required to update package");
+        Assert.notNull(packageRequest, "Request body is required to update package");
+
+        final PackageDto packageDto = packageRequest.getPackageDto();
+        // update package
+        return this.reactivePackageService.updatePackage(
+                        id,
+                        packageDto.getName(),
+                        packageDto.getDescription(),
+                        packageDto.getProductDtos().stream().map(ProductDtoMapper.INSTANCE::dtoToProduct).toArray(Product[]::new))
+                .flatMap(isUpdated -> {
+                    if (!isUpdated) {
+                        this.logger.error("Update failed for package: [{}]", id);
+                        this.payloadLogger.debug("Update failed with payload: [{}]", packageRequest);
+                        return Mono.error(new ApiException(String.format("There was a problem updating package [%s]", packageRequest)));
+                    }
+                    // return 200 if success
+                    return Mono.just(new ResponseEntity<Void>(HttpStatus.OK));
+                })
+                // wrap any exceptions to hide internal messages from checked and unchecked exceptions
+                .onErrorMap(e -> !(e instanceof ApiException || e instanceof IllegalArgumentException || e instanceof RejectedExecutionException), e -> {
+                    if (e instanceof PackageNotFoundException) {
+                        return new PackageNotFoundException(String.format("No package found with id [%d]", id), e);
+                    }
+                    this.logger.error("Something went wrong in update package API endpoint. Id param: [{}]", id);
+                    this.payloadLogger.debug("Failed to update package. Request body: [{}]", packageRequest);
+                    return e instanceof PackageServiceException
+                            ? new ApiException(String.format("There was a problem updating package with id [%d]", id), e)
+                            : new ApiException(String.format("There was a problem handling your request to update package [%s]", packageDto), e);
+                });
+    }
+
+    @RequestMapping(value = "/package/{id}", method = RequestMethod.DELETE)
+    public Mono<ResponseEntity<Boolean>> deletePackage(@PathVariable("id") final int id) {
+        Assert.isTrue(id > 0, "id is required to delete package");
+
+        // delete package
+        return this.reactivePackageService.deletePackage(id)
+                .flatMap(isDeleted -> {
+                    if (!isDeleted) {
+                        this.logger.error("Failed to delete package: [{}]", id);
+                        return Mono.error(new ApiException(String.format("There was a problem deleting package [%s]", id)));
+                    }
+                    // return 200 on success
+                    return Mono.just(new ResponseEntity<>(true, HttpStatus.OK));
+                })
+                // wrap any exceptions to hide internal messages from checked and unchecked exceptions
+                .onErrorMap(e -> !(e instanceof ApiException || e instanceof RejectedExecutionException), e -> {
+                    if (e instanceof PackageNotFoundException) {
+                        return new PackageNotFoundException(String.format("No package found with id [%d]", id), e);
+                    }
+                    this.logger.error("Something went wrong in delete package API endpoint. Id: [{}]", id);
+                    return new ApiException(String.format("There was a problem handling your request to delete package [%d]", id), e);
+                });
+    }
+
+}
@@ -0,0 +1,112 @@
+package com.kerby.example.reactive.currency;
+
+import com.kerby.example.currency.exceptions.CurrencyConversionException;
+import com.kerby.example.currency.exceptions.InvalidCurrencyCodeException;
+import com.kerby.example.currency.models.CurrencyCode;
+import com.kerby.example.currency.models.ExchangeRates;
+import com.kerby.example.currency.service.CurrencyService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+import reactor.core.Exceptions;
+
+import javax.validation.constraints.NotNull;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The CurrencyService of the reactive api, so the blocking PackageService shares the exchange rates of the
+ * ReactiveCurrencyService rather than making its own calls to the Fixer API.
+ *
+ * Conversions block until rates are available, they must never be called on an event loop thread.
+ */
+@Service
+public class BlockingCurrencyService implements CurrencyService {
+
+    private final ReactiveCurrencyService reactiveCurrencyService;
+    private final Duration timeout;
+
+    public BlockingCurrencyService(@Autowired ReactiveCurrencyService reactiveCurrencyService,
+                                   @Value("${fixer.api.timeout.ms:5000}") int apiTimeoutMillis) {
+        this.reactiveCurrencyService = reactiveCurrencyService;
+        this.timeout = Duration.ofMillis(apiTimeoutMillis);
+    }
+
+    @Override
+    public ExchangeRates getExchangeRates() throws CurrencyConversionException {
+        try {
+            return this.reactiveCurrencyService.getExchangeRates().block(this.timeout);
+        } catch (RuntimeException e) {
+            final Throwable cause = Exceptions.unwrap(e);
+            if (cause instanceof CurrencyConversionException) {
+                throw (CurrencyConversionException) cause;
+            }
+            throw new CurrencyConversionException("Exchange rates are currently unavailable", cause);
+        }
+    }
+
+    @Override
+    public CurrencyCode[] getCurrencyCodes() {
+        return CurrencyCode.values();
+    }
+
+    @Override
+    public CurrencyCode getCurrencyCodeFromString(@NotNull String currencyCode) throws InvalidCurrencyCodeException {
+        Assert.notNull(currencyCode, "Currency code string is required to lookup enum");
+        final CurrencyCode result;
+
+        try {
+            result = CurrencyCode.valueOf(currencyCode);
+        } catch (Exception e) {
+            throw new InvalidCurrencyCodeException(String.format("No valid currency code exists with label: [%s]", currencyCode), e);
+        }
+
+        return result;
+    }
+
+    @Override
+    public BigDecimal convertFromUSD(@NotNull CurrencyCode toCurrency, @NotNull BigDecimal usdAmount) throws CurrencyConversionException {
+        Assert.notNull(toCurrency, "Currency code to convert to is required");
+        Assert.notNull(usdAmount, "Amount in USD to convert is required");
+
+        return this.getExchangeRates().convertFromUSD(toCurrency, usdAmount);
+    }
+
+    @Override
+    public List<BigDecimal> convertAllFromUSD(@NotNull CurrencyCode toCurrency, @NotNull List<BigDecimal> usdAmounts) throws CurrencyConversionException {
+        Assert.notNull(toCurrency, "Currency code to convert to is required");
+        Assert.notNull(usdAmounts, "Amounts in USD to convert are required");
+
+        return this.getExchangeRates().convertAllFromUSD(toCurrency, usdAmounts);
+    }
+
+    @Override
+    public long[] convertCentsFromUSD(@NotNull CurrencyCode toCurrency, @NotNull long[] usdCents) throws CurrencyConversionException {
+        Assert.notNull(toCurrency, "Currency code to convert to is required");
+        Assert.notNull(usdCents, "Amounts in USD to convert are required");
+
+        return this.getExchangeRates().convertCentsFromUSD(toCurrency, usdCents);
+    }
+
+    @Override
+    public long convertCentsFromUSD(@NotNull CurrencyCode toCurrency, long usdCents) throws CurrencyConversionException {
+        Assert.notNull(toCurrency, "Currency code to convert to is required");
+
+        return this.getExchangeRates().convertCentsFromUSD(toCurrency, usdCents);
+    }
+
+    @Override
+    public long[] convertCentsRangeToUSD(@NotNull CurrencyCode fromCurrency, long minCents, long maxCents) throws CurrencyConversionException {
+        Assert.notNull(fromCurrency, "Currency code to convert from is required");
+
+        return this.getExchangeRates().convertCentsRangeToUSD(fromCurrency, minCents, maxCents);
+    }
+
+    @Override
+    public long getExchangeRatesVersion() throws CurrencyConversionException {
+        return this.getExchangeRates().getTimestamp();
+    }
+
+}
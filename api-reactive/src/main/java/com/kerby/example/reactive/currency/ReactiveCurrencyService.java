@@ -0,0 +1,28 @@
+package com.kerby.example.reactive.currency;
+
+import com.kerby.example.currency.models.CurrencyCode;
+import com.kerby.example.currency.models.ExchangeRates;
+import reactor.core.publisher.Mono;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Non-blocking counterpart of CurrencyService, nothing waits on a thread while exchange rates are loaded.
+ *
+ * Monos error with the exceptions CurrencyService would throw.
+ */
+public interface ReactiveCurrencyService {
+
+    /**
+     * The current exchange rates, loaded first if none have been loaded yet.
+     * Identifies the rates used for conversions by their timestamp, as CurrencyService#getExchangeRatesVersion does.
+     * @return the exchange rates conversions are made with, or a CurrencyConversionException if there are none
+     */
+    Mono<ExchangeRates> getExchangeRates();
+
+    /**
+     * @see com.kerby.example.currency.service.CurrencyService#convertCentsFromUSD(CurrencyCode, long[])
+     */
+    Mono<long[]> convertCentsFromUSD(@NotNull CurrencyCode toCurrency, @NotNull long[] usdCents);
+
+}
@@ -0,0 +1,231 @@
+package com.kerby.example.reactive.currency;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.kerby.example.common.annotations.VisibleForTestMock;
+import com.kerby.example.currency.exceptions.APICallFailedException;
+import com.kerby.example.currency.exceptions.CurrencyConversionException;
+import com.kerby.example.currency.models.CurrencyCode;
+import com.kerby.example.currency.models.ExchangeRates;
+import com.kerby.example.currency.service.CircuitBreaker;
+import io.netty.channel.ChannelOption;
+import org.apache.commons.lang3.EnumUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import javax.validation.constraints.NotNull;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A service using the Fixer API for converting a USD amount to any other currency, without blocking.
+ *
+ * Works as FixerCurrencyService does, from the same properties, but calls the Fixer API with a WebClient so no thread
+ * waits on the response:
+ *  - Exchange rates are cached locally as an immutable snapshot with a TTL. Once a snapshot is within the
+ *    refresh-ahead window of its TTL the next conversion starts a refresh and carries on with the current snapshot.
+ *    There is no scheduled refresh, rates are only refreshed while they're being used.
+ *  - Only one refresh is ever in flight. Every caller needing rates while it runs subscribes to that same refresh.
+ *  - A circuit breaker remembers failures and suspends calls for an exponentially growing backoff. While suspended,
+ *    callers get the last known good rates, or fail fast if there are none.
+ */
+@Service
+public class ReactiveFixerCurrencyService implements ReactiveCurrencyService {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private static final String FIXER_API_URL = "http://data.fixer.io/api/latest?access_key={apiKey}";
+
+    private static final long DEFAULT_RATES_TTL_MILLIS = 3600000;
+    private static final long DEFAULT_RATES_REFRESH_AHEAD_MILLIS = 300000;
+    private static final int DEFAULT_API_TIMEOUT_MILLIS = 5000;
+    private static final int DEFAULT_CIRCUIT_FAILURE_THRESHOLD = 1;
+    private static final long DEFAULT_CIRCUIT_INITIAL_BACKOFF_MILLIS = 5000;
+    private static final long DEFAULT_CIRCUIT_MAX_BACKOFF_MILLIS = 300000;
+
+    private final String apiKey;
+    private final long ratesTtlMillis;
+    private final long ratesRefreshAheadMillis;
+    private final int apiTimeoutMillis;
+    private final CircuitBreaker circuitBreaker;
+    private final WebClient webClient;
+
+    // latest snapshot of exchange rates, only ever replaced once a new snapshot has been fully built
+    private final AtomicReference<ExchangeRates> exchangeRatesCache = new AtomicReference<>();
+    // refresh currently calling the Fixer API, shared by every caller waiting on rates
+    private final AtomicReference<Mono<ExchangeRates>> inFlightRefresh = new AtomicReference<>();
+
+    @VisibleForTestMock
+    ReactiveFixerCurrencyService() {
+        this(null, DEFAULT_RATES_TTL_MILLIS, DEFAULT_RATES_REFRESH_AHEAD_MILLIS, DEFAULT_API_TIMEOUT_MILLIS,
+                DEFAULT_CIRCUIT_FAILURE_THRESHOLD, DEFAULT_CIRCUIT_INITIAL_BACKOFF_MILLIS, DEFAULT_CIRCUIT_MAX_BACKOFF_MILLIS);
+    }
+
+    @Autowired
+    public ReactiveFixerCurrencyService(@Value("${fixer.api.key}") String apiKey,
+                                        @Value("${fixer.rates.ttl.ms:" + DEFAULT_RATES_TTL_MILLIS + "}") long ratesTtlMillis,
+                                        @Value("${fixer.rates.refresh-ahead.ms:" + DEFAULT_RATES_REFRESH_AHEAD_MILLIS + "}") long ratesRefreshAheadMillis,
+                                        @Value("${fixer.api.timeout.ms:" + DEFAULT_API_TIMEOUT_MILLIS + "}") int apiTimeoutMillis,
+                                        @Value("${fixer.api.circuit.failure-threshold:" + DEFAULT_CIRCUIT_FAILURE_THRESHOLD + "}") int circuitFailureThreshold,
+                                        @Value("${fixer.api.circuit.backoff.initial.ms:" + DEFAULT_CIRCUIT_INITIAL_BACKOFF_MILLIS + "}") long circuitInitialBackoffMillis,
+                                        @Value("${fixer.api.circuit.backoff.max.ms:" + DEFAULT_CIRCUIT_MAX_BACKOFF_MILLIS + "}") long circuitMaxBackoffMillis) {
+        Assert.isTrue(ratesTtlMillis > 0, "Exchange rate TTL must be positive");
+        Assert.isTrue(ratesRefreshAheadMillis >= 0 && ratesRefreshAheadMillis < ratesTtlMillis,
+                "Exchange rate refresh-ahead must be between zero and the TTL");
+        Assert.isTrue(apiTimeoutMillis > 0, "Fixer API timeout must be positive");
+        this.apiKey = apiKey;
+        this.ratesTtlMillis = ratesTtlMillis;
+        this.ratesRefreshAheadMillis = ratesRefreshAheadMillis;
+        this.apiTimeoutMillis = apiTimeoutMillis;
+        this.circuitBreaker = new CircuitBreaker(circuitFailureThreshold, circuitInitialBackoffMillis, circuitMaxBackoffMillis);
+
+        // the response itself is timed out on the refresh, see loadExchangeRates
+        this.webClient = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(options -> options.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, apiTimeoutMillis)))
+                .build();
+    }
+
+    @VisibleForTestMock
+    Mono<Map<CurrencyCode, BigDecimal>> getLatestEURExchangeRatesFromAPI() {
+        if (StringUtils.isBlank(this.apiKey)) {
+            return Mono.error(new IllegalArgumentException("Unable to lookup currency rates from Fixer as API key is not set"));
+        }
+
+        // the url is not logged as it holds the api key
+        logger.debug("Attempting to lookup currency rates from Fixer");
+
+        return this.webClient.get()
+                .uri(FIXER_API_URL, this.apiKey)
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .map(root -> {
+                    final JsonNode rates = root.path("rates");
+
+                    final Map<CurrencyCode, BigDecimal> currencyRates = new HashMap<>(rates.size());
+                    rates.fieldNames().forEachRemaining(rate -> {
+                        final BigDecimal value = new BigDecimal(rates.get(rate).asDouble());
+                        if (EnumUtils.isValidEnum(CurrencyCode.class, rate)) {
+                            logger.trace("Storing rate of: [{}] for currency: [{}]", value, rate);
+                            currencyRates.put(CurrencyCode.valueOf(rate), value);
+                        } else {
+                            logger.warn("Skipping currency: [{}] as it's not a supported currency", rate);
+                        }
+                    });
+
+                    return currencyRates;
+                })
+                .onErrorMap(e -> new APICallFailedException("Something went wrong querying Fixer API for EUR currency rates", e));
+    }
+
+    @VisibleForTestMock
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Looks up the latest rates and swaps them in as a single snapshot. The current snapshot is left untouched on failure.
+     *
+     * If a refresh is already in flight this joins it rather than making another call to the Fixer API.
+     * @return the new snapshot, or an APICallFailedException if the refresh failed, timed out, or the circuit is open
+     */
+    @VisibleForTestMock
+    Mono<ExchangeRates> refreshExchangeRates() {
+        while (true) {
+            final Mono<ExchangeRates> inFlight = this.inFlightRefresh.get();
+            if (inFlight != null) {
+                return inFlight;
+            }
+
+            // cached so every subscriber shares the one call, cleared once it completes so the next refresh calls again
+            final Mono<ExchangeRates> refresh = Mono.defer(this::loadExchangeRates)
+                    .doFinally(signal -> this.inFlightRefresh.set(null))
+                    .cache();
+            if (this.inFlightRefresh.compareAndSet(null, refresh)) {
+                return refresh;
+            }
+            // another caller started a refresh between the get and set, join that one
+        }
+    }
+
+    private Mono<ExchangeRates> loadExchangeRates() {
+        final long now = this.currentTimeMillis();
+
+        if (!this.circuitBreaker.allowRequest(now)) {
+            return Mono.error(new APICallFailedException(String.format("Fixer API calls are suspended until: [%s] after: [%d] consecutive failures",
+                    new Date(this.circuitBreaker.getOpenUntil()), this.circuitBreaker.getConsecutiveFailures()),
+                    this.circuitBreaker.getLastFailure()));
+        }
+
+        // without a timeout a hung Fixer API would hold the refresh, and every caller waiting on it, forever
+        return Mono.defer(this::getLatestEURExchangeRatesFromAPI)
+                .timeout(Duration.ofMillis(this.apiTimeoutMillis))
+                .defaultIfEmpty(Collections.emptyMap())
+                .flatMap(currencyRatesEUR -> currencyRatesEUR.isEmpty()
+                        ? Mono.<ExchangeRates>error(new APICallFailedException("Fixer API returned no exchange rates"))
+                        : Mono.just(new ExchangeRates(currencyRatesEUR, this.currentTimeMillis())))
+                .doOnNext(exchangeRates -> {
+                    this.exchangeRatesCache.set(exchangeRates);
+                    this.circuitBreaker.recordSuccess();
+                    logger.info("Updated currency rate cache: [{}]", exchangeRates);
+                })
+                .doOnError(e -> {
+                    this.circuitBreaker.recordFailure(now, e);
+                    logger.warn("Fixer API call failed. Circuit: [{}]", this.circuitBreaker);
+                });
+    }
+
+    @Override
+    public Mono<ExchangeRates> getExchangeRates() {
+        final ExchangeRates current = this.exchangeRatesCache.get();
+        final Mono<ExchangeRates> result;
+
+        // the first lookup has to wait for rates, after that the current snapshot is used while any refresh runs
+        if (current == null) {
+            result = this.refreshExchangeRates()
+                    .onErrorMap(e -> new CurrencyConversionException("Exchange rates are currently unavailable", e));
+        } else {
+            final long now = this.currentTimeMillis();
+            final boolean isDue = current.isExpired(now, this.ratesTtlMillis - this.ratesRefreshAheadMillis);
+            final boolean isSuspended = this.circuitBreaker.getState() == CircuitBreaker.State.OPEN && now < this.circuitBreaker.getOpenUntil();
+            if (isDue && !isSuspended && this.inFlightRefresh.get() == null) {
+                this.refreshExchangeRates().subscribe(
+                        exchangeRates -> logger.debug("Refreshed exchange rates ahead of expiry: [{}]", exchangeRates),
+                        e -> logger.error("Something went wrong refreshing exchange rates. The previous rates will continue to be used", e));
+            }
+            if (current.isExpired(now, this.ratesTtlMillis)) {
+                logger.debug("Using expired exchange rates: [{}] as they could not be refreshed", current);
+            }
+            result = Mono.just(current);
+        }
+
+        return result;
+    }
+
+    @Override
+    public Mono<long[]> convertCentsFromUSD(@NotNull CurrencyCode toCurrency, @NotNull long[] usdCents) {
+        Assert.notNull(toCurrency, "Currency code to convert to is required");
+        Assert.notNull(usdCents, "Amounts in USD to convert are required");
+
+        return this.getExchangeRates().handle((exchangeRates, sink) -> {
+            try {
+                sink.next(exchangeRates.convertCentsFromUSD(toCurrency, usdCents));
+                logger.debug("Converted: [{}] amounts in cents from USD to: [{}]", usdCents.length, toCurrency);
+            } catch (CurrencyConversionException e) {
+                sink.error(e);
+            }
+        });
+    }
+
+}
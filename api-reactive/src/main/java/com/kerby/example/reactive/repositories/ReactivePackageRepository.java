@@ -0,0 +1,79 @@
+package com.kerby.example.reactive.repositories;
+
+import com.kerby.example.database.models.PackageEntity;
+import com.kerby.example.database.models.ProductEntity;
+import com.kerby.example.database.repositories.PackageRepository;
+import com.kerby.example.packages.service.ProductCatalogue;
+import com.kerby.example.reactive.ReactiveApplicationConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Non-blocking access to the Packages read by the reactive api, mirroring PackageRepository.
+ *
+ * There is no reactive driver for H2 on this version of Spring, so each query is the blocking PackageRepository
+ * query subscribed on the database scheduler. Event loop threads never wait on the database, and the connections in
+ * use are bounded by the scheduler's threads rather than by the requests in flight. Queries the scheduler can't
+ * take error with a RejectedExecutionException.
+ *
+ * Products are looked up through ProductCatalogue, which only queries for those not cached.
+ */
+@Repository
+public class ReactivePackageRepository {
+
+    private final PackageRepository packageRepository;
+    private final ProductCatalogue productCatalogue;
+    private final Scheduler scheduler;
+
+    public ReactivePackageRepository(@Autowired PackageRepository packageRepository,
+                                     @Autowired ProductCatalogue productCatalogue,
+                                     @Autowired @Qualifier(ReactiveApplicationConfig.DATABASE_SCHEDULER) Scheduler scheduler) {
+        this.packageRepository = packageRepository;
+        this.productCatalogue = productCatalogue;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @see PackageRepository#findWithProductsById(int)
+     */
+    public Mono<PackageEntity> findWithProductsById(int id) {
+        return Mono.fromCallable(() -> this.packageRepository.findWithProductsById(id))
+                .subscribeOn(this.scheduler)
+                .flatMap(Mono::justOrEmpty);
+    }
+
+    /**
+     * @see PackageRepository#findIdsByIdGreaterThan(int, Pageable)
+     */
+    public Flux<Integer> findIdsByIdGreaterThan(int id, Pageable pageable) {
+        return Mono.fromCallable(() -> this.packageRepository.findIdsByIdGreaterThan(id, pageable))
+                .subscribeOn(this.scheduler)
+                .flatMapIterable(ids -> ids);
+    }
+
+    /**
+     * @see PackageRepository#findAllWithProductsByIdIn(Collection)
+     */
+    public Flux<PackageEntity> findAllWithProductsByIdIn(Collection<Integer> ids) {
+        return Mono.fromCallable(() -> this.packageRepository.findAllWithProductsByIdIn(ids))
+                .subscribeOn(this.scheduler)
+                .flatMapIterable(packageEntities -> packageEntities);
+    }
+
+    /**
+     * @see ProductCatalogue#getProductsOf(Collection)
+     */
+    public Mono<Map<String, ProductEntity>> findProductsOf(Collection<PackageEntity> packageEntities) {
+        return Mono.fromCallable(() -> this.productCatalogue.getProductsOf(packageEntities))
+                .subscribeOn(this.scheduler);
+    }
+
+}
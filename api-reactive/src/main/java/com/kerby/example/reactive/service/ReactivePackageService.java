@@ -0,0 +1,51 @@
+package com.kerby.example.reactive.service;
+
+import com.kerby.example.packages.models.Currency;
+import com.kerby.example.packages.models.Package;
+import com.kerby.example.packages.models.PackagePage;
+import com.kerby.example.packages.models.Product;
+import com.kerby.example.packages.service.PackageService;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Non-blocking counterpart of PackageService for the reactive api.
+ *
+ * Monos error with the exceptions PackageService would throw, or a RejectedExecutionException when the database
+ * scheduler is saturated. An invalid currency code or cursor is thrown straight away as an IllegalArgumentException.
+ */
+public interface ReactivePackageService {
+
+    /**
+     * @see PackageService#getCurrencies()
+     */
+    Flux<Currency> getCurrencies();
+
+    /**
+     * @see PackageService#createPackage(String, String, Product...)
+     */
+    Mono<Integer> createPackage(@NotNull String name, String description, @NotNull Product... products);
+
+    /**
+     * @see PackageService#getPackage(String, int)
+     */
+    Mono<Package> getPackage(String exchangeToCurrencyCode, @NotNull int packageId);
+
+    /**
+     * @see PackageService#getPackages(String, String, int)
+     */
+    Mono<PackagePage> getPackages(String exchangeToCurrencyCode, String cursor, int limit);
+
+    /**
+     * @see PackageService#updatePackage(int, String, String, Product...)
+     */
+    Mono<Boolean> updatePackage(@NotNull int packageId, String name, String description, Product... products);
+
+    /**
+     * @see PackageService#deletePackage(int)
+     */
+    Mono<Boolean> deletePackage(@NotNull int packageId);
+
+}
@@ -0,0 +1,192 @@
+package com.kerby.example.reactive.service;
+
+import com.kerby.example.currency.exceptions.InvalidCurrencyCodeException;
+import com.kerby.example.currency.models.CurrencyCode;
+import com.kerby.example.currency.service.CurrencyService;
+import com.kerby.example.database.models.PackageEntity;
+import com.kerby.example.packages.exceptions.PackageNotFoundException;
+import com.kerby.example.packages.exceptions.PackageServiceException;
+import com.kerby.example.packages.mapping.PackageMapper;
+import com.kerby.example.packages.models.Currency;
+import com.kerby.example.packages.models.Package;
+import com.kerby.example.packages.models.PackagePage;
+import com.kerby.example.packages.models.Product;
+import com.kerby.example.packages.service.PackageCursors;
+import com.kerby.example.packages.service.PackageService;
+import com.kerby.example.reactive.ReactiveApplicationConfig;
+import com.kerby.example.reactive.currency.ReactiveCurrencyService;
+import com.kerby.example.reactive.repositories.ReactivePackageRepository;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Reads go through ReactivePackageRepository and ReactiveCurrencyService, so a read holds a database scheduler
+ * thread only while its queries run and no thread at all while prices are converted.
+ *
+ * Writes are validated and run in a transaction by PackageService, on the database scheduler.
+ */
+@Service
+public class ReactivePackageServiceImpl implements ReactivePackageService {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final PackageService packageService;
+    private final ReactivePackageRepository reactivePackageRepository;
+    private final ReactiveCurrencyService reactiveCurrencyService;
+    private final CurrencyService currencyService;
+    private final Scheduler databaseScheduler;
+
+    public ReactivePackageServiceImpl(@Autowired PackageService packageService,
+                                      @Autowired ReactivePackageRepository reactivePackageRepository,
+                                      @Autowired ReactiveCurrencyService reactiveCurrencyService,
+                                      @Autowired CurrencyService currencyService,
+                                      @Autowired @Qualifier(ReactiveApplicationConfig.DATABASE_SCHEDULER) Scheduler databaseScheduler) {
+        this.packageService = packageService;
+        this.reactivePackageRepository = reactivePackageRepository;
+        this.reactiveCurrencyService = reactiveCurrencyService;
+        this.currencyService = currencyService;
+        this.databaseScheduler = databaseScheduler;
+    }
+
+    @Override
+    public Flux<Currency> getCurrencies() {
+        // no database or Fixer API calls
+        return Flux.defer(() -> Flux.fromIterable(this.packageService.getCurrencies()));
+    }
+
+    @Override
+    public Mono<Integer> createPackage(@NotNull final String name, final String description, @NotNull final Product... products) {
+        return this.onDatabaseScheduler(() -> this.packageService.createPackage(name, description, products));
+    }
+
+    @Override
+    public Mono<Package> getPackage(final String exchangeToCurrencyCode, @NotNull final int packageId) {
+        Assert.isTrue(packageId > 0, "packageId is required to lookup a package");
+        final CurrencyCode exchangeToCode = this.getCurrencyCode(exchangeToCurrencyCode);
+
+        logger.debug("Getting package with id: [{}]", packageId);
+        return this.reactivePackageRepository.findWithProductsById(packageId)
+                .switchIfEmpty(Mono.defer(() -> Mono.error(new PackageNotFoundException(String.format("No package found with id: [%d]", packageId)))))
+                .flatMap(packageEntity -> this.toPackages(Collections.singletonList(packageEntity)))
+                .flatMap(packages -> this.convertPrices(exchangeToCode, packages))
+                .map(packages -> packages.get(0))
+                .onErrorMap(ReactivePackageServiceImpl::isUnexpected,
+                        e -> new PackageServiceException(String.format("Something went wrong looking up package: [%d]", packageId), e));
+    }
+
+    @Override
+    public Mono<PackagePage> getPackages(final String exchangeToCurrencyCode, final String cursor, final int limit) {
+        Assert.isTrue(limit > 0, "limit must be positive to page packages");
+        final int afterId = StringUtils.isNotBlank(cursor) ? PackageCursors.decode(cursor) : 0;
+        final CurrencyCode exchangeToCode = this.getCurrencyCode(exchangeToCurrencyCode);
+
+        // find a page of package ids, one extra to know if there is a next page
+        logger.debug("Getting: [{}] packages after id: [{}]", limit, afterId);
+        return this.reactivePackageRepository.findIdsByIdGreaterThan(afterId, PageRequest.of(0, limit + 1))
+                .collectList()
+                .flatMap(packageIds -> {
+                    final boolean hasNext = packageIds.size() > limit;
+                    // then the packages with their products, two queries whatever the size of the page
+                    final Mono<List<Package>> packages = packageIds.isEmpty()
+                            ? Mono.just(Collections.emptyList())
+                            : this.reactivePackageRepository.findAllWithProductsByIdIn(hasNext ? packageIds.subList(0, limit) : packageIds)
+                                    .collectList()
+                                    .flatMap(this::toPackages)
+                                    .flatMap(page -> this.convertPrices(exchangeToCode, page));
+                    return packages.map(page -> new PackagePage(page, hasNext ? PackageCursors.encode(page.get(page.size() - 1).getId()) : null));
+                })
+                .onErrorMap(ReactivePackageServiceImpl::isUnexpected,
+                        e -> new PackageServiceException("Something went wrong looking up packages", e));
+    }
+
+    /**
+     * Maps packages along with their products, which are looked up together
+     */
+    private Mono<List<Package>> toPackages(final List<PackageEntity> packageEntities) {
+        return this.reactivePackageRepository.findProductsOf(packageEntities).map(productEntities -> {
+            final List<Package> result = new ArrayList<>(packageEntities.size());
+            for (PackageEntity packageEntity : packageEntities) {
+                result.add(PackageMapper.INSTANCE.entityToPackage(packageEntity, productEntities));
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Converts the prices of the packages, all against the same exchange rates
+     * @param exchangeToCode - currency to convert to, or null to leave them in USD
+     * @return the same packages, once converted
+     */
+    private Mono<List<Package>> convertPrices(final CurrencyCode exchangeToCode, final List<Package> packages) {
+        if (exchangeToCode == null || packages.isEmpty()) {
+            return Mono.just(packages);
+        }
+
+        final long[] usdPrices = new long[packages.size()];
+        for (int i = 0; i < usdPrices.length; i++) {
+            usdPrices[i] = packages.get(i).getPrice();
+        }
+        logger.debug("Converting prices of: [{}] packages from USD to currency: [{}]", usdPrices.length, exchangeToCode);
+        return this.reactiveCurrencyService.convertCentsFromUSD(exchangeToCode, usdPrices).map(prices -> {
+            for (int i = 0; i < prices.length; i++) {
+                packages.get(i).setPrice(prices[i]);
+            }
+            return packages;
+        });
+    }
+
+    @Override
+    public Mono<Boolean> updatePackage(@NotNull final int packageId, final String name, final String description, final Product... products) {
+        return this.onDatabaseScheduler(() -> this.packageService.updatePackage(packageId, null, name, description, products));
+    }
+
+    @Override
+    public Mono<Boolean> deletePackage(@NotNull final int packageId) {
+        return this.onDatabaseScheduler(() -> this.packageService.deletePackage(packageId));
+    }
+
+    private <T> Mono<T> onDatabaseScheduler(final Callable<T> callable) {
+        return Mono.fromCallable(callable).subscribeOn(this.databaseScheduler);
+    }
+
+    /**
+     * @return the currency, or null for USD if blank
+     * @throws IllegalArgumentException if the currency code is invalid
+     */
+    private CurrencyCode getCurrencyCode(final String currencyCode) {
+        CurrencyCode result = null;
+        if (StringUtils.isNotBlank(currencyCode)) {
+            try {
+                result = this.currencyService.getCurrencyCodeFromString(currencyCode);
+            } catch (InvalidCurrencyCodeException e) {
+                throw new IllegalArgumentException("The currency code provided is invalid", e);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Not found and too busy are passed on as they are, anything else is wrapped as PackageServiceImpl would
+     */
+    private static boolean isUnexpected(final Throwable e) {
+        return !(e instanceof PackageNotFoundException || e instanceof RejectedExecutionException);
+    }
+
+}
@@ -0,0 +1,224 @@
+package com.kerby.example.reactive.controller;
+
+import com.kerby.example.currency.exceptions.InvalidCurrencyCodeException;
+import com.kerby.example.currency.models.CurrencyCode;
+import com.kerby.example.currency.service.CurrencyService;
+import com.kerby.example.database.models.PackageEntity;
+import com.kerby.example.database.models.ProductEntity;
+import com.kerby.example.database.repositories.PackageRepository;
+import com.kerby.example.packages.exceptions.PackageNotFoundException;
+import com.kerby.example.packages.models.Currency;
+import com.kerby.example.packages.models.Product;
+import com.kerby.example.packages.service.PackageService;
+import com.kerby.example.packages.service.ProductCatalogue;
+import com.kerby.example.reactive.ReactiveApplicationConfig;
+import com.kerby.example.reactive.currency.ReactiveCurrencyService;
+import com.kerby.example.reactive.repositories.ReactivePackageRepository;
+import com.kerby.example.reactive.service.ReactivePackageServiceImpl;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+@RunWith(SpringRunner.class)
+@WebFluxTest(ReactivePackagesController.class)
+@Import({ReactivePackageServiceImpl.class, ReactivePackageRepository.class, ReactivePackagesControllerTest.SchedulerConfig.class})
+public class ReactivePackagesControllerTest {
+
+    @TestConfiguration
+    static class SchedulerConfig {
+
+        // database work runs on the subscribing thread
+        @Bean(name = ReactiveApplicationConfig.DATABASE_SCHEDULER)
+        public Scheduler databaseScheduler() {
+            return Schedulers.immediate();
+        }
+    }
+
+    @MockBean
+    private CurrencyService currencyService;
+
+    @MockBean
+    private ReactiveCurrencyService reactiveCurrencyService;
+
+    @MockBean
+    private PackageRepository packageRepository;
+
+    @MockBean
+    private ProductCatalogue productCatalogue;
+
+    @MockBean
+    private PackageService packageService;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    private static PackageEntity aPackageEntity(int id) {
+        final PackageEntity result = new PackageEntity("Foo", "Foo test", Arrays.asList("alpha_1"));
+        result.setId(id);
+        result.setUsdTotal(1000);
+        return result;
+    }
+
+    @Before
+    public void beforeTest() {
+        Mockito.when(productCatalogue.getProductsOf(Mockito.any()))
+                .thenReturn(Collections.singletonMap("alpha_1", new ProductEntity("alpha_1", "Alpha", 100)));
+    }
+
+    @Test
+    public void when_callGetCurrencies_expect200AndCurrencyResponse() {
+        Mockito.when(packageService.getCurrencies()).thenReturn(Collections.singletonList(new Currency("GBP", "British Pound Sterling")));
+
+        this.webTestClient.get().uri("/packages-api/currency")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.currencies[0].code").isEqualTo("GBP")
+                .jsonPath("$.currencies[0].name").isEqualTo("British Pound Sterling");
+    }
+
+    @Test
+    public void when_callGetPackage_expect200AndPackageResponse() {
+        Mockito.when(packageRepository.findWithProductsById(1)).thenReturn(Optional.of(aPackageEntity(1)));
+
+        this.webTestClient.get().uri("/packages-api/package/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.package.id").isEqualTo(1)
+                .jsonPath("$.package.name").isEqualTo("Foo")
+                .jsonPath("$.package.description").isEqualTo("Foo test")
+                .jsonPath("$.package.price").isEqualTo(10.0)
+                .jsonPath("$.package.products[0].id").isEqualTo("alpha_1")
+                .jsonPath("$.package.products[0].usdPrice").isEqualTo(100);
+    }
+
+    @Test
+    public void when_callGetPackageWithCurrency_expectConvertedPrice() throws Exception {
+        Mockito.when(packageRepository.findWithProductsById(1)).thenReturn(Optional.of(aPackageEntity(1)));
+        Mockito.when(currencyService.getCurrencyCodeFromString("GBP")).thenReturn(CurrencyCode.GBP);
+        Mockito.when(reactiveCurrencyService.convertCentsFromUSD(CurrencyCode.GBP, new long[] {1000})).thenReturn(Mono.just(new long[] {750}));
+
+        this.webTestClient.get().uri("/packages-api/package/1?currency=GBP")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.package.price").isEqualTo(7.5);
+    }
+
+    @Test
+    public void when_callGetPackageWithInvalidId_expect404() {
+        Mockito.when(packageRepository.findWithProductsById(2)).thenReturn(Optional.empty());
+
+        this.webTestClient.get().uri("/packages-api/package/2")
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody()
+                .jsonPath("$.errorCode").isEqualTo("PACKAGE_NOT_FOUND");
+    }
+
+    @Test
+    public void when_callGetPackageWithInvalidCurrency_expect400() throws Exception {
+        Mockito.when(currencyService.getCurrencyCodeFromString("XXX"))
+                .thenThrow(new InvalidCurrencyCodeException("XXX"));
+
+        this.webTestClient.get().uri("/packages-api/package/1?currency=XXX")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.errorCode").isEqualTo("INCORRECT_PARAMS");
+        Mockito.verifyZeroInteractions(packageRepository);
+    }
+
+    @Test
+    public void when_callGetPackageAndSchedulerIsFull_expect503() {
+        Mockito.when(packageRepository.findWithProductsById(1)).thenThrow(new RejectedExecutionException("full"));
+
+        this.webTestClient.get().uri("/packages-api/package/1")
+                .exchange()
+                .expectStatus().isEqualTo(503)
+                .expectHeader().valueEquals("Retry-After", "1")
+                .expectBody()
+                .jsonPath("$.errorCode").isEqualTo("SERVICE_UNAVAILABLE");
+    }
+
+    @Test
+    public void when_callGetPackages_expectPageWithNextCursor() {
+        Mockito.when(packageRepository.findIdsByIdGreaterThan(0, PageRequest.of(0, 2))).thenReturn(Arrays.asList(1, 2));
+        Mockito.when(packageRepository.findAllWithProductsByIdIn(Collections.singletonList(1))).thenReturn(Collections.singletonList(aPackageEntity(1)));
+
+        this.webTestClient.get().uri("/packages-api/package?limit=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.packages.length()").isEqualTo(1)
+                .jsonPath("$.packages[0].id").isEqualTo(1)
+                .jsonPath("$.nextCursor").isEqualTo("aWQ6MQ");
+    }
+
+    @Test
+    public void when_callGetPackagesWithNone_expectEmpty200() {
+        Mockito.when(packageRepository.findIdsByIdGreaterThan(1, PageRequest.of(0, 101))).thenReturn(Collections.emptyList());
+
+        this.webTestClient.get().uri("/packages-api/package?cursor=aWQ6MQ")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().isEmpty();
+        Mockito.verify(packageRepository, Mockito.never()).findAllWithProductsByIdIn(Mockito.any());
+    }
+
+    @Test
+    public void when_callCreatePackage_expect201AndId() throws Exception {
+        Mockito.when(packageService.createPackage(Mockito.eq("Foo"), Mockito.eq("Foo test"), Mockito.<Product>any())).thenReturn(3);
+
+        this.webTestClient.post().uri("/packages-api/package")
+                .contentType(MediaType.APPLICATION_JSON)
+                .syncBody("{\"package\":{\"name\":\"Foo\",\"description\":\"Foo test\",\"products\":[{\"id\":\"alpha_1\",\"name\":\"Alpha\",\"usdPrice\":100}]}}")
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(Integer.class).isEqualTo(3);
+    }
+
+    @Test
+    public void when_callUpdateMissingPackage_expect404() throws Exception {
+        Mockito.when(packageService.updatePackage(Mockito.eq(4), Mockito.isNull(), Mockito.eq("Foo"), Mockito.eq("Foo test"), Mockito.<Product>any()))
+                .thenThrow(new PackageNotFoundException("No package found with id: [4]"));
+
+        this.webTestClient.put().uri("/packages-api/package/4")
+                .contentType(MediaType.APPLICATION_JSON)
+                .syncBody("{\"package\":{\"name\":\"Foo\",\"description\":\"Foo test\",\"products\":[{\"id\":\"alpha_1\",\"name\":\"Alpha\",\"usdPrice\":100}]}}")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void when_callDeletePackage_expect200() throws Exception {
+        Mockito.when(packageService.deletePackage(5)).thenReturn(true);
+
+        this.webTestClient.delete().uri("/packages-api/package/5")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(Boolean.class).isEqualTo(true);
+    }
+
+}
@@ -0,0 +1,157 @@
+package com.kerby.example.reactive.currency;
+
+import com.kerby.example.currency.exceptions.APICallFailedException;
+import com.kerby.example.currency.exceptions.CurrencyConversionException;
+import com.kerby.example.currency.models.CurrencyCode;
+import com.kerby.example.currency.models.ExchangeRates;
+import org.hamcrest.Matchers;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests for ReactiveFixerCurrencyService.
+ * No API calls are made. Fixer API is mocked.
+ * These are unit tests not integration tests with Fixer API.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, classes = ReactiveFixerCurrencyService.class)
+@SpringBootConfiguration
+public class ReactiveFixerCurrencyServiceTest {
+
+    private static final Map<CurrencyCode, BigDecimal> currencyRatesEUR = new HashMap<>();
+
+    @BeforeClass
+    public static void beforeTests() {
+        // setup mocked currency rates
+        currencyRatesEUR.put(CurrencyCode.EUR, new BigDecimal(1));
+        currencyRatesEUR.put(CurrencyCode.USD, new BigDecimal(1.145771));
+        currencyRatesEUR.put(CurrencyCode.GBP, new BigDecimal(0.879981));
+    }
+
+    @Spy
+    ReactiveFixerCurrencyService reactiveFixerCurrencyService;
+
+    private static Throwable errorOf(Mono<?> mono) {
+        try {
+            mono.block();
+        } catch (RuntimeException e) {
+            return Exceptions.unwrap(e);
+        }
+        throw new AssertionError("Expected error");
+    }
+
+    @Test
+    public void when_convertCentsFromUSD_expectSameResultsAsExchangeRates() throws CurrencyConversionException {
+        Mockito.doReturn(Mono.just(currencyRatesEUR)).when(this.reactiveFixerCurrencyService).getLatestEURExchangeRatesFromAPI();
+        final long[] usdCents = {0, 1, 999, -999, 123456789};
+
+        final long[] result = this.reactiveFixerCurrencyService.convertCentsFromUSD(CurrencyCode.GBP, usdCents).block();
+
+        Assert.assertArrayEquals(new ExchangeRates(currencyRatesEUR, 0).convertCentsFromUSD(CurrencyCode.GBP, usdCents), result);
+    }
+
+    @Test
+    public void when_convertToCurrencyWithoutRate_expectException() {
+        Mockito.doReturn(Mono.just(currencyRatesEUR)).when(this.reactiveFixerCurrencyService).getLatestEURExchangeRatesFromAPI();
+
+        Assert.assertThat(errorOf(this.reactiveFixerCurrencyService.convertCentsFromUSD(CurrencyCode.JPY, new long[] {100})),
+                Matchers.instanceOf(CurrencyConversionException.class));
+    }
+
+    @Test
+    public void when_convertingWhileRefreshInFlight_expectSingleAPICall() {
+        // the API hasn't responded yet
+        final MonoProcessor<Map<CurrencyCode, BigDecimal>> response = MonoProcessor.create();
+        Mockito.doReturn(response).when(this.reactiveFixerCurrencyService).getLatestEURExchangeRatesFromAPI();
+
+        final Mono<long[]> first = this.reactiveFixerCurrencyService.convertCentsFromUSD(CurrencyCode.GBP, new long[] {1000}).cache();
+        final Mono<long[]> second = this.reactiveFixerCurrencyService.convertCentsFromUSD(CurrencyCode.GBP, new long[] {2000}).cache();
+        first.subscribe();
+        second.subscribe();
+        response.onNext(currencyRatesEUR);
+
+        Assert.assertArrayEquals(new long[] {768}, first.block());
+        Assert.assertArrayEquals(new long[] {1536}, second.block());
+        Mockito.verify(this.reactiveFixerCurrencyService, Mockito.times(1)).getLatestEURExchangeRatesFromAPI();
+    }
+
+    @Test
+    public void when_exchangeRatesAreFresh_expectCachedRatesWithoutAPICall() {
+        Mockito.doReturn(Mono.just(currencyRatesEUR)).when(this.reactiveFixerCurrencyService).getLatestEURExchangeRatesFromAPI();
+
+        final ExchangeRates exchangeRates = this.reactiveFixerCurrencyService.getExchangeRates().block();
+
+        Assert.assertSame(exchangeRates, this.reactiveFixerCurrencyService.getExchangeRates().block());
+        Mockito.verify(this.reactiveFixerCurrencyService, Mockito.times(1)).getLatestEURExchangeRatesFromAPI();
+    }
+
+    @Test
+    public void when_exchangeRatesAreDue_expectCurrentRatesWhileRefreshing() {
+        Mockito.doReturn(Mono.just(currencyRatesEUR))
+                .doReturn(Mono.never())
+                .when(this.reactiveFixerCurrencyService).getLatestEURExchangeRatesFromAPI();
+
+        final ExchangeRates exchangeRates = this.reactiveFixerCurrencyService.getExchangeRates().block();
+        // force the snapshot to be due a refresh, which never responds
+        Mockito.doReturn(Long.MAX_VALUE).when(this.reactiveFixerCurrencyService).currentTimeMillis();
+
+        Assert.assertSame(exchangeRates, this.reactiveFixerCurrencyService.getExchangeRates().block());
+        Assert.assertSame(exchangeRates, this.reactiveFixerCurrencyService.getExchangeRates().block());
+        // a single refresh was started in the background
+        Mockito.verify(this.reactiveFixerCurrencyService, Mockito.times(2)).getLatestEURExchangeRatesFromAPI();
+    }
+
+    @Test
+    public void when_refreshingExchangeRatesFails_expectPreviousRatesUsedForConversion() {
+        Mockito.doReturn(Mono.just(currencyRatesEUR))
+                .doReturn(Mono.error(new APICallFailedException("Fixer unavailable")))
+                .when(this.reactiveFixerCurrencyService).getLatestEURExchangeRatesFromAPI();
+
+        this.reactiveFixerCurrencyService.getExchangeRates().block();
+        Mockito.doReturn(Long.MAX_VALUE).when(this.reactiveFixerCurrencyService).currentTimeMillis();
+
+        Assert.assertArrayEquals(new long[] {768},
+                this.reactiveFixerCurrencyService.convertCentsFromUSD(CurrencyCode.GBP, new long[] {1000}).block());
+        Mockito.verify(this.reactiveFixerCurrencyService, Mockito.times(2)).getLatestEURExchangeRatesFromAPI();
+    }
+
+    @Test
+    public void when_fixerAPIFails_expectFailFastWithoutFurtherAPICalls() {
+        Mockito.doReturn(Mono.error(new APICallFailedException("Fixer unavailable")))
+                .when(this.reactiveFixerCurrencyService).getLatestEURExchangeRatesFromAPI();
+
+        for (int i = 0; i < 3; i++) {
+            final Throwable error = errorOf(this.reactiveFixerCurrencyService.convertCentsFromUSD(CurrencyCode.GBP, new long[] {1000}));
+            Assert.assertThat(error, Matchers.instanceOf(CurrencyConversionException.class));
+            Assert.assertThat(error.getCause(), Matchers.instanceOf(APICallFailedException.class));
+        }
+
+        // assert failure was remembered rather than every conversion calling the API
+        Mockito.verify(this.reactiveFixerCurrencyService, Mockito.times(1)).getLatestEURExchangeRatesFromAPI();
+    }
+
+    @Test
+    public void when_fixerAPIReturnsNoRates_expectException() {
+        Mockito.doReturn(Mono.just(new HashMap<>())).when(this.reactiveFixerCurrencyService).getLatestEURExchangeRatesFromAPI();
+
+        final Throwable error = errorOf(this.reactiveFixerCurrencyService.getExchangeRates());
+
+        Assert.assertThat(error, Matchers.instanceOf(CurrencyConversionException.class));
+        Assert.assertThat(error.getCause().getMessage(), Matchers.is("Fixer API returned no exchange rates"));
+    }
+
+}
@@ -4,17 +4,22 @@ import com.fasterxml.jackson.databind.JsonMappingException;
 import com.kerby.example.api.exceptions.ApiException;
 import com.kerby.example.api.controller.PackagesController;
 import com.kerby.example.api.models.responses.ErrorResponse;
+import com.kerby.example.packages.exceptions.PackageIndexNotBuiltException;
+import com.kerby.example.packages.exceptions.PackageModifiedException;
 import com.kerby.example.packages.exceptions.PackageNotFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.context.request.async.AsyncRequestTimeoutException;
 
 import java.util.Date;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Exception handling for PackagesController.
@@ -55,6 +60,48 @@ public class ApiExceptionHandler {
         return new ResponseEntity<>(errorResponse, HttpStatus.NOT_FOUND);
     }
 
+    /**
+     * Updates made with If-Match are only applied to the revision of the package the client has
+     * @param exception - PackageModifiedException
+     * @return - 412 and ErrorResponse object
+     */
+    @ExceptionHandler(PackageModifiedException.class)
+    public ResponseEntity<ErrorResponse> handlePackageModifiedException(PackageModifiedException exception) {
+        final ErrorResponse errorResponse = new ErrorResponse(new Date(), ErrorResponse.ErrorCode.PACKAGE_MODIFIED, "The package has changed since it was read");
+        this.logger.warn("An API request was made to update a package which has changed", exception);
+        return new ResponseEntity<>(errorResponse, HttpStatus.PRECONDITION_FAILED);
+    }
+
+    /**
+     * Package reads are queued on bounded executors, when they're full the read is rejected rather than queued
+     * without limit. Also covers reads that didn't complete within the async request timeout.
+     * @param exception - RejectedExecutionException or AsyncRequestTimeoutException
+     * @return - 503 with a Retry-After and ErrorResponse object
+     */
+    @ExceptionHandler({RejectedExecutionException.class, AsyncRequestTimeoutException.class})
+    public ResponseEntity<ErrorResponse> handleServiceUnavailable(Exception exception) {
+        final ErrorResponse errorResponse = new ErrorResponse(new Date(), ErrorResponse.ErrorCode.SERVICE_UNAVAILABLE, "The service is busy, please retry later");
+        this.logger.warn("An API request was rejected as the service is busy", exception);
+        final HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "1");
+        return new ResponseEntity<>(errorResponse, headers, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * Searches, and packages by price, are read from indexes built when the service starts. Until they're built the
+     * read is refused rather than missing packages.
+     * @param exception - PackageIndexNotBuiltException
+     * @return - 503 with a Retry-After and ErrorResponse object
+     */
+    @ExceptionHandler(PackageIndexNotBuiltException.class)
+    public ResponseEntity<ErrorResponse> handleIndexNotBuilt(PackageIndexNotBuiltException exception) {
+        final ErrorResponse errorResponse = new ErrorResponse(new Date(), ErrorResponse.ErrorCode.SERVICE_UNAVAILABLE, "The service is starting, please retry later");
+        this.logger.warn("An API request was rejected as packages are still being indexed", exception);
+        final HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "5");
+        return new ResponseEntity<>(errorResponse, headers, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
     /**
      * Generic catch-all encase an exception is not caught by a specific handler
      * @param exception - Exception thrown by API
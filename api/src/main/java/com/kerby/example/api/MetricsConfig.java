@@ -0,0 +1,27 @@
+package com.kerby.example.api;
+
+import com.kerby.example.database.metrics.RepositoryMetricsAspect;
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+
+/**
+ * Timers on service and repository calls, published with the rest of the actuator metrics.
+ * Endpoint latencies are recorded by Spring Boot as http.server.requests, see application.properties.
+ */
+@Configuration
+@EnableAspectJAutoProxy
+public class MetricsConfig {
+
+    @Bean // times methods annotated with @Timed
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+
+    @Bean
+    public RepositoryMetricsAspect repositoryMetricsAspect(MeterRegistry meterRegistry) {
+        return new RepositoryMetricsAspect(meterRegistry);
+    }
+}
@@ -0,0 +1,255 @@
+package com.kerby.example.api.cache;
+
+import com.kerby.example.currency.events.ExchangeRatesRefreshedEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Serialized package responses, so reads of an unchanged package in a currency skip the lookup, conversion, mapping
+ * and serialization.
+ *
+ * Entries are keyed by package id, currency and content type, and hold the revision tag of the package they were rendered from.
+ * The tag covers the package version and, for converted prices, the exchange rates, so an entry is only returned
+ * while it is current. Out of date entries are also evicted when a package is updated or deleted, or the rates
+ * are refreshed, to free their space early.
+ *
+ * The cache is bounded by the total size of the responses held. It is split into segments by package id, each
+ * with an equal share of the size and its own lock, so reads of different packages rarely wait on each other.
+ * Least recently used entries of a segment are evicted first, which is close to least recently used overall as
+ * packages spread evenly over the segments. Every response of a package is in the same segment.
+ */
+@Component
+public class PackageResponseCache implements MeterBinder {
+
+    private static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+    private static final int DEFAULT_SEGMENTS = 16;
+    // rough size of an entry besides the response, i.e. the key, tag and map entry
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxBytes - total size of the responses held
+     * @param segments - number of segments the cache is split into, a power of two. Responses larger than a
+     *                 segment's share of the size aren't kept
+     */
+    public PackageResponseCache(@Value("${packages.response-cache.max-bytes:" + DEFAULT_MAX_BYTES + "}") long maxBytes,
+                                @Value("${packages.response-cache.segments:" + DEFAULT_SEGMENTS + "}") int segments) {
+        Assert.isTrue(maxBytes >= 0, "Response cache size must not be negative");
+        Assert.isTrue(segments > 0 && Integer.bitCount(segments) == 1, "Response cache segments must be a power of two");
+        this.segments = new Segment[segments];
+        for (int i = 0; i < segments; i++) {
+            this.segments[i] = new Segment(maxBytes / segments);
+        }
+    }
+
+    private Segment segmentOf(int packageId) {
+        // spread, as only the low bits pick the segment
+        return this.segments[(packageId ^ (packageId >>> 16)) & (this.segments.length - 1)];
+    }
+
+    /**
+     * @param packageId - id of the package
+     * @param currency - currency param of the request, blank for USD
+     * @param contentType - format of the response, e.g. JSON or Smile
+     * @param tag - current revision tag of the package in the currency
+     * @return the response, or null if there is none for the current revision
+     */
+    public byte[] get(int packageId, String currency, MediaType contentType, String tag) {
+        final byte[] result = this.segmentOf(packageId).get(new Key(packageId, currency, contentType), tag);
+        (result != null ? this.hits : this.misses).increment();
+        return result;
+    }
+
+    /**
+     * Caches a response, replacing any for an earlier revision. Responses larger than a segment aren't kept.
+     * @param packageId - id of the package
+     * @param currency - currency param of the request, blank for USD
+     * @param contentType - format the response is serialized in
+     * @param tag - revision tag of the package the response was rendered from
+     * @param body - serialized response, must not be modified once cached
+     */
+    public void put(int packageId, String currency, MediaType contentType, String tag, byte[] body) {
+        final int evicted = this.segmentOf(packageId).put(new Key(packageId, currency, contentType), new Entry(tag, body));
+        if (evicted > 0) {
+            this.evictions.add(evicted);
+        }
+    }
+
+    /**
+     * Evicts the responses of a package in every currency and format
+     * @param packageId - id of the updated or deleted package
+     */
+    public void evict(int packageId) {
+        this.segmentOf(packageId).evictIf(key -> key.packageId == packageId);
+    }
+
+    /**
+     * Evicts responses with converted prices, they are out of date once the exchange rates change
+     */
+    @EventListener(ExchangeRatesRefreshedEvent.class)
+    public void evictConverted() {
+        for (Segment segment : this.segments) {
+            segment.evictIf(key -> !key.currency.isEmpty());
+        }
+    }
+
+    public void clear() {
+        for (Segment segment : this.segments) {
+            segment.evictIf(key -> true);
+        }
+    }
+
+    public long getBytes() {
+        long result = 0;
+        for (Segment segment : this.segments) {
+            result += segment.getBytes();
+        }
+        return result;
+    }
+
+    public int size() {
+        int result = 0;
+        for (Segment segment : this.segments) {
+            result += segment.size();
+        }
+        return result;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("packages.response.cache.hits", this.hits, LongAdder::doubleValue)
+                .register(registry);
+        FunctionCounter.builder("packages.response.cache.misses", this.misses, LongAdder::doubleValue)
+                .register(registry);
+        FunctionCounter.builder("packages.response.cache.evictions", this.evictions, LongAdder::doubleValue)
+                .description("Responses evicted to keep the cache within its size")
+                .register(registry);
+        Gauge.builder("packages.response.cache.size", this, PackageResponseCache::getBytes)
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * A share of the cache, locked on itself
+     */
+    private static final class Segment {
+
+        private final long maxBytes;
+        // access ordered, so iteration starts at the least recently used
+        private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long bytes = 0;
+
+        private Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        private synchronized byte[] get(Key key, String tag) {
+            final Entry entry = this.entries.get(key);
+            return entry != null && entry.tag.equals(tag) ? entry.body : null;
+        }
+
+        /**
+         * @return number of entries evicted to make room
+         */
+        private synchronized int put(Key key, Entry entry) {
+            if (entry.size > this.maxBytes) {
+                return 0;
+            }
+
+            final Entry replaced = this.entries.put(key, entry);
+            if (replaced != null) {
+                this.bytes -= replaced.size;
+            }
+            this.bytes += entry.size;
+
+            int result = 0;
+            final Iterator<Entry> leastRecentlyUsed = this.entries.values().iterator();
+            while (this.bytes > this.maxBytes) {
+                this.bytes -= leastRecentlyUsed.next().size;
+                leastRecentlyUsed.remove();
+                result++;
+            }
+            return result;
+        }
+
+        private synchronized void evictIf(Predicate<Key> predicate) {
+            final Iterator<Map.Entry<Key, Entry>> iterator = this.entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                final Map.Entry<Key, Entry> entry = iterator.next();
+                if (predicate.test(entry.getKey())) {
+                    this.bytes -= entry.getValue().size;
+                    iterator.remove();
+                }
+            }
+        }
+
+        private synchronized long getBytes() {
+            return bytes;
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    private static final class Key {
+
+        private final int packageId;
+        // blank for USD
+        private final String currency;
+        private final MediaType contentType;
+
+        private Key(int packageId, String currency, MediaType contentType) {
+            this.packageId = packageId;
+            this.currency = StringUtils.hasText(currency) ? currency : "";
+            this.contentType = contentType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key that = (Key) o;
+
+            return packageId == that.packageId && currency.equals(that.currency) && contentType.equals(that.contentType);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(packageId, currency, contentType);
+        }
+    }
+
+    private static final class Entry {
+
+        private final String tag;
+        private final byte[] body;
+        private final long size;
+
+        private Entry(String tag, byte[] body) {
+            this.tag = tag;
+            this.body = body;
+            this.size = body.length + tag.length() + ENTRY_OVERHEAD_BYTES;
+        }
+    }
+}
@@ -1,48 +1,123 @@
 package com.kerby.example.api.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.kerby.example.api.cache.PackageResponseCache;
 import com.kerby.example.api.exceptions.ApiException;
 import com.kerby.example.api.mapping.CurrencyDtoMapper;
 import com.kerby.example.api.models.requests.PackageRequest;
+import com.kerby.example.api.models.requests.PackagesRequest;
 import com.kerby.example.api.models.responses.CurrenciesResponse;
 import com.kerby.example.api.mapping.PackageDtoMapper;
 import com.kerby.example.api.mapping.ProductDtoMapper;
 import com.kerby.example.api.models.dtos.CurrencyDto;
 import com.kerby.example.api.models.dtos.PackageDto;
 import com.kerby.example.api.models.responses.PackageResponse;
+import com.kerby.example.api.models.responses.PackageSearchResponse;
+import com.kerby.example.api.models.responses.PackagesCreatedResponse;
+import com.kerby.example.api.models.responses.PackagesLookupResponse;
 import com.kerby.example.api.models.responses.PackagesResponse;
+import com.kerby.example.common.logging.PayloadLogging;
+import com.kerby.example.common.money.Money;
+import com.kerby.example.packages.exceptions.PackageIndexNotBuiltException;
+import com.kerby.example.packages.exceptions.PackageModifiedException;
 import com.kerby.example.packages.exceptions.PackageNotFoundException;
 import com.kerby.example.packages.exceptions.PackageServiceException;
 import com.kerby.example.packages.models.Currency;
 import com.kerby.example.packages.models.Product;
 import com.kerby.example.packages.models.Package;
+import com.kerby.example.packages.models.PackageCreateResult;
+import com.kerby.example.packages.models.PackageField;
+import com.kerby.example.packages.models.PackageLookupResult;
+import com.kerby.example.packages.models.PackagePage;
+import com.kerby.example.packages.models.PackagePriceQuery;
+import com.kerby.example.packages.models.PackageRevision;
+import com.kerby.example.packages.service.AsyncPackageService;
 import com.kerby.example.packages.service.PackageService;
 import io.swagger.annotations.ApiOperation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.http.server.ServletServerHttpRequest;
 import org.springframework.util.Assert;
 import org.springframework.web.bind.annotation.*;
-
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
  * REST API for CRUD access to Packages, and Currency codes
  * Swagger documentation available at at /swagger-ui.html
+ *
+ * Reads of packages are asynchronous, the servlet thread is released while the database and Fixer API are waited on.
+ *
+ * Every endpoint besides the export reads and writes Smile and CBOR as well as JSON, chosen by Accept and Content-Type.
+ * They carry the same documents as JSON in fewer bytes, see MessageConverterConfig.
  */
 @RestController
 @RequestMapping(value = "/packages-api")
 public class PackagesController {
 
+    private static final String DEFAULT_PAGE_SIZE = "100";
+    private static final String DEFAULT_SEARCH_PAGE_SIZE = "20";
+    private static final int MAX_QUERY_LENGTH = 200;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_BATCH_SIZE = 10000;
+    private static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+    private static final String SMILE_MEDIA_TYPE = "application/x-jackson-smile";
+    private static final String CBOR_MEDIA_TYPE = "application/cbor";
+    private static final String SORT_ID = "id";
+    private static final String SORT_PRICE = "price";
+    private static final String SORT_PRICE_DESCENDING = "-price";
+    private static final String FIELDS_NOTE = "Pass fields, e.g. fields=id,name,price, to leave out products, which are then neither loaded nor returned. " +
+            "The other fields are read with the package so are always returned.";
+
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final Logger payloadLogger = LoggerFactory.getLogger(PayloadLogging.LOGGER_NAME);
 
     private PackageService packageService;
-
-    public PackagesController(@Autowired PackageService packageService) {
+    private AsyncPackageService asyncPackageService;
+    private PackageResponseCache packageResponseCache;
+    // buffers output rather than flushing after every package written
+    private ObjectWriter ndjsonWriter;
+    // by the content type they write, JSON first so it is chosen when any will do
+    private Map<MediaType, ObjectWriter> packageResponseWriters = new LinkedHashMap<>();
+
+    public PackagesController(@Autowired PackageService packageService, @Autowired AsyncPackageService asyncPackageService,
+                              @Autowired ObjectMapper objectMapper, @Autowired PackageResponseCache packageResponseCache,
+                              @Autowired MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter,
+                              @Autowired MappingJackson2CborHttpMessageConverter cborHttpMessageConverter) {
         this.packageService = packageService;
+        this.asyncPackageService = asyncPackageService;
+        this.packageResponseCache = packageResponseCache;
+        this.ndjsonWriter = objectMapper.writerFor(PackageDto.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.packageResponseWriters.put(MediaType.APPLICATION_JSON_UTF8, objectMapper.writerFor(PackageResponse.class));
+        this.packageResponseWriters.put(MediaType.valueOf(SMILE_MEDIA_TYPE), smileHttpMessageConverter.getObjectMapper().writerFor(PackageResponse.class));
+        this.packageResponseWriters.put(MediaType.valueOf(CBOR_MEDIA_TYPE), cborHttpMessageConverter.getObjectMapper().writerFor(PackageResponse.class));
     }
 
 
@@ -51,7 +126,7 @@ public class PackagesController {
                     "These contains both currency codes and human readable labels.")
     @RequestMapping(value = "/currency",
             method = RequestMethod.GET,
-            produces = "application/json")
+            produces = {MediaType.APPLICATION_JSON_VALUE, SMILE_MEDIA_TYPE, CBOR_MEDIA_TYPE})
     public ResponseEntity<CurrenciesResponse> getCurrencyCodes() throws ApiException {
         final ResponseEntity<CurrenciesResponse> result;
 
@@ -75,8 +150,8 @@ public class PackagesController {
     @ApiOperation(value = "Create package")
     @RequestMapping(value = "/package",
             method = RequestMethod.POST,
-            produces = "application/json",
-            consumes = "application/json")
+            produces = {MediaType.APPLICATION_JSON_VALUE, SMILE_MEDIA_TYPE, CBOR_MEDIA_TYPE},
+            consumes = {MediaType.APPLICATION_JSON_VALUE, SMILE_MEDIA_TYPE, CBOR_MEDIA_TYPE})
     public ResponseEntity<Integer> createPackage(@RequestBody() final PackageRequest packageRequest) throws ApiException {
         Assert.notNull(packageRequest, "Request body is required to create package");
         Assert.notNull(packageRequest.getPackageDto(), "Packages in request body are required to create package");
@@ -95,84 +170,583 @@ public class PackagesController {
 
             // wrap and throw any exceptions to hide internal messages from checked and unchecked exceptions
         } catch (PackageServiceException e) {
-            this.logger.error(String.format("Something went wrong while creating new package in create package API endpoint. Request body: [%s]", packageRequest));
+            this.logger.error("Something went wrong while creating new package in create package API endpoint. Package name: [{}]", packageRequest.getPackageDto().getName());
+            this.payloadLogger.debug("Failed to create package. Request body: [{}]", packageRequest);
             throw new ApiException("There was a problem creating a new package", e);
+        } catch (IllegalArgumentException e) {
+            // invalid products, e.g. the same product given with different prices
+            throw e;
         } catch (Exception e) {
-            this.logger.error(String.format("Something went wrong in create package API endpoint. Request body: [%s]", packageRequest));
+            this.logger.error("Something went wrong in create package API endpoint. Package name: [{}]", packageRequest.getPackageDto().getName());
+            this.payloadLogger.debug("Failed to create package. Request body: [{}]", packageRequest);
             throw new ApiException("There was a problem handling your request to create a package", e);
         }
 
         return result;
     }
 
-    @ApiOperation(value = "Get packages")
-    @RequestMapping(value = "/package",
-            produces = MediaType.APPLICATION_JSON_VALUE,
-            method = RequestMethod.GET)
-    public ResponseEntity<PackagesResponse> getPackages(@RequestParam(value = "currency", required = false) final String currency) throws ApiException {
-        final ResponseEntity<PackagesResponse> result;
+    @ApiOperation(value = "Create packages",
+            notes = "Creates up to " + MAX_BATCH_SIZE + " packages at once. Every package is validated first, invalid packages are skipped and the rest created together. " +
+                    "There is a result for each package in request order, with the id of the package created or why it wasn't. " +
+                    "Returns 201 if every package was created, otherwise 207.")
+    @RequestMapping(value = "/package/bulk",
+            method = RequestMethod.POST,
+            produces = {MediaType.APPLICATION_JSON_VALUE, SMILE_MEDIA_TYPE, CBOR_MEDIA_TYPE},
+            consumes = {MediaType.APPLICATION_JSON_VALUE, SMILE_MEDIA_TYPE, CBOR_MEDIA_TYPE})
+    public ResponseEntity<PackagesCreatedResponse> createPackages(@RequestBody() final PackagesRequest packagesRequest) throws ApiException {
+        Assert.notNull(packagesRequest, "Request body is required to create packages");
+        Assert.notEmpty(packagesRequest.getPackageDtos(), "Packages in request body are required to create packages");
+        Assert.isTrue(packagesRequest.getPackageDtos().size() <= MAX_BATCH_SIZE, String.format("At most %d packages can be created at once", MAX_BATCH_SIZE));
+        final ResponseEntity<PackagesCreatedResponse> result;
 
         try {
-            // get packages
-            final List<Package> packages = this.packageService.getPackages(currency);
-            if (packages != null && !packages.isEmpty()) {
-                final List<PackageDto> packageDtos = packages
-                        .stream()
-                        .map(PackageDtoMapper.INSTANCE::packageToDto)
-                        .collect(Collectors.toList());
-                // return 200 with packages
-                result = new ResponseEntity<>(new PackagesResponse(packageDtos), HttpStatus.OK);
-            } else {
-                // no packages - return empty 200
-                result = new ResponseEntity<>(HttpStatus.OK);
+            final List<PackageDto> packageDtos = packagesRequest.getPackageDtos();
+            final List<PackageCreateResult> createResults = new ArrayList<>(packageDtos.size());
+            final List<Package> packages = new ArrayList<>(packageDtos.size());
+            // indexes of the packages mapped, the rest already have a result
+            final List<Integer> mappedIndexes = new ArrayList<>(packageDtos.size());
+            for (int i = 0; i < packageDtos.size(); i++) {
+                try {
+                    packages.add(PackageDtoMapper.INSTANCE.dtoToPackage(packageDtos.get(i)));
+                    mappedIndexes.add(i);
+                    createResults.add(null);
+                } catch (IllegalArgumentException e) {
+                    // e.g. a product without a price, the package is skipped like any other invalid package
+                    createResults.add(PackageCreateResult.invalid(e.getMessage()));
+                }
+            }
+            // create packages
+            if (!packages.isEmpty()) {
+                final List<PackageCreateResult> mappedResults = this.packageService.createPackages(packages);
+                for (int i = 0; i < mappedResults.size(); i++) {
+                    createResults.set(mappedIndexes.get(i), mappedResults.get(i));
+                }
             }
 
+            // return 201 if all were created, or 207 as some weren't
+            result = new ResponseEntity<>(
+                    new PackagesCreatedResponse(createResults.stream()
+                            .map(PackageDtoMapper.INSTANCE::createResultToDto)
+                            .collect(Collectors.toList())),
+                    createResults.stream().allMatch(PackageCreateResult::isCreated) ? HttpStatus.CREATED : HttpStatus.MULTI_STATUS);
+
             // wrap and throw any exceptions to hide internal messages from checked and unchecked exceptions
         } catch (PackageServiceException e) {
-            this.logger.error(String.format("Something went wrong looking up packages in read packages API endpoint. Currency param: [%s]", currency));
-            throw new ApiException("There was a problem looking up packages", e);
+            this.logger.error("Something went wrong while creating new packages in create packages API endpoint. Packages: [{}]", packagesRequest.getPackageDtos().size());
+            throw new ApiException("There was a problem creating new packages", e);
         } catch (Exception e) {
-            this.logger.error(String.format("Something went wrong in read packages API endpoint. Currency param: [%s]", currency));
-            throw new ApiException("There was a problem handling your request to read packages", e);
+            this.logger.error("Something went wrong in create packages API endpoint. Packages: [{}]", packagesRequest.getPackageDtos().size());
+            throw new ApiException("There was a problem handling your request to create packages", e);
         }
 
         return result;
     }
 
-    @ApiOperation(value = "Get package")
-    @RequestMapping(value = "/package/{id}", method = RequestMethod.GET)
-    public ResponseEntity<PackageResponse> readPackage(@PathVariable("id") final int id,
-                                                       @RequestParam(value = "currency", required = false) final String currency) throws ApiException, PackageNotFoundException {
-        Assert.isTrue(id > 0, "id is required to lookup package");
-        final ResponseEntity<PackageResponse> result;
+    @ApiOperation(value = "Get packages",
+            notes = "Packages are returned a page at a time in id order, or by price with sort price (cheapest first) or -price (dearest first). " +
+                    "Pass minPrice and/or maxPrice, in the currency, to only get packages priced within them, ordered by price. " +
+                    "Pages by price return 503 while packages are still being indexed after the service starts. " +
+                    FIELDS_NOTE +
+                    "Pass the nextCursor of a page as the cursor param to get the page after it, there are no more pages when it is omitted. " +
+                    "Pages have an ETag, send it back as If-None-Match to get a 304 if the page is unchanged. " +
+                    "They have no Last-Modified, as deleting a package changes a page without changing when the packages in it were modified.")
+    @RequestMapping(value = "/package",
+            produces = {MediaType.APPLICATION_JSON_VALUE, SMILE_MEDIA_TYPE, CBOR_MEDIA_TYPE},
+            method = RequestMethod.GET)
+    public DeferredResult<ResponseEntity<PackagesResponse>> getPackages(@RequestParam(value = "currency", required = false) final String currency,
+                                                                        @RequestParam(value = "cursor", required = false) final String cursor,
+                                                                        @RequestParam(value = "limit", defaultValue = DEFAULT_PAGE_SIZE) final int limit,
+                                                                        @RequestParam(value = "sort", required = false) final String sort,
+                                                                        @RequestParam(value = "minPrice", required = false) final BigDecimal minPrice,
+                                                                        @RequestParam(value = "maxPrice", required = false) final BigDecimal maxPrice,
+                                                                        @RequestParam(value = "fields", required = false) final String fields,
+                                                                        final HttpServletRequest request) {
+        Assert.isTrue(limit > 0 && limit <= MAX_PAGE_SIZE, String.format("limit must be between 1 and %d", MAX_PAGE_SIZE));
+        final PackagePriceQuery priceQuery = toPriceQuery(sort, minPrice, maxPrice);
+        final Set<PackageField> packageFields = toPackageFields(fields);
+        // read now, the request can't be used from the threads completing the response
+        final HttpHeaders requestHeaders = new ServletServerHttpRequest(request).getHeaders();
+        // chosen here rather than by the message converter, as the ETag depends on it
+        final MediaType contentType = toPackageResponseContentType(requestHeaders);
+        final DeferredResult<ResponseEntity<PackagesResponse>> result = new DeferredResult<>();
+
+        // in id order, or by price from the price index
+        final CompletableFuture<PackageRevision> revisionFuture = priceQuery != null
+                ? this.asyncPackageService.getPackagesByPriceRevision(currency, priceQuery, cursor, limit)
+                : this.asyncPackageService.getPackagesRevision(currency, cursor, limit);
+        final Supplier<CompletableFuture<PackagePage>> pageFuture;
+        if (priceQuery != null) {
+            pageFuture = () -> this.asyncPackageService.getPackagesByPrice(currency, priceQuery, cursor, limit, packageFields);
+        } else if (PackageField.withProducts(packageFields)) {
+            pageFuture = () -> this.asyncPackageService.getPackages(currency, cursor, limit);
+        } else {
+            // without products only the package table is read, for the same page in id order
+            pageFuture = () -> this.asyncPackageService.getPackageSummaries(currency, cursor, limit);
+        }
 
+        // the page is only loaded if the client doesn't already have it, ETag and Last-Modified are set either way
+        revisionFuture
+                .thenCompose(revision -> {
+                    if (isNotModified(requestHeaders, revision, contentType)) {
+                        // return 304 without a body
+                        return CompletableFuture.completedFuture(withRevision(ResponseEntity.status(HttpStatus.NOT_MODIFIED), revision, contentType).<PackagesResponse>build());
+                    }
+                    // get a page of packages
+                    return pageFuture.get().thenApply(page -> {
+                        final ResponseEntity<PackagesResponse> response;
+                        if (page != null && !page.getPackages().isEmpty()) {
+                            final List<PackageDto> packageDtos = page.getPackages()
+                                    .stream()
+                                    .map(PackageDtoMapper.INSTANCE::packageToDto)
+                                    .collect(Collectors.toList());
+                            // return 200 with packages
+                            response = withRevision(ResponseEntity.ok(), revision, contentType).contentType(contentType)
+                                    .body(new PackagesResponse(packageDtos, page.getNextCursor()));
+                        } else {
+                            // no packages - return empty 200
+                            response = withRevision(ResponseEntity.ok(), revision, contentType).build();
+                        }
+                        return response;
+                    });
+                })
+                .whenComplete((response, failure) -> {
+                    if (failure == null) {
+                        result.setResult(response);
+                    } else {
+                        result.setErrorResult(toReadPackagesException(currency, cursor, failure));
+                    }
+                });
+
+        return result;
+    }
+
+    /**
+     * @param fields - names of package fields separated by commas, or null for every field
+     * @return the fields, or null for every field
+     * @throws IllegalArgumentException if any isn't a package field
+     */
+    private static Set<PackageField> toPackageFields(final String fields) {
+        if (fields == null) {
+            return null;
+        }
+        final Set<PackageField> result = EnumSet.noneOf(PackageField.class);
+        for (String field : fields.split(",", -1)) {
+            result.add(PackageField.fromString(field.trim()));
+        }
+
+        return result;
+    }
+
+    /**
+     * @return price range in cents and order, or null for packages in id order
+     * @throws IllegalArgumentException if the sort is unknown, a price range is given with packages in id order,
+     *  or a price doesn't fit in a long of cents
+     */
+    private static PackagePriceQuery toPriceQuery(final String sort, final BigDecimal minPrice, final BigDecimal maxPrice) {
+        final boolean bounded = minPrice != null || maxPrice != null;
+        if (sort == null ? !bounded : SORT_ID.equals(sort)) {
+            Assert.isTrue(!bounded, "minPrice and maxPrice can only be used with packages sorted by price");
+            return null;
+        }
+        Assert.isTrue(sort == null || SORT_PRICE.equals(sort) || SORT_PRICE_DESCENDING.equals(sort),
+                String.format("sort must be one of: %s, %s, %s", SORT_ID, SORT_PRICE, SORT_PRICE_DESCENDING));
+
+        return new PackagePriceQuery(
+                minPrice != null ? toCents("minPrice", minPrice) : null,
+                maxPrice != null ? toCents("maxPrice", maxPrice) : null,
+                SORT_PRICE_DESCENDING.equals(sort));
+    }
+
+    private static long toCents(final String param, final BigDecimal price) {
         try {
-            // get package
-            final Package aPackage = this.packageService.getPackage(currency, id);
-            final PackageResponse packageResponse = new PackageResponse(PackageDtoMapper.INSTANCE.packageToDto(aPackage));
-            // return 200 with package
-            result = new ResponseEntity<>(packageResponse, HttpStatus.OK);
+            return Money.toCents(price);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(String.format("%s: [%s] is out of range", param, price), e);
+        }
+    }
+
+    /**
+     * Wraps exceptions to hide internal messages from checked and unchecked exceptions
+     */
+    private Exception toReadPackagesException(final String currency, final String cursor, final Throwable failure) {
+        final Throwable cause = unwrap(failure);
+        final Exception result;
+
+        if (cause instanceof IllegalArgumentException || cause instanceof RejectedExecutionException || cause instanceof PackageIndexNotBuiltException) {
+            // invalid currency or cursor, too busy, or not indexed by price yet
+            result = (Exception) cause;
+        } else if (cause instanceof PackageServiceException) {
+            this.logger.error("Something went wrong looking up packages in read packages API endpoint. Currency param: [{}] Cursor param: [{}]", currency, cursor);
+            result = new ApiException("There was a problem looking up packages", cause);
+        } else {
+            this.logger.error("Something went wrong in read packages API endpoint. Currency param: [{}] Cursor param: [{}]", currency, cursor);
+            result = new ApiException("There was a problem handling your request to read packages", cause);
+        }
+
+        return result;
+    }
+
+    @ApiOperation(value = "Get packages by id",
+            notes = "Looks up to " + MAX_PAGE_SIZE + " packages at once, given as ids separated by commas, e.g. ids=1,2,3. " +
+                    "There is a result for each id in request order, with the package or why it wasn't returned. " +
+                    "Every price is converted with the same exchange rates. Returns 200 if every package was found, otherwise 207. " +
+                    FIELDS_NOTE)
+    @RequestMapping(value = "/package",
+            params = "ids",
+            produces = {MediaType.APPLICATION_JSON_VALUE, SMILE_MEDIA_TYPE, CBOR_MEDIA_TYPE},
+            method = RequestMethod.GET)
+    public DeferredResult<ResponseEntity<PackagesLookupResponse>> getPackagesById(@RequestParam(value = "ids") final String ids,
+                                                                                  @RequestParam(value = "currency", required = false) final String currency,
+                                                                                  @RequestParam(value = "fields", required = false) final String fields) {
+        final List<Integer> packageIds = toPackageIds(ids);
+        final Set<PackageField> packageFields = toPackageFields(fields);
+        Assert.isTrue(packageIds.size() <= MAX_PAGE_SIZE, String.format("At most %d packages can be looked up at once", MAX_PAGE_SIZE));
+        final DeferredResult<ResponseEntity<PackagesLookupResponse>> result = new DeferredResult<>();
+
+        // get packages, those not found are reported in place
+        this.asyncPackageService.getPackagesById(currency, packageIds, packageFields)
+                .thenApply(lookupResults -> new ResponseEntity<>(
+                        // return 200 if all were found, or 207 as some weren't
+                        new PackagesLookupResponse(lookupResults.stream()
+                                .map(PackageDtoMapper.INSTANCE::lookupResultToDto)
+                                .collect(Collectors.toList())),
+                        lookupResults.stream().allMatch(PackageLookupResult::isFound) ? HttpStatus.OK : HttpStatus.MULTI_STATUS))
+                .whenComplete((response, failure) -> {
+                    if (failure == null) {
+                        result.setResult(response);
+                    } else {
+                        result.setErrorResult(toReadPackagesException(currency, null, failure));
+                    }
+                });
+
+        return result;
+    }
+
+    /**
+     * @param ids - package ids separated by commas
+     * @throws IllegalArgumentException if any isn't a package id
+     */
+    private static List<Integer> toPackageIds(final String ids) {
+        final List<Integer> result = new ArrayList<>();
+        for (String id : ids.split(",", -1)) {
+            int packageId = 0;
+            try {
+                packageId = Integer.parseInt(id.trim());
+            } catch (NumberFormatException e) {
+                // left 0, so reported as not a package id
+            }
+            Assert.isTrue(packageId > 0, String.format("ids must be package ids separated by commas, [%s] is not one", id));
+            result.add(packageId);
+        }
+
+        return result;
+    }
+
+    @ApiOperation(value = "Search packages",
+            notes = "Finds packages by keywords in their name, description or product names. Each word of the query matches whole words " +
+                    "or the start of them, e.g. cam matches camera, and a package must match every word. " +
+                    "Packages are ranked best match first, matches in the name ranking above products then the description. " +
+                    "Pass offset to get the packages after the first page, total is the number matching in every page. " +
+                    "Returns 503 while packages are still being indexed after the service starts. " +
+                    FIELDS_NOTE)
+    @RequestMapping(value = "/package/search",
+            produces = {MediaType.APPLICATION_JSON_VALUE, SMILE_MEDIA_TYPE, CBOR_MEDIA_TYPE},
+            method = RequestMethod.GET)
+    public DeferredResult<ResponseEntity<PackageSearchResponse>> searchPackages(@RequestParam(value = "q") final String query,
+                                                                                @RequestParam(value = "currency", required = false) final String currency,
+                                                                                @RequestParam(value = "offset", defaultValue = "0") final int offset,
+                                                                                @RequestParam(value = "limit", defaultValue = DEFAULT_SEARCH_PAGE_SIZE) final int limit,
+                                                                                @RequestParam(value = "fields", required = false) final String fields) {
+        Assert.isTrue(query.length() <= MAX_QUERY_LENGTH, String.format("q must be at most %d characters", MAX_QUERY_LENGTH));
+        Assert.isTrue(offset >= 0, "offset must not be negative");
+        Assert.isTrue(limit > 0 && limit <= MAX_PAGE_SIZE, String.format("limit must be between 1 and %d", MAX_PAGE_SIZE));
+        final Set<PackageField> packageFields = toPackageFields(fields);
+        final DeferredResult<ResponseEntity<PackageSearchResponse>> result = new DeferredResult<>();
+
+        // search packages, always 200 with the total even if none match
+        this.asyncPackageService.searchPackages(currency, query, offset, limit, packageFields)
+                .thenApply(searchResult -> ResponseEntity.ok(new PackageSearchResponse(
+                        searchResult.getPackages()
+                                .stream()
+                                .map(PackageDtoMapper.INSTANCE::packageToDto)
+                                .collect(Collectors.toList()),
+                        searchResult.getTotal())))
+                .whenComplete((response, failure) -> {
+                    if (failure == null) {
+                        result.setResult(response);
+                    } else {
+                        result.setErrorResult(toSearchPackagesException(query, currency, failure));
+                    }
+                });
+
+        return result;
+    }
+
+    /**
+     * Wraps exceptions to hide internal messages from checked and unchecked exceptions
+     */
+    private Exception toSearchPackagesException(final String query, final String currency, final Throwable failure) {
+        final Throwable cause = unwrap(failure);
+        final Exception result;
+
+        if (cause instanceof IllegalArgumentException || cause instanceof RejectedExecutionException || cause instanceof PackageIndexNotBuiltException) {
+            // invalid query or currency, too busy, or not indexed yet
+            result = (Exception) cause;
+        } else if (cause instanceof PackageServiceException) {
+            this.logger.error("Something went wrong searching packages in search packages API endpoint. Query param: [{}] Currency param: [{}]", query, currency);
+            result = new ApiException("There was a problem searching packages", cause);
+        } else {
+            this.logger.error("Something went wrong in search packages API endpoint. Query param: [{}] Currency param: [{}]", query, currency);
+            result = new ApiException("There was a problem handling your request to search packages", cause);
+        }
+
+        return result;
+    }
+
+    @ApiOperation(value = "Export packages",
+            notes = "Streams every package as newline delimited JSON (" + NDJSON_MEDIA_TYPE + "), one package per line in id order. " +
+                    "Packages are written as they are read so this suits consumers that need the whole catalogue.")
+    @RequestMapping(value = "/package/export",
+            method = RequestMethod.GET)
+    public void exportPackages(@RequestParam(value = "currency", required = false) final String currency,
+                               final HttpServletResponse response) throws ApiException {
+        // content type is set here rather than through produces so error responses can still be written as JSON
+        response.setContentType(NDJSON_MEDIA_TYPE);
+
+        try (JsonGenerator generator = this.ndjsonWriter.getFactory().createGenerator(response.getOutputStream())) {
+            // leave the response stream to the servlet container
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // packages are separated by new lines only
+            generator.setRootValueSeparator(null);
+            // export packages
+            this.packageService.exportPackages(currency, aPackage -> {
+                try {
+                    this.ndjsonWriter.writeValue(generator, PackageDtoMapper.INSTANCE.packageToDto(aPackage));
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.flush();
 
             // wrap and throw any exceptions to hide internal messages from checked and unchecked exceptions
-        } catch (PackageNotFoundException e) {
-            throw new PackageNotFoundException(String.format("No package found with id [%d]", id), e);
         } catch (PackageServiceException e) {
-            this.logger.error(String.format("Something went wrong looking up package in read package API endpoint. Id param: [%d], Currency param: [%s]", id, currency));
-            throw new ApiException(String.format("There was a problem looking up package with id [%d]", id), e);
+            this.logger.error("Something went wrong exporting packages in export packages API endpoint. Currency param: [{}]", currency);
+            throw new ApiException("There was a problem exporting packages", e);
+        } catch (IllegalArgumentException e) {
+            // invalid currency
+            throw e;
         } catch (Exception e) {
-            this.logger.error(String.format("Something went wrong in read package API endpoint. Id param: [%d], Currency param: [%s]", id, currency));
-            throw new ApiException(String.format("There was a problem handling your request to read package [%d]", id), e);
+            this.logger.error("Something went wrong in export packages API endpoint. Currency param: [{}]", currency);
+            throw new ApiException("There was a problem handling your request to export packages", e);
+        }
+    }
+
+    @ApiOperation(value = "Get package",
+            notes = "Packages have an ETag and Last-Modified, send them back as If-None-Match or If-Modified-Since to get a 304 if the package is unchanged.",
+            response = PackageResponse.class)
+    @RequestMapping(value = "/package/{id}",
+            produces = {MediaType.APPLICATION_JSON_VALUE, SMILE_MEDIA_TYPE, CBOR_MEDIA_TYPE},
+            method = RequestMethod.GET)
+    public DeferredResult<ResponseEntity<byte[]>> readPackage(@PathVariable("id") final int id,
+                                                              @RequestParam(value = "currency", required = false) final String currency,
+                                                              final HttpServletRequest request) {
+        Assert.isTrue(id > 0, "id is required to lookup package");
+        // read now, the request can't be used from the threads completing the response
+        final HttpHeaders requestHeaders = new ServletServerHttpRequest(request).getHeaders();
+        // the body is written here rather than by a message converter, so the format is chosen here too
+        final MediaType contentType = toPackageResponseContentType(requestHeaders);
+        final DeferredResult<ResponseEntity<byte[]>> result = new DeferredResult<>();
+
+        // the package is only loaded if the client doesn't already have it, ETag and Last-Modified are set either way
+        this.asyncPackageService.getPackageRevision(currency, id)
+                .thenCompose(revision -> {
+                    if (isNotModified(requestHeaders, revision, contentType)) {
+                        // return 304 without a body
+                        return CompletableFuture.completedFuture(withRevision(ResponseEntity.status(HttpStatus.NOT_MODIFIED), revision, contentType).<byte[]>build());
+                    }
+                    // responses are cached already serialized, for as long as the revision is current
+                    final byte[] cachedResponse = this.packageResponseCache.get(id, currency, contentType, revision.getTag());
+                    if (cachedResponse != null) {
+                        return CompletableFuture.completedFuture(toPackageResponse(cachedResponse, contentType, revision));
+                    }
+                    // get package
+                    return this.asyncPackageService.getPackage(currency, id).thenApply(aPackage -> {
+                        final byte[] packageResponse;
+                        try {
+                            packageResponse = this.packageResponseWriters.get(contentType).writeValueAsBytes(
+                                    new PackageResponse(PackageDtoMapper.INSTANCE.packageToDto(aPackage)));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        this.packageResponseCache.put(id, currency, contentType, revision.getTag(), packageResponse);
+                        return toPackageResponse(packageResponse, contentType, revision);
+                    });
+                })
+                .whenComplete((response, failure) -> {
+                    if (failure == null) {
+                        result.setResult(response);
+                    } else {
+                        result.setErrorResult(toReadPackageException(id, currency, failure));
+                    }
+                });
+
+        return result;
+    }
+
+    private static ResponseEntity<byte[]> toPackageResponse(final byte[] packageResponse, final MediaType contentType, final PackageRevision revision) {
+        // return 200 with package
+        return withRevision(ResponseEntity.ok(), revision, contentType).contentType(contentType).body(packageResponse);
+    }
+
+    /**
+     * Each format takes the quality of the most specific accepted type including it, so application/json;q=0 rules
+     * out JSON even when any type is accepted as well.
+     * @return the type of the format most preferred by Accept, going by quality then specificity, JSON if any will do.
+     * JSON too if none is acceptable, as the request was only mapped here if one of them is accepted.
+     */
+    private MediaType toPackageResponseContentType(final HttpHeaders requestHeaders) {
+        final List<MediaType> acceptedTypes = new ArrayList<>(requestHeaders.getAccept());
+        if (acceptedTypes.isEmpty()) {
+            return MediaType.APPLICATION_JSON_UTF8;
+        }
+        MediaType.sortBySpecificityAndQuality(acceptedTypes);
+
+        MediaType result = null;
+        double resultQuality = 0;
+        int resultMatch = Integer.MAX_VALUE;
+        for (MediaType contentType : this.packageResponseWriters.keySet()) {
+            for (int i = 0; i < acceptedTypes.size(); i++) {
+                final MediaType acceptedType = acceptedTypes.get(i);
+                if (acceptedType.includes(contentType)) {
+                    // a better quality, or the same from a more specific type
+                    final double quality = acceptedType.getQualityValue();
+                    if (quality > resultQuality || (quality == resultQuality && quality > 0 && i < resultMatch)) {
+                        result = contentType;
+                        resultQuality = quality;
+                        resultMatch = i;
+                    }
+                    break;
+                }
+            }
+        }
+
+        return result != null ? result : MediaType.APPLICATION_JSON_UTF8;
+    }
+
+    /**
+     * Wraps exceptions to hide internal messages from checked and unchecked exceptions
+     */
+    private Exception toReadPackageException(final int id, final String currency, final Throwable failure) {
+        final Throwable cause = unwrap(failure);
+        final Exception result;
+
+        if (cause instanceof PackageNotFoundException) {
+            result = new PackageNotFoundException(String.format("No package found with id [%d]", id), cause);
+        } else if (cause instanceof IllegalArgumentException || cause instanceof RejectedExecutionException) {
+            // invalid currency, or too busy
+            result = (Exception) cause;
+        } else if (cause instanceof PackageServiceException) {
+            this.logger.error("Something went wrong looking up package in read package API endpoint. Id param: [{}], Currency param: [{}]", id, currency);
+            result = new ApiException(String.format("There was a problem looking up package with id [%d]", id), cause);
+        } else {
+            this.logger.error("Something went wrong in read package API endpoint. Id param: [{}], Currency param: [{}]", id, currency);
+            result = new ApiException(String.format("There was a problem handling your request to read package [%d]", id), cause);
         }
 
         return result;
     }
 
-    @ApiOperation(value = "Update package")
-    @RequestMapping(value = "/package/{id}", method = RequestMethod.PUT)
+    private static Throwable unwrap(final Throwable failure) {
+        return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+    }
+
+    /**
+     * Whether the client already has the revision in the format, going by If-None-Match or, without it,
+     * If-Modified-Since if the revision has a last modified time. Spring checks the response again before it is
+     * written, this only saves loading what the client already has.
+     */
+    private static boolean isNotModified(final HttpHeaders requestHeaders, final PackageRevision revision, final MediaType contentType) {
+        final boolean result;
+
+        final List<String> ifNoneMatch = requestHeaders.getIfNoneMatch();
+        if (!ifNoneMatch.isEmpty()) {
+            final String eTag = "\"" + toETag(revision, contentType) + "\"";
+            result = ifNoneMatch.stream().anyMatch(match -> match.equals(eTag) || match.equals("W/" + eTag) || match.equals("*"));
+        } else {
+            // header dates are to the second
+            final long ifModifiedSince = requestHeaders.getIfModifiedSince();
+            result = ifModifiedSince >= 0 && revision.getLastModified() > 0 && revision.getLastModified() / 1000 * 1000 <= ifModifiedSince;
+        }
+
+        return result;
+    }
+
+    private static <T extends ResponseEntity.HeadersBuilder<T>> T withRevision(final T builder, final PackageRevision revision, final MediaType contentType) {
+        // the body depends on Accept as well as the revision, so caches must keep a copy per format
+        builder.eTag(toETag(revision, contentType)).varyBy(HttpHeaders.ACCEPT);
+        if (revision.getLastModified() > 0) {
+            builder.lastModified(revision.getLastModified());
+        }
+        return builder;
+    }
+
+    /**
+     * @return tag of the revision in the format. Each format has its own strong ETag, as their bytes differ. JSON
+     * keeps the revision's tag, the others have their subtype added, e.g. -cbor
+     */
+    private static String toETag(final PackageRevision revision, final MediaType contentType) {
+        return MediaType.APPLICATION_JSON.isCompatibleWith(contentType)
+                ? revision.getTag()
+                : revision.getTag() + "-" + contentType.getSubtype();
+    }
+
+    /**
+     * @return revision tags the client's If-Match has, as PackageService has them, i.e. without a format's subtype.
+     * Null, to update any revision, if it has none or *. Weak tags are left out, as If-Match only matches strong ones
+     */
+    private Collection<String> toExpectedTags(final HttpHeaders requestHeaders) {
+        final List<String> ifMatch = requestHeaders.getIfMatch();
+        if (ifMatch.isEmpty() || ifMatch.contains("*")) {
+            return null;
+        }
+
+        final List<String> result = new ArrayList<>(ifMatch.size());
+        for (String match : ifMatch) {
+            if (match.length() > 1 && match.startsWith("\"") && match.endsWith("\"")) {
+                result.add(this.fromETag(match.substring(1, match.length() - 1)));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return revision tag of an ETag in any format, see toETag
+     */
+    private String fromETag(final String eTag) {
+        for (MediaType contentType : this.packageResponseWriters.keySet()) {
+            final String suffix = "-" + contentType.getSubtype();
+            if (!MediaType.APPLICATION_JSON.isCompatibleWith(contentType) && eTag.endsWith(suffix)) {
+                return eTag.substring(0, eTag.length() - suffix.length());
+            }
+        }
+
+        return eTag;
+    }
+
+    @ApiOperation(value = "Update package",
+            notes = "Pass If-Match with the ETag of the package, as read without a currency in any format, to only update it if it hasn't changed since. " +
+                    "Returns 412 if it has.")
+    @RequestMapping(value = "/package/{id}",
+            method = RequestMethod.PUT,
+            consumes = {MediaType.APPLICATION_JSON_VALUE, SMILE_MEDIA_TYPE, CBOR_MEDIA_TYPE})
     public ResponseEntity updatePackage(@PathVariable("id") final int id,
-                                                 @RequestBody() final PackageRequest packageRequest) throws ApiException, PackageNotFoundException {
+                                                 @RequestBody() final PackageRequest packageRequest,
+                                                 final HttpServletRequest request) throws ApiException, PackageNotFoundException, PackageModifiedException {
         Assert.isTrue(id > 0, "id is required to update package");
         Assert.notNull(packageRequest, "Request body is required to update package");
+        final Collection<String> expectedTags = this.toExpectedTags(new ServletServerHttpRequest(request).getHeaders());
         final ResponseEntity result;
 
         final PackageDto packageDto = packageRequest.getPackageDto();
@@ -180,15 +754,18 @@ public class PackagesController {
             // update package
             final boolean isUpdated = this.packageService.updatePackage(
                     id,
+                    expectedTags,
                     packageDto.getName(),
                     packageDto.getDescription(),
                     packageDto.getProductDtos().stream().map(ProductDtoMapper.INSTANCE::dtoToProduct).toArray(Product[]::new)
             );
             if (isUpdated) {
+                this.packageResponseCache.evict(id);
                 // return 200 if success
                 result = new ResponseEntity(HttpStatus.OK);
             } else {
-                this.logger.error(String.format("Update failed with payload %s", packageRequest));
+                this.logger.error("Update failed for package: [{}]", id);
+                this.payloadLogger.debug("Update failed with payload: [{}]", packageRequest);
                 throw new ApiException(String.format("There was a problem updating package [%s]", packageRequest));
             }
 
@@ -196,12 +773,14 @@ public class PackagesController {
         } catch (PackageNotFoundException e) {
             throw new PackageNotFoundException(String.format("No package found with id [%d]", id), e);
         } catch (PackageServiceException e) {
-            this.logger.error(String.format("Something went wrong updating package in update package API endpoint. Request body: [%s]", packageRequest));
+            this.logger.error("Something went wrong updating package in update package API endpoint. Id param: [{}]", id);
+            this.payloadLogger.debug("Failed to update package. Request body: [{}]", packageRequest);
             throw new ApiException(String.format("There was a problem updating package with id [%d]", id), e);
-        } catch (ApiException e) {
+        } catch (ApiException | IllegalArgumentException | PackageModifiedException e) {
             throw e;
         } catch (Exception e) {
-            this.logger.error(String.format("Something went wrong in update package API endpoint. Request body: [%s]", packageRequest));
+            this.logger.error("Something went wrong in update package API endpoint. Id param: [{}]", id);
+            this.payloadLogger.debug("Failed to update package. Request body: [{}]", packageRequest);
             throw new ApiException(String.format("There was a problem handling your request to update package [%s]", packageRequest.getPackageDto()), e);
         }
 
@@ -218,10 +797,11 @@ public class PackagesController {
             // delete package
             final boolean isDeleted = this.packageService.deletePackage(id);
             if (isDeleted) {
+                this.packageResponseCache.evict(id);
                 // return 200 on success
                 result = new ResponseEntity<>(true, HttpStatus.OK);
             } else {
-                this.logger.error(String.format("Failed to delete id %d", id));
+                this.logger.error("Failed to delete package: [{}]", id);
                 throw new ApiException(String.format("There was a problem deleting package [%s]", id));
             }
 
@@ -231,7 +811,7 @@ public class PackagesController {
         } catch (ApiException e) {
             throw e;
         } catch (Exception e) {
-            this.logger.error(String.format("Something went wrong in delete package API endpoint. Id: [%s]", id));
+            this.logger.error("Something went wrong in delete package API endpoint. Id: [{}]", id);
             throw new ApiException(String.format("There was a problem handling your request to delete package [%d]", id), e);
         }
 
@@ -1,20 +1,64 @@
 package com.kerby.example.api.mapping;
 
+import com.kerby.example.api.models.dtos.PackageCreateResultDto;
 import com.kerby.example.api.models.dtos.PackageDto;
+import com.kerby.example.api.models.dtos.PackageLookupResultDto;
+import com.kerby.example.common.money.Money;
 import com.kerby.example.packages.models.Package;
+import com.kerby.example.packages.models.PackageCreateResult;
+import com.kerby.example.packages.models.PackageLookupResult;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
+import org.mapstruct.Named;
 import org.mapstruct.factory.Mappers;
 
-@Mapper
+import java.math.BigDecimal;
+
+@Mapper(uses = ProductDtoMapper.class)
 public interface PackageDtoMapper {
 
     PackageDtoMapper INSTANCE = Mappers.getMapper(PackageDtoMapper.class);
 
     @Mapping(source = "products", target = "productDtos")
+    @Mapping(source = "price", target = "price", qualifiedByName = "centsToDecimal")
     PackageDto packageToDto(Package aPackage);
 
     @Mapping(source = "productDtos", target = "products")
+    @Mapping(source = "price", target = "price", qualifiedByName = "decimalToCents")
     Package dtoToPackage(PackageDto dto);
 
+    PackageCreateResultDto createResultToDto(PackageCreateResult result);
+
+    default PackageLookupResultDto lookupResultToDto(PackageLookupResult result) {
+        return new PackageLookupResultDto(result.getId(), result.isFound() ? packageToDto(result.getPackage()) : null, result.getError());
+    }
+
+    /**
+     * Package prices are held in cents but need presenting to clients in base 10 decimal format.
+     * Otherwise this can cause problems:
+     *  - Clients thinking a returned value of 99.99 is $99.99 when it is really $9.99 (09.99)
+     *  - Relying on clients to perform decimal shifting which may be performed in flawed currency types (float/double) and offering incorrect prices
+     * @param cents - amount to convert from cents to dollars
+     * @return correct decimal location for dollars
+     */
+    @Named("centsToDecimal")
+    default BigDecimal centsToDecimal(long cents) {
+        return Money.toDecimal(cents);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the price doesn't fit in a long of cents
+     */
+    @Named("decimalToCents")
+    default long decimalToCents(BigDecimal amount) {
+        if (amount == null) {
+            return 0;
+        }
+        try {
+            return Money.toCents(amount);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(String.format("price: [%s] is too large for a package", amount), e);
+        }
+    }
+
 }
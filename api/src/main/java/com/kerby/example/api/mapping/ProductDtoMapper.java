@@ -5,6 +5,9 @@ import com.kerby.example.packages.models.Product;
 import org.mapstruct.Mapper;
 import org.mapstruct.factory.Mappers;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
 @Mapper
 public interface ProductDtoMapper {
 
@@ -14,4 +17,23 @@ public interface ProductDtoMapper {
 
     Product dtoToProduct(ProductDto dto);
 
+    /**
+     * Product prices are given in cents, any fraction of a cent is rounded HALF_UP
+     * @throws IllegalArgumentException if the price is missing or doesn't fit in a long
+     */
+    default long centsToLong(BigDecimal cents) {
+        if (cents == null) {
+            throw new IllegalArgumentException("usdPrice is required for a product");
+        }
+        try {
+            return cents.setScale(0, RoundingMode.HALF_UP).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(String.format("usdPrice: [%s] is too large for a product", cents), e);
+        }
+    }
+
+    default BigDecimal longToCents(long cents) {
+        return BigDecimal.valueOf(cents);
+    }
+
 }
@@ -0,0 +1,46 @@
+package com.kerby.example.api.models.dtos;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+public class PackageCreateResultDto {
+
+    // id of the package created, omitted if it wasn't
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private int id;
+    // why the package wasn't created, omitted if it was
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String error;
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public PackageCreateResultDto() {
+    }
+
+    public PackageCreateResultDto(int id, String error) {
+        this.id = id;
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return "PackageCreateResultDto{" +
+                "id=" + id +
+                ", error='" + error + '\'' +
+                '}';
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.kerby.example.api.models.dtos;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import io.swagger.annotations.ApiModelProperty;
 
@@ -14,7 +15,9 @@ public class PackageDto {
     private String description;
     @ApiModelProperty(readOnly = true) // only reveal in response
     private BigDecimal price;
+    // omitted when products weren't asked for
     @JsonProperty("products")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     protected List<ProductDto> productDtos;
 
     public int getId() {
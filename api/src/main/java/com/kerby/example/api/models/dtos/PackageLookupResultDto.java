@@ -0,0 +1,60 @@
+package com.kerby.example.api.models.dtos;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class PackageLookupResultDto {
+
+    // id of the package requested
+    private int id;
+    // the package, omitted if it wasn't found
+    @JsonProperty("package")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private PackageDto packageDto;
+    // why the package wasn't returned, omitted if it was
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String error;
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public PackageDto getPackageDto() {
+        return packageDto;
+    }
+
+    public void setPackageDto(PackageDto packageDto) {
+        this.packageDto = packageDto;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public PackageLookupResultDto() {
+    }
+
+    public PackageLookupResultDto(int id, PackageDto packageDto, String error) {
+        this.id = id;
+        this.packageDto = packageDto;
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return "PackageLookupResultDto{" +
+                "id=" + id +
+                ", packageDto=" + packageDto +
+                ", error='" + error + '\'' +
+                '}';
+    }
+
+}
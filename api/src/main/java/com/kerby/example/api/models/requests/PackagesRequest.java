@@ -0,0 +1,35 @@
+package com.kerby.example.api.models.requests;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.kerby.example.api.models.dtos.PackageDto;
+
+import java.util.List;
+
+public class PackagesRequest {
+
+    @JsonProperty("packages")
+    private List<PackageDto> packageDtos;
+
+    public List<PackageDto> getPackageDtos() {
+        return packageDtos;
+    }
+
+    public void setPackageDtos(List<PackageDto> packageDtos) {
+        this.packageDtos = packageDtos;
+    }
+
+    public PackagesRequest() {
+    }
+
+    public PackagesRequest(List<PackageDto> packageDtos) {
+        this.packageDtos = packageDtos;
+    }
+
+    @Override
+    public String toString() {
+        return "PackagesRequest{" +
+                " packageDtos=" + packageDtos +
+                '}';
+    }
+
+}
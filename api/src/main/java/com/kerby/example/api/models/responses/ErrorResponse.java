@@ -7,9 +7,11 @@ public class ErrorResponse {
     // extra granularity of error on top of http status
     public enum ErrorCode {
         INTERNAL_ERROR (100),
+        SERVICE_UNAVAILABLE (101),
         INCORRECT_PARAMS (200),
         INVALID_JSON (201),
-        PACKAGE_NOT_FOUND (300);
+        PACKAGE_NOT_FOUND (300),
+        PACKAGE_MODIFIED (301);
 
         protected int code;
         ErrorCode(int code) {
@@ -0,0 +1,43 @@
+package com.kerby.example.api.models.responses;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.kerby.example.api.models.dtos.PackageDto;
+
+import java.util.List;
+
+public class PackageSearchResponse {
+
+    @JsonProperty("packages")
+    private List<PackageDto> packageDtos;
+    // number of packages matching, in every page
+    private int total;
+
+    public List<PackageDto> getPackageDtos() {
+        return packageDtos;
+    }
+
+    public void setPackageDtos(List<PackageDto> packageDtos) {
+        this.packageDtos = packageDtos;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    public PackageSearchResponse(List<PackageDto> packageDtos, int total) {
+        this.packageDtos = packageDtos;
+        this.total = total;
+    }
+
+    @Override
+    public String toString() {
+        return "PackageSearchResponse{" +
+                "packageDtos=" + packageDtos +
+                ", total=" + total +
+                '}';
+    }
+}
@@ -0,0 +1,32 @@
+package com.kerby.example.api.models.responses;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.kerby.example.api.models.dtos.PackageCreateResultDto;
+
+import java.util.List;
+
+public class PackagesCreatedResponse {
+
+    // one per package requested, in the same order
+    @JsonProperty("results")
+    private List<PackageCreateResultDto> resultDtos;
+
+    public List<PackageCreateResultDto> getResultDtos() {
+        return resultDtos;
+    }
+
+    public void setResultDtos(List<PackageCreateResultDto> resultDtos) {
+        this.resultDtos = resultDtos;
+    }
+
+    public PackagesCreatedResponse(List<PackageCreateResultDto> resultDtos) {
+        this.resultDtos = resultDtos;
+    }
+
+    @Override
+    public String toString() {
+        return "PackagesCreatedResponse{" +
+                "resultDtos=" + resultDtos +
+                '}';
+    }
+}
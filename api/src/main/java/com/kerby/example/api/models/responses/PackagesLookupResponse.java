@@ -0,0 +1,32 @@
+package com.kerby.example.api.models.responses;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.kerby.example.api.models.dtos.PackageLookupResultDto;
+
+import java.util.List;
+
+public class PackagesLookupResponse {
+
+    // one per package id requested, in the same order
+    @JsonProperty("results")
+    private List<PackageLookupResultDto> resultDtos;
+
+    public List<PackageLookupResultDto> getResultDtos() {
+        return resultDtos;
+    }
+
+    public void setResultDtos(List<PackageLookupResultDto> resultDtos) {
+        this.resultDtos = resultDtos;
+    }
+
+    public PackagesLookupResponse(List<PackageLookupResultDto> resultDtos) {
+        this.resultDtos = resultDtos;
+    }
+
+    @Override
+    public String toString() {
+        return "PackagesLookupResponse{" +
+                "resultDtos=" + resultDtos +
+                '}';
+    }
+}
@@ -1,5 +1,6 @@
 package com.kerby.example.api.models.responses;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.kerby.example.api.models.dtos.PackageDto;
 
@@ -9,6 +10,9 @@ public class PackagesResponse {
 
     @JsonProperty("packages")
     private List<PackageDto> packageDtos;
+    // cursor to request the next page with, omitted on the last page
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor;
 
     public List<PackageDto> getPackageDtos() {
         return packageDtos;
@@ -18,14 +22,28 @@ public class PackagesResponse {
         this.packageDtos = packageDtos;
     }
 
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
     public PackagesResponse(List<PackageDto> packageDtos) {
         this.packageDtos = packageDtos;
     }
 
+    public PackagesResponse(List<PackageDto> packageDtos, String nextCursor) {
+        this.packageDtos = packageDtos;
+        this.nextCursor = nextCursor;
+    }
+
     @Override
     public String toString() {
         return "PackagesResponse{" +
                 "packageDtos=" + packageDtos +
+                ", nextCursor='" + nextCursor + '\'' +
                 '}';
     }
 }
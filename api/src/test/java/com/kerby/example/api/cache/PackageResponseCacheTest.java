@@ -0,0 +1,138 @@
+package com.kerby.example.api.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+
+public class PackageResponseCacheTest {
+
+    private static final MediaType JSON = MediaType.APPLICATION_JSON_UTF8;
+    private static final MediaType SMILE = MediaType.valueOf("application/x-jackson-smile");
+
+    // responses of 1000 bytes fit 3 to a cache of 4000 bytes, with the entry overhead, in one segment so LRU is exact
+    private final PackageResponseCache packageResponseCache = new PackageResponseCache(4000, 1);
+
+    @Test
+    public void when_gettingCurrentRevision_expectResponse() {
+        final byte[] response = new byte[1000];
+        packageResponseCache.put(1, "GBP", JSON, "foo", response);
+
+        Assert.assertSame(response, packageResponseCache.get(1, "GBP", JSON, "foo"));
+        Assert.assertNull(packageResponseCache.get(1, "GBP", JSON, "bar"));
+        Assert.assertNull(packageResponseCache.get(1, "EUR", JSON, "foo"));
+        Assert.assertNull(packageResponseCache.get(2, "GBP", JSON, "foo"));
+    }
+
+    @Test
+    public void when_gettingOtherFormat_expectEachCachedSeparately() {
+        final byte[] json = new byte[1000];
+        final byte[] smile = new byte[500];
+        packageResponseCache.put(1, "GBP", JSON, "foo", json);
+        Assert.assertNull(packageResponseCache.get(1, "GBP", SMILE, "foo"));
+        packageResponseCache.put(1, "GBP", SMILE, "foo", smile);
+
+        Assert.assertSame(json, packageResponseCache.get(1, "GBP", JSON, "foo"));
+        Assert.assertSame(smile, packageResponseCache.get(1, "GBP", SMILE, "foo"));
+        packageResponseCache.evict(1);
+        Assert.assertEquals(0, packageResponseCache.size());
+    }
+
+    @Test
+    public void when_gettingWithoutCurrency_expectBlankAndNullSame() {
+        final byte[] response = new byte[1000];
+        packageResponseCache.put(1, null, JSON, "foo", response);
+
+        Assert.assertSame(response, packageResponseCache.get(1, "", JSON, "foo"));
+    }
+
+    @Test
+    public void when_puttingNewRevision_expectReplaced() {
+        final byte[] response = new byte[1000];
+        packageResponseCache.put(1, "GBP", JSON, "foo", new byte[1000]);
+        packageResponseCache.put(1, "GBP", JSON, "bar", response);
+
+        Assert.assertSame(response, packageResponseCache.get(1, "GBP", JSON, "bar"));
+        Assert.assertNull(packageResponseCache.get(1, "GBP", JSON, "foo"));
+        Assert.assertEquals(1, packageResponseCache.size());
+    }
+
+    @Test
+    public void when_puttingOverMaxBytes_expectLeastRecentlyUsedEvicted() {
+        packageResponseCache.put(1, null, JSON, "foo", new byte[1000]);
+        packageResponseCache.put(2, null, JSON, "foo", new byte[1000]);
+        packageResponseCache.put(3, null, JSON, "foo", new byte[1000]);
+        // 1 is now more recently used than 2
+        packageResponseCache.get(1, null, JSON, "foo");
+        packageResponseCache.put(4, null, JSON, "foo", new byte[1000]);
+
+        Assert.assertEquals(3, packageResponseCache.size());
+        Assert.assertNull(packageResponseCache.get(2, null, JSON, "foo"));
+        Assert.assertNotNull(packageResponseCache.get(1, null, JSON, "foo"));
+        Assert.assertNotNull(packageResponseCache.get(3, null, JSON, "foo"));
+        Assert.assertNotNull(packageResponseCache.get(4, null, JSON, "foo"));
+        Assert.assertTrue(packageResponseCache.getBytes() <= 4000);
+    }
+
+    @Test
+    public void when_puttingLargerThanMaxBytes_expectNotCached() {
+        packageResponseCache.put(1, null, JSON, "foo", new byte[1000]);
+        packageResponseCache.put(2, null, JSON, "foo", new byte[4000]);
+
+        Assert.assertNull(packageResponseCache.get(2, null, JSON, "foo"));
+        Assert.assertNotNull(packageResponseCache.get(1, null, JSON, "foo"));
+    }
+
+    @Test
+    public void when_evictingPackage_expectEveryCurrencyEvicted() {
+        packageResponseCache.put(1, null, JSON, "foo", new byte[1000]);
+        packageResponseCache.put(1, "GBP", JSON, "foo", new byte[1000]);
+        packageResponseCache.put(2, "GBP", JSON, "foo", new byte[1000]);
+
+        packageResponseCache.evict(1);
+
+        Assert.assertEquals(1, packageResponseCache.size());
+        Assert.assertNotNull(packageResponseCache.get(2, "GBP", JSON, "foo"));
+    }
+
+    @Test
+    public void when_exchangeRatesRefreshed_expectConvertedEvicted() {
+        packageResponseCache.put(1, null, JSON, "foo", new byte[1000]);
+        packageResponseCache.put(1, "GBP", JSON, "foo", new byte[1000]);
+
+        packageResponseCache.evictConverted();
+
+        Assert.assertEquals(1, packageResponseCache.size());
+        Assert.assertNotNull(packageResponseCache.get(1, null, JSON, "foo"));
+        Assert.assertTrue(packageResponseCache.getBytes() > 0);
+    }
+
+    @Test
+    public void when_puttingOverSegmentShare_expectOnlyThatSegmentEvicted() {
+        // 2 segments of 4000 bytes, odd and even package ids
+        final PackageResponseCache segmented = new PackageResponseCache(8000, 2);
+        segmented.put(1, null, JSON, "foo", new byte[1000]);
+        segmented.put(2, null, JSON, "foo", new byte[1000]);
+        segmented.put(3, null, JSON, "foo", new byte[1000]);
+        segmented.put(5, null, JSON, "foo", new byte[1000]);
+        segmented.put(7, null, JSON, "foo", new byte[1000]);
+
+        Assert.assertEquals(4, segmented.size());
+        Assert.assertNull(segmented.get(1, null, JSON, "foo"));
+        Assert.assertNotNull(segmented.get(2, null, JSON, "foo"));
+        Assert.assertNotNull(segmented.get(7, null, JSON, "foo"));
+        Assert.assertTrue(segmented.getBytes() <= 8000);
+
+        segmented.evict(2);
+        segmented.evictConverted();
+        Assert.assertEquals(3, segmented.size());
+        segmented.clear();
+        Assert.assertEquals(0, segmented.size());
+        Assert.assertEquals(0, segmented.getBytes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void when_segmentsNotPowerOfTwo_expectIllegalArgumentException() {
+        new PackageResponseCache(4000, 3);
+    }
+
+}
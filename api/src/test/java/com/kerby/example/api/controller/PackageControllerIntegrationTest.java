@@ -1,5 +1,11 @@
 package com.kerby.example.api.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.kerby.example.api.MessageConverterConfig;
+import com.kerby.example.api.cache.PackageResponseCache;
 import com.kerby.example.api.mapping.CurrencyDtoMapper;
 import com.kerby.example.api.models.dtos.CurrencyDto;
 import com.kerby.example.api.models.dtos.ProductDto;
@@ -8,38 +14,85 @@ import com.kerby.example.currency.models.CurrencyCode;
 import com.kerby.example.currency.service.CurrencyService;
 import com.kerby.example.database.models.PackageEntity;
 import com.kerby.example.database.repositories.PackageRepository;
+import com.kerby.example.packages.exceptions.PackageIndexNotBuiltException;
+import com.kerby.example.packages.exceptions.PackageModifiedException;
 import com.kerby.example.packages.models.Currency;
 import com.kerby.example.packages.models.Package;
+import com.kerby.example.packages.models.PackageCreateResult;
+import com.kerby.example.packages.models.PackageField;
+import com.kerby.example.packages.models.PackageLookupResult;
+import com.kerby.example.packages.models.PackagePage;
+import com.kerby.example.packages.models.PackagePriceQuery;
+import com.kerby.example.packages.models.PackageRevision;
+import com.kerby.example.packages.models.PackageSearchResult;
 import com.kerby.example.packages.models.Product;
+import com.kerby.example.packages.PackageConfig;
+import com.kerby.example.packages.service.AsyncPackageServiceImpl;
 import com.kerby.example.packages.service.PackageService;
 import org.hamcrest.Matchers;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
 
 
-import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
 @WebMvcTest(PackagesController.class)
+@Import({PackageResponseCache.class, AsyncPackageServiceImpl.class, MessageConverterConfig.class, PackageControllerIntegrationTest.ExecutorConfig.class})
 public class PackageControllerIntegrationTest {
 
+    private static final MediaType SMILE = MediaType.valueOf("application/x-jackson-smile");
+    private static final MediaType CBOR = MediaType.valueOf("application/cbor");
+
+    @TestConfiguration
+    static class ExecutorConfig {
+
+        // async reads run on the calling thread, so they have completed by the time the handler returns
+        @Bean(name = PackageConfig.DATABASE_EXECUTOR)
+        public Executor databaseExecutor() {
+            return Runnable::run;
+        }
+
+        @Bean(name = PackageConfig.CURRENCY_EXECUTOR)
+        public Executor currencyExecutor() {
+            return Runnable::run;
+        }
+    }
+
     @MockBean
     private CurrencyService currencyService;
 
@@ -52,11 +105,30 @@ public class PackageControllerIntegrationTest {
     @Autowired
     private PackagesController packagesController;
 
+    @Autowired
+    private PackageResponseCache packageResponseCache;
+
     @Autowired
     private MockMvc mockMvc;
 
     @Before
-    public void beforeTest() {
+    public void beforeTest() throws Exception {
+        // the context is shared between tests, so is the cache
+        packageResponseCache.clear();
+        // packages are at the same revision unless a test says otherwise
+        Mockito.when(packageService.getPackageRevision(Mockito.any(), Mockito.anyInt())).thenReturn(new PackageRevision("foo", 1000));
+        Mockito.when(packageService.getPackagesRevision(Mockito.any(), Mockito.any(), Mockito.anyInt())).thenReturn(new PackageRevision("bar", 0));
+        Mockito.when(packageService.getPackagesByPriceRevision(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyInt())).thenReturn(new PackageRevision("qux", 0));
+    }
+
+    /**
+     * Package reads complete asynchronously, dispatches the result once the handler has returned
+     */
+    private ResultActions performAsync(final RequestBuilder requestBuilder) throws Exception {
+        final MvcResult mvcResult = this.mockMvc.perform(requestBuilder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return this.mockMvc.perform(asyncDispatch(mvcResult));
     }
 
     @Test
@@ -72,57 +144,336 @@ public class PackageControllerIntegrationTest {
 
     @Test
     public void when_callGetPackage_expect200AndPackageResponse() throws Exception {
-        final Package aPackage = new Package("Foo", "Foo test", Arrays.asList(new Product("alpha_1", "Alpha", new BigDecimal(100))));
+        final Package aPackage = new Package("Foo", "Foo test", Arrays.asList(new Product("alpha_1", "Alpha", 100)));
         aPackage.setId(1);
-        aPackage.setPrice(new BigDecimal(10));
+        aPackage.setPrice(1000);
         Mockito.when(packageService.getPackage(null, 1)).thenReturn(aPackage);
 
-        this.mockMvc.perform(get("/packages-api/package/1"))
+        performAsync(get("/packages-api/package/1"))
                 .andDo(print())
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.package.id", Matchers.is(1)))
                 .andExpect(jsonPath("$.package.name", Matchers.is("Foo")))
                 .andExpect(jsonPath("$.package.description", Matchers.is("Foo test")))
-                .andExpect(jsonPath("$.package.price", Matchers.is(10)))
+                .andExpect(jsonPath("$.package.price", Matchers.is(10.0)))
                 .andExpect(jsonPath("$.package.products[0].id", Matchers.is("alpha_1")))
                 .andExpect(jsonPath("$.package.products[0].name", Matchers.is("Alpha")))
                 .andExpect(jsonPath("$.package.products[0].usdPrice", Matchers.is(100)));
     }
 
+    @Test
+    public void when_callGetPackage_expectETagAndLastModified() throws Exception {
+        final Package aPackage = new Package("Foo", "Foo test", Arrays.asList(new Product("alpha_1", "Alpha", 100)));
+        aPackage.setId(1);
+        Mockito.when(packageService.getPackage(null, 1)).thenReturn(aPackage);
+
+        performAsync(get("/packages-api/package/1").header("If-None-Match", "\"stale\""))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"foo\""))
+                .andExpect(header().dateValue("Last-Modified", 1000))
+                .andExpect(jsonPath("$.package.id", Matchers.is(1)));
+    }
+
+    @Test
+    public void when_callGetPackageAndExecutorIsFull_expect503() throws Exception {
+        Mockito.when(packageService.getPackage(null, 1)).thenThrow(new RejectedExecutionException("full"));
+
+        performAsync(get("/packages-api/package/1"))
+                .andDo(print())
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"))
+                .andExpect(jsonPath("$.errorCode", Matchers.is("SERVICE_UNAVAILABLE")));
+    }
+
+    @Test
+    public void when_callGetPackageWithCurrentETag_expect304WithoutLoadingPackage() throws Exception {
+        performAsync(get("/packages-api/package/1").header("If-None-Match", "\"foo\""))
+                .andDo(print())
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"foo\""))
+                .andExpect(content().string(""));
+
+        Mockito.verify(packageService, Mockito.never()).getPackage(Mockito.any(), Mockito.anyInt());
+    }
+
+    @Test
+    public void when_callGetPackageNotModifiedSince_expect304() throws Exception {
+        performAsync(get("/packages-api/package/1").header("If-Modified-Since", "Thu, 01 Jan 1970 00:00:01 GMT"))
+                .andDo(print())
+                .andExpect(status().isNotModified());
+
+        Mockito.verify(packageService, Mockito.never()).getPackage(Mockito.any(), Mockito.anyInt());
+    }
+
+    @Test
+    public void when_callGetPackagesWithCurrentETag_expect304WithoutLoadingPackages() throws Exception {
+        Mockito.when(packageService.getPackagesRevision(null, null, 100)).thenReturn(new PackageRevision("baz", 0));
+
+        performAsync(get("/packages-api/package").header("If-None-Match", "\"baz\""))
+                .andDo(print())
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"baz\""));
+
+        Mockito.verify(packageService, Mockito.never()).getPackages(Mockito.any(), Mockito.any(), Mockito.anyInt());
+    }
+
+    @Test
+    public void when_callGetPackagesWithIfModifiedSince_expect200WithoutLastModified() throws Exception {
+        Mockito.when(packageService.getPackages(null, null, 100)).thenReturn(new PackagePage(new ArrayList<>(), null));
+
+        // a page can change without any package in it being modified, so only the ETag can say it is unchanged
+        performAsync(get("/packages-api/package").header("If-Modified-Since", "Thu, 01 Jan 2099 00:00:00 GMT"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"bar\""))
+                .andExpect(header().doesNotExist("Last-Modified"));
+    }
+
     @Test
     public void when_callGetPackages_expect200AndPackagesResponse() throws Exception {
-        final Package aPackageFoo = new Package("Foo", "Foo test", Arrays.asList(new Product("alpha_1", "Alpha", new BigDecimal(100))));
-        final Package aPackageBar = new Package("Bar", "Bar test", Arrays.asList(new Product("beta_1", "Beta", new BigDecimal(200))));
+        final Package aPackageFoo = new Package("Foo", "Foo test", Arrays.asList(new Product("alpha_1", "Alpha", 100)));
+        final Package aPackageBar = new Package("Bar", "Bar test", Arrays.asList(new Product("beta_1", "Beta", 200)));
         aPackageFoo.setId(1);
-        aPackageFoo.setPrice(new BigDecimal(100));
+        aPackageFoo.setPrice(10000);
         aPackageBar.setId(1);
-        aPackageBar.setPrice(new BigDecimal(200));
+        aPackageBar.setPrice(20000);
 
-        Mockito.when(packageService.getPackages(null)).thenReturn(Arrays.asList(aPackageFoo, aPackageBar));
+        Mockito.when(packageService.getPackages(null, null, 100)).thenReturn(new PackagePage(Arrays.asList(aPackageFoo, aPackageBar), null));
 
-        this.mockMvc.perform(get("/packages-api/package"))
+        performAsync(get("/packages-api/package"))
                 .andDo(print())
                 .andExpect(status().isOk())
+                .andExpect(jsonPath("$.nextCursor").doesNotExist())
                 .andExpect(jsonPath("$.packages[0].id", Matchers.is(1)))
                 .andExpect(jsonPath("$.packages[0].name", Matchers.is("Foo")))
                 .andExpect(jsonPath("$.packages[0].description", Matchers.is("Foo test")))
-                .andExpect(jsonPath("$.packages[0].price", Matchers.is(100)))
+                .andExpect(jsonPath("$.packages[0].price", Matchers.is(100.0)))
                 .andExpect(jsonPath("$.packages[0].products[0].id", Matchers.is("alpha_1")))
                 .andExpect(jsonPath("$.packages[0].products[0].name", Matchers.is("Alpha")))
                 .andExpect(jsonPath("$.packages[0].products[0].usdPrice", Matchers.is(100)))
                 .andExpect(jsonPath("$.packages[1].id", Matchers.is(1)))
                 .andExpect(jsonPath("$.packages[1].name", Matchers.is("Bar")))
                 .andExpect(jsonPath("$.packages[1].description", Matchers.is("Bar test")))
-                .andExpect(jsonPath("$.packages[1].price", Matchers.is(200)))
+                .andExpect(jsonPath("$.packages[1].price", Matchers.is(200.0)))
                 .andExpect(jsonPath("$.packages[1].products[0].id", Matchers.is("beta_1")))
                 .andExpect(jsonPath("$.packages[1].products[0].name", Matchers.is("Beta")))
                 .andExpect(jsonPath("$.packages[1].products[0].usdPrice", Matchers.is(200)));
     }
 
+    @Test
+    public void when_callGetPackagesWithCursor_expect200AndNextCursor() throws Exception {
+        final Package aPackageFoo = new Package("Foo", "Foo test", Arrays.asList(new Product("alpha_1", "Alpha", 100)));
+        aPackageFoo.setId(2);
+        aPackageFoo.setPrice(10000);
+
+        Mockito.when(packageService.getPackages(null, "aWQ6MQ", 1)).thenReturn(new PackagePage(Arrays.asList(aPackageFoo), "aWQ6Mg"));
+
+        performAsync(get("/packages-api/package").param("cursor", "aWQ6MQ").param("limit", "1"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.packages[0].id", Matchers.is(2)))
+                .andExpect(jsonPath("$.nextCursor", Matchers.is("aWQ6Mg")));
+    }
+
+    @Test
+    public void when_callGetPackagesInPriceRange_expect200AndPackagesByPrice() throws Exception {
+        final Package aPackageFoo = new Package("Foo", "Foo test", Arrays.asList(new Product("alpha_1", "Alpha", 100)));
+        aPackageFoo.setId(2);
+        aPackageFoo.setPrice(2000);
+        final ArgumentCaptor<PackagePriceQuery> query = ArgumentCaptor.forClass(PackagePriceQuery.class);
+        Mockito.when(packageService.getPackagesByPrice(Mockito.isNull(), query.capture(), Mockito.isNull(), Mockito.eq(100), Mockito.isNull()))
+                .thenReturn(new PackagePage(Arrays.asList(aPackageFoo), "cHJpY2U6MjAwMDoy"));
+
+        performAsync(get("/packages-api/package").param("sort", "-price").param("minPrice", "10").param("maxPrice", "25.50"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"qux\""))
+                .andExpect(jsonPath("$.packages[0].id", Matchers.is(2)))
+                .andExpect(jsonPath("$.nextCursor", Matchers.is("cHJpY2U6MjAwMDoy")));
+
+        // prices are in cents of the currency
+        Assert.assertEquals(Long.valueOf(1000), query.getValue().getMinPrice());
+        Assert.assertEquals(Long.valueOf(2550), query.getValue().getMaxPrice());
+        Assert.assertTrue(query.getValue().isDescending());
+        Mockito.verify(packageService, Mockito.never()).getPackages(Mockito.any(), Mockito.any(), Mockito.anyInt());
+    }
+
+    @Test
+    public void when_callGetPackagesInPriceRangeSortedById_expect400() throws Exception {
+        this.mockMvc.perform(get("/packages-api/package").param("sort", "id").param("minPrice", "10"))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+        this.mockMvc.perform(get("/packages-api/package").param("sort", "name"))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void when_callGetPackagesInPriceRangeTooLarge_expect400() throws Exception {
+        this.mockMvc.perform(get("/packages-api/package").param("sort", "price").param("maxPrice", "1e30"))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+        this.mockMvc.perform(get("/packages-api/package").param("sort", "price").param("minPrice", "-1e30"))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+        Mockito.verify(packageService, Mockito.never()).getPackagesByPrice(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyInt(), Mockito.any());
+    }
+
+    @Test
+    public void when_callGetPackagesByIdWithOneMissing_expect207AndResultForEachId() throws Exception {
+        final Package aPackageFoo = new Package("Foo", "Foo test", Arrays.asList(new Product("alpha_1", "Alpha", 100)));
+        aPackageFoo.setId(1);
+        aPackageFoo.setPrice(10000);
+        Mockito.when(packageService.getPackagesById(null, Arrays.asList(1, 9), null))
+                .thenReturn(Arrays.asList(PackageLookupResult.found(aPackageFoo), PackageLookupResult.notFound(9)));
+
+        performAsync(get("/packages-api/package").param("ids", "1, 9"))
+                .andDo(print())
+                .andExpect(status().isMultiStatus())
+                .andExpect(jsonPath("$.results[0].id", Matchers.is(1)))
+                .andExpect(jsonPath("$.results[0].package.name", Matchers.is("Foo")))
+                .andExpect(jsonPath("$.results[0].package.price", Matchers.is(100.0)))
+                .andExpect(jsonPath("$.results[0].error").doesNotExist())
+                .andExpect(jsonPath("$.results[1].id", Matchers.is(9)))
+                .andExpect(jsonPath("$.results[1].package").doesNotExist())
+                .andExpect(jsonPath("$.results[1].error", Matchers.is("No package found with id: [9]")));
+
+        Mockito.verify(packageService, Mockito.never()).getPackages(Mockito.any(), Mockito.any(), Mockito.anyInt());
+    }
+
+    @Test
+    public void when_callGetPackagesByInvalidIds_expect400() throws Exception {
+        this.mockMvc.perform(get("/packages-api/package").param("ids", "1,foo"))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+        this.mockMvc.perform(get("/packages-api/package").param("ids", "1,,2"))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void when_callGetPackagesWithoutProductsField_expectSummariesWithoutProducts() throws Exception {
+        final Package aPackageFoo = new Package("Foo", "Foo test", null);
+        aPackageFoo.setId(1);
+        aPackageFoo.setPrice(10000);
+        Mockito.when(packageService.getPackageSummaries(null, null, 100)).thenReturn(new PackagePage(Arrays.asList(aPackageFoo), null));
+
+        performAsync(get("/packages-api/package").param("fields", "id,name,price"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.packages[0].id", Matchers.is(1)))
+                .andExpect(jsonPath("$.packages[0].price", Matchers.is(100.0)))
+                .andExpect(jsonPath("$.packages[0].products").doesNotExist());
+
+        Mockito.verify(packageService, Mockito.never()).getPackages(Mockito.any(), Mockito.any(), Mockito.anyInt());
+    }
+
+    @Test
+    public void when_callSearchPackagesWithProductsField_expectFieldsPassedToService() throws Exception {
+        Mockito.when(packageService.searchPackages(null, "test", 0, 20, EnumSet.of(PackageField.ID, PackageField.PRODUCTS)))
+                .thenReturn(new PackageSearchResult(new ArrayList<>(), 0));
+
+        performAsync(get("/packages-api/package/search").param("q", "test").param("fields", "ID, products"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total", Matchers.is(0)));
+    }
+
+    @Test
+    public void when_callGetPackagesWithUnknownField_expect400() throws Exception {
+        this.mockMvc.perform(get("/packages-api/package").param("fields", "id,colour"))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void when_callGetPackagesWithLimitTooLarge_expect400() throws Exception {
+        this.mockMvc.perform(get("/packages-api/package").param("limit", "1001"))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void when_callSearchPackages_expect200AndRankedPackagesWithTotal() throws Exception {
+        final Package aPackageBar = new Package("Bar", "Bar test", Arrays.asList(new Product("beta_1", "Beta", 200)));
+        final Package aPackageFoo = new Package("Foo", "Foo test", Arrays.asList(new Product("alpha_1", "Alpha", 100)));
+        aPackageBar.setId(2);
+        aPackageFoo.setId(1);
+        Mockito.when(packageService.searchPackages(null, "test", 0, 2, null))
+                .thenReturn(new PackageSearchResult(Arrays.asList(aPackageBar, aPackageFoo), 5));
+
+        performAsync(get("/packages-api/package/search").param("q", "test").param("limit", "2"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.packages[0].id", Matchers.is(2)))
+                .andExpect(jsonPath("$.packages[1].id", Matchers.is(1)))
+                .andExpect(jsonPath("$.total", Matchers.is(5)));
+    }
+
+    @Test
+    public void when_callSearchPackagesWithoutTerms_expect400() throws Exception {
+        Mockito.when(packageService.searchPackages(Mockito.any(), Mockito.eq("-"), Mockito.anyInt(), Mockito.anyInt(), Mockito.any()))
+                .thenThrow(new IllegalArgumentException("query must have at least one letter or digit to search packages"));
+
+        performAsync(get("/packages-api/package/search").param("q", "-"))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void when_callSearchPackagesBeforeIndexed_expect503() throws Exception {
+        Mockito.when(packageService.searchPackages(null, "test", 0, 20, null))
+                .thenThrow(new PackageIndexNotBuiltException("Packages are still being indexed for search"));
+
+        performAsync(get("/packages-api/package/search").param("q", "test"))
+                .andDo(print())
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "5"));
+    }
+
+    @Test
+    public void when_callGetPackagesByPriceBeforeIndexed_expect503() throws Exception {
+        Mockito.when(packageService.getPackagesByPriceRevision(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyInt()))
+                .thenThrow(new PackageIndexNotBuiltException("Packages are still being indexed by price"));
+
+        performAsync(get("/packages-api/package").param("sort", "price"))
+                .andDo(print())
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "5"));
+    }
+
+    @Test
+    public void when_callExportPackages_expect200AndPackagePerLine() throws Exception {
+        final Package aPackageFoo = new Package("Foo", "Foo test", Arrays.asList(new Product("alpha_1", "Alpha", 100)));
+        final Package aPackageBar = new Package("Bar", "Bar test", Arrays.asList(new Product("beta_1", "Beta", 200)));
+        aPackageFoo.setId(1);
+        aPackageFoo.setPrice(100);
+        aPackageBar.setId(2);
+        aPackageBar.setPrice(200);
+
+        Mockito.doAnswer(invocation -> {
+            final Consumer<Package> consumer = invocation.getArgument(1);
+            consumer.accept(aPackageFoo);
+            consumer.accept(aPackageBar);
+            return null;
+        }).when(packageService).exportPackages(Mockito.isNull(), Mockito.any());
+
+        final String[] lines = this.mockMvc.perform(get("/packages-api/package/export"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString().split("\n");
+
+        Assert.assertEquals(2, lines.length);
+        Assert.assertThat(lines[0], Matchers.startsWith("{\"id\":1,\"name\":\"Foo\""));
+        Assert.assertThat(lines[1], Matchers.startsWith("{\"id\":2,\"name\":\"Bar\""));
+    }
+
     @Test
     public void when_callCreatePackage_expect201AndPackageIdResponse() throws Exception {
         Mockito.when(packageService.createPackage("Foo", "Foo test",
-                new Product("alpha_1", "Alpha", new BigDecimal(10.00)))).thenReturn(1);
+                new Product("alpha_1", "Alpha", 10))).thenReturn(1);
 
         final String requestJson = "{\n" +
                 "  \"package\": {\n" +
@@ -145,10 +496,285 @@ public class PackageControllerIntegrationTest {
                 .andExpect(content().string(Matchers.containsString("1")));
     }
 
+    @Test
+    public void when_callCreatePackageInSmile_expect201AndPackageIdInSmile() throws Exception {
+        Mockito.when(packageService.createPackage("Foo", "Foo test",
+                new Product("alpha_1", "Alpha", 10))).thenReturn(1);
+        final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+        final byte[] requestSmile = smileMapper.writeValueAsBytes(new ObjectMapper().readTree(
+                "{\"package\": {\"name\": \"Foo\", \"description\": \"Foo test\", " +
+                        "\"products\": [{\"id\": \"alpha_1\", \"name\": \"Alpha\", \"usdPrice\": 10}]}}"));
+
+        final byte[] response = this.mockMvc.perform(post("/packages-api/package")
+                            .contentType(SMILE)
+                            .accept(SMILE)
+                            .content(requestSmile))
+                .andDo(print())
+                .andExpect(status().is(201))
+                .andExpect(content().contentTypeCompatibleWith(SMILE))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        Assert.assertEquals(1, smileMapper.readValue(response, Integer.class).intValue());
+    }
+
+    @Test
+    public void when_callGetPackageInEachFormat_expectEachCachedAndVaryByAccept() throws Exception {
+        final Package aPackage = new Package("Foo", "Foo test", Arrays.asList(new Product("alpha_1", "Alpha", 100)));
+        aPackage.setId(1);
+        aPackage.setPrice(1000);
+        Mockito.when(packageService.getPackage(null, 1)).thenReturn(aPackage);
+
+        final byte[] smile = performAsync(get("/packages-api/package/1").accept(SMILE))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(SMILE))
+                .andExpect(header().string("Vary", "Accept"))
+                .andExpect(header().string("ETag", "\"foo-x-jackson-smile\""))
+                .andReturn().getResponse().getContentAsByteArray();
+        Assert.assertEquals("Foo", new ObjectMapper(new SmileFactory()).readTree(smile).at("/package/name").asText());
+
+        // CBOR is preferred by quality, and cached apart from Smile
+        final byte[] cbor = performAsync(get("/packages-api/package/1").header("Accept", "application/json;q=0.5, application/cbor"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(CBOR))
+                .andExpect(header().string("ETag", "\"foo-cbor\""))
+                .andReturn().getResponse().getContentAsByteArray();
+        Assert.assertEquals(10.0, new ObjectMapper(new CBORFactory()).readTree(cbor).at("/package/price").asDouble(), 0);
+
+        performAsync(get("/packages-api/package/1").accept(MediaType.ALL))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(header().string("ETag", "\"foo\""))
+                .andExpect(jsonPath("$.package.name", Matchers.is("Foo")));
+
+        Mockito.verify(packageService, Mockito.times(3)).getPackage(null, 1);
+        Assert.assertEquals(3, packageResponseCache.size());
+    }
+
+    @Test
+    public void when_callGetPackageWithJsonNotAcceptable_expectOtherFormat() throws Exception {
+        final Package aPackage = new Package("Foo", "Foo test", Arrays.asList(new Product("alpha_1", "Alpha", 100)));
+        aPackage.setId(1);
+        Mockito.when(packageService.getPackage(null, 1)).thenReturn(aPackage);
+
+        // q=0 rules JSON out, however it is also covered by */*
+        performAsync(get("/packages-api/package/1").header("Accept", "application/json;q=0, */*"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(SMILE));
+        performAsync(get("/packages-api/package/1").header("Accept", "application/*;q=0.5, application/x-jackson-smile;q=0, application/json;q=0.1"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(CBOR));
+    }
+
+    @Test
+    public void when_callGetPackageWithETagOfOtherFormat_expect200() throws Exception {
+        final Package aPackage = new Package("Foo", "Foo test", Arrays.asList(new Product("alpha_1", "Alpha", 100)));
+        aPackage.setId(1);
+        Mockito.when(packageService.getPackage(null, 1)).thenReturn(aPackage);
+
+        // the JSON ETag doesn't match the Smile body
+        performAsync(get("/packages-api/package/1").accept(SMILE).header("If-None-Match", "\"foo\""))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"foo-x-jackson-smile\""));
+        performAsync(get("/packages-api/package/1").accept(SMILE).header("If-None-Match", "\"foo-x-jackson-smile\""))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    public void when_callGetPackagesInCbor_expect200AndPackagesInCbor() throws Exception {
+        final Package aPackage = new Package("Foo", "Foo test", Arrays.asList(new Product("alpha_1", "Alpha", 100)));
+        aPackage.setId(1);
+        aPackage.setPrice(10000);
+        Mockito.when(packageService.getPackages(null, null, 100)).thenReturn(new PackagePage(Arrays.asList(aPackage), null));
+
+        final byte[] response = performAsync(get("/packages-api/package").accept(CBOR))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(CBOR))
+                .andExpect(header().string("ETag", "\"bar-cbor\""))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        final JsonNode packages = new ObjectMapper(new CBORFactory()).readTree(response).get("packages");
+        Assert.assertEquals(1, packages.size());
+        Assert.assertEquals("Foo", packages.get(0).get("name").asText());
+        Assert.assertEquals("alpha_1", packages.get(0).at("/products/0/id").asText());
+    }
+
+    @Test
+    public void when_callGetPackageInUnsupportedFormat_expect406() throws Exception {
+        this.mockMvc.perform(get("/packages-api/package/1").accept(MediaType.APPLICATION_XML))
+                .andDo(print())
+                .andExpect(status().isNotAcceptable());
+    }
+
+    @Test
+    public void when_callCreatePackageWithConflictingProducts_expect400() throws Exception {
+        Mockito.when(packageService.createPackage("Foo", "Foo test",
+                new Product("alpha_1", "Alpha", 10), new Product("alpha_1", "Alpha", 20)))
+                .thenThrow(new IllegalArgumentException("Product: [alpha_1] is given more than once with a different name or price"));
+
+        final String requestJson = "{\"package\":{\"name\":\"Foo\",\"description\":\"Foo test\",\"products\":[" +
+                "{\"id\":\"alpha_1\",\"name\":\"Alpha\",\"usdPrice\":10}," +
+                "{\"id\":\"alpha_1\",\"name\":\"Alpha\",\"usdPrice\":20}]}}";
+        this.mockMvc.perform(post("/packages-api/package")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(requestJson))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void when_callCreateOrUpdatePackageWithPriceTooLarge_expect400() throws Exception {
+        final String requestJson = "{\"package\":{\"name\":\"Foo\",\"description\":\"Foo test\",\"products\":[" +
+                "{\"id\":\"alpha_1\",\"name\":\"Alpha\",\"usdPrice\":1e30}]}}";
+        this.mockMvc.perform(post("/packages-api/package")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(requestJson))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+        this.mockMvc.perform(put("/packages-api/package/1")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(requestJson))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+        Mockito.verifyZeroInteractions(packageService);
+    }
+
+    @Test
+    public void when_callGetPackageTwice_expectCachedResponse() throws Exception {
+        final Package aPackage = new Package("Foo", "Foo test", Arrays.asList(new Product("alpha_1", "Alpha", 100)));
+        aPackage.setId(1);
+        aPackage.setPrice(100);
+        // loaded in USD then converted
+        Mockito.when(packageService.getPackage(null, 1)).thenReturn(aPackage);
+        Mockito.when(currencyService.getCurrencyCodeFromString("GBP")).thenReturn(CurrencyCode.GBP);
+        Mockito.when(currencyService.convertCentsFromUSD(CurrencyCode.GBP, 100L)).thenReturn(75L);
+
+        for (int i = 0; i < 2; i++) {
+            performAsync(get("/packages-api/package/1").param("currency", "GBP"))
+                    .andDo(print())
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                    .andExpect(header().exists("ETag"))
+                    .andExpect(jsonPath("$.package.name", Matchers.is("Foo")))
+                    .andExpect(jsonPath("$.package.price", Matchers.is(0.75)));
+        }
+
+        Mockito.verify(packageService, Mockito.times(1)).getPackage(null, 1);
+        Mockito.verify(currencyService, Mockito.times(1)).convertCentsFromUSD(Mockito.any(), Mockito.anyLong());
+    }
+
+    @Test
+    public void when_callGetPackageAtNewRevision_expectPackageLoadedAgain() throws Exception {
+        final Package aPackage = new Package("Foo", "Foo test", Arrays.asList(new Product("alpha_1", "Alpha", 100)));
+        aPackage.setId(1);
+        Mockito.when(packageService.getPackage(null, 1)).thenReturn(aPackage);
+
+        performAsync(get("/packages-api/package/1")).andExpect(status().isOk());
+        Mockito.when(packageService.getPackageRevision(null, 1)).thenReturn(new PackageRevision("baz", 2000));
+        performAsync(get("/packages-api/package/1"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"baz\""));
+
+        Mockito.verify(packageService, Mockito.times(2)).getPackage(null, 1);
+    }
+
+    @Test
+    public void when_callUpdatePackage_expectCachedResponseEvicted() throws Exception {
+        packageResponseCache.put(1, null, MediaType.APPLICATION_JSON_UTF8, "foo", new byte[1]);
+        packageResponseCache.put(1, "GBP", MediaType.APPLICATION_JSON_UTF8, "foo", new byte[1]);
+        packageResponseCache.put(2, null, MediaType.APPLICATION_JSON_UTF8, "foo", new byte[1]);
+        Mockito.when(packageService.updatePackage(1, null, "Foo", "Foo test",
+                new Product("alpha_1", "Alpha", 10))).thenReturn(true);
+
+        this.mockMvc.perform(put("/packages-api/package/1")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"package\": {\"name\": \"Foo\", \"description\": \"Foo test\", " +
+                                    "\"products\": [{\"id\": \"alpha_1\", \"name\": \"Alpha\", \"usdPrice\": 10}]}}"))
+                .andDo(print())
+                .andExpect(status().isOk());
+
+        Assert.assertNull(packageResponseCache.get(1, null, MediaType.APPLICATION_JSON_UTF8, "foo"));
+        Assert.assertNull(packageResponseCache.get(1, "GBP", MediaType.APPLICATION_JSON_UTF8, "foo"));
+        Assert.assertNotNull(packageResponseCache.get(2, null, MediaType.APPLICATION_JSON_UTF8, "foo"));
+    }
+
+    @Test
+    public void when_callCreatePackagesAllValid_expect201AndIds() throws Exception {
+        Mockito.when(packageService.createPackages(Mockito.anyList())).thenReturn(Arrays.asList(
+                PackageCreateResult.created(1), PackageCreateResult.created(2)));
+
+        final String requestJson = "{\"packages\": [" +
+                "{\"name\": \"Foo\", \"products\": [{\"id\": \"alpha_1\", \"name\": \"Alpha\", \"usdPrice\": 10}]}," +
+                "{\"name\": \"Bar\", \"products\": [{\"id\": \"beta_1\", \"name\": \"Beta\", \"usdPrice\": 20}]}" +
+                "]}";
+        this.mockMvc.perform(post("/packages-api/package/bulk")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(requestJson))
+                .andDo(print())
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.results[0].id", Matchers.is(1)))
+                .andExpect(jsonPath("$.results[1].id", Matchers.is(2)))
+                .andExpect(jsonPath("$.results[0].error").doesNotExist());
+
+        Mockito.verify(packageService).createPackages(Mockito.argThat(packages -> packages.size() == 2
+                && packages.get(0).getName().equals("Foo")
+                && packages.get(1).getProducts().get(0).getUsdPrice() == 20));
+    }
+
+    @Test
+    public void when_callCreatePackagesSomeInvalid_expect207AndErrors() throws Exception {
+        Mockito.when(packageService.createPackages(Mockito.anyList())).thenReturn(Arrays.asList(
+                PackageCreateResult.created(1), PackageCreateResult.invalid("name is required to create a package")));
+
+        final String requestJson = "{\"packages\": [" +
+                "{\"name\": \"Foo\", \"products\": [{\"id\": \"alpha_1\", \"name\": \"Alpha\", \"usdPrice\": 10}]}," +
+                "{\"products\": [{\"id\": \"beta_1\", \"name\": \"Beta\", \"usdPrice\": 20}]}" +
+                "]}";
+        this.mockMvc.perform(post("/packages-api/package/bulk")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(requestJson))
+                .andDo(print())
+                .andExpect(status().isMultiStatus())
+                .andExpect(jsonPath("$.results[0].id", Matchers.is(1)))
+                .andExpect(jsonPath("$.results[1].id").doesNotExist())
+                .andExpect(jsonPath("$.results[1].error", Matchers.is("name is required to create a package")));
+    }
+
+    @Test
+    public void when_callCreatePackagesSomeUnmappable_expect207AndRestCreated() throws Exception {
+        Mockito.when(packageService.createPackages(Mockito.anyList())).thenReturn(Arrays.asList(
+                PackageCreateResult.created(1), PackageCreateResult.created(2)));
+
+        final String requestJson = "{\"packages\": [" +
+                "{\"name\": \"Foo\", \"products\": [{\"id\": \"alpha_1\", \"name\": \"Alpha\", \"usdPrice\": 10}]}," +
+                "{\"name\": \"Bar\", \"products\": [{\"id\": \"beta_1\", \"name\": \"Beta\"}]}," +
+                "{\"name\": \"Baz\", \"products\": [{\"id\": \"gamma_1\", \"name\": \"Gamma\", \"usdPrice\": 1e30}]}," +
+                "{\"name\": \"Qux\", \"products\": [{\"id\": \"delta_1\", \"name\": \"Delta\", \"usdPrice\": 20}]}" +
+                "]}";
+        this.mockMvc.perform(post("/packages-api/package/bulk")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(requestJson))
+                .andDo(print())
+                .andExpect(status().isMultiStatus())
+                .andExpect(jsonPath("$.results[0].id", Matchers.is(1)))
+                .andExpect(jsonPath("$.results[1].error", Matchers.is("usdPrice is required for a product")))
+                .andExpect(jsonPath("$.results[2].error", Matchers.is("usdPrice: [1E+30] is too large for a product")))
+                .andExpect(jsonPath("$.results[3].id", Matchers.is(2)));
+
+        // only the packages which could be mapped are passed on
+        final ArgumentCaptor<List<Package>> packages = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(packageService).createPackages(packages.capture());
+        Assert.assertEquals(Arrays.asList("Foo", "Qux"), packages.getValue().stream().map(Package::getName).collect(Collectors.toList()));
+    }
+
     @Test
     public void when_callUpdatePackage_expect200() throws Exception {
-        Mockito.when(packageService.updatePackage(1, "Foo", "Foo test",
-                new Product("alpha_1", "Alpha", new BigDecimal(10.00)))).thenReturn(true);
+        Mockito.when(packageService.updatePackage(1, null, "Foo", "Foo test",
+                new Product("alpha_1", "Alpha", 10))).thenReturn(true);
 
         final String requestJson = "{\n" +
                 "  \"package\": {\n" +
@@ -170,6 +796,37 @@ public class PackageControllerIntegrationTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    public void when_callUpdatePackageIfMatch_expectTagsWithoutFormatPassed() throws Exception {
+        Mockito.when(packageService.updatePackage(1, Arrays.asList("foo", "bar"), "Foo", "Foo test",
+                new Product("alpha_1", "Alpha", 10))).thenReturn(true);
+
+        this.mockMvc.perform(put("/packages-api/package/1")
+                            .header("If-Match", "\"foo\", \"bar-x-jackson-smile\", W/\"baz\"")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"package\": {\"name\": \"Foo\", \"description\": \"Foo test\", " +
+                                    "\"products\": [{\"id\": \"alpha_1\", \"name\": \"Alpha\", \"usdPrice\": 10}]}}"))
+                .andDo(print())
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void when_callUpdatePackageChangedSinceRead_expect412() throws Exception {
+        packageResponseCache.put(1, null, MediaType.APPLICATION_JSON_UTF8, "foo", new byte[1]);
+        Mockito.when(packageService.updatePackage(1, Collections.singletonList("foo"), "Foo", "Foo test",
+                new Product("alpha_1", "Alpha", 10))).thenThrow(new PackageModifiedException("Package: [1] has changed"));
+
+        this.mockMvc.perform(put("/packages-api/package/1")
+                            .header("If-Match", "\"foo\"")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"package\": {\"name\": \"Foo\", \"description\": \"Foo test\", " +
+                                    "\"products\": [{\"id\": \"alpha_1\", \"name\": \"Alpha\", \"usdPrice\": 10}]}}"))
+                .andDo(print())
+                .andExpect(status().isPreconditionFailed());
+
+        Assert.assertNotNull(packageResponseCache.get(1, null, MediaType.APPLICATION_JSON_UTF8, "foo"));
+    }
+
     @Test
     public void when_callDeletePackage_expect200() throws Exception {
         Mockito.when(packageService.deletePackage(1)).thenReturn(true);
@@ -3,6 +3,7 @@ package com.kerby.example.api.mapping;
 import com.kerby.example.api.TestUtility;
 import com.kerby.example.api.models.dtos.PackageDto;
 import com.kerby.example.packages.models.Package;
+import org.hamcrest.Matchers;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -13,6 +14,7 @@ import org.springframework.test.context.junit4.SpringRunner;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Random;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
@@ -31,7 +33,7 @@ public class PackageDtoMapperTest extends TestUtility {
                         )
                 );
         dto.setId(1);
-        dto.setPrice(new BigDecimal(10.00));
+        dto.setPrice(new BigDecimal("10.00"));
 
         final Package aPackage = PackageDtoMapper.INSTANCE.dtoToPackage(dto);
 
@@ -39,7 +41,7 @@ public class PackageDtoMapperTest extends TestUtility {
         Assert.assertEquals("Foo", aPackage.getName());
         Assert.assertEquals("Foo description", aPackage.getDescription());
         Assert.assertEquals(new ArrayList<>(Arrays.asList(TestUtility.PRODUCT_ALPHA, TestUtility.PRODUCT_BETA)), aPackage.getProducts());
-        Assert.assertEquals(new BigDecimal(10.00), aPackage.getPrice());
+        Assert.assertEquals(1000, aPackage.getPrice());
     }
 
     @Test
@@ -52,7 +54,7 @@ public class PackageDtoMapperTest extends TestUtility {
                         TestUtility.PRODUCT_ALPHA, TestUtility.PRODUCT_BETA
                 ));
         aPackage.setId(1);
-        aPackage.setPrice(new BigDecimal(10.00));
+        aPackage.setPrice(1000);
 
         final PackageDto dto = PackageDtoMapper.INSTANCE.packageToDto(aPackage);
 
@@ -60,8 +62,33 @@ public class PackageDtoMapperTest extends TestUtility {
         Assert.assertEquals("Foo", dto.getName());
         Assert.assertEquals("Foo description", dto.getDescription());
         Assert.assertEquals(new ArrayList<>(Arrays.asList(TestUtility.PRODUCT_DTO_ALPHA, TestUtility.PRODUCT_DTO_BETA)), dto.getProductDtos());
-        Assert.assertEquals(new BigDecimal(10.00), dto.getPrice());
+        Assert.assertEquals(new BigDecimal("10.00"), dto.getPrice());
 
     }
 
+    @Test
+    public void when_mappingPackagePriceToPackageDto_expectSameAsShiftingBigDecimalCents() {
+        // fixed seed so failures can be reproduced
+        final Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            final long cents = i < 1000 ? i : Math.abs(random.nextLong() / 100);
+            final Package aPackage = new Package("Foo", "Foo description", new ArrayList<>());
+            aPackage.setPrice(cents);
+
+            final PackageDto dto = PackageDtoMapper.INSTANCE.packageToDto(aPackage);
+
+            Assert.assertThat(new BigDecimal(cents).movePointLeft(2), Matchers.comparesEqualTo(dto.getPrice()));
+            Assert.assertEquals(2, dto.getPrice().scale());
+            Assert.assertEquals(cents, PackageDtoMapper.INSTANCE.dtoToPackage(dto).getPrice());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void when_mappingPackageDtoPriceTooLarge_expectIllegalArgument() {
+        final PackageDto dto = new PackageDto();
+        dto.setPrice(new BigDecimal("1e30"));
+
+        PackageDtoMapper.INSTANCE.dtoToPackage(dto);
+    }
+
 }
@@ -0,0 +1,48 @@
+package com.kerby.example.benchmarks;
+
+import com.kerby.example.database.models.PackageEntity;
+import com.kerby.example.database.models.ProductEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reproducible test data shared by the benchmarks
+ */
+final class BenchmarkData {
+
+    private BenchmarkData() {}
+
+    /**
+     * @param random - seeded source of prices
+     * @param productCount - number of products
+     * @return unsaved products with random prices between 1 cent and $1000
+     */
+    static List<ProductEntity> createProductEntities(Random random, int productCount) {
+        final List<ProductEntity> result = new ArrayList<>(productCount);
+        for (int i = 0; i < productCount; i++) {
+            result.add(new ProductEntity("product_" + i, "Product " + i, 1 + random.nextInt(100000)));
+        }
+
+        return result;
+    }
+
+    /**
+     * @param productEntities - products of the package, in order
+     * @return unsaved package with the products, usdTotal set
+     */
+    static PackageEntity createPackageEntity(int index, List<ProductEntity> productEntities) {
+        final List<String> productIds = new ArrayList<>(productEntities.size());
+        long usdTotal = 0;
+        for (ProductEntity productEntity : productEntities) {
+            productIds.add(productEntity.getId());
+            usdTotal += productEntity.getUsdPrice();
+        }
+        final PackageEntity result = new PackageEntity("Package " + index, "Package description " + index, productIds);
+        result.setUsdTotal(usdTotal);
+
+        return result;
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.kerby.example.benchmarks;
+
+import com.kerby.example.currency.exceptions.CurrencyConversionException;
+import com.kerby.example.currency.models.CurrencyCode;
+import com.kerby.example.currency.service.CurrencyService;
+import com.kerby.example.currency.service.StubFixerCurrencyService;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converting USD amounts to another currency against cached exchange rates, BigDecimal and long cents paths
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CurrencyConversionBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"GBP", "IDR"})
+    private CurrencyCode currencyCode;
+
+    private CurrencyService currencyService;
+    private BigDecimal usdAmount;
+    private long[] usdCents;
+    private List<BigDecimal> usdAmounts;
+
+    @Setup
+    public void setup() throws CurrencyConversionException {
+        this.currencyService = new StubFixerCurrencyService();
+
+        final Random random = new Random(42);
+        this.usdCents = new long[BATCH_SIZE];
+        this.usdAmounts = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            this.usdCents[i] = 1 + random.nextInt(10000000);
+            this.usdAmounts.add(BigDecimal.valueOf(this.usdCents[i], 2));
+        }
+        this.usdAmount = this.usdAmounts.get(0);
+
+        // load the rates so only conversion is measured
+        this.currencyService.convertCentsFromUSD(this.currencyCode, this.usdCents);
+    }
+
+    @Benchmark
+    public BigDecimal convertFromUSD() throws CurrencyConversionException {
+        return this.currencyService.convertFromUSD(this.currencyCode, this.usdAmount);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<BigDecimal> convertAllFromUSD() throws CurrencyConversionException {
+        return this.currencyService.convertAllFromUSD(this.currencyCode, this.usdAmounts);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long[] convertCentsFromUSD() throws CurrencyConversionException {
+        return this.currencyService.convertCentsFromUSD(this.currencyCode, this.usdCents);
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.kerby.example.benchmarks;
+
+import ch.qos.logback.core.OutputStreamAppender;
+
+import java.io.OutputStream;
+
+/**
+ * Formats and encodes log events like a console or file appender would, then throws the bytes away.
+ * Enabled log lines then cost what they would in production without flooding the benchmark output.
+ */
+public class DiscardingAppender<E> extends OutputStreamAppender<E> {
+
+    @Override
+    public void start() {
+        setOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+        super.start();
+    }
+
+}
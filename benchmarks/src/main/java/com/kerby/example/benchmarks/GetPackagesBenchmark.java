@@ -0,0 +1,116 @@
+package com.kerby.example.benchmarks;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.kerby.example.currency.service.CurrencyService;
+import com.kerby.example.currency.service.StubFixerCurrencyService;
+import com.kerby.example.database.DatabaseConfig;
+import com.kerby.example.database.models.PackageEntity;
+import com.kerby.example.database.models.ProductEntity;
+import com.kerby.example.database.repositories.PackageRepository;
+import com.kerby.example.database.repositories.ProductRepository;
+import com.kerby.example.packages.PackageConfig;
+import com.kerby.example.packages.exceptions.PackageServiceException;
+import com.kerby.example.packages.models.PackagePage;
+import com.kerby.example.packages.service.PackageService;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.Banner;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end reads of a page of packages through PackageService, against a seeded in-memory H2 database and
+ * stubbed exchange rates.
+ *
+ * Run with -prof gc to see the garbage created per page, including by application logging at the given level.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GetPackagesBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+    private static final int PRODUCTS_PER_PACKAGE = 10;
+    // products are shared between packages, so each is in around 20 packages
+    private static final int PRODUCT_COUNT = 500;
+
+    @Param({"1000"})
+    private int packageCount;
+
+    // blank for USD
+    @Param({"", "GBP"})
+    private String currency;
+
+    // level of application loggers, WARN leaves INFO and DEBUG lines disabled
+    @Param({"WARN", "INFO"})
+    private String logLevel;
+
+    private ConfigurableApplicationContext context;
+    private PackageService packageService;
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @Import({PackageConfig.class, DatabaseConfig.class})
+    static class BenchmarkConfig {
+
+        @Bean
+        public CurrencyService currencyService() {
+            return new StubFixerCurrencyService();
+        }
+
+    }
+
+    @Setup
+    public void setup() {
+        ((Logger) LoggerFactory.getLogger("com.kerby.example")).setLevel(Level.toLevel(this.logLevel));
+        this.context = new SpringApplicationBuilder(BenchmarkConfig.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .logStartupInfo(false)
+                .run();
+        this.packageService = this.context.getBean(PackageService.class);
+
+        final Random random = new Random(42);
+        final List<ProductEntity> productEntities = BenchmarkData.createProductEntities(random, PRODUCT_COUNT);
+        final List<PackageEntity> packageEntities = new ArrayList<>(this.packageCount);
+        for (int i = 0; i < this.packageCount; i++) {
+            final List<ProductEntity> products = new ArrayList<>(PRODUCTS_PER_PACKAGE);
+            for (int j = 0; j < PRODUCTS_PER_PACKAGE; j++) {
+                products.add(productEntities.get(random.nextInt(PRODUCT_COUNT)));
+            }
+            packageEntities.add(BenchmarkData.createPackageEntity(i, products));
+        }
+        this.context.getBean(ProductRepository.class).saveAll(productEntities);
+        this.context.getBean(PackageRepository.class).saveAll(packageEntities);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.context.close();
+    }
+
+    @Benchmark
+    public PackagePage getPackages() throws PackageServiceException {
+        return this.packageService.getPackages(this.currency, null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public PackagePage getPackageSummaries() throws PackageServiceException {
+        return this.packageService.getPackageSummaries(this.currency, null, PAGE_SIZE);
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.kerby.example.benchmarks;
+
+import com.kerby.example.api.mapping.PackageDtoMapper;
+import com.kerby.example.api.models.dtos.PackageDto;
+import com.kerby.example.database.models.PackageEntity;
+import com.kerby.example.database.models.ProductEntity;
+import com.kerby.example.packages.mapping.PackageMapper;
+import com.kerby.example.packages.models.Package;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping a package from the repository entity, to the service model, to the API DTO
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PackageMappingBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int productCount;
+
+    private List<ProductEntity> productEntities;
+    // as looked up from ProductCatalogue
+    private Map<String, ProductEntity> productEntitiesById;
+    private PackageEntity packageEntity;
+    private Package aPackage;
+
+    @Setup
+    public void setup() {
+        this.productEntities = BenchmarkData.createProductEntities(new Random(42), this.productCount);
+        this.productEntitiesById = new HashMap<>();
+        for (ProductEntity productEntity : this.productEntities) {
+            this.productEntitiesById.put(productEntity.getId(), productEntity);
+        }
+        this.packageEntity = BenchmarkData.createPackageEntity(1, this.productEntities);
+        this.packageEntity.setId(1);
+        this.aPackage = PackageMapper.INSTANCE.entityToPackage(this.packageEntity, this.productEntitiesById);
+    }
+
+    @Benchmark
+    public Package entityToPackage() {
+        return PackageMapper.INSTANCE.entityToPackage(this.packageEntity, this.productEntitiesById);
+    }
+
+    @Benchmark
+    public PackageDto packageToDto() {
+        return PackageDtoMapper.INSTANCE.packageToDto(this.aPackage);
+    }
+
+    @Benchmark
+    public PackageDto entityToDto() {
+        return PackageDtoMapper.INSTANCE.packageToDto(PackageMapper.INSTANCE.entityToPackage(this.packageEntity, this.productEntitiesById));
+    }
+
+    @Benchmark
+    public long sumUsdPrices() {
+        return PackageMapper.INSTANCE.sumUsdPrices(this.productEntities);
+    }
+
+}
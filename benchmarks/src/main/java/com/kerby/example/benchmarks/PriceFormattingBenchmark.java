@@ -0,0 +1,43 @@
+package com.kerby.example.benchmarks;
+
+import com.kerby.example.api.mapping.PackageDtoMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shifting a price from cents to dollars for the API response.
+ *
+ * PackageServiceImpl.shiftCurrencyDenomination moved the point of a BigDecimal price; prices are now long cents
+ * converted once at the DTO boundary. The BigDecimal shift is kept here as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PriceFormattingBenchmark {
+
+    @Param({"99", "123456789"})
+    private long cents;
+
+    private BigDecimal centAmount;
+
+    @Setup
+    public void setup() {
+        this.centAmount = BigDecimal.valueOf(this.cents);
+    }
+
+    @Benchmark
+    public BigDecimal bigDecimalShift() {
+        return this.centAmount.intValue() > 0 ? this.centAmount.movePointLeft(2) : this.centAmount;
+    }
+
+    @Benchmark
+    public BigDecimal centsToDecimal() {
+        return PackageDtoMapper.INSTANCE.centsToDecimal(this.cents);
+    }
+
+}
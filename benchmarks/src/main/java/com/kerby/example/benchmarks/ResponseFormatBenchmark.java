@@ -0,0 +1,125 @@
+package com.kerby.example.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.kerby.example.api.MessageConverterConfig;
+import com.kerby.example.api.mapping.PackageDtoMapper;
+import com.kerby.example.api.models.dtos.PackageDto;
+import com.kerby.example.api.models.requests.PackagesRequest;
+import com.kerby.example.api.models.responses.PackagesResponse;
+import com.kerby.example.database.models.PackageEntity;
+import com.kerby.example.database.models.ProductEntity;
+import com.kerby.example.packages.mapping.PackageMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing a large page of packages in each response format, and reading the same packages back as a bulk create
+ * request. The size of the page in each format, i.e. the bytes on the wire, is reported alongside the time as the
+ * bytes counter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseFormatBenchmark {
+
+    private static final int PRODUCTS_PER_PACKAGE = 10;
+    private static final int PRODUCT_COUNT = 500;
+
+    @Param({"json", "smile", "cbor"})
+    private String format;
+
+    @Param({"1000"})
+    private int packageCount;
+
+    private PackagesResponse packagesResponse;
+    private ObjectWriter writer;
+    private ObjectReader reader;
+    private byte[] serialized;
+
+    /**
+     * Bytes of the page written or read, reported by JMH with each result
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Size {
+
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            this.bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        final Random random = new Random(42);
+        final List<ProductEntity> productEntities = BenchmarkData.createProductEntities(random, PRODUCT_COUNT);
+        final Map<String, ProductEntity> productEntitiesById = new HashMap<>();
+        for (ProductEntity productEntity : productEntities) {
+            productEntitiesById.put(productEntity.getId(), productEntity);
+        }
+        final List<PackageDto> packageDtos = new ArrayList<>(this.packageCount);
+        for (int i = 0; i < this.packageCount; i++) {
+            final List<ProductEntity> products = new ArrayList<>(PRODUCTS_PER_PACKAGE);
+            for (int j = 0; j < PRODUCTS_PER_PACKAGE; j++) {
+                products.add(productEntities.get(random.nextInt(PRODUCT_COUNT)));
+            }
+            final PackageEntity packageEntity = BenchmarkData.createPackageEntity(i, products);
+            packageEntity.setId(i + 1);
+            packageDtos.add(PackageDtoMapper.INSTANCE.packageToDto(PackageMapper.INSTANCE.entityToPackage(packageEntity, productEntitiesById)));
+        }
+        // without a cursor, so the page has the same fields as a bulk create request
+        this.packagesResponse = new PackagesResponse(packageDtos);
+
+        final ObjectMapper objectMapper = createObjectMapper(this.format);
+        this.writer = objectMapper.writerFor(PackagesResponse.class);
+        this.reader = objectMapper.readerFor(PackagesRequest.class);
+        this.serialized = this.writer.writeValueAsBytes(this.packagesResponse);
+    }
+
+    /**
+     * @return a mapper configured as the API's, from a Jackson2ObjectMapperBuilder as Spring Boot does for JSON, and
+     * with MessageConverterConfig for Smile and CBOR
+     */
+    private static ObjectMapper createObjectMapper(String format) {
+        final MessageConverterConfig messageConverterConfig = new MessageConverterConfig();
+        switch (format) {
+            case "json":
+                return new Jackson2ObjectMapperBuilder().build();
+            case "smile":
+                return messageConverterConfig.smileHttpMessageConverter(new Jackson2ObjectMapperBuilder()).getObjectMapper();
+            case "cbor":
+                return messageConverterConfig.cborHttpMessageConverter(new Jackson2ObjectMapperBuilder()).getObjectMapper();
+            default:
+                throw new IllegalArgumentException(String.format("Unknown format: [%s]", format));
+        }
+    }
+
+    @Benchmark
+    public byte[] write(Size size) throws IOException {
+        final byte[] result = this.writer.writeValueAsBytes(this.packagesResponse);
+        size.bytes = result.length;
+        return result;
+    }
+
+    @Benchmark
+    public PackagesRequest read(Size size) throws IOException {
+        size.bytes = this.serialized.length;
+        return this.reader.readValue(this.serialized);
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.kerby.example.currency.service;
+
+import com.kerby.example.currency.models.CurrencyCode;
+
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * FixerCurrencyService with the Fixer API replaced by fixed EUR rates, so benchmarks measure conversion and not the
+ * network. Lives in the same package to override the API call.
+ */
+public class StubFixerCurrencyService extends FixerCurrencyService {
+
+    public static final Map<CurrencyCode, BigDecimal> EUR_RATES;
+
+    static {
+        final Map<CurrencyCode, BigDecimal> rates = new EnumMap<>(CurrencyCode.class);
+        rates.put(CurrencyCode.EUR, BigDecimal.ONE);
+        rates.put(CurrencyCode.USD, new BigDecimal("1.145771"));
+        rates.put(CurrencyCode.GBP, new BigDecimal("0.880066"));
+        rates.put(CurrencyCode.JPY, new BigDecimal("129.419998"));
+        rates.put(CurrencyCode.IDR, new BigDecimal("16523.418753"));
+        rates.put(CurrencyCode.BTC, new BigDecimal("0.000173"));
+        EUR_RATES = rates;
+    }
+
+    private final Map<CurrencyCode, BigDecimal> eurRates;
+
+    public StubFixerCurrencyService() {
+        this(EUR_RATES);
+    }
+
+    public StubFixerCurrencyService(Map<CurrencyCode, BigDecimal> eurRates) {
+        super();
+        this.eurRates = eurRates;
+    }
+
+    @Override
+    HashMap<CurrencyCode, BigDecimal> getLatestEURExchangeRatesFromAPI() {
+        return new HashMap<>(this.eurRates);
+    }
+
+}
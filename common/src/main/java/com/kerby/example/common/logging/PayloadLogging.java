@@ -0,0 +1,15 @@
+package com.kerby.example.common.logging;
+
+/**
+ * Full request and response payloads are only ever logged to one diagnostic logger, at DEBUG.
+ *
+ * Payloads can be large and building them means calling toString on every package and product, so they are kept
+ * out of the normal INFO and DEBUG lines. Enable them for diagnostics with:
+ * logging.level.com.kerby.example.payload=DEBUG
+ */
+public final class PayloadLogging {
+
+    public static final String LOGGER_NAME = "com.kerby.example.payload";
+
+    private PayloadLogging() {}
+}
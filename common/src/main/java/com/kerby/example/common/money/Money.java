@@ -0,0 +1,118 @@
+package com.kerby.example.common.money;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Allocation free arithmetic on fixed-point amounts held as a long unscaled value with an implied scale.
+ * e.g. with a scale of 2, 12345 represents 123.45
+ *
+ * Results are rounded HALF_UP, the same as BigDecimal.setScale(scale, RoundingMode.HALF_UP), so the long and
+ * BigDecimal paths always agree. Anything that would overflow a long falls back to BigDecimal rather than losing
+ * precision.
+ */
+public final class Money {
+
+    // money is held as long cents, i.e. unscaled at 2 decimal places
+    public static final int CENTS_SCALE = 2;
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L,
+            10000000000L, 100000000000L, 1000000000000L, 10000000000000L, 100000000000000L,
+            1000000000000000L, 10000000000000000L, 100000000000000000L, 1000000000000000000L
+    };
+
+    private Money() {}
+
+    /**
+     * Adds two amounts of the same scale.
+     * @throws ArithmeticException if the result doesn't fit in a long
+     */
+    public static long add(long amount, long augend) {
+        return Math.addExact(amount, augend);
+    }
+
+    /**
+     * Converts a decimal amount to long cents, rounding HALF_UP to 2 decimal places.
+     * e.g. 9.99 is 999 cents
+     *
+     * @param amount - decimal amount, e.g. dollars
+     * @return amount in cents
+     * @throws ArithmeticException if the result doesn't fit in a long
+     */
+    public static long toCents(BigDecimal amount) {
+        return amount.setScale(CENTS_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Converts long cents to a decimal amount, the point moved 2 places left.
+     * e.g. 999 cents is 9.99
+     *
+     * This should only be needed at the edges, e.g. for presenting amounts to clients.
+     *
+     * @param cents - amount in cents
+     * @return decimal amount with a scale of 2
+     */
+    public static BigDecimal toDecimal(long cents) {
+        return BigDecimal.valueOf(cents, CENTS_SCALE);
+    }
+
+    /**
+     * Multiplies an amount by a rate, keeping the scale of the amount.
+     *
+     * @param amount - unscaled amount
+     * @param unscaledRate - unscaled rate
+     * @param rateScale - scale of the rate, between 0 and 18
+     * @return unscaled result at the scale of the amount, rounded HALF_UP
+     * @throws ArithmeticException if the result doesn't fit in a long
+     */
+    public static long multiply(long amount, long unscaledRate, int rateScale) {
+        if (rateScale < 0 || rateScale >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException(String.format("Rate scale: [%d] is not supported", rateScale));
+        }
+
+        try {
+            return multiplyExact(amount, unscaledRate, rateScale);
+        } catch (ArithmeticException e) {
+            // only very large amounts or rates get here
+            return BigDecimal.valueOf(amount)
+                    .multiply(BigDecimal.valueOf(unscaledRate, rateScale))
+                    .setScale(0, RoundingMode.HALF_UP)
+                    .longValueExact();
+        }
+    }
+
+    /**
+     * (amount * unscaledRate) / 10^rateScale without the intermediate product overflowing.
+     *
+     * The rate is split into whole and fractional parts, and the fraction again into high and low halves
+     * so each partial product stays within a long. Remainders are carried down so rounding sees the exact value.
+     */
+    private static long multiplyExact(long amount, long unscaledRate, int rateScale) {
+        final long scale = POWERS_OF_TEN[rateScale];
+        final long lowScale = POWERS_OF_TEN[(rateScale + 1) / 2];
+        final long highScale = POWERS_OF_TEN[rateScale / 2];
+
+        final long whole = unscaledRate / scale;
+        final long fraction = unscaledRate % scale;
+        final long fractionHigh = fraction / lowScale;
+        final long fractionLow = fraction % lowScale;
+
+        // amount * fraction = (amount * fractionHigh + carry) * lowScale + lowRemainder
+        final long low = Math.multiplyExact(amount, fractionLow);
+        final long high = Math.addExact(Math.multiplyExact(amount, fractionHigh), low / lowScale);
+        final long lowRemainder = low % lowScale;
+
+        // amount * fraction / scale = high / highScale + (highRemainder * lowScale + lowRemainder) / scale
+        final long quotient = high / highScale;
+        final long remainder = (high % highScale) * lowScale + lowRemainder;
+
+        long result = Math.addExact(Math.multiplyExact(amount, whole), quotient);
+        // remainder has the same sign as the amount, round half away from zero
+        if (Math.abs(remainder) * 2 >= scale) {
+            result = Math.addExact(result, Long.signum(remainder));
+        }
+
+        return result;
+    }
+}
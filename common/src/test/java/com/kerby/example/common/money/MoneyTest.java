@@ -0,0 +1,75 @@
+package com.kerby.example.common.money;
+
+import org.hamcrest.Matchers;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+public class MoneyTest {
+
+    // fixed seed so failures can be reproduced
+    private final Random random = new Random(42);
+
+    @Test
+    public void when_convertingCentsToDecimal_expectCorrectResults() {
+        Assert.assertThat(new BigDecimal(0), Matchers.comparesEqualTo(Money.toDecimal(0)));
+        Assert.assertThat(new BigDecimal("0.01"), Matchers.comparesEqualTo(Money.toDecimal(1)));
+        Assert.assertThat(new BigDecimal("0.10"), Matchers.comparesEqualTo(Money.toDecimal(10)));
+        Assert.assertThat(new BigDecimal("1.00"), Matchers.comparesEqualTo(Money.toDecimal(100)));
+        Assert.assertThat(new BigDecimal("10.00"), Matchers.comparesEqualTo(Money.toDecimal(1000)));
+        Assert.assertThat(new BigDecimal("100.00"), Matchers.comparesEqualTo(Money.toDecimal(10000)));
+        Assert.assertThat(new BigDecimal("1000.00"), Matchers.comparesEqualTo(Money.toDecimal(100000)));
+    }
+
+    @Test
+    public void when_convertingDecimalToCents_expectSameAsBigDecimalRounding() {
+        for (int i = 0; i < 10000; i++) {
+            final BigDecimal amount = BigDecimal.valueOf(random.nextLong() / 1000, random.nextInt(6));
+
+            final long cents = Money.toCents(amount);
+
+            Assert.assertThat(String.format("Converting: [%s] to cents", amount),
+                    amount.setScale(2, RoundingMode.HALF_UP), Matchers.comparesEqualTo(Money.toDecimal(cents)));
+        }
+        Assert.assertEquals(1, Money.toCents(new BigDecimal("0.005")));
+        Assert.assertEquals(-1, Money.toCents(new BigDecimal("-0.005")));
+        Assert.assertEquals(0, Money.toCents(new BigDecimal("0.00499")));
+    }
+
+    @Test
+    public void when_addingCents_expectSameAsBigDecimalAddition() {
+        for (int i = 0; i < 10000; i++) {
+            final long amount = random.nextLong() / 2;
+            final long augend = random.nextLong() / 2;
+
+            Assert.assertEquals(BigDecimal.valueOf(amount).add(BigDecimal.valueOf(augend)).longValueExact(),
+                    Money.add(amount, augend));
+        }
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void when_addingCentsOverflows_expectException() {
+        Money.add(Long.MAX_VALUE, 1);
+    }
+
+    @Test
+    public void when_multiplyingCentsByRate_expectSameAsBigDecimalMultiplication() {
+        for (int i = 0; i < 10000; i++) {
+            // results within a long, rates of up to 10^8
+            final long cents = random.nextInt();
+            final int rateScale = 6 + random.nextInt(5);
+            final long unscaledRate = Math.abs(random.nextLong() % 100000000000000L);
+
+            final BigDecimal expected = Money.toDecimal(cents)
+                    .multiply(BigDecimal.valueOf(unscaledRate, rateScale))
+                    .setScale(2, RoundingMode.HALF_UP);
+
+            Assert.assertEquals(String.format("Multiplying: [%d] by: [%d] scale: [%d]", cents, unscaledRate, rateScale),
+                    expected.unscaledValue().longValueExact(), Money.multiply(cents, unscaledRate, rateScale));
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.kerby.example.database.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+
+/**
+ * Times every call to PackageRepository, tagged with the repository method and any exception thrown.
+ *
+ * Spring Data repositories are generated proxies so @Timed can't be put on their methods, the aspect wraps the
+ * proxy instead. Register it as a bean alongside an auto proxy creator, e.g. @EnableAspectJAutoProxy.
+ */
+@Aspect
+public class RepositoryMetricsAspect {
+
+    public static final String METRIC_NAME = "packages.repository";
+
+    private final MeterRegistry meterRegistry;
+
+    public RepositoryMetricsAspect(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("execution(* com.kerby.example.database.repositories.PackageRepository+.*(..))")
+    public Object timeRepositoryCall(ProceedingJoinPoint joinPoint) throws Throwable {
+        final Timer.Sample sample = Timer.start(this.meterRegistry);
+        String exception = "none";
+
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder(METRIC_NAME)
+                    .description("Time taken by PackageRepository calls")
+                    .tag("method", joinPoint.getSignature().getName())
+                    .tag("exception", exception)
+                    .register(this.meterRegistry));
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.kerby.example.database.models;
 
+import org.hibernate.annotations.BatchSize;
+
 import javax.persistence.*;
 import java.util.ArrayList;
 import java.util.List;
@@ -7,17 +9,40 @@ import java.util.List;
 @Entity
 public class PackageEntity {
 
+    // ids are allocated 50 at a time from a pooled sequence, so inserts aren't each preceded by a call for an id and
+    // can be sent in JDBC batches
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "package_id_generator")
+    @SequenceGenerator(name = "package_id_generator", sequenceName = "package_id_sequence", allocationSize = 50)
     private int id;
     @Column
     private String name;
     @Column
     private String description;
-
+    // sum of product prices in whole USD cents, kept in sync by the service so reads need not load the products.
+    // Summed when the products of the package are set, then has the change added when the price of one changes
+    @Column(nullable = false)
+    private long usdTotal;
+    // incremented on every update, including changes to products only, so it identifies the state of a package.
+    // Updates made from a stale copy of the package fail rather than overwrite a newer one
+    @Version
+    private long version;
+    // time in millis the package was created or last updated
+    @Column(nullable = false)
+    private long lastModified;
+
+    // ids of the products in the package, in order. Products are shared between packages and looked up by id, see
+    // ProductEntity. Indexed on product so the packages with a product can be found when it changes.
+    // Lazy, so when not fetch joined load the ids of up to 100 packages per query rather than one query each.
+    // Indexed by position so a change to one product updates its row only, rather than every row being deleted and
+    // re-inserted as for an unordered collection
     @ElementCollection
-    @Embedded
-    private List<ProductEntity> productEntities = new ArrayList<>();
+    @CollectionTable(name = "package_product", joinColumns = @JoinColumn(name = "package_id"),
+            indexes = @Index(name = "package_product_product_id", columnList = "product_id"))
+    @Column(name = "product_id", nullable = false)
+    @OrderColumn(name = "product_index")
+    @BatchSize(size = 100)
+    private List<String> productIds = new ArrayList<>();
 
     public int getId() {
         return id;
@@ -43,20 +68,70 @@ public class PackageEntity {
         this.description = description;
     }
 
-    public List<ProductEntity> getProductEntities() {
-        return productEntities;
+    public long getUsdTotal() {
+        return usdTotal;
+    }
+
+    public void setUsdTotal(long usdTotal) {
+        this.usdTotal = usdTotal;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public List<String> getProductIds() {
+        return productIds;
     }
 
-    public void setProductEntities(List<ProductEntity> productEntities) {
-        this.productEntities = productEntities;
+    public void setProductIds(List<String> productIds) {
+        this.productIds = productIds;
+    }
+
+    /**
+     * Changes the products of a managed package in place so only the rows which differ are written: positions
+     * with a different product are updated, products past the end inserted and any left over deleted.
+     * Setting a new list instead writes every product id again.
+     * @param updatedProductIds - ids of the products the package should have, in order
+     */
+    public void updateProductIds(List<String> updatedProductIds) {
+        final int retained = Math.min(this.productIds.size(), updatedProductIds.size());
+        for (int i = 0; i < retained; i++) {
+            if (!this.productIds.get(i).equals(updatedProductIds.get(i))) {
+                this.productIds.set(i, updatedProductIds.get(i));
+            }
+        }
+        // remove from the end so the positions of those kept don't change
+        for (int i = this.productIds.size() - 1; i >= retained; i--) {
+            this.productIds.remove(i);
+        }
+        this.productIds.addAll(updatedProductIds.subList(retained, updatedProductIds.size()));
     }
 
     public PackageEntity() {}
 
-    public PackageEntity(String name, String description, List<ProductEntity> productEntities) {
+    public PackageEntity(String name, String description, List<String> productIds) {
         this.name = name;
         this.description = description;
-        this.productEntities = productEntities;
+        this.productIds = productIds;
+    }
+
+    @PrePersist
+    @PreUpdate
+    void onSave() {
+        this.lastModified = System.currentTimeMillis();
     }
 
     @Override
@@ -65,7 +140,10 @@ public class PackageEntity {
                 "id=" + id +
                 ", name='" + name + '\'' +
                 ", description='" + description + '\'' +
-                ", productEntities=" + productEntities +
+                ", usdTotal=" + usdTotal +
+                ", version=" + version +
+                ", lastModified=" + lastModified +
+                ", productIds=" + productIds +
                 '}';
     }
 
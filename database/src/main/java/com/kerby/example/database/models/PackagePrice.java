@@ -0,0 +1,42 @@
+package com.kerby.example.database.models;
+
+/**
+ * Projection of a PackageEntity with only its stored total and version, for keeping an index of packages by price
+ * without loading the packages.
+ */
+public class PackagePrice {
+
+    private final int id;
+    private final long usdTotal;
+    private final long version;
+
+    public PackagePrice(int id, long usdTotal, long version) {
+        this.id = id;
+        this.usdTotal = usdTotal;
+        this.version = version;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return sum of product prices in whole USD cents
+     */
+    public long getUsdTotal() {
+        return usdTotal;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return "PackagePrice{" +
+                "id=" + id +
+                ", usdTotal=" + usdTotal +
+                ", version=" + version +
+                '}';
+    }
+}
@@ -0,0 +1,48 @@
+package com.kerby.example.database.models;
+
+/**
+ * Projection of a PackageEntity without its products, for list views which only need the name and price.
+ * Queried without touching the product table.
+ *
+ * A class constructed in the query rather than a Spring Data interface projection, which proxies every row.
+ */
+public class PackageSummary {
+
+    private final int id;
+    private final String name;
+    private final String description;
+    private final long usdTotal;
+
+    public PackageSummary(int id, String name, String description, long usdTotal) {
+        this.id = id;
+        this.name = name;
+        this.description = description;
+        this.usdTotal = usdTotal;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public long getUsdTotal() {
+        return usdTotal;
+    }
+
+    @Override
+    public String toString() {
+        return "PackageSummary{" +
+                "id=" + id +
+                ", name='" + name + '\'' +
+                ", description='" + description + '\'' +
+                ", usdTotal=" + usdTotal +
+                '}';
+    }
+}
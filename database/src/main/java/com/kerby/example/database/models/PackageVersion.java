@@ -0,0 +1,39 @@
+package com.kerby.example.database.models;
+
+/**
+ * Projection of a PackageEntity with only what identifies its current state, for checking whether a client's copy
+ * is still current without loading the package.
+ */
+public class PackageVersion {
+
+    private final int id;
+    private final long version;
+    private final long lastModified;
+
+    public PackageVersion(int id, long version, long lastModified) {
+        this.id = id;
+        this.version = version;
+        this.lastModified = lastModified;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public String toString() {
+        return "PackageVersion{" +
+                "id=" + id +
+                ", version=" + version +
+                ", lastModified=" + lastModified +
+                '}';
+    }
+}
@@ -1,33 +1,35 @@
 package com.kerby.example.database.models;
 
 import javax.persistence.Column;
-import javax.persistence.Embeddable;
-import java.math.BigDecimal;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Version;
+import java.util.Objects;
 
 /**
  * Representation of the Product to store in H2.
  *
- * TODO This would make more sense to be a Entity and have a XToMany relationship with the Package.
- * The advantage of using Embedded means we don't have to worry about state management of Products unlike if they were their
- * own Entity; e.g upsert and attachment to Packages, deletion of orphans, transaction handling.
- * This means less business logic throughout services using the repositories and/or the implementation of a DAO layer.
+ * Products are a catalogue shared by every Package, each stored once however many packages reference it. Packages
+ * hold only the ids of their products, see PackageEntity, so a change to the name or price of a product writes its
+ * one row rather than a row for every package. The packages referencing it then have the change in price added to
+ * their stored total in a single statement, see PackageRepository#addToUsdTotalByProductIdIn.
  *
- * The main disadvantage is we will end up with duplicate Products being created in H2 if multiple packages reference the
- * same Product. Not only is this poor for resource we would also find updates difficult. Thankfully Products cannot
- * be updated.
- *
- * Considering this is a working example with time constraints, and not production, it should suffice. The trade off is
- * sufficient.
+ * Ids are given by clients rather than generated.
  */
-@Embeddable
+@Entity
 public class ProductEntity {
 
-    @Column(nullable = false)
+    @Id
     private String id;
     @Column(nullable = false)
     private String name;
+    // whole USD cents
     @Column(nullable = false)
-    private BigDecimal usdPrice;
+    private long usdPrice;
+    // null until first saved, which is how Spring Data tells a new product from an existing one as ids are given.
+    // Concurrent changes to the same product fail rather than one being lost
+    @Version
+    private Long version;
 
     public String getId() {
         return id;
@@ -45,14 +47,22 @@ public class ProductEntity {
         this.name = name;
     }
 
-    public BigDecimal getUsdPrice() {
+    public long getUsdPrice() {
         return usdPrice;
     }
 
-    public void setUsdPrice(BigDecimal usdPrice) {
+    public void setUsdPrice(long usdPrice) {
         this.usdPrice = usdPrice;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public ProductEntity() {
     }
 
@@ -60,18 +70,34 @@ public class ProductEntity {
         this.id = id;
     }
 
-    public ProductEntity(String id, String name, BigDecimal usdPrice) {
+    public ProductEntity(String id, String name, long usdPrice) {
         this.id = id;
         this.name = name;
         this.usdPrice = usdPrice;
     }
 
+    public ProductEntity(String id, String name, long usdPrice, Long version) {
+        this(id, name, usdPrice);
+        this.version = version;
+    }
+
+    /**
+     * Unlike equals, compares the name and price rather than just the id
+     */
+    public boolean hasSameValues(ProductEntity other) {
+        return other != null
+                && Objects.equals(id, other.id)
+                && Objects.equals(name, other.name)
+                && usdPrice == other.usdPrice;
+    }
+
     @Override
     public String toString() {
         return "ProductEntity{" +
                 "id='" + id + '\'' +
                 ", name='" + name + '\'' +
                 ", usdPrice=" + usdPrice +
+                ", version=" + version +
                 '}';
     }
 
@@ -1,8 +1,26 @@
 package com.kerby.example.database.repositories;
 
 import com.kerby.example.database.models.PackageEntity;
+import com.kerby.example.database.models.PackagePrice;
+import com.kerby.example.database.models.PackageSummary;
+import com.kerby.example.database.models.PackageVersion;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * A simple use of Spring Boot JPA to get CRUD access to an embedded H2 database to keep track of Packages.
@@ -11,5 +29,183 @@ import org.springframework.stereotype.Repository;
  * Due to Spring IoC this is really a DAO service
  */
 @Repository
-public interface PackageRepository extends CrudRepository<PackageEntity, Integer> {}
+public interface PackageRepository extends CrudRepository<PackageEntity, Integer>, PackageRepositoryCustom {
+
+    /**
+     * Product ids are loaded in the same query as the package
+     */
+    @Override
+    @EntityGraph(attributePaths = "productIds")
+    Optional<PackageEntity> findById(Integer id);
+
+    /**
+     * Keyset pagination on id; seeking past the last id seen stays cheap however deep into the table a client walks,
+     * unlike an offset which has to skip every row before it.
+     *
+     * Only ids are paged as limiting a query which fetch joins a collection would be done in memory.
+     * Load the packages with findAllWithProductsByIdIn.
+     * @param id - exclusive lower bound, the id of the last package already seen or 0 for the first page
+     * @param pageable - size of the page, the page number should always be 0
+     * @return package ids in order
+     */
+    @Query("select p.id from PackageEntity p where p.id > :id order by p.id")
+    List<Integer> findIdsByIdGreaterThan(@Param("id") int id, Pageable pageable);
+
+    /**
+     * Keyset pagination of package summaries, only the package table is read
+     * @param id - exclusive lower bound, the id of the last package already seen or 0 for the first page
+     * @param pageable - size of the page, the page number should always be 0
+     * @return package summaries in id order
+     */
+    @Query("select new com.kerby.example.database.models.PackageSummary(p.id, p.name, p.description, p.usdTotal) " +
+            "from PackageEntity p where p.id > :id order by p.id")
+    List<PackageSummary> findSummariesByIdGreaterThan(@Param("id") int id, Pageable pageable);
+
+    /**
+     * Looks up summaries of packages found some other way, e.g. by price or search. Only the package table is read
+     * @param ids - ids of the packages
+     * @return summaries of the packages which exist, in id order
+     */
+    @Query("select new com.kerby.example.database.models.PackageSummary(p.id, p.name, p.description, p.usdTotal) " +
+            "from PackageEntity p where p.id in :ids order by p.id")
+    List<PackageSummary> findSummariesByIdIn(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Loads a package to update, locked until the transaction ends, so its version can't change once checked.
+     * Lock the products it is updated with first, as saving products locks them before the packages with them.
+     * @param id - id of the package
+     * @return managed package, or empty if it doesn't exist
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select p from PackageEntity p where p.id = :id")
+    Optional<PackageEntity> findLockedById(@Param("id") int id);
+
+    /**
+     * Looks up the version of a package, only the package table is read
+     * @param id - id of the package
+     * @return version of the package, or empty if it doesn't exist
+     */
+    @Query("select new com.kerby.example.database.models.PackageVersion(p.id, p.version, p.lastModified) " +
+            "from PackageEntity p where p.id = :id")
+    Optional<PackageVersion> findVersionById(@Param("id") int id);
+
+    /**
+     * Keyset pagination of package versions, matching the pages of findIdsByIdGreaterThan. Only the package table is read
+     * @param id - exclusive lower bound, the id of the last package already seen or 0 for the first page
+     * @param pageable - size of the page, the page number should always be 0
+     * @return package versions in id order
+     */
+    @Query("select new com.kerby.example.database.models.PackageVersion(p.id, p.version, p.lastModified) " +
+            "from PackageEntity p where p.id > :id order by p.id")
+    List<PackageVersion> findVersionsByIdGreaterThan(@Param("id") int id, Pageable pageable);
+
+    /**
+     * Looks up the versions of a page of packages found some other way, e.g. by price. Only the package table is read
+     * @param ids - ids of the packages
+     * @return versions of the packages which exist, in id order
+     */
+    @Query("select new com.kerby.example.database.models.PackageVersion(p.id, p.version, p.lastModified) " +
+            "from PackageEntity p where p.id in :ids order by p.id")
+    List<PackageVersion> findVersionsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Streams the stored total of every package, only the package table is read. Must be called in a transaction
+     * and the stream closed.
+     */
+    @QueryHints(value = {
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true")
+    })
+    @Query("select new com.kerby.example.database.models.PackagePrice(p.id, p.usdTotal, p.version) from PackageEntity p")
+    Stream<PackagePrice> streamAllPrices();
+
+    /**
+     * @param productIds - ids of products
+     * @return stored total of every package with any of the products
+     */
+    @Query("select new com.kerby.example.database.models.PackagePrice(p.id, p.usdTotal, p.version) from PackageEntity p " +
+            "where p.id in (select pp.id from PackageEntity pp join pp.productIds productId where productId in :productIds)")
+    List<PackagePrice> findPricesByProductIdIn(@Param("productIds") Collection<String> productIds);
+
+    /**
+     * Loads packages and the ids of their products in a single query
+     * @param ids - ids of packages to load
+     * @return packages in id order
+     */
+    @Query("select distinct p from PackageEntity p left join fetch p.productIds where p.id in :ids order by p.id")
+    List<PackageEntity> findAllWithProductsByIdIn(@Param("ids") Collection<Integer> ids);
+
+    /**
+     * Loads a package and the ids of its products in a single query, e.g. to change it in place within a transaction
+     * @param id - id of the package
+     * @return the package, or empty if it doesn't exist
+     */
+    @Query("select distinct p from PackageEntity p left join fetch p.productIds where p.id = :id")
+    Optional<PackageEntity> findWithProductsById(@Param("id") int id);
+
+    /**
+     * Loads every package and the ids of their products in a single query
+     * @return packages in id order
+     */
+    @Query("select distinct p from PackageEntity p left join fetch p.productIds order by p.id")
+    List<PackageEntity> findAllWithProducts();
+
+    /**
+     * Reads every package through a forward-only cursor, fetching rows from the database in batches as the stream
+     * is consumed rather than all up front. Must be called in a transaction and the stream closed after use.
+     * Product ids are fetch joined; as rows are ordered by package Hibernate gathers the rows of each package
+     * before it is returned.
+     * Packages read stay in the persistence context, detach them once used to keep memory flat.
+     * @return packages in id order
+     */
+    @QueryHints(value = {
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "100"),
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true")
+    })
+    @Query("select p from PackageEntity p left join fetch p.productIds order by p.id")
+    Stream<PackageEntity> streamAll();
+
+    /**
+     * Brings every package with any of the products up to date after their price changes by the same amount, in a
+     * single statement whatever the number of packages. The change is added to the usdTotal once for each time the
+     * package has one of the products, rather than the total being summed again from every product of the package.
+     * As what the package renders to has changed it gets a new version and last modified time, so this is also used
+     * with a change of 0 for products whose name alone changed.
+     *
+     * The persistence context is cleared after, as any packages in it may now be stale.
+     * @param productIds - ids of the changed products
+     * @param usdPriceChange - new price less old price of each product in whole USD cents
+     * @param lastModified - time in millis of the change
+     * @return number of packages updated
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query(nativeQuery = true, value = "update package_entity p " +
+            "set usd_total = usd_total + :usdPriceChange * (select count(*) from package_product pp " +
+            "where pp.package_id = p.id and pp.product_id in :productIds), " +
+            "version = version + 1, last_modified = :lastModified " +
+            "where p.id in (select pp.package_id from package_product pp where pp.product_id in :productIds)")
+    int addToUsdTotalByProductIdIn(@Param("productIds") Collection<String> productIds,
+                                   @Param("usdPriceChange") long usdPriceChange,
+                                   @Param("lastModified") long lastModified);
+
+    /**
+     * Corrects the stored total of a package found to differ from the sum of its products, unless the package has
+     * changed since, when the total it was checked against may no longer apply.
+     * @param id - id of the package
+     * @param version - version of the package the total was checked at
+     * @param usdTotal - sum of the prices of its products in whole USD cents
+     * @param lastModified - time in millis of the correction
+     * @return 1 if corrected, 0 if the package has changed or been deleted
+     */
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update PackageEntity p set p.usdTotal = :usdTotal, p.version = p.version + 1, p.lastModified = :lastModified " +
+            "where p.id = :id and p.version = :version")
+    int correctUsdTotal(@Param("id") int id,
+                        @Param("version") long version,
+                        @Param("usdTotal") long usdTotal,
+                        @Param("lastModified") long lastModified);
+
+}
 
@@ -0,0 +1,34 @@
+package com.kerby.example.database.repositories;
+
+import com.kerby.example.database.models.PackageEntity;
+
+import java.util.List;
+
+/**
+ * Repository operations Spring Data can't derive, implemented in PackageRepositoryImpl
+ */
+public interface PackageRepositoryCustom {
+
+    /**
+     * Removes a package from the persistence context so it can be garbage collected, e.g. while streaming.
+     * Any changes to the package will no longer be saved.
+     * @param packageEntity - package to detach
+     */
+    void detach(PackageEntity packageEntity);
+
+    /**
+     * Writes changes to managed packages now rather than when the transaction commits, so a stale version or broken
+     * constraint fails the caller rather than the commit.
+     */
+    void flush();
+
+    /**
+     * Inserts new packages and their products in JDBC batches. The persistence context is flushed and cleared after
+     * every batch so memory stays flat however many packages there are. All are inserted in one transaction, joining
+     * the caller's if there is one. Packages are detached once inserted, with their ids set.
+     * @param packageEntities - new packages to insert
+     * @return the packages inserted
+     */
+    List<PackageEntity> insertAll(List<PackageEntity> packageEntities);
+
+}
@@ -0,0 +1,49 @@
+package com.kerby.example.database.repositories;
+
+import com.kerby.example.database.models.PackageEntity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+
+/**
+ * Picked up by Spring Data as the implementation of PackageRepositoryCustom through the Impl suffix
+ */
+public class PackageRepositoryImpl implements PackageRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // flushing every JDBC batch sends full batches
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+    private int batchSize;
+
+    @Override
+    public void detach(PackageEntity packageEntity) {
+        this.entityManager.detach(packageEntity);
+    }
+
+    @Override
+    public void flush() {
+        this.entityManager.flush();
+    }
+
+    @Override
+    @Transactional
+    public List<PackageEntity> insertAll(List<PackageEntity> packageEntities) {
+        for (int i = 0; i < packageEntities.size(); i++) {
+            this.entityManager.persist(packageEntities.get(i));
+            if ((i + 1) % this.batchSize == 0) {
+                this.entityManager.flush();
+                this.entityManager.clear();
+            }
+        }
+        this.entityManager.flush();
+        this.entityManager.clear();
+
+        return packageEntities;
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.kerby.example.database.repositories;
+
+import com.kerby.example.database.models.ProductEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * CRUD access to the catalogue of Products shared by every Package, see ProductEntity.
+ *
+ * A JpaRepository so changed products can be flushed before the packages with them are brought up to date.
+ */
+@Repository
+public interface ProductRepository extends JpaRepository<ProductEntity, String> {
+
+    /**
+     * Loads products as new instances rather than managed entities. They are never added to the persistence
+     * context, so may be cached and shared, and reading many within a transaction doesn't grow it.
+     * Use findLockedByIdIn to load products to change.
+     * @param ids - ids of products to load
+     * @return products which exist, in no particular order
+     */
+    @Query("select new com.kerby.example.database.models.ProductEntity(p.id, p.name, p.usdPrice, p.version) " +
+            "from ProductEntity p where p.id in :ids")
+    List<ProductEntity> findUnmanagedByIdIn(@Param("ids") Collection<String> ids);
+
+    /**
+     * Loads products to save, locked until the transaction ends. A package saved with the price of a product holds
+     * it, so the product can't be repriced until the package has committed, when the price change is seen to apply to
+     * it. Locked in id order, so transactions locking some of the same products wait rather than deadlock.
+     * @param ids - ids of products to load
+     * @return managed products which exist, in id order
+     */
+    @Lock(LockModeType.PESSIMISTIC_READ)
+    @Query("select p from ProductEntity p where p.id in :ids order by p.id")
+    List<ProductEntity> findLockedByIdIn(@Param("ids") Collection<String> ids);
+
+}
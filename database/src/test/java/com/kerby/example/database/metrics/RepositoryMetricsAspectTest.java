@@ -0,0 +1,80 @@
+package com.kerby.example.database.metrics;
+
+import com.kerby.example.database.DatabaseConfig;
+import com.kerby.example.database.models.PackageEntity;
+import com.kerby.example.database.repositories.PackageRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Collections;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, classes = {PackageRepository.class})
+@Import({DatabaseConfig.class, RepositoryMetricsAspectTest.MetricsConfig.class}) // use embedded H2 repos
+@DataJpaTest // ensure they are test instances
+public class RepositoryMetricsAspectTest {
+
+    @Configuration
+    @EnableAspectJAutoProxy
+    static class MetricsConfig {
+
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        public RepositoryMetricsAspect repositoryMetricsAspect(MeterRegistry meterRegistry) {
+            return new RepositoryMetricsAspect(meterRegistry);
+        }
+
+    }
+
+    @Autowired
+    private PackageRepository packageRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void when_callingRepository_expectTimerPerMethod() {
+        this.packageRepository.save(new PackageEntity("Foo", "Foo description",
+                Collections.singletonList("alpha_id")));
+        this.packageRepository.findIdsByIdGreaterThan(0, PageRequest.of(0, 10));
+        this.packageRepository.findIdsByIdGreaterThan(0, PageRequest.of(0, 10));
+
+        final Timer saveTimer = this.meterRegistry.find(RepositoryMetricsAspect.METRIC_NAME).tag("method", "save").timer();
+        Assert.assertNotNull(saveTimer);
+        Assert.assertEquals(1, saveTimer.count());
+        final Timer findTimer = this.meterRegistry.find(RepositoryMetricsAspect.METRIC_NAME).tag("method", "findIdsByIdGreaterThan").timer();
+        Assert.assertNotNull(findTimer);
+        Assert.assertEquals(2, findTimer.count());
+    }
+
+    @Test
+    public void when_repositoryCallFails_expectExceptionTagged() {
+        try {
+            this.packageRepository.deleteById(Integer.MAX_VALUE);
+            Assert.fail("Deleting a package that doesn't exist should fail");
+        } catch (RuntimeException e) {
+            final Timer deleteTimer = this.meterRegistry.find(RepositoryMetricsAspect.METRIC_NAME)
+                    .tags("method", "deleteById", "exception", e.getClass().getSimpleName()).timer();
+            Assert.assertNotNull(deleteTimer);
+            Assert.assertEquals(1, deleteTimer.count());
+        }
+    }
+
+}
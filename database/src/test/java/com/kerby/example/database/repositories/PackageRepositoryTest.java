@@ -3,7 +3,12 @@ package com.kerby.example.database.repositories;
 import com.kerby.example.database.DatabaseConfig;
 import com.kerby.example.database.repositories.PackageRepository;
 import com.kerby.example.database.models.PackageEntity;
+import com.kerby.example.database.models.PackagePrice;
+import com.kerby.example.database.models.PackageSummary;
+import com.kerby.example.database.models.PackageVersion;
 import com.kerby.example.database.models.ProductEntity;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.*;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,15 +16,20 @@ import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
 
-import java.math.BigDecimal;
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, classes = {PackageRepository.class})
 @Import(DatabaseConfig.class) // use embedded H2 repos
 @DataJpaTest // ensure they are test instances
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true") // count statements
 public class PackageRepositoryTest {
 
     private Integer packageFooId;
@@ -34,20 +44,21 @@ public class PackageRepositoryTest {
 
     @Before
     public void beforeTest() {
-        // setup database with dummy data
+        // setup database with dummy data, products are shared by the packages
+        entityManager.persist(new ProductEntity("alpha_id", "Alpha", 100));
+        entityManager.persist(new ProductEntity("beta_id", "Beta", 150));
+        entityManager.persist(new ProductEntity("gamma_id", "Gamma", 200));
         packageFooId = (Integer) entityManager.persistAndGetId(new PackageEntity("Foo", "Foo description",
-                Collections.singletonList(
-                    new ProductEntity("alpha_id", "Alpha", new BigDecimal(100))
-                )));
+                Collections.singletonList("alpha_id")));
         packageBarId = (Integer) entityManager.persistAndGetId(new PackageEntity("Bar", "Bar description",
                 Arrays.asList(
-                    new ProductEntity("alpha_id", "Alpha", new BigDecimal(100)),
-                    new ProductEntity("beta_id", "Beta", new BigDecimal(150))
+                    "alpha_id",
+                    "beta_id"
                 )));
         packageBazId = (Integer) entityManager.persistAndGetId(new PackageEntity("Baz", "Baz description",  Arrays.asList(
-                    new ProductEntity("alpha_id", "Alpha", new BigDecimal(100)),
-                    new ProductEntity("beta_id", "Beta", new BigDecimal(150)),
-                    new ProductEntity("gamma_id", "Gamma", new BigDecimal(200))
+                    "alpha_id",
+                    "beta_id",
+                    "gamma_id"
                 )));
 
         entityManager.flush();
@@ -58,16 +69,12 @@ public class PackageRepositoryTest {
     public void when_createPackageItShouldBeAvailableForRead_expectPackage() {
         /* create and validate new package Biz */
         final PackageEntity packageBiz = new PackageEntity("Biz", "Biz description",
-                Collections.singletonList(
-                    new ProductEntity("delta_id", "Delta", new BigDecimal(100))
-                ));
+                Collections.singletonList("delta_id"));
         Assert.assertEquals(packageBiz, packageRepository.save(packageBiz));
 
         /* create and validate new package Boz */
         final PackageEntity packageBoz = new PackageEntity("Boz", "Boz description",
-                Collections.singletonList(
-                        new ProductEntity("delta_id", "Delta", new BigDecimal(100))
-                ));
+                Collections.singletonList("delta_id"));
         Assert.assertEquals(packageBoz, packageRepository.save(packageBoz));
 
         final int packageBizId = packageBiz.getId();
@@ -76,7 +83,7 @@ public class PackageRepositoryTest {
         Assert.assertEquals(packageBiz, packageRepository.findById(packageBizId).orElse(null));
         // assert details (avoiding obj equals)
         Assert.assertEquals(packageBiz.getName(), packageRepository.findById(packageBizId).get().getName());
-        Assert.assertEquals(packageBiz.getProductEntities(), packageRepository.findById(packageBizId).get().getProductEntities());
+        Assert.assertEquals(packageBiz.getProductIds(), packageRepository.findById(packageBizId).get().getProductIds());
 
         // assert number of records
         Assert.assertEquals(5, packageRepository.count());
@@ -93,14 +100,14 @@ public class PackageRepositoryTest {
         packageFoo.setName("Foo updated");
         packageFoo.setDescription("Foo description updated");
         // update products using override
-        packageFoo.setProductEntities(new ArrayList<>(Arrays.asList(
-                new ProductEntity("alpha_id", "Alpha", new BigDecimal(100)),
-                new ProductEntity("beta_id", "Beta", new BigDecimal(150))
+        packageFoo.setProductIds(new ArrayList<>(Arrays.asList(
+                "alpha_id",
+                "beta_id"
         )));
         // update products using append
-        packageFoo.getProductEntities().add(new ProductEntity("gamma_id", "Gamma", new BigDecimal(200)));
-        packageFoo.getProductEntities().add(new ProductEntity("epsilon_id", "Epsilon", new BigDecimal(250)));
-        packageFoo.getProductEntities().add(new ProductEntity("zeta_id", "Zeta", new BigDecimal(300)));
+        packageFoo.getProductIds().add("gamma_id");
+        packageFoo.getProductIds().add("epsilon_id");
+        packageFoo.getProductIds().add("zeta_id");
 
         final PackageEntity newPackageFoo = packageRepository.save(packageFoo);
         // assert object equality
@@ -109,20 +116,348 @@ public class PackageRepositoryTest {
         Assert.assertEquals("Foo updated", newPackageFoo.getName());
         Assert.assertEquals("Foo description updated", newPackageFoo.getDescription());
 
-        // assert products were set (also ensures equality on id)
-        final List<ProductEntity> assertionProductEntities = Arrays.asList(
-                new ProductEntity("alpha_id"),
-                new ProductEntity("beta_id"),
-                new ProductEntity("gamma_id"),
-                new ProductEntity("epsilon_id"),
-                new ProductEntity("zeta_id")
+        // assert products were set
+        final List<String> assertionProductIds = Arrays.asList(
+                "alpha_id",
+                "beta_id",
+                "gamma_id",
+                "epsilon_id",
+                "zeta_id"
         );
-        Assert.assertEquals(assertionProductEntities, newPackageFoo.getProductEntities());
+        Assert.assertEquals(assertionProductIds, newPackageFoo.getProductIds());
 
         // assert number of records
         Assert.assertEquals(3, packageRepository.count());
     }
 
+    @Test
+    public void when_pagingPackagesById_expectEachPackageOnceInIdOrder() {
+        // first page
+        final List<Integer> firstPage = packageRepository.findIdsByIdGreaterThan(0, PageRequest.of(0, 2));
+        Assert.assertEquals(Arrays.asList(packageFooId, packageBarId), firstPage);
+
+        // seek past the last id of the first page
+        final List<Integer> secondPage = packageRepository.findIdsByIdGreaterThan(firstPage.get(1), PageRequest.of(0, 2));
+        Assert.assertEquals(Collections.singletonList(packageBazId), secondPage);
+
+        // nothing after the last package
+        Assert.assertTrue(packageRepository.findIdsByIdGreaterThan(packageBazId, PageRequest.of(0, 2)).isEmpty());
+
+        // load the page
+        final List<PackageEntity> packageEntities = packageRepository.findAllWithProductsByIdIn(firstPage);
+        Assert.assertEquals(2, packageEntities.size());
+        Assert.assertEquals(packageFooId.intValue(), packageEntities.get(0).getId());
+        Assert.assertEquals(1, packageEntities.get(0).getProductIds().size());
+        Assert.assertEquals(packageBarId.intValue(), packageEntities.get(1).getId());
+        Assert.assertEquals(2, packageEntities.get(1).getProductIds().size());
+    }
+
+    @Test
+    public void when_listingPackageSummaries_expectStoredTotal() {
+        final PackageEntity packageBiz = new PackageEntity("Biz", "Biz description",
+                Collections.singletonList("delta_id"));
+        packageBiz.setUsdTotal(100);
+        final int packageBizId = packageRepository.save(packageBiz).getId();
+
+        final List<PackageSummary> summaries = packageRepository.findSummariesByIdGreaterThan(packageBazId, PageRequest.of(0, 10));
+
+        Assert.assertEquals(1, summaries.size());
+        Assert.assertEquals(packageBizId, summaries.get(0).getId());
+        Assert.assertEquals("Biz", summaries.get(0).getName());
+        Assert.assertEquals("Biz description", summaries.get(0).getDescription());
+        Assert.assertEquals(100, summaries.get(0).getUsdTotal());
+    }
+
+    @Test
+    public void when_findingSummariesById_expectOnlyThoseExisting() {
+        final List<PackageSummary> summaries = packageRepository.findSummariesByIdIn(Arrays.asList(packageBazId, packageFooId, -1));
+
+        Assert.assertEquals(Arrays.asList(packageFooId, packageBazId),
+                summaries.stream().map(PackageSummary::getId).collect(Collectors.toList()));
+        Assert.assertEquals("Foo", summaries.get(0).getName());
+    }
+
+    @Test
+    public void when_listingPackages_expectConstantNumberOfStatements() {
+        // enough packages for an N+1 to show
+        for (int i = 0; i < 20; i++) {
+            entityManager.persist(new PackageEntity("Package " + i, "Package description " + i, Arrays.asList(
+                    "alpha_id",
+                    "beta_id"
+            )));
+        }
+        entityManager.flush();
+        entityManager.clear();
+        final Statistics statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+
+        // single fetch join
+        statistics.clear();
+        Assert.assertEquals(23, countProducts(packageRepository.findAllWithProducts()));
+        Assert.assertEquals(1, statistics.getPrepareStatementCount());
+        entityManager.clear();
+
+        // page of ids then the packages
+        statistics.clear();
+        final List<Integer> packageIds = packageRepository.findIdsByIdGreaterThan(0, PageRequest.of(0, 10));
+        Assert.assertEquals(10, countProducts(packageRepository.findAllWithProductsByIdIn(packageIds)));
+        Assert.assertEquals(2, statistics.getPrepareStatementCount());
+        entityManager.clear();
+
+        // stream
+        statistics.clear();
+        try (Stream<PackageEntity> packageEntities = packageRepository.streamAll()) {
+            Assert.assertEquals(23, countProducts(packageEntities.collect(Collectors.toList())));
+        }
+        Assert.assertEquals(1, statistics.getPrepareStatementCount());
+        entityManager.clear();
+
+        // summaries never touch the product table
+        statistics.clear();
+        final List<PackageSummary> summaries = packageRepository.findSummariesByIdGreaterThan(0, PageRequest.of(0, 10));
+        Assert.assertEquals(10, summaries.size());
+        Assert.assertEquals(1, statistics.getPrepareStatementCount());
+        Assert.assertEquals(0, statistics.getCollectionLoadCount());
+        entityManager.clear();
+
+        // lazy collections are batch fetched
+        statistics.clear();
+        final List<PackageEntity> packageEntities = new ArrayList<>();
+        packageRepository.findAll().forEach(packageEntities::add);
+        Assert.assertEquals(23, countProducts(packageEntities));
+        Assert.assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    /**
+     * Touches every product collection so any lazy loading happens
+     * @return number of packages
+     */
+    private int countProducts(List<PackageEntity> packageEntities) {
+        for (PackageEntity packageEntity : packageEntities) {
+            Assert.assertFalse(packageEntity.getProductIds().isEmpty());
+        }
+        return packageEntities.size();
+    }
+
+    @Test
+    public void when_streamingPackages_expectAllPackagesInIdOrder() {
+        // streams need to be closed to release the cursor
+        try (Stream<PackageEntity> packageEntities = packageRepository.streamAll()) {
+            final List<PackageEntity> result = packageEntities
+                    .peek(packageEntity -> Assert.assertFalse(packageEntity.getProductIds().isEmpty()))
+                    .peek(packageRepository::detach)
+                    .collect(Collectors.toList());
+
+            Assert.assertEquals(Arrays.asList(packageFooId, packageBarId, packageBazId),
+                    result.stream().map(PackageEntity::getId).collect(Collectors.toList()));
+            Assert.assertFalse(entityManager.getEntityManager().contains(result.get(0)));
+        }
+    }
+
+    @Test
+    public void when_loadingLockedPackage_expectManagedAtCurrentVersion() {
+        final PackageEntity packageFoo = packageRepository.findLockedById(packageFooId).get();
+
+        Assert.assertTrue(entityManager.getEntityManager().contains(packageFoo));
+        Assert.assertEquals(packageRepository.findVersionById(packageFooId).get().getVersion(), packageFoo.getVersion());
+        Assert.assertFalse(packageRepository.findLockedById(Integer.MAX_VALUE).isPresent());
+    }
+
+    @Test
+    public void when_updatingPackageProductsOnly_expectNewVersion() {
+        // a last modified time which can only change if the update is seen
+        entityManager.getEntityManager().createQuery("update PackageEntity p set p.lastModified = 0 where p.id = :id")
+                .setParameter("id", packageFooId)
+                .executeUpdate();
+        final PackageVersion before = packageRepository.findVersionById(packageFooId).get();
+
+        // update from a detached copy, as the service does
+        final PackageEntity packageFoo = packageRepository.findById(packageFooId).get();
+        entityManager.detach(packageFoo);
+        packageFoo.setProductIds(new ArrayList<>(Arrays.asList(
+                "alpha_id",
+                "beta_id"
+        )));
+        packageRepository.save(packageFoo);
+        entityManager.flush();
+        entityManager.clear();
+
+        final PackageVersion after = packageRepository.findVersionById(packageFooId).get();
+        Assert.assertEquals(before.getVersion() + 1, after.getVersion());
+        Assert.assertTrue(after.getLastModified() > before.getLastModified());
+    }
+
+    @Test
+    public void when_updatingManagedPackageProducts_expectChangedRowsWrittenOnly() {
+        final Statistics statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+
+        // package and products in one query
+        statistics.clear();
+        final PackageEntity packageBaz = packageRepository.findWithProductsById(packageBazId).get();
+        final long version = packageBaz.getVersion();
+        Assert.assertEquals(3, packageBaz.getProductIds().size());
+        Assert.assertEquals(1, statistics.getPrepareStatementCount());
+
+        // one product changed, one removed
+        statistics.clear();
+        packageBaz.updateProductIds(Arrays.asList(
+                "alpha_id",
+                "gamma_id"
+        ));
+        entityManager.flush();
+
+        // the package version, the changed product and the removed one; the unchanged product is left alone
+        Assert.assertEquals(3, statistics.getPrepareStatementCount());
+        entityManager.clear();
+        final PackageEntity updated = packageRepository.findById(packageBazId).get();
+        Assert.assertEquals(version + 1, updated.getVersion());
+        Assert.assertEquals(Arrays.asList("alpha_id", "gamma_id"), updated.getProductIds());
+
+        // no changes, nothing written
+        statistics.clear();
+        updated.updateProductIds(Arrays.asList(
+                "alpha_id",
+                "gamma_id"
+        ));
+        entityManager.flush();
+        Assert.assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void when_productPriceChanges_expectChangeAddedToPackagesWithItInOneStatement() {
+        final Statistics statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        // totals as the service stores them, Biz has beta twice
+        final int packageBizId = (Integer) entityManager.persistAndGetId(new PackageEntity("Biz", "Biz description",
+                Arrays.asList("beta_id", "beta_id")));
+        setUsdTotals(100, 250, 450, 300);
+        final PackageVersion fooBefore = packageRepository.findVersionById(packageFooId).get();
+        final PackageVersion bazBefore = packageRepository.findVersionById(packageBazId).get();
+
+        statistics.clear();
+        // beta from 150 to 175
+        Assert.assertEquals(3, packageRepository.addToUsdTotalByProductIdIn(Collections.singletonList("beta_id"), 25, bazBefore.getLastModified() + 1));
+        Assert.assertEquals(1, statistics.getPrepareStatementCount());
+
+        final List<PackageSummary> summaries = packageRepository.findSummariesByIdGreaterThan(0, PageRequest.of(0, 10));
+        Assert.assertEquals(100, summaries.get(0).getUsdTotal());
+        Assert.assertEquals(275, summaries.get(1).getUsdTotal());
+        Assert.assertEquals(475, summaries.get(2).getUsdTotal());
+        Assert.assertEquals(packageBizId, summaries.get(3).getId());
+        Assert.assertEquals(350, summaries.get(3).getUsdTotal());
+        // packages with the product have a new version, the rest are untouched
+        Assert.assertEquals(fooBefore.getVersion(), packageRepository.findVersionById(packageFooId).get().getVersion());
+        final PackageVersion bazAfter = packageRepository.findVersionById(packageBazId).get();
+        Assert.assertEquals(bazBefore.getVersion() + 1, bazAfter.getVersion());
+        Assert.assertEquals(bazBefore.getLastModified() + 1, bazAfter.getLastModified());
+    }
+
+    @Test
+    public void when_correctingTotalAtCheckedVersion_expectCorrectedWithNewVersion() {
+        setUsdTotals(100, 999);
+        final PackageVersion barBefore = packageRepository.findVersionById(packageBarId).get();
+
+        Assert.assertEquals(1, packageRepository.correctUsdTotal(packageBarId, barBefore.getVersion(), 250, barBefore.getLastModified() + 1));
+
+        final PackageVersion barAfter = packageRepository.findVersionById(packageBarId).get();
+        Assert.assertEquals(barBefore.getVersion() + 1, barAfter.getVersion());
+        Assert.assertEquals(barBefore.getLastModified() + 1, barAfter.getLastModified());
+        Assert.assertEquals(250, packageRepository.findSummariesByIdGreaterThan(packageFooId, PageRequest.of(0, 1)).get(0).getUsdTotal());
+    }
+
+    @Test
+    public void when_correctingTotalOfChangedPackage_expectNotCorrected() {
+        setUsdTotals(100, 999);
+        final PackageVersion barBefore = packageRepository.findVersionById(packageBarId).get();
+
+        Assert.assertEquals(0, packageRepository.correctUsdTotal(packageBarId, barBefore.getVersion() - 1, 250, barBefore.getLastModified() + 1));
+
+        Assert.assertEquals(barBefore.getVersion(), packageRepository.findVersionById(packageBarId).get().getVersion());
+        Assert.assertEquals(999, packageRepository.findSummariesByIdGreaterThan(packageFooId, PageRequest.of(0, 1)).get(0).getUsdTotal());
+    }
+
+    @Test
+    public void when_findingPricesByProduct_expectOnlyPackagesWithIt() {
+        setUsdTotals(100, 250, 450);
+
+        final List<PackagePrice> prices = packageRepository.findPricesByProductIdIn(Arrays.asList("beta_id", "gamma_id"));
+        prices.sort(Comparator.comparingInt(PackagePrice::getId));
+
+        Assert.assertEquals(2, prices.size());
+        Assert.assertEquals(packageBarId.intValue(), prices.get(0).getId());
+        Assert.assertEquals(250, prices.get(0).getUsdTotal());
+        Assert.assertEquals(packageBazId.intValue(), prices.get(1).getId());
+        Assert.assertEquals(450, prices.get(1).getUsdTotal());
+        Assert.assertEquals(packageRepository.findVersionById(packageBazId).get().getVersion(), prices.get(1).getVersion());
+    }
+
+    @Test
+    public void when_findingVersionsOfPage_expectOnlyThoseExisting() {
+        final List<PackageVersion> versions = packageRepository.findVersionsByIdIn(Arrays.asList(packageBazId, packageFooId, packageBazId + 100));
+
+        Assert.assertEquals(2, versions.size());
+        Assert.assertEquals(packageFooId.intValue(), versions.get(0).getId());
+        Assert.assertEquals(packageBazId.intValue(), versions.get(1).getId());
+    }
+
+    private void setUsdTotals(long... usdTotals) {
+        final List<PackageEntity> packageEntities = entityManager.getEntityManager()
+                .createQuery("select p from PackageEntity p order by p.id", PackageEntity.class)
+                .getResultList();
+        for (int i = 0; i < usdTotals.length; i++) {
+            packageEntities.get(i).setUsdTotal(usdTotals[i]);
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test(expected = ObjectOptimisticLockingFailureException.class)
+    public void when_updatingStalePackage_expectException() {
+        final PackageEntity packageFoo = packageRepository.findById(packageFooId).get();
+        entityManager.detach(packageFoo);
+        packageFoo.setVersion(packageFoo.getVersion() - 1);
+        packageFoo.setName("Stale");
+
+        packageRepository.save(packageFoo);
+        entityManager.flush();
+    }
+
+    @Test
+    public void when_insertingPackagesInBulk_expectBatchedInserts() {
+        final List<PackageEntity> packageEntities = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            packageEntities.add(new PackageEntity("Package " + i, "Package description " + i, new ArrayList<>(Arrays.asList(
+                    "alpha_id",
+                    "beta_id"
+            ))));
+        }
+        final Statistics statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        final List<PackageEntity> inserted = packageRepository.insertAll(packageEntities);
+
+        // 3 batches of packages, each followed by a batch of their products, and a few calls for pools of ids
+        Assert.assertTrue(String.format("Prepared: [%d] statements", statistics.getPrepareStatementCount()),
+                statistics.getPrepareStatementCount() <= 10);
+        Assert.assertEquals(120, inserted.stream().map(PackageEntity::getId).distinct().count());
+        Assert.assertEquals(123, packageRepository.count());
+        final PackageEntity last = packageRepository.findById(inserted.get(119).getId()).get();
+        Assert.assertEquals("Package 119", last.getName());
+        Assert.assertEquals(2, last.getProductIds().size());
+    }
+
+    @Test
+    public void when_listingPackageVersions_expectPagedInIdOrder() {
+        final List<PackageVersion> versions = packageRepository.findVersionsByIdGreaterThan(packageFooId, PageRequest.of(0, 10));
+
+        Assert.assertEquals(Arrays.asList(packageBarId, packageBazId),
+                versions.stream().map(PackageVersion::getId).collect(Collectors.toList()));
+        Assert.assertTrue(versions.get(0).getLastModified() > 0);
+        Assert.assertFalse(packageRepository.findVersionById(Integer.MAX_VALUE).isPresent());
+    }
+
     @Test
     public void when_deletePackageById_expectSuccess() {
         Assert.assertEquals(3, packageRepository.count());
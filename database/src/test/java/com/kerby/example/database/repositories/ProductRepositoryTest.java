@@ -0,0 +1,81 @@
+package com.kerby.example.database.repositories;
+
+import com.kerby.example.database.DatabaseConfig;
+import com.kerby.example.database.models.ProductEntity;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, classes = {ProductRepository.class})
+@Import(DatabaseConfig.class) // use embedded H2 repos
+@DataJpaTest // ensure they are test instances
+public class ProductRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Before
+    public void beforeTest() {
+        // setup database with dummy data
+        entityManager.persist(new ProductEntity("alpha_id", "Alpha", 100));
+        entityManager.persist(new ProductEntity("beta_id", "Beta", 150));
+
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    public void when_savingNewProduct_expectInsertedWithVersion() {
+        // ids are given, the null version marks the product as new
+        final ProductEntity gamma = productRepository.save(new ProductEntity("gamma_id", "Gamma", 200));
+        productRepository.flush();
+
+        Assert.assertEquals(Long.valueOf(0), gamma.getVersion());
+        Assert.assertEquals(3, productRepository.count());
+    }
+
+    @Test
+    public void when_loadingUnmanagedProducts_expectCopiesOutsideOfPersistenceContext() {
+        final List<ProductEntity> products = productRepository.findUnmanagedByIdIn(Arrays.asList("alpha_id", "beta_id", "missing_id"));
+        products.sort(Comparator.comparing(ProductEntity::getId));
+
+        Assert.assertEquals(2, products.size());
+        Assert.assertTrue(products.get(0).hasSameValues(new ProductEntity("alpha_id", "Alpha", 100)));
+        Assert.assertTrue(products.get(1).hasSameValues(new ProductEntity("beta_id", "Beta", 150)));
+        Assert.assertFalse(entityManager.getEntityManager().contains(products.get(0)));
+        // with the version they were read at
+        Assert.assertEquals(productRepository.findById("alpha_id").get().getVersion(), products.get(0).getVersion());
+
+        // changes to a copy are never written
+        products.get(0).setUsdPrice(999);
+        entityManager.flush();
+        entityManager.clear();
+        Assert.assertEquals(100, productRepository.findById("alpha_id").get().getUsdPrice());
+    }
+
+    @Test
+    public void when_loadingLockedProducts_expectManagedInIdOrder() {
+        final List<ProductEntity> products = productRepository.findLockedByIdIn(Arrays.asList("beta_id", "missing_id", "alpha_id"));
+
+        Assert.assertEquals(2, products.size());
+        Assert.assertEquals("alpha_id", products.get(0).getId());
+        Assert.assertEquals("beta_id", products.get(1).getId());
+        Assert.assertTrue(entityManager.getEntityManager().contains(products.get(0)));
+    }
+
+}
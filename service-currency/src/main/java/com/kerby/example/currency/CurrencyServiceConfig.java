@@ -3,9 +3,11 @@ package com.kerby.example.currency;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.PropertySource;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @Configuration
 @ComponentScan(basePackages = "com.kerby.example.currency")
 @PropertySource("classpath:config/fixer-service.properties")
+@EnableScheduling // background refresh of exchange rates
 public class CurrencyServiceConfig {
 }
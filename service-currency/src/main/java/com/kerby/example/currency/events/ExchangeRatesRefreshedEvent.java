@@ -0,0 +1,24 @@
+package com.kerby.example.currency.events;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published once a new snapshot of exchange rates is in use. Anything derived from the previous rates,
+ * e.g. cached converted prices, is out of date.
+ */
+public class ExchangeRatesRefreshedEvent extends ApplicationEvent {
+
+    private final long exchangeRatesVersion;
+
+    public ExchangeRatesRefreshedEvent(Object source, long exchangeRatesVersion) {
+        super(source);
+        this.exchangeRatesVersion = exchangeRatesVersion;
+    }
+
+    /**
+     * @return version of the new exchange rates, as returned by CurrencyService.getExchangeRatesVersion
+     */
+    public long getExchangeRatesVersion() {
+        return exchangeRatesVersion;
+    }
+}
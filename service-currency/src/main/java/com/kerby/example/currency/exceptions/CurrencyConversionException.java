@@ -5,4 +5,8 @@ public class CurrencyConversionException extends Exception {
     public CurrencyConversionException(String message) {
         super(message);
     }
+
+    public CurrencyConversionException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
@@ -0,0 +1,250 @@
+package com.kerby.example.currency.models;
+
+import com.kerby.example.common.money.Money;
+import com.kerby.example.currency.exceptions.CurrencyConversionException;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of EUR exchange rates as returned by the Fixer API at a point in time.
+ *
+ * A snapshot is never modified once built. Refreshing rates means building a new snapshot and swapping it in whole,
+ * so readers always see a complete and consistent set of rates.
+ *
+ * The Fixer API only gives rates from EUR, so USD to X rates are derived once per snapshot (X / USD) and stored in
+ * an array indexed by CurrencyCode ordinal. Converting from USD is then a single array load and multiply rather than
+ * going via EUR on every call. The rates are also kept as unscaled longs for allocation free conversion of amounts
+ * held as long cents.
+ *
+ * Conversions are done here so every CurrencyService, however it gets its snapshots, converts the same way.
+ */
+public final class ExchangeRates {
+
+    // decimal places kept on derived USD cross rates
+    public static final int RATE_SCALE = 10;
+
+    private final Map<CurrencyCode, BigDecimal> eurRates;
+    // sentinel for a rate that is missing or too large to hold unscaled in a long
+    public static final long NO_RATE = Long.MIN_VALUE;
+    private static final BigDecimal HALF_CENT = new BigDecimal("0.5");
+    private static final BigDecimal MAX_CENTS = BigDecimal.valueOf(Long.MAX_VALUE);
+
+    private final BigDecimal[] usdRates;
+    private final long[] unscaledUSDRates;
+    private final long timestamp;
+
+    public ExchangeRates(Map<CurrencyCode, BigDecimal> eurRates, long timestamp) {
+        final EnumMap<CurrencyCode, BigDecimal> rates = new EnumMap<>(CurrencyCode.class);
+        rates.putAll(eurRates);
+        this.eurRates = Collections.unmodifiableMap(rates);
+        this.usdRates = buildUSDRates(rates);
+        this.unscaledUSDRates = buildUnscaledUSDRates(this.usdRates);
+        this.timestamp = timestamp;
+    }
+
+    private static BigDecimal[] buildUSDRates(Map<CurrencyCode, BigDecimal> eurRates) {
+        final BigDecimal[] result = new BigDecimal[CurrencyCode.values().length];
+
+        final BigDecimal usdRate = eurRates.get(CurrencyCode.USD);
+        if (usdRate != null && usdRate.signum() > 0) {
+            for (Map.Entry<CurrencyCode, BigDecimal> eurRate : eurRates.entrySet()) {
+                if (eurRate.getValue() == null) {
+                    continue;
+                }
+                result[eurRate.getKey().ordinal()] = eurRate.getKey() == CurrencyCode.USD
+                        ? BigDecimal.ONE.setScale(RATE_SCALE)
+                        : eurRate.getValue().divide(usdRate, RATE_SCALE, RoundingMode.HALF_UP);
+            }
+        }
+
+        return result;
+    }
+
+    private static long[] buildUnscaledUSDRates(BigDecimal[] usdRates) {
+        final long[] result = new long[usdRates.length];
+
+        for (int i = 0; i < usdRates.length; i++) {
+            result[i] = usdRates[i] != null && usdRates[i].unscaledValue().bitLength() < Long.SIZE
+                    ? usdRates[i].unscaledValue().longValue()
+                    : NO_RATE;
+        }
+
+        return result;
+    }
+
+    public BigDecimal getEURRate(CurrencyCode currencyCode) {
+        return eurRates.get(currencyCode);
+    }
+
+    /**
+     * @param currencyCode - currency to convert to
+     * @return how much 1 USD is worth in the currency, or null if there is no rate for it
+     */
+    public BigDecimal getUSDRate(CurrencyCode currencyCode) {
+        return usdRates[currencyCode.ordinal()];
+    }
+
+    /**
+     * @param currencyCode - currency to convert to
+     * @return the USD rate unscaled at RATE_SCALE, or NO_RATE if there is no rate or it doesn't fit in a long
+     */
+    public long getUnscaledUSDRate(CurrencyCode currencyCode) {
+        return unscaledUSDRates[currencyCode.ordinal()];
+    }
+
+    /**
+     * @param toCurrency - currency to convert to
+     * @param usdAmount - amount in USD
+     * @return converted amount rounded HALF_UP to scale 2
+     * @throws CurrencyConversionException if there is no rate for the currency
+     */
+    public BigDecimal convertFromUSD(CurrencyCode toCurrency, BigDecimal usdAmount) throws CurrencyConversionException {
+        return usdAmount.multiply(getRequiredUSDRate(toCurrency)).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * @param toCurrency - currency to convert to
+     * @param usdAmounts - amounts in USD
+     * @return converted amounts in the same order, each rounded HALF_UP to scale 2
+     * @throws CurrencyConversionException if there is no rate for the currency
+     */
+    public List<BigDecimal> convertAllFromUSD(CurrencyCode toCurrency, List<BigDecimal> usdAmounts) throws CurrencyConversionException {
+        final BigDecimal usdRate = getRequiredUSDRate(toCurrency);
+        final List<BigDecimal> result = new ArrayList<>(usdAmounts.size());
+
+        for (BigDecimal usdAmount : usdAmounts) {
+            if (usdAmount == null) {
+                throw new IllegalArgumentException("Amount in USD to convert is required");
+            }
+            result.add(usdAmount.multiply(usdRate).setScale(2, RoundingMode.HALF_UP));
+        }
+
+        return result;
+    }
+
+    /**
+     * Converts amounts held as long cents without allocating per amount, giving the same results as convertAllFromUSD.
+     * @param toCurrency - currency to convert to
+     * @param usdCents - amounts in USD cents
+     * @return converted amounts in cents in the same order, each rounded HALF_UP
+     * @throws CurrencyConversionException if there is no rate for the currency or a result doesn't fit in a long
+     */
+    public long[] convertCentsFromUSD(CurrencyCode toCurrency, long[] usdCents) throws CurrencyConversionException {
+        final BigDecimal usdRate = getRequiredUSDRate(toCurrency);
+        final long unscaledUSDRate = getUnscaledUSDRate(toCurrency);
+        final long[] result = new long[usdCents.length];
+
+        try {
+            if (unscaledUSDRate != NO_RATE) {
+                for (int i = 0; i < usdCents.length; i++) {
+                    result[i] = Money.multiply(usdCents[i], unscaledUSDRate, RATE_SCALE);
+                }
+            } else {
+                // rate too large to hold unscaled in a long
+                for (int i = 0; i < usdCents.length; i++) {
+                    result[i] = BigDecimal.valueOf(usdCents[i]).multiply(usdRate).setScale(0, RoundingMode.HALF_UP).longValueExact();
+                }
+            }
+        } catch (ArithmeticException e) {
+            throw new CurrencyConversionException(String.format("Unable to convert amounts from USD to: [%s] as a result is too large", toCurrency), e);
+        }
+
+        return result;
+    }
+
+    /**
+     * Converts one amount held as long cents, giving the same result as converting it in an array. Doesn't allocate
+     * unless the rate is too large to hold unscaled, so suits converting amounts one at a time, e.g. while streaming.
+     * @param toCurrency - currency to convert to
+     * @param usdCents - amount in USD cents
+     * @return converted amount in cents, rounded HALF_UP
+     * @throws CurrencyConversionException if there is no rate for the currency or the result doesn't fit in a long
+     */
+    public long convertCentsFromUSD(CurrencyCode toCurrency, long usdCents) throws CurrencyConversionException {
+        final long unscaledUSDRate = getUnscaledUSDRate(toCurrency);
+
+        try {
+            return unscaledUSDRate != NO_RATE
+                    ? Money.multiply(usdCents, unscaledUSDRate, RATE_SCALE)
+                    : BigDecimal.valueOf(usdCents).multiply(getRequiredUSDRate(toCurrency)).setScale(0, RoundingMode.HALF_UP).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new CurrencyConversionException(String.format("Unable to convert amount from USD to: [%s] as the result is too large", toCurrency), e);
+        }
+    }
+
+    /**
+     * The inverse of convertCentsFromUSD for a range of amounts. Converting never gives less for a larger amount, so
+     * the USD amounts converting to within a range are a range too. It is found from the rate directly rather than
+     * by converting amounts: as conversions round HALF_UP, an amount converts to at least min when it is at least
+     * min - 0.5 before rounding, and to at most max when it is less than max + 0.5.
+     * @param fromCurrency - currency of the range
+     * @param minCents - least converted amount in cents, inclusive, not negative
+     * @param maxCents - greatest converted amount in cents, inclusive
+     * @return least and greatest amounts in USD cents, not negative, which convert to within the range. The least
+     * is greater than the greatest if none do
+     * @throws CurrencyConversionException if there is no rate for the currency
+     */
+    public long[] convertCentsRangeToUSD(CurrencyCode fromCurrency, long minCents, long maxCents) throws CurrencyConversionException {
+        if (minCents < 0) {
+            throw new IllegalArgumentException("Least amount to convert to USD must not be negative");
+        }
+        final BigDecimal usdRate = getRequiredUSDRate(fromCurrency);
+        if (usdRate.signum() == 0) {
+            // every amount converts to 0
+            return minCents == 0 && maxCents >= 0 ? new long[] {0, Long.MAX_VALUE} : new long[] {1, 0};
+        }
+
+        final BigDecimal least = minCents == 0
+                ? BigDecimal.ZERO
+                : BigDecimal.valueOf(minCents).subtract(HALF_CENT).divide(usdRate, 0, RoundingMode.CEILING);
+        final BigDecimal greatest = BigDecimal.valueOf(maxCents).add(HALF_CENT).divide(usdRate, 0, RoundingMode.CEILING).subtract(BigDecimal.ONE);
+
+        return new long[] {least.min(MAX_CENTS).longValue(), greatest.min(MAX_CENTS).longValue()};
+    }
+
+    private BigDecimal getRequiredUSDRate(CurrencyCode toCurrency) throws CurrencyConversionException {
+        final BigDecimal result = getUSDRate(toCurrency);
+        if (result == null) {
+            throw new CurrencyConversionException(String.format("Unable to convert from USD to: [%s] as no currency rate exists", toCurrency));
+        }
+
+        return result;
+    }
+
+    public Map<CurrencyCode, BigDecimal> getEURRates() {
+        return eurRates;
+    }
+
+    public boolean isEmpty() {
+        return eurRates.isEmpty();
+    }
+
+    /**
+     * @return time in millis the rates were received from the Fixer API
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getAgeMillis(long now) {
+        return now - timestamp;
+    }
+
+    public boolean isExpired(long now, long ttlMillis) {
+        return getAgeMillis(now) >= ttlMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ExchangeRates{" +
+                "rates=" + eurRates.size() +
+                ", timestamp=" + timestamp +
+                '}';
+    }
+}
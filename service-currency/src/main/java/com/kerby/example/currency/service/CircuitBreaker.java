@@ -0,0 +1,113 @@
+package com.kerby.example.currency.service;
+
+import org.springframework.util.Assert;
+
+/**
+ * A minimal circuit breaker guarding calls to a remote dependency.
+ *
+ *  - CLOSED: calls are allowed. Consecutive failures are counted.
+ *  - OPEN: once the failure threshold is reached calls are rejected until a backoff period has passed.
+ *    The backoff doubles for every further consecutive failure, up to a maximum.
+ *  - HALF_OPEN: after the backoff a single trial call is allowed. Success closes the circuit, failure re-opens it.
+ *
+ * The last failure is kept so rejected callers can be told why, without calling the dependency again.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openUntil = 0;
+    private Throwable lastFailure = null;
+
+    public CircuitBreaker(int failureThreshold, long initialBackoffMillis, long maxBackoffMillis) {
+        Assert.isTrue(failureThreshold > 0, "Failure threshold must be positive");
+        Assert.isTrue(initialBackoffMillis > 0, "Initial backoff must be positive");
+        Assert.isTrue(maxBackoffMillis >= initialBackoffMillis, "Max backoff must be at least the initial backoff");
+        this.failureThreshold = failureThreshold;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * @param now - current time in millis
+     * @return true if the caller may call the dependency. When half open only the first caller is allowed through.
+     */
+    public synchronized boolean allowRequest(long now) {
+        switch (state) {
+            case OPEN:
+                if (now >= openUntil) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            case HALF_OPEN:
+                // trial call already in flight
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        openUntil = 0;
+        lastFailure = null;
+    }
+
+    public synchronized void recordFailure(long now, Throwable failure) {
+        consecutiveFailures++;
+        lastFailure = failure;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            final long backoff = getBackoffMillis(consecutiveFailures - failureThreshold);
+            openUntil = now > Long.MAX_VALUE - backoff ? Long.MAX_VALUE : now + backoff;
+        }
+    }
+
+    private long getBackoffMillis(int retries) {
+        // double the backoff for every retry, without overflowing the shift
+        final int shift = Math.max(0, Math.min(retries, 62));
+        final long backoff = initialBackoffMillis << shift;
+        return backoff <= 0 || backoff > maxBackoffMillis || (backoff >> shift) != initialBackoffMillis
+                ? maxBackoffMillis : backoff;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return time in millis the circuit will allow a trial call, or 0 if it is closed
+     */
+    public synchronized long getOpenUntil() {
+        return openUntil;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public synchronized Throwable getLastFailure() {
+        return lastFailure;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CircuitBreaker{" +
+                "state=" + state +
+                ", consecutiveFailures=" + consecutiveFailures +
+                ", openUntil=" + openUntil +
+                '}';
+    }
+}
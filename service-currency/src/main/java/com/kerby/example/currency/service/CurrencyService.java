@@ -1,11 +1,13 @@
 package com.kerby.example.currency.service;
 
 import com.kerby.example.currency.models.CurrencyCode;
+import com.kerby.example.currency.models.ExchangeRates;
 import com.kerby.example.currency.exceptions.CurrencyConversionException;
 import com.kerby.example.currency.exceptions.InvalidCurrencyCodeException;
 
 import javax.validation.constraints.NotNull;
 import java.math.BigDecimal;
+import java.util.List;
 
 public interface CurrencyService {
 
@@ -15,5 +17,48 @@ public interface CurrencyService {
 
     BigDecimal convertFromUSD(@NotNull CurrencyCode toCurrency, @NotNull BigDecimal usdAmount) throws CurrencyConversionException;
 
+    /**
+     * Converts many amounts against one consistent set of exchange rates.
+     * @return converted amounts in the same order, each rounded HALF_UP to scale 2
+     */
+    List<BigDecimal> convertAllFromUSD(@NotNull CurrencyCode toCurrency, @NotNull List<BigDecimal> usdAmounts) throws CurrencyConversionException;
+
+    /**
+     * Converts many amounts held as long cents (scale 2) against one consistent set of exchange rates.
+     * Gives the same results as convertAllFromUSD without allocating per amount.
+     * @return converted amounts in cents in the same order, each rounded HALF_UP
+     */
+    long[] convertCentsFromUSD(@NotNull CurrencyCode toCurrency, @NotNull long[] usdCents) throws CurrencyConversionException;
+
+    /**
+     * Converts one amount held as long cents (scale 2), giving the same result as converting it in an array.
+     * @return converted amount in cents, rounded HALF_UP
+     */
+    long convertCentsFromUSD(@NotNull CurrencyCode toCurrency, long usdCents) throws CurrencyConversionException;
+
+    /**
+     * Finds the amounts in USD which convertCentsFromUSD converts to within a range, against one consistent set of
+     * exchange rates, so a range in any currency can be looked up on amounts held in USD without converting them.
+     * @param fromCurrency - currency of the range
+     * @param minCents - least converted amount in cents, inclusive, not negative
+     * @param maxCents - greatest converted amount in cents, inclusive
+     * @return least and greatest amounts in USD cents, inclusive. The least is greater than the greatest if none convert to within the range
+     */
+    long[] convertCentsRangeToUSD(@NotNull CurrencyCode fromCurrency, long minCents, long maxCents) throws CurrencyConversionException;
+
+    /**
+     * Identifies the exchange rates currently used for conversions, for checking whether converted amounts a client
+     * already holds are still current. Loads the rates if none have been loaded yet.
+     * @return time in millis the current exchange rates were received, changes whenever the rates do
+     */
+    long getExchangeRatesVersion() throws CurrencyConversionException;
+
+    /**
+     * The exchange rates currently used for conversions, to convert many amounts over time against one consistent
+     * set, e.g. while streaming, without a call per amount. Loads the rates if none have been loaded yet.
+     * @return the current snapshot, never modified
+     */
+    ExchangeRates getExchangeRates() throws CurrencyConversionException;
+
 
 }
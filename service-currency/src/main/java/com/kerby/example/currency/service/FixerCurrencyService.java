@@ -3,19 +3,31 @@ package com.kerby.example.currency.service;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.kerby.example.common.annotations.VisibleForTestMock;
+import com.kerby.example.currency.events.ExchangeRatesRefreshedEvent;
 import com.kerby.example.currency.exceptions.CurrencyConversionException;
 import com.kerby.example.currency.models.CurrencyCode;
 import com.kerby.example.currency.exceptions.APICallFailedException;
+import com.kerby.example.currency.models.ExchangeRates;
 import com.kerby.example.currency.exceptions.InvalidCurrencyCodeException;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.apache.commons.lang3.EnumUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 import org.springframework.web.client.RestClientException;
@@ -24,8 +36,15 @@ import org.springframework.web.client.RestTemplate;
 import javax.validation.constraints.NotNull;
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A service using the Fixer API for converting a USD amount to any other currency.
@@ -37,43 +56,101 @@ import java.util.HashMap;
  *  - Do all conversions locally with EUR exchange rates
  *  - Calculate how much a USD amount equals in EUR and use the Exchange Rates for EUR to get other currency conversions
  *
- * To reduce the number of API calls the exchange rate is called once and cached locally.
+ * To reduce the number of API calls the exchange rates are cached locally as an immutable snapshot with a TTL.
+ * A scheduled background task refreshes the snapshot before it expires and swaps the new one in atomically, so
+ * conversions never wait on the Fixer API once the first snapshot has loaded. If a refresh fails the previous
+ * snapshot keeps serving until a later refresh succeeds.
+ *
+ * Calls to the Fixer API are guarded so an outage can't pile requests up behind it:
+ *  - Only one refresh is ever in flight. Any caller needing rates while it runs waits on that same refresh.
+ *  - A circuit breaker remembers failures and suspends calls for an exponentially growing backoff. While suspended,
+ *    callers get the last known good rates, or fail fast if there are none.
+ *
+ * Fixer API call latency and failures, the age of the current snapshot and the circuit state are published as
+ * metrics once bound to a MeterRegistry. They are counted here rather than in the registry so they are kept whether
+ * or not the service has been bound yet.
+ *
+ * An ExchangeRatesRefreshedEvent is published whenever a new snapshot is swapped in.
  */
 @Configuration
 @Service
-public class FixerCurrencyService implements CurrencyService {
+public class FixerCurrencyService implements CurrencyService, MeterBinder, ApplicationEventPublisherAware {
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+    private static final long DEFAULT_RATES_TTL_MILLIS = 3600000;
+    private static final long DEFAULT_RATES_REFRESH_AHEAD_MILLIS = 300000;
+    private static final int DEFAULT_API_TIMEOUT_MILLIS = 5000;
+    private static final int DEFAULT_CIRCUIT_FAILURE_THRESHOLD = 1;
+    private static final long DEFAULT_CIRCUIT_INITIAL_BACKOFF_MILLIS = 5000;
+    private static final long DEFAULT_CIRCUIT_MAX_BACKOFF_MILLIS = 300000;
+
     private final String apiKey;
+    private final long ratesTtlMillis;
+    private final long ratesRefreshAheadMillis;
+    private final int apiTimeoutMillis;
+    private final CircuitBreaker circuitBreaker;
+    private final RestTemplate restTemplate;
+
+    // latest snapshot of exchange rates, only ever replaced once a new snapshot has been fully built
+    private final AtomicReference<ExchangeRates> exchangeRatesCache = new AtomicReference<>();
+    // refresh currently calling the Fixer API, shared by every caller waiting on rates
+    private final AtomicReference<CompletableFuture<ExchangeRates>> inFlightRefresh = new AtomicReference<>();
+
+    // Fixer API calls, published by bindTo
+    private final LongAdder apiCalls = new LongAdder();
+    private final LongAdder apiCallNanos = new LongAdder();
+    private final LongAdder apiCallFailures = new LongAdder();
 
-    // singleton cache shared across all instances
-    private static HashMap<CurrencyCode, BigDecimal> currencyRatesEURCache = null;
+    // null unless managed by Spring
+    private ApplicationEventPublisher eventPublisher;
 
     @VisibleForTestMock
-    FixerCurrencyService() { this.apiKey = null; }
+    FixerCurrencyService() {
+        this(null, DEFAULT_RATES_TTL_MILLIS, DEFAULT_RATES_REFRESH_AHEAD_MILLIS, DEFAULT_API_TIMEOUT_MILLIS,
+                DEFAULT_CIRCUIT_FAILURE_THRESHOLD, DEFAULT_CIRCUIT_INITIAL_BACKOFF_MILLIS, DEFAULT_CIRCUIT_MAX_BACKOFF_MILLIS);
+    }
 
     @Autowired
-    public FixerCurrencyService(@Value("${fixer.api.key}") String apiKey) {
+    public FixerCurrencyService(@Value("${fixer.api.key}") String apiKey,
+                                @Value("${fixer.rates.ttl.ms:" + DEFAULT_RATES_TTL_MILLIS + "}") long ratesTtlMillis,
+                                @Value("${fixer.rates.refresh-ahead.ms:" + DEFAULT_RATES_REFRESH_AHEAD_MILLIS + "}") long ratesRefreshAheadMillis,
+                                @Value("${fixer.api.timeout.ms:" + DEFAULT_API_TIMEOUT_MILLIS + "}") int apiTimeoutMillis,
+                                @Value("${fixer.api.circuit.failure-threshold:" + DEFAULT_CIRCUIT_FAILURE_THRESHOLD + "}") int circuitFailureThreshold,
+                                @Value("${fixer.api.circuit.backoff.initial.ms:" + DEFAULT_CIRCUIT_INITIAL_BACKOFF_MILLIS + "}") long circuitInitialBackoffMillis,
+                                @Value("${fixer.api.circuit.backoff.max.ms:" + DEFAULT_CIRCUIT_MAX_BACKOFF_MILLIS + "}") long circuitMaxBackoffMillis) {
+        Assert.isTrue(ratesTtlMillis > 0, "Exchange rate TTL must be positive");
+        Assert.isTrue(ratesRefreshAheadMillis >= 0 && ratesRefreshAheadMillis < ratesTtlMillis,
+                "Exchange rate refresh-ahead must be between zero and the TTL");
+        Assert.isTrue(apiTimeoutMillis > 0, "Fixer API timeout must be positive");
         this.apiKey = apiKey;
+        this.ratesTtlMillis = ratesTtlMillis;
+        this.ratesRefreshAheadMillis = ratesRefreshAheadMillis;
+        this.apiTimeoutMillis = apiTimeoutMillis;
+        this.circuitBreaker = new CircuitBreaker(circuitFailureThreshold, circuitInitialBackoffMillis, circuitMaxBackoffMillis);
+
+        // without timeouts a hung Fixer API would hold the refresh, and every caller waiting on it, forever
+        final SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(apiTimeoutMillis);
+        requestFactory.setReadTimeout(apiTimeoutMillis);
+        this.restTemplate = new RestTemplate(requestFactory);
     }
 
     @VisibleForTestMock
     HashMap<CurrencyCode, BigDecimal> getLatestEURExchangeRatesFromAPI() throws APICallFailedException {
         Assert.isTrue(StringUtils.isNotBlank(this.apiKey), "Unable to lookup currency rates from Fixer as API key is not set");
 
-        logger.debug(String.format("Attempting to lookup currency rates from Fixer using api key: [%s]", apiKey));
-
-        final RestTemplate restTemplate = new RestTemplate();
+        // the url is not logged as it holds the api key
+        logger.debug("Attempting to lookup currency rates from Fixer");
 
         final StringBuilder url = new StringBuilder("http://data.fixer.io/api/latest");
-        url.append(String.format("?access_key=%s", apiKey));
+        url.append("?access_key=").append(apiKey);
 
-        logger.info(url.toString());
+        final long start = System.nanoTime();
         ResponseEntity<String> response = null;
 
         try {
-            response = restTemplate.getForEntity(url.toString(), String.class);
+            response = this.restTemplate.getForEntity(url.toString(), String.class);
             if (response != null && response.getStatusCode() == HttpStatus.OK) {
 
                 final ObjectMapper objectMapper = new ObjectMapper();
@@ -84,14 +161,15 @@ public class FixerCurrencyService implements CurrencyService {
                 rates.fieldNames().forEachRemaining(rate -> {
                     final BigDecimal value = new BigDecimal(rates.get(rate).asDouble());
                     if (EnumUtils.isValidEnum(CurrencyCode.class, rate)) {
-                        logger.trace(String.format("Storing rate of: [%s] for currency: [%s]", value.toPlainString(), rate));
+                        logger.trace("Storing rate of: [{}] for currency: [{}]", value, rate);
                         currencyRates.put(CurrencyCode.valueOf(rate), value);
                     } else {
-                        logger.warn(String.format("Skipping currency: [%s] as it's not a supported currency", rate));
+                        logger.warn("Skipping currency: [{}] as it's not a supported currency", rate);
                     }
                 });
 
-                logger.info(String.format("Received currency rates: [%d] from Fixer API", currencyRates.size()));
+                logger.info("Received: [{}] currency rates from Fixer API in: [{}]ms", currencyRates.size(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
 
                 return currencyRates;
             } else {
@@ -106,25 +184,164 @@ public class FixerCurrencyService implements CurrencyService {
         }
     }
 
-    private HashMap<CurrencyCode, BigDecimal> getCachedEURExchangeRates() {
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
 
-        // only lookup currency rates if not already cached
-        if (currencyRatesEURCache == null) {
-            synchronized (FixerCurrencyService.class) {
-                // double checked locking to ensure a previous thread hasn't already initialised currency rates cache
-                if (currencyRatesEURCache == null) {
-                    try {
-                        // store in cache
-                        currencyRatesEURCache = this.getLatestEURExchangeRatesFromAPI();
-                        logger.info("Updated currency rate cache");
-                    } catch (APICallFailedException e) {
-                        logger.error("Something went wrong calling the Fixer API. It failed to return exchange rates", e);
-                    }
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionTimer.builder("currency.rates.refresh", this,
+                service -> service.apiCalls.sum(), service -> service.apiCallNanos.sum(), TimeUnit.NANOSECONDS)
+                .description("Calls to the Fixer API for the latest exchange rates")
+                .register(registry);
+        FunctionCounter.builder("currency.rates.refresh.failures", this, service -> service.apiCallFailures.sum())
+                .description("Calls to the Fixer API which failed or returned no rates")
+                .register(registry);
+        Gauge.builder("currency.rates.age", this, FixerCurrencyService::getExchangeRatesAgeSeconds)
+                .description("Age of the exchange rates used for conversions")
+                .baseUnit("seconds")
+                .register(registry);
+        Gauge.builder("currency.rates.circuit.open", this, service -> service.circuitBreaker.getState() == CircuitBreaker.State.CLOSED ? 0 : 1)
+                .description("Whether calls to the Fixer API are suspended after failing")
+                .register(registry);
+    }
+
+    private double getExchangeRatesAgeSeconds() {
+        final ExchangeRates exchangeRates = this.exchangeRatesCache.get();
+        return exchangeRates != null
+                ? exchangeRates.getAgeMillis(this.currentTimeMillis()) / 1000.0
+                : Double.NaN;
+    }
+
+    @VisibleForTestMock
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Refreshes the exchange rate snapshot in the background once it is within the refresh-ahead window of its TTL.
+     * Runs on start up to warm the cache, then on a fixed delay. Nothing is called while the circuit is open.
+     */
+    @Scheduled(fixedDelayString = "${fixer.rates.refresh.check.ms:5000}")
+    public void refreshExchangeRatesIfDue() {
+        final long now = this.currentTimeMillis();
+        final ExchangeRates current = this.exchangeRatesCache.get();
+        final boolean isDue = current == null || current.isExpired(now, this.ratesTtlMillis - this.ratesRefreshAheadMillis);
+        final boolean isSuspended = this.circuitBreaker.getState() == CircuitBreaker.State.OPEN && now < this.circuitBreaker.getOpenUntil();
+
+        if (isDue && !isSuspended) {
+            try {
+                this.refreshExchangeRates();
+            } catch (APICallFailedException e) {
+                logger.error("Something went wrong refreshing exchange rates. The previous rates will continue to be used", e);
+            }
+        }
+    }
+
+    /**
+     * Looks up the latest rates and swaps them in as a single snapshot. The current snapshot is left untouched on failure.
+     *
+     * If a refresh is already in flight this joins it rather than making another call to the Fixer API.
+     * @return the new snapshot
+     * @throws APICallFailedException if the refresh failed, timed out, or the circuit is open
+     */
+    @VisibleForTestMock
+    ExchangeRates refreshExchangeRates() throws APICallFailedException {
+        while (true) {
+            final CompletableFuture<ExchangeRates> inFlight = this.inFlightRefresh.get();
+            if (inFlight != null) {
+                return this.awaitRefresh(inFlight);
+            }
+
+            final CompletableFuture<ExchangeRates> refresh = new CompletableFuture<>();
+            if (this.inFlightRefresh.compareAndSet(null, refresh)) {
+                this.loadExchangeRates(refresh);
+                final ExchangeRates result = this.awaitRefresh(refresh);
+                // only by the caller which made the refresh, outside of the circuit breaker
+                if (this.eventPublisher != null) {
+                    this.eventPublisher.publishEvent(new ExchangeRatesRefreshedEvent(this, result.getTimestamp()));
                 }
+                return result;
+            }
+            // another thread started a refresh between the get and set, join that one
+        }
+    }
+
+    private void loadExchangeRates(final CompletableFuture<ExchangeRates> refresh) {
+        final long now = this.currentTimeMillis();
+
+        try {
+            if (!this.circuitBreaker.allowRequest(now)) {
+                throw new APICallFailedException(String.format("Fixer API calls are suspended until: [%s] after: [%d] consecutive failures",
+                        new Date(this.circuitBreaker.getOpenUntil()), this.circuitBreaker.getConsecutiveFailures()),
+                        this.circuitBreaker.getLastFailure());
+            }
+
+            final long start = System.nanoTime();
+            try {
+                final HashMap<CurrencyCode, BigDecimal> currencyRatesEUR = this.getLatestEURExchangeRatesFromAPI();
+                if (currencyRatesEUR == null || currencyRatesEUR.isEmpty()) {
+                    throw new APICallFailedException("Fixer API returned no exchange rates");
+                }
+
+                final ExchangeRates exchangeRates = new ExchangeRates(currencyRatesEUR, this.currentTimeMillis());
+                this.exchangeRatesCache.set(exchangeRates);
+                this.circuitBreaker.recordSuccess();
+                logger.info("Updated currency rate cache: [{}]", exchangeRates);
+                refresh.complete(exchangeRates);
+            } catch (Throwable e) {
+                // Errors too, or a failed trial call would leave the circuit half open with no call to close it
+                this.apiCallFailures.increment();
+                this.circuitBreaker.recordFailure(now, e);
+                logger.warn("Fixer API call failed. Circuit: [{}]", this.circuitBreaker);
+                throw e;
+            } finally {
+                this.apiCallNanos.add(System.nanoTime() - start);
+                this.apiCalls.increment();
+            }
+        } catch (Throwable e) {
+            // callers joining the refresh are always released, then Errors carry on to this caller
+            refresh.completeExceptionally(e);
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+        } finally {
+            this.inFlightRefresh.compareAndSet(refresh, null);
+        }
+    }
+
+    private ExchangeRates awaitRefresh(final CompletableFuture<ExchangeRates> refresh) throws APICallFailedException {
+        try {
+            return refresh.get(this.apiTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof APICallFailedException) {
+                throw (APICallFailedException) e.getCause();
             }
+            throw new APICallFailedException("Something went wrong refreshing exchange rates", e.getCause());
+        } catch (TimeoutException e) {
+            throw new APICallFailedException("Timed out waiting for exchange rates to refresh", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new APICallFailedException("Interrupted waiting for exchange rates to refresh", e);
         }
+    }
 
-        return currencyRatesEURCache;
+    private ExchangeRates getCachedEURExchangeRates() throws CurrencyConversionException {
+        ExchangeRates result = this.exchangeRatesCache.get();
+
+        // the first lookup has to wait for rates, after that the background refresh keeps the snapshot current
+        if (result == null) {
+            try {
+                result = this.refreshExchangeRates();
+            } catch (APICallFailedException e) {
+                throw new CurrencyConversionException("Exchange rates are currently unavailable", e);
+            }
+        } else if (result.isExpired(this.currentTimeMillis(), this.ratesTtlMillis)) {
+            logger.debug("Using expired exchange rates: [{}] as they could not be refreshed", result);
+        }
+
+        return result;
     }
 
     @Override
@@ -146,35 +363,73 @@ public class FixerCurrencyService implements CurrencyService {
     }
 
     @Override
+    @Timed("currency.conversions")
     public BigDecimal convertFromUSD(@NotNull CurrencyCode toCurrency, @NotNull BigDecimal usdAmount) throws CurrencyConversionException {
         Assert.notNull(toCurrency, "Currency code to convert to is required");
         Assert.notNull(usdAmount, "Amount in USD to convert is required");
-        BigDecimal result = null;
 
-        final HashMap<CurrencyCode, BigDecimal> currencyRatesEUR = getCachedEURExchangeRates();
-        if (currencyRatesEUR != null && !currencyRatesEUR.isEmpty() && currencyRatesEUR.containsKey(toCurrency)) {
-            /**
-             * Because of limitations in the API (only having EUR rates) we must
-             *  - Convert the original USD amount to EUR using the latest EUR exchange rate
-             *  - Convert the EUR amount using the desired exchange rate to the target currency
-             */
+        // USD to target rate is derived once per snapshot, see ExchangeRates
+        final BigDecimal result = getCachedEURExchangeRates().convertFromUSD(toCurrency, usdAmount);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Converted amount of: [{}] from USD to: [{}]. Result: [{}]", usdAmount, toCurrency, result);
+        }
 
-            final BigDecimal usdCurrencyExchangeRate = currencyRatesEUR.get(CurrencyCode.USD);
-            final BigDecimal targetCurrencyExchangeRate = currencyRatesEUR.get(toCurrency);
+        return result;
+    }
 
-            if (usdCurrencyExchangeRate == null || targetCurrencyExchangeRate == null) {
-                throw new CurrencyConversionException(String.format("Unable to convert: [%s] from USD as no currency rate was found for: USD=[%s] or [%s]=[%s]", usdAmount, usdCurrencyExchangeRate, toCurrency, targetCurrencyExchangeRate));
-            }
-            // convert USD amount to EUR
-            final BigDecimal eurAmount = usdAmount.divide(usdCurrencyExchangeRate, 2, RoundingMode.HALF_UP);
-            // convert EUR to any currency that is requested
-            result = eurAmount.multiply(targetCurrencyExchangeRate).setScale(2, RoundingMode.HALF_UP);
-            logger.debug(String.format("Converted amount of: [%s] from USD to: [%s]. Result: [%s]", usdAmount, toCurrency, result));
-        } else {
-            throw new CurrencyConversionException(String.format("Unable to convert from USD to: [%s] as no currency rate exists", toCurrency));
-        }
+    @Override
+    @Timed("currency.conversions")
+    public List<BigDecimal> convertAllFromUSD(@NotNull CurrencyCode toCurrency, @NotNull List<BigDecimal> usdAmounts) throws CurrencyConversionException {
+        Assert.notNull(toCurrency, "Currency code to convert to is required");
+        Assert.notNull(usdAmounts, "Amounts in USD to convert are required");
+
+        final List<BigDecimal> result = getCachedEURExchangeRates().convertAllFromUSD(toCurrency, usdAmounts);
+        logger.debug("Converted: [{}] amounts from USD to: [{}]", result.size(), toCurrency);
+
+        return result;
+    }
+
+    @Override
+    @Timed("currency.conversions")
+    public long[] convertCentsFromUSD(@NotNull CurrencyCode toCurrency, @NotNull long[] usdCents) throws CurrencyConversionException {
+        Assert.notNull(toCurrency, "Currency code to convert to is required");
+        Assert.notNull(usdCents, "Amounts in USD to convert are required");
+
+        final long[] result = getCachedEURExchangeRates().convertCentsFromUSD(toCurrency, usdCents);
+        logger.debug("Converted: [{}] amounts in cents from USD to: [{}]", result.length, toCurrency);
 
         return result;
     }
 
+    @Override
+    @Timed("currency.conversions")
+    public long convertCentsFromUSD(@NotNull CurrencyCode toCurrency, long usdCents) throws CurrencyConversionException {
+        Assert.notNull(toCurrency, "Currency code to convert to is required");
+
+        final long result = getCachedEURExchangeRates().convertCentsFromUSD(toCurrency, usdCents);
+        logger.debug("Converted amount of: [{}] cents from USD to: [{}]. Result: [{}]", usdCents, toCurrency, result);
+
+        return result;
+    }
+
+    @Override
+    public long[] convertCentsRangeToUSD(@NotNull CurrencyCode fromCurrency, long minCents, long maxCents) throws CurrencyConversionException {
+        Assert.notNull(fromCurrency, "Currency code to convert from is required");
+
+        final long[] result = getCachedEURExchangeRates().convertCentsRangeToUSD(fromCurrency, minCents, maxCents);
+        logger.debug("Converted range: [{}] to: [{}] cents from: [{}] to: [{}] to: [{}] USD cents", minCents, maxCents, fromCurrency, result[0], result[1]);
+
+        return result;
+    }
+
+    @Override
+    public long getExchangeRatesVersion() throws CurrencyConversionException {
+        return getCachedEURExchangeRates().getTimestamp();
+    }
+
+    @Override
+    public ExchangeRates getExchangeRates() throws CurrencyConversionException {
+        return getCachedEURExchangeRates();
+    }
+
 }
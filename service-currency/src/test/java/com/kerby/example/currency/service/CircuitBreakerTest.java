@@ -0,0 +1,51 @@
+package com.kerby.example.currency.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+    private static final Exception FAILURE = new Exception("failure");
+
+    @Test
+    public void when_failureThresholdReached_expectCircuitOpen() {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker(2, 1000, 8000);
+
+        circuitBreaker.recordFailure(0, FAILURE);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        Assert.assertTrue(circuitBreaker.allowRequest(0));
+
+        circuitBreaker.recordFailure(0, FAILURE);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        Assert.assertFalse(circuitBreaker.allowRequest(999));
+        Assert.assertEquals(FAILURE, circuitBreaker.getLastFailure());
+    }
+
+    @Test
+    public void when_backoffPassed_expectSingleTrialRequest() {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker(1, 1000, 8000);
+        circuitBreaker.recordFailure(0, FAILURE);
+
+        Assert.assertTrue(circuitBreaker.allowRequest(1000));
+        Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        Assert.assertFalse(circuitBreaker.allowRequest(1000));
+
+        circuitBreaker.recordSuccess();
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        Assert.assertTrue(circuitBreaker.allowRequest(1000));
+    }
+
+    @Test
+    public void when_trialRequestsKeepFailing_expectExponentialBackoffUpToMax() {
+        final CircuitBreaker circuitBreaker = new CircuitBreaker(1, 1000, 8000);
+
+        long now = 0;
+        final long[] expectedBackoffs = {1000, 2000, 4000, 8000, 8000};
+        for (long expectedBackoff : expectedBackoffs) {
+            Assert.assertTrue(circuitBreaker.allowRequest(now));
+            circuitBreaker.recordFailure(now, FAILURE);
+            Assert.assertEquals(now + expectedBackoff, circuitBreaker.getOpenUntil());
+            now = circuitBreaker.getOpenUntil();
+        }
+    }
+}
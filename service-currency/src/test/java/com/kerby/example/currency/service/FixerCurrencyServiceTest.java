@@ -1,23 +1,36 @@
 package com.kerby.example.currency.service;
 
+import com.kerby.example.currency.events.ExchangeRatesRefreshedEvent;
 import com.kerby.example.currency.models.CurrencyCode;
+import com.kerby.example.currency.models.ExchangeRates;
 import com.kerby.example.currency.exceptions.APICallFailedException;
 import com.kerby.example.currency.exceptions.CurrencyConversionException;
 import com.kerby.example.currency.service.FixerCurrencyService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.hamcrest.Matchers;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.mockito.Spy;
 import org.springframework.boot.SpringBootConfiguration;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Tests for FixerCurrencyService.
@@ -134,5 +147,325 @@ public class FixerCurrencyServiceTest {
         Mockito.verify(this.fixerCurrencyService, Mockito.atMost(1)).getLatestEURExchangeRatesFromAPI();
     }
 
+    @Test(expected = CurrencyConversionException.class)
+    public void when_convertToCurrencyWithoutRate_expectException() throws CurrencyConversionException, APICallFailedException {
+        Mockito.doReturn(currencyRatesEUR).when(this.fixerCurrencyService).getLatestEURExchangeRatesFromAPI();
+
+        this.fixerCurrencyService.convertFromUSD(CurrencyCode.JPY, new BigDecimal(10.00));
+    }
+
+    @Test
+    public void when_convertFromUSDAmount_expectSameResultAsConvertingViaEUR() throws CurrencyConversionException, APICallFailedException {
+        Mockito.doReturn(currencyRatesEUR).when(this.fixerCurrencyService).getLatestEURExchangeRatesFromAPI();
+
+        final BigDecimal usdAmount = new BigDecimal("12345.67");
+        final BigDecimal viaEUR = usdAmount
+                .multiply(currencyRatesEUR.get(CurrencyCode.GBP))
+                .divide(currencyRatesEUR.get(CurrencyCode.USD), 2, RoundingMode.HALF_UP);
+
+        Assert.assertThat(
+                viaEUR,
+                Matchers.comparesEqualTo(this.fixerCurrencyService.convertFromUSD(CurrencyCode.GBP, usdAmount))
+        );
+    }
+
+    @Test
+    public void when_convertAllFromUSD_expectSameResultsAsSingleConversions() throws CurrencyConversionException, APICallFailedException {
+        Mockito.doReturn(currencyRatesEUR).when(this.fixerCurrencyService).getLatestEURExchangeRatesFromAPI();
+
+        final List<BigDecimal> usdAmounts = Arrays.asList(new BigDecimal("10.00"), new BigDecimal("-7.50"), BigDecimal.ZERO, new BigDecimal("99999.99"));
+        final List<BigDecimal> converted = this.fixerCurrencyService.convertAllFromUSD(CurrencyCode.GBP, usdAmounts);
+
+        Assert.assertEquals(usdAmounts.size(), converted.size());
+        for (int i = 0; i < usdAmounts.size(); i++) {
+            Assert.assertThat(
+                    this.fixerCurrencyService.convertFromUSD(CurrencyCode.GBP, usdAmounts.get(i)),
+                    Matchers.comparesEqualTo(converted.get(i))
+            );
+        }
+    }
+
+    @Test
+    public void when_convertCentsFromUSD_expectSameResultsAsBigDecimalConversions() throws CurrencyConversionException, APICallFailedException {
+        final HashMap<CurrencyCode, BigDecimal> currencyRates = new HashMap<>(currencyRatesEUR);
+        currencyRates.put(CurrencyCode.IDR, new BigDecimal("16523.418753"));
+        currencyRates.put(CurrencyCode.BTC, new BigDecimal("0.000173"));
+        Mockito.doReturn(currencyRates).when(this.fixerCurrencyService).getLatestEURExchangeRatesFromAPI();
+
+        // fixed seed so failures can be reproduced
+        final Random random = new Random(42);
+        final long[] usdCents = new long[2000];
+        for (int i = 0; i < usdCents.length; i++) {
+            usdCents[i] = i % 4 == 0 ? random.nextLong() / 100000 : random.nextInt();
+        }
+        usdCents[0] = 0;
+        usdCents[1] = 1;
+        usdCents[2] = -1;
+
+        for (CurrencyCode currencyCode : Arrays.asList(CurrencyCode.USD, CurrencyCode.GBP, CurrencyCode.IDR, CurrencyCode.BTC)) {
+            final long[] converted = this.fixerCurrencyService.convertCentsFromUSD(currencyCode, usdCents);
+            final ExchangeRates exchangeRates = this.fixerCurrencyService.getExchangeRates();
+            for (int i = 0; i < usdCents.length; i++) {
+                final BigDecimal expected = this.fixerCurrencyService.convertFromUSD(currencyCode, BigDecimal.valueOf(usdCents[i], 2));
+                final String message = String.format("Converting: [%d] cents to: [%s]", usdCents[i], currencyCode);
+                Assert.assertEquals(message, expected.unscaledValue().longValueExact(), converted[i]);
+                // one at a time with the snapshot
+                Assert.assertEquals(message, converted[i], exchangeRates.convertCentsFromUSD(currencyCode, usdCents[i]));
+                Assert.assertEquals(message, converted[i], this.fixerCurrencyService.convertCentsFromUSD(currencyCode, usdCents[i]));
+            }
+        }
+    }
+
+    @Test
+    public void when_convertCentsRangeToUSD_expectExactlyTheAmountsConvertingWithinIt() throws CurrencyConversionException, APICallFailedException {
+        final HashMap<CurrencyCode, BigDecimal> currencyRates = new HashMap<>(currencyRatesEUR);
+        currencyRates.put(CurrencyCode.IDR, new BigDecimal("16523.418753"));
+        currencyRates.put(CurrencyCode.BTC, new BigDecimal("0.000173"));
+        Mockito.doReturn(currencyRates).when(this.fixerCurrencyService).getLatestEURExchangeRatesFromAPI();
+
+        // fixed seed so failures can be reproduced
+        final Random random = new Random(42);
+        for (CurrencyCode currencyCode : Arrays.asList(CurrencyCode.USD, CurrencyCode.GBP, CurrencyCode.IDR, CurrencyCode.BTC)) {
+            for (int i = 0; i < 500; i++) {
+                final long minCents = i == 0 ? 0 : random.nextInt(1000000);
+                final long maxCents = minCents + random.nextInt(100000);
+
+                final long[] usdRange = this.fixerCurrencyService.convertCentsRangeToUSD(currencyCode, minCents, maxCents);
+
+                final String message = String.format("Converting range: [%d] to: [%d] from: [%s]", minCents, maxCents, currencyCode);
+                final long[] converted = this.fixerCurrencyService.convertCentsFromUSD(currencyCode,
+                        new long[] {usdRange[0] - 1, usdRange[0], usdRange[1], usdRange[1] + 1});
+                if (usdRange[0] <= usdRange[1]) {
+                    // the range converts to within the bounds, the amounts either side of it don't
+                    Assert.assertTrue(message, usdRange[0] == 0 || converted[0] < minCents);
+                    Assert.assertThat(message, converted[1], Matchers.greaterThanOrEqualTo(minCents));
+                    Assert.assertThat(message, converted[2], Matchers.lessThanOrEqualTo(maxCents));
+                    Assert.assertThat(message, converted[3], Matchers.greaterThan(maxCents));
+                } else {
+                    // no amount converts to within the bounds, they fall between two neighbouring amounts
+                    Assert.assertThat(message, converted[2], Matchers.lessThan(minCents));
+                    Assert.assertThat(message, converted[1], Matchers.greaterThan(maxCents));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void when_refreshingExchangeRates_expectNewRatesUsedForConversion() throws CurrencyConversionException, APICallFailedException {
+        final HashMap<CurrencyCode, BigDecimal> updatedCurrencyRatesEUR = new HashMap<>(currencyRatesEUR);
+        updatedCurrencyRatesEUR.put(CurrencyCode.GBP, new BigDecimal(1.145771));
+        Mockito.doReturn(currencyRatesEUR).doReturn(updatedCurrencyRatesEUR).when(this.fixerCurrencyService).getLatestEURExchangeRatesFromAPI();
+
+        final BigDecimal usdAmount = new BigDecimal(10.00);
+
+        Assert.assertThat(
+                new BigDecimal(7.68),
+                Matchers.closeTo(this.fixerCurrencyService.convertFromUSD(CurrencyCode.GBP, usdAmount),  new BigDecimal(0.1))
+        );
+
+        this.fixerCurrencyService.refreshExchangeRates();
+
+        Assert.assertThat(
+                new BigDecimal(10.00),
+                Matchers.closeTo(this.fixerCurrencyService.convertFromUSD(CurrencyCode.GBP, usdAmount),  new BigDecimal(0.1))
+        );
+    }
+
+    @Test
+    public void when_refreshingExchangeRates_expectNewVersion() throws CurrencyConversionException, APICallFailedException {
+        Mockito.doReturn(currencyRatesEUR).when(this.fixerCurrencyService).getLatestEURExchangeRatesFromAPI();
+        Mockito.doReturn(1000L).when(this.fixerCurrencyService).currentTimeMillis();
+
+        // loads rates on first use
+        Assert.assertEquals(1000L, this.fixerCurrencyService.getExchangeRatesVersion());
+        Assert.assertEquals(1000L, this.fixerCurrencyService.getExchangeRatesVersion());
+
+        Mockito.doReturn(2000L).when(this.fixerCurrencyService).currentTimeMillis();
+        this.fixerCurrencyService.refreshExchangeRates();
+
+        Assert.assertEquals(2000L, this.fixerCurrencyService.getExchangeRatesVersion());
+        Mockito.verify(this.fixerCurrencyService, Mockito.times(2)).getLatestEURExchangeRatesFromAPI();
+    }
+
+    @Test
+    public void when_refreshingExchangeRates_expectRefreshedEventOnce() throws APICallFailedException {
+        final ApplicationEventPublisher eventPublisher = Mockito.mock(ApplicationEventPublisher.class);
+        this.fixerCurrencyService.setApplicationEventPublisher(eventPublisher);
+        Mockito.doReturn(currencyRatesEUR).when(this.fixerCurrencyService).getLatestEURExchangeRatesFromAPI();
+        Mockito.doReturn(1000L).when(this.fixerCurrencyService).currentTimeMillis();
+
+        this.fixerCurrencyService.refreshExchangeRates();
+
+        final ArgumentCaptor<ExchangeRatesRefreshedEvent> event = ArgumentCaptor.forClass(ExchangeRatesRefreshedEvent.class);
+        Mockito.verify(eventPublisher, Mockito.times(1)).publishEvent(event.capture());
+        Assert.assertEquals(1000L, event.getValue().getExchangeRatesVersion());
+    }
+
+    @Test
+    public void when_refreshingExchangeRatesFails_expectPreviousRatesUsedForConversion() throws CurrencyConversionException, APICallFailedException {
+        Mockito.doReturn(currencyRatesEUR)
+                .doThrow(new APICallFailedException("Fixer unavailable"))
+                .when(this.fixerCurrencyService).getLatestEURExchangeRatesFromAPI();
+
+        final BigDecimal usdAmount = new BigDecimal(10.00);
+
+        this.fixerCurrencyService.convertFromUSD(CurrencyCode.GBP, usdAmount);
+        // force the snapshot to be due a refresh
+        Mockito.doReturn(Long.MAX_VALUE).when(this.fixerCurrencyService).currentTimeMillis();
+        this.fixerCurrencyService.refreshExchangeRatesIfDue();
+
+        Assert.assertThat(
+                new BigDecimal(7.68),
+                Matchers.closeTo(this.fixerCurrencyService.convertFromUSD(CurrencyCode.GBP, usdAmount),  new BigDecimal(0.1))
+        );
+        Mockito.verify(this.fixerCurrencyService, Mockito.times(2)).getLatestEURExchangeRatesFromAPI();
+    }
+
+    @Test
+    public void when_fixerAPIFailsThenRecovers_expectRefreshMetrics() throws CurrencyConversionException, APICallFailedException {
+        final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        this.fixerCurrencyService.bindTo(meterRegistry);
+        Mockito.doThrow(new APICallFailedException("Fixer unavailable"))
+                .doReturn(currencyRatesEUR)
+                .when(this.fixerCurrencyService).getLatestEURExchangeRatesFromAPI();
+
+        try {
+            this.fixerCurrencyService.convertFromUSD(CurrencyCode.GBP, new BigDecimal(10.00));
+            Assert.fail("Expected exception");
+        } catch (CurrencyConversionException e) {
+            // expected
+        }
+
+        // no rates yet and further calls suspended
+        Assert.assertEquals(1, meterRegistry.get("currency.rates.refresh").functionTimer().count(), 0);
+        Assert.assertEquals(1, meterRegistry.get("currency.rates.refresh.failures").functionCounter().count(), 0);
+        Assert.assertEquals(1, meterRegistry.get("currency.rates.circuit.open").gauge().value(), 0);
+        Assert.assertTrue(Double.isNaN(meterRegistry.get("currency.rates.age").gauge().value()));
+
+        // move past the backoff
+        Mockito.doReturn(System.currentTimeMillis() + 600000).when(this.fixerCurrencyService).currentTimeMillis();
+        this.fixerCurrencyService.convertFromUSD(CurrencyCode.GBP, new BigDecimal(10.00));
+
+        Assert.assertEquals(2, meterRegistry.get("currency.rates.refresh").functionTimer().count(), 0);
+        Assert.assertEquals(1, meterRegistry.get("currency.rates.refresh.failures").functionCounter().count(), 0);
+        Assert.assertEquals(0, meterRegistry.get("currency.rates.circuit.open").gauge().value(), 0);
+        Assert.assertEquals(0, meterRegistry.get("currency.rates.age").gauge().value(), 0);
+    }
+
+    @Test
+    public void when_exchangeRatesAreFresh_expectNoBackgroundRefresh() throws CurrencyConversionException, APICallFailedException {
+        Mockito.doReturn(currencyRatesEUR).when(this.fixerCurrencyService).getLatestEURExchangeRatesFromAPI();
+
+        this.fixerCurrencyService.convertFromUSD(CurrencyCode.GBP, new BigDecimal(10.00));
+        this.fixerCurrencyService.refreshExchangeRatesIfDue();
+
+        Mockito.verify(this.fixerCurrencyService, Mockito.times(1)).getLatestEURExchangeRatesFromAPI();
+    }
+
+    @Test
+    public void when_fixerAPIFails_expectFailFastWithoutFurtherAPICalls() throws APICallFailedException {
+        Mockito.doThrow(new APICallFailedException("Fixer unavailable")).when(this.fixerCurrencyService).getLatestEURExchangeRatesFromAPI();
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                this.fixerCurrencyService.convertFromUSD(CurrencyCode.GBP, new BigDecimal(10.00));
+                Assert.fail("Expected exception");
+            } catch (CurrencyConversionException e) {
+                Assert.assertThat(e.getCause(), Matchers.instanceOf(APICallFailedException.class));
+            }
+        }
+
+        // assert failure was remembered rather than every conversion calling the API
+        Mockito.verify(this.fixerCurrencyService, Mockito.times(1)).getLatestEURExchangeRatesFromAPI();
+    }
+
+    @Test
+    public void when_fixerAPIRecoversAfterBackoff_expectValidConversion() throws CurrencyConversionException, APICallFailedException {
+        Mockito.doThrow(new APICallFailedException("Fixer unavailable"))
+                .doReturn(currencyRatesEUR)
+                .when(this.fixerCurrencyService).getLatestEURExchangeRatesFromAPI();
+
+        try {
+            this.fixerCurrencyService.convertFromUSD(CurrencyCode.GBP, new BigDecimal(10.00));
+            Assert.fail("Expected exception");
+        } catch (CurrencyConversionException e) {
+            // expected
+        }
+
+        // move past the backoff
+        Mockito.doReturn(System.currentTimeMillis() + 600000).when(this.fixerCurrencyService).currentTimeMillis();
+
+        Assert.assertThat(
+                new BigDecimal(7.68),
+                Matchers.closeTo(this.fixerCurrencyService.convertFromUSD(CurrencyCode.GBP, new BigDecimal(10.00)),  new BigDecimal(0.1))
+        );
+        Mockito.verify(this.fixerCurrencyService, Mockito.times(2)).getLatestEURExchangeRatesFromAPI();
+    }
+
+    @Test
+    public void when_trialCallThrowsError_expectCircuitOpenedAgainNotStuckHalfOpen() throws CurrencyConversionException, APICallFailedException {
+        Mockito.doThrow(new APICallFailedException("Fixer unavailable"))
+                .doThrow(new NoClassDefFoundError("Fixer client"))
+                .doReturn(currencyRatesEUR)
+                .when(this.fixerCurrencyService).getLatestEURExchangeRatesFromAPI();
+        final long start = System.currentTimeMillis();
+
+        try {
+            this.fixerCurrencyService.convertFromUSD(CurrencyCode.GBP, new BigDecimal(10.00));
+            Assert.fail("Expected exception");
+        } catch (CurrencyConversionException e) {
+            // expected
+        }
+
+        // the trial call after the backoff fails with an Error
+        Mockito.doReturn(start + 600000).when(this.fixerCurrencyService).currentTimeMillis();
+        try {
+            this.fixerCurrencyService.convertFromUSD(CurrencyCode.GBP, new BigDecimal(10.00));
+            Assert.fail("Expected error");
+        } catch (NoClassDefFoundError e) {
+            // expected
+        }
+
+        // recorded as a failure, so the circuit is open again rather than waiting on a trial that never ends
+        try {
+            this.fixerCurrencyService.convertFromUSD(CurrencyCode.GBP, new BigDecimal(10.00));
+            Assert.fail("Expected exception");
+        } catch (CurrencyConversionException e) {
+            Assert.assertThat(e.getCause(), Matchers.instanceOf(APICallFailedException.class));
+        }
+        Mockito.verify(this.fixerCurrencyService, Mockito.times(2)).getLatestEURExchangeRatesFromAPI();
+
+        // and recovers after the next backoff
+        Mockito.doReturn(start + 1200000).when(this.fixerCurrencyService).currentTimeMillis();
+        Assert.assertThat(
+                new BigDecimal(7.68),
+                Matchers.closeTo(this.fixerCurrencyService.convertFromUSD(CurrencyCode.GBP, new BigDecimal(10.00)), new BigDecimal(0.1))
+        );
+    }
+
+    @Test
+    public void when_concurrentConversionsBeforeRatesLoaded_expectSingleAPICall() throws Exception {
+        Mockito.doAnswer(invocation -> {
+            Thread.sleep(200);
+            return currencyRatesEUR;
+        }).when(this.fixerCurrencyService).getLatestEURExchangeRatesFromAPI();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<BigDecimal>> conversions = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                conversions.add(executor.submit(() -> this.fixerCurrencyService.convertFromUSD(CurrencyCode.GBP, new BigDecimal(10.00))));
+            }
+            for (Future<BigDecimal> conversion : conversions) {
+                Assert.assertThat(new BigDecimal(7.68), Matchers.closeTo(conversion.get(), new BigDecimal(0.1)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // assert every caller shared the one refresh
+        Mockito.verify(this.fixerCurrencyService, Mockito.times(1)).getLatestEURExchangeRatesFromAPI();
+    }
+
     // TODO tests on race conditions of cache init, exception handling, missing currencies etc
 }
@@ -1,9 +1,79 @@
 package com.kerby.example.packages;
 
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.ScheduledAnnotationBeanPostProcessor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.util.Assert;
 
 @Configuration
 @ComponentScan(basePackages = "com.kerby.example.packages")
+@PropertySource("classpath:config/package-service.properties")
+@EnableScheduling // background check of package totals, see PackageTotalReconciler
 public class PackageConfig {
+
+    public static final String DATABASE_EXECUTOR = "packagesDatabaseExecutor";
+    public static final String CURRENCY_EXECUTOR = "packagesCurrencyExecutor";
+
+    /**
+     * Runs the database work of AsyncPackageService. Fixed size with a bounded queue, tasks beyond it are rejected
+     */
+    @Bean(name = DATABASE_EXECUTOR)
+    public ThreadPoolTaskExecutor databaseExecutor(@Value("${packages.executor.database.threads}") int threads,
+                                                   @Value("${packages.executor.database.queue-capacity}") int queueCapacity) {
+        return boundedExecutor("packages-db-", threads, queueCapacity);
+    }
+
+    /**
+     * Runs the currency conversions of AsyncPackageService, kept apart so a slow Fixer API can't hold up database work
+     */
+    @Bean(name = CURRENCY_EXECUTOR)
+    public ThreadPoolTaskExecutor currencyExecutor(@Value("${packages.executor.currency.threads}") int threads,
+                                                   @Value("${packages.executor.currency.queue-capacity}") int queueCapacity) {
+        return boundedExecutor("packages-currency-", threads, queueCapacity);
+    }
+
+    private static ThreadPoolTaskExecutor boundedExecutor(String threadNamePrefix, int threads, int queueCapacity) {
+        final ThreadPoolTaskExecutor result = new ThreadPoolTaskExecutor();
+        result.setThreadNamePrefix(threadNamePrefix);
+        result.setCorePoolSize(threads);
+        result.setMaxPoolSize(threads);
+        result.setQueueCapacity(queueCapacity);
+        // let queued work finish on shutdown
+        result.setWaitForTasksToCompleteOnShutdown(true);
+
+        return result;
+    }
+
+    /**
+     * Runs the scheduled tasks of every service, found by its name. Spring's default runs them all on one thread, so
+     * a long check of package totals would hold up the refresh of exchange rates
+     */
+    @Bean(name = ScheduledAnnotationBeanPostProcessor.DEFAULT_TASK_SCHEDULER_BEAN_NAME)
+    public ThreadPoolTaskScheduler taskScheduler(@Value("${packages.scheduler.threads}") int threads) {
+        Assert.isTrue(threads >= 2, "At least 2 scheduler threads are required, so a task can run alongside the check of package totals");
+        final ThreadPoolTaskScheduler result = new ThreadPoolTaskScheduler();
+        result.setThreadNamePrefix("packages-scheduler-");
+        result.setPoolSize(threads);
+
+        return result;
+    }
+
+    @Bean // active threads, queued and completed tasks of each executor
+    public MeterBinder executorMetrics(@Qualifier(DATABASE_EXECUTOR) ThreadPoolTaskExecutor databaseExecutor,
+                                       @Qualifier(CURRENCY_EXECUTOR) ThreadPoolTaskExecutor currencyExecutor) {
+        return registry -> {
+            new ExecutorServiceMetrics(databaseExecutor.getThreadPoolExecutor(), DATABASE_EXECUTOR, Tags.empty()).bindTo(registry);
+            new ExecutorServiceMetrics(currencyExecutor.getThreadPoolExecutor(), CURRENCY_EXECUTOR, Tags.empty()).bindTo(registry);
+        };
+    }
 }
@@ -0,0 +1,12 @@
+package com.kerby.example.packages.exceptions;
+
+/**
+ * Thrown when reading an in memory index of packages before it is first built from the database, when it would
+ * otherwise miss packages without saying so. Retrying once the application has started succeeds.
+ */
+public class PackageIndexNotBuiltException extends IllegalStateException {
+
+    public PackageIndexNotBuiltException(String message) {
+        super(message);
+    }
+}
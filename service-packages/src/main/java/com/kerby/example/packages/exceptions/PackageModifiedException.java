@@ -0,0 +1,16 @@
+package com.kerby.example.packages.exceptions;
+
+/**
+ * Thrown when a package is updated from a revision which is no longer its current one, as it has been changed since
+ * the client read it.
+ */
+public class PackageModifiedException extends Exception {
+
+    public PackageModifiedException(String message) {
+        super(message);
+    }
+
+    public PackageModifiedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
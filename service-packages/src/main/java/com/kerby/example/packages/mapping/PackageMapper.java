@@ -1,6 +1,8 @@
 package com.kerby.example.packages.mapping;
 
+import com.kerby.example.common.money.Money;
 import com.kerby.example.database.models.PackageEntity;
+import com.kerby.example.database.models.PackageSummary;
 import com.kerby.example.database.models.ProductEntity;
 import com.kerby.example.packages.models.Product;
 import com.kerby.example.packages.models.Package;
@@ -8,27 +10,32 @@ import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import org.mapstruct.factory.Mappers;
 
-import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 @Mapper
 public interface PackageMapper {
 
     PackageMapper INSTANCE = Mappers.getMapper(PackageMapper.class);
 
-    @Mapping(source = "productEntities", target = "products")
-    default Package entityToPackage(PackageEntity entity) {
+    /**
+     * @param productEntities - products by id, at least those of the package, e.g. from ProductCatalogue
+     * @throws IllegalStateException if a product of the package is missing
+     */
+    default Package entityToPackage(PackageEntity entity, Map<String, ProductEntity> productEntities) {
         if ( entity == null ) {
             return null;
         }
         final Package result;
 
-        BigDecimal usdTotal = new BigDecimal(0);
-        final List<Product> products = new ArrayList<>();
-        for (ProductEntity productEntity : entity.getProductEntities()) {
+        final List<Product> products = new ArrayList<>(entity.getProductIds().size());
+        for (String productId : entity.getProductIds()) {
+            final ProductEntity productEntity = productEntities.get(productId);
+            if (productEntity == null) {
+                throw new IllegalStateException(String.format("Product: [%s] of package: [%d] not found", productId, entity.getId()));
+            }
             products.add(ProductMapper.INSTANCE.entityToProduct(productEntity));
-            usdTotal = usdTotal.add(productEntity.getUsdPrice());
         }
 
         result = new Package(
@@ -36,12 +43,47 @@ public interface PackageMapper {
                 entity.getDescription(),
                 products);
         result.setId(entity.getId());
-        result.setPrice(usdTotal);
+        result.setPrice(entity.getUsdTotal());
+        result.setLastModified(entity.getLastModified());
 
         return result;
     }
 
-    @Mapping(source = "products", target = "productEntities")
+    /**
+     * Maps a package without its products, products are left null
+     */
+    default Package summaryToPackage(PackageSummary summary) {
+        if ( summary == null ) {
+            return null;
+        }
+        final Package result = new Package(summary.getName(), summary.getDescription(), null);
+        result.setId(summary.getId());
+        result.setPrice(summary.getUsdTotal());
+
+        return result;
+    }
+
+    /**
+     * usdTotal should be set with sumUsdPrices, the products themselves saved with ProductCatalogue
+     */
+    @Mapping(source = "products", target = "productIds")
+    @Mapping(target = "usdTotal", ignore = true)
     PackageEntity packageToEntity(Package entity);
 
+    default String productToId(Product product) {
+        return product.getId();
+    }
+
+    /**
+     * @return total price of the products in whole USD cents, to store as the usdTotal of their package
+     */
+    default long sumUsdPrices(List<ProductEntity> productEntities) {
+        long result = 0;
+        for (ProductEntity productEntity : productEntities) {
+            result = Money.add(result, productEntity.getUsdPrice());
+        }
+
+        return result;
+    }
+
 }
@@ -3,6 +3,7 @@ package com.kerby.example.packages.mapping;
 import com.kerby.example.database.models.ProductEntity;
 import com.kerby.example.packages.models.Product;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 import org.mapstruct.factory.Mappers;
 
 @Mapper
@@ -12,6 +13,7 @@ public interface ProductMapper {
 
     Product entityToProduct(ProductEntity entity);
 
+    @Mapping(target = "version", ignore = true)
     ProductEntity productToEntity(Product entity);
 
 }
@@ -1,6 +1,5 @@
 package com.kerby.example.packages.models;
 
-import java.math.BigDecimal;
 import java.util.List;
 
 public class Package {
@@ -9,7 +8,9 @@ public class Package {
     private String name;
     private String description;
     private List<Product> products;
-    private BigDecimal price;
+    // cents, in USD unless converted to another currency
+    private long price;
+    private long lastModified;
 
     public int getId() {
         return id;
@@ -43,14 +44,22 @@ public class Package {
         this.products = products;
     }
 
-    public BigDecimal getPrice() {
+    public long getPrice() {
         return price;
     }
 
-    public void setPrice(BigDecimal price) {
+    public void setPrice(long price) {
         this.price = price;
     }
 
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
     public Package() {
     }
 
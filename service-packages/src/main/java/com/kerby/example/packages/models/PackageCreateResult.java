@@ -0,0 +1,45 @@
+package com.kerby.example.packages.models;
+
+/**
+ * Outcome of creating one package of a batch, either the id of the package created or why it wasn't.
+ */
+public class PackageCreateResult {
+
+    // 0 if not created
+    private final int id;
+    // null if created
+    private final String error;
+
+    private PackageCreateResult(int id, String error) {
+        this.id = id;
+        this.error = error;
+    }
+
+    public static PackageCreateResult created(int id) {
+        return new PackageCreateResult(id, null);
+    }
+
+    public static PackageCreateResult invalid(String error) {
+        return new PackageCreateResult(0, error);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public boolean isCreated() {
+        return error == null;
+    }
+
+    @Override
+    public String toString() {
+        return "PackageCreateResult{" +
+                "id=" + id +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,39 @@
+package com.kerby.example.packages.models;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Fields of a Package a client can ask for, so reads can skip loading what isn't wanted.
+ */
+public enum PackageField {
+
+    ID,
+    NAME,
+    DESCRIPTION,
+    PRICE,
+    PRODUCTS;
+
+    /**
+     * @param field - name of the field, in any case
+     * @throws IllegalArgumentException if there is no field with the name
+     */
+    public static PackageField fromString(String field) {
+        for (PackageField value : values()) {
+            if (value.name().equalsIgnoreCase(field)) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException(String.format("The field provided: [%s] is not one of: %s",
+                field, EnumSet.allOf(PackageField.class).toString().toLowerCase(Locale.ROOT)));
+    }
+
+    /**
+     * @param fields - fields asked for, or null for every field
+     * @return whether the products of packages need loading
+     */
+    public static boolean withProducts(Set<PackageField> fields) {
+        return fields == null || fields.contains(PRODUCTS);
+    }
+}
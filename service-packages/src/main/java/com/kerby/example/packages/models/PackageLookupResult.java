@@ -0,0 +1,52 @@
+package com.kerby.example.packages.models;
+
+/**
+ * Outcome of looking up one package of a batch, either the package or why it wasn't returned.
+ */
+public class PackageLookupResult {
+
+    private final int id;
+    // null if not found
+    private final Package aPackage;
+    // null if found
+    private final String error;
+
+    private PackageLookupResult(int id, Package aPackage, String error) {
+        this.id = id;
+        this.aPackage = aPackage;
+        this.error = error;
+    }
+
+    public static PackageLookupResult found(Package aPackage) {
+        return new PackageLookupResult(aPackage.getId(), aPackage, null);
+    }
+
+    public static PackageLookupResult notFound(int id) {
+        return new PackageLookupResult(id, null, String.format("No package found with id: [%d]", id));
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Package getPackage() {
+        return aPackage;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public boolean isFound() {
+        return aPackage != null;
+    }
+
+    @Override
+    public String toString() {
+        return "PackageLookupResult{" +
+                "id=" + id +
+                ", aPackage=" + aPackage +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
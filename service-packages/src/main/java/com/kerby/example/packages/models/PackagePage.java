@@ -0,0 +1,49 @@
+package com.kerby.example.packages.models;
+
+import java.util.List;
+
+/**
+ * A page of packages in id order, with a cursor to request the next page.
+ */
+public class PackagePage {
+
+    private List<Package> packages;
+    // null when there are no more packages
+    private String nextCursor;
+
+    public List<Package> getPackages() {
+        return packages;
+    }
+
+    public void setPackages(List<Package> packages) {
+        this.packages = packages;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    public PackagePage() {
+    }
+
+    public PackagePage(List<Package> packages, String nextCursor) {
+        this.packages = packages;
+        this.nextCursor = nextCursor;
+    }
+
+    @Override
+    public String toString() {
+        return "PackagePage{" +
+                "packages=" + packages +
+                ", nextCursor='" + nextCursor + '\'' +
+                '}';
+    }
+}
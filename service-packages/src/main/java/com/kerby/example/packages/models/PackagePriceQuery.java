@@ -0,0 +1,59 @@
+package com.kerby.example.packages.models;
+
+/**
+ * Packages with prices in a range, in the currency they are requested in, ordered by price.
+ */
+public class PackagePriceQuery {
+
+    // least and greatest price in cents inclusive, null for no bound
+    private Long minPrice;
+    private Long maxPrice;
+    // dearest first rather than cheapest
+    private boolean descending;
+
+    public Long getMinPrice() {
+        return minPrice;
+    }
+
+    public void setMinPrice(Long minPrice) {
+        this.minPrice = minPrice;
+    }
+
+    public Long getMaxPrice() {
+        return maxPrice;
+    }
+
+    public void setMaxPrice(Long maxPrice) {
+        this.maxPrice = maxPrice;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public void setDescending(boolean descending) {
+        this.descending = descending;
+    }
+
+    public boolean hasBounds() {
+        return minPrice != null || maxPrice != null;
+    }
+
+    public PackagePriceQuery() {
+    }
+
+    public PackagePriceQuery(Long minPrice, Long maxPrice, boolean descending) {
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+        this.descending = descending;
+    }
+
+    @Override
+    public String toString() {
+        return "PackagePriceQuery{" +
+                "minPrice=" + minPrice +
+                ", maxPrice=" + maxPrice +
+                ", descending=" + descending +
+                '}';
+    }
+}
@@ -0,0 +1,35 @@
+package com.kerby.example.packages.models;
+
+/**
+ * Identifies the current state of a package, or a page of packages, in a currency without loading it.
+ * The tag changes whenever the packages or the exchange rates used for their prices do, so a client holding a copy
+ * with the same tag already has the current state.
+ */
+public class PackageRevision {
+
+    // opaque, compare for equality only
+    private final String tag;
+    // time in millis of the latest change, 0 if unknown
+    private final long lastModified;
+
+    public PackageRevision(String tag, long lastModified) {
+        this.tag = tag;
+        this.lastModified = lastModified;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public String toString() {
+        return "PackageRevision{" +
+                "tag='" + tag + '\'' +
+                ", lastModified=" + lastModified +
+                '}';
+    }
+}
@@ -0,0 +1,44 @@
+package com.kerby.example.packages.models;
+
+import java.util.List;
+
+/**
+ * A page of packages matching a search, best match first, with how many match in total.
+ */
+public class PackageSearchResult {
+
+    private List<Package> packages;
+    private int total;
+
+    public List<Package> getPackages() {
+        return packages;
+    }
+
+    public void setPackages(List<Package> packages) {
+        this.packages = packages;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    public PackageSearchResult() {
+    }
+
+    public PackageSearchResult(List<Package> packages, int total) {
+        this.packages = packages;
+        this.total = total;
+    }
+
+    @Override
+    public String toString() {
+        return "PackageSearchResult{" +
+                "packages=" + packages +
+                ", total=" + total +
+                '}';
+    }
+}
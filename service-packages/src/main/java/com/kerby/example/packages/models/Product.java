@@ -2,13 +2,12 @@ package com.kerby.example.packages.models;
 
 import org.apache.commons.lang3.ObjectUtils;
 
-import java.math.BigDecimal;
-
 public class Product {
 
     private String id;
     private String name;
-    private BigDecimal usdPrice;
+    // whole USD cents
+    private long usdPrice;
 
     public String getId() {
         return id;
@@ -26,22 +25,22 @@ public class Product {
         this.name = name;
     }
 
-    public BigDecimal getUsdPrice() {
+    public long getUsdPrice() {
         return usdPrice;
     }
 
-    public void setUsdPrice(BigDecimal usdPrice) {
+    public void setUsdPrice(long usdPrice) {
         this.usdPrice = usdPrice;
     }
 
     public boolean isValid() {
-        return ObjectUtils.allNotNull(this.id, this.name, this.usdPrice);
+        return ObjectUtils.allNotNull(this.id, this.name) && this.usdPrice >= 0;
     }
 
     public Product() {
     }
 
-    public Product(String id, String name, BigDecimal usdPrice) {
+    public Product(String id, String name, long usdPrice) {
         this.id = id;
         this.name = name;
         this.usdPrice = usdPrice;
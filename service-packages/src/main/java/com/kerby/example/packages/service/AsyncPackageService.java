@@ -0,0 +1,73 @@
+package com.kerby.example.packages.service;
+
+import com.kerby.example.packages.models.Package;
+import com.kerby.example.packages.models.PackageField;
+import com.kerby.example.packages.models.PackageLookupResult;
+import com.kerby.example.packages.models.PackagePage;
+import com.kerby.example.packages.models.PackagePriceQuery;
+import com.kerby.example.packages.models.PackageRevision;
+import com.kerby.example.packages.models.PackageSearchResult;
+
+import javax.validation.constraints.NotNull;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of the PackageService read paths, so callers need not hold a thread while they wait.
+ *
+ * Database work runs on the packages database executor and currency conversion on the currency executor. Both are
+ * bounded, so a slow database or Fixer API only ties up the threads of its own executor. Futures complete
+ * exceptionally with the exceptions PackageService would throw, or a RejectedExecutionException when an executor
+ * is saturated. An invalid currency code is thrown straight away as an IllegalArgumentException.
+ */
+public interface AsyncPackageService {
+
+    /**
+     * @see PackageService#getPackage(String, int)
+     */
+    CompletableFuture<Package> getPackage(String exchangeToCurrencyCode, @NotNull int packageId);
+
+    /**
+     * @see PackageService#getPackagesById(String, List, Set)
+     */
+    CompletableFuture<List<PackageLookupResult>> getPackagesById(String exchangeToCurrencyCode, @NotNull List<Integer> packageIds, Set<PackageField> fields);
+
+    /**
+     * @see PackageService#getPackageRevision(String, int)
+     */
+    CompletableFuture<PackageRevision> getPackageRevision(String exchangeToCurrencyCode, @NotNull int packageId);
+
+    /**
+     * @see PackageService#getPackages(String, String, int)
+     */
+    CompletableFuture<PackagePage> getPackages(String exchangeToCurrencyCode, String cursor, int limit);
+
+    /**
+     * @see PackageService#getPackagesRevision(String, String, int)
+     */
+    CompletableFuture<PackageRevision> getPackagesRevision(String exchangeToCurrencyCode, String cursor, int limit);
+
+    /**
+     * @see PackageService#getPackageSummaries(String, String, int)
+     */
+    CompletableFuture<PackagePage> getPackageSummaries(String exchangeToCurrencyCode, String cursor, int limit);
+
+    /**
+     * A price range in another currency is translated to USD with the same exchange rates the prices are converted
+     * with, so both run on the database executor.
+     * @see PackageService#getPackagesByPrice(String, PackagePriceQuery, String, int, Set)
+     */
+    CompletableFuture<PackagePage> getPackagesByPrice(String exchangeToCurrencyCode, @NotNull PackagePriceQuery query, String cursor, int limit, Set<PackageField> fields);
+
+    /**
+     * @see PackageService#getPackagesByPriceRevision(String, PackagePriceQuery, String, int)
+     */
+    CompletableFuture<PackageRevision> getPackagesByPriceRevision(String exchangeToCurrencyCode, @NotNull PackagePriceQuery query, String cursor, int limit);
+
+    /**
+     * @see PackageService#searchPackages(String, String, int, int, Set)
+     */
+    CompletableFuture<PackageSearchResult> searchPackages(String exchangeToCurrencyCode, String query, int offset, int limit, Set<PackageField> fields);
+
+}
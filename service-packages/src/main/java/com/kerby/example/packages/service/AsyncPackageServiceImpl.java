@@ -0,0 +1,216 @@
+package com.kerby.example.packages.service;
+
+import com.kerby.example.currency.models.CurrencyCode;
+import com.kerby.example.currency.service.CurrencyService;
+import com.kerby.example.packages.PackageConfig;
+import com.kerby.example.packages.models.Package;
+import com.kerby.example.packages.models.PackageField;
+import com.kerby.example.packages.models.PackageLookupResult;
+import com.kerby.example.packages.models.PackagePage;
+import com.kerby.example.packages.models.PackagePriceQuery;
+import com.kerby.example.packages.models.PackageRevision;
+import com.kerby.example.packages.models.PackageSearchResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Packages are read in USD through PackageService on the database executor, then any prices converted on the
+ * currency executor. Revisions are built the same way so they match those of PackageService.
+ */
+@Service
+public class AsyncPackageServiceImpl implements AsyncPackageService {
+
+    private PackageService packageService;
+    private CurrencyService currencyService;
+    private Executor databaseExecutor;
+    private Executor currencyExecutor;
+
+    public AsyncPackageServiceImpl(@Autowired PackageService packageService,
+                                   @Autowired CurrencyService currencyService,
+                                   @Autowired @Qualifier(PackageConfig.DATABASE_EXECUTOR) Executor databaseExecutor,
+                                   @Autowired @Qualifier(PackageConfig.CURRENCY_EXECUTOR) Executor currencyExecutor) {
+        this.packageService = packageService;
+        this.currencyService = currencyService;
+        this.databaseExecutor = databaseExecutor;
+        this.currencyExecutor = currencyExecutor;
+    }
+
+    @Override
+    public CompletableFuture<Package> getPackage(final String exchangeToCurrencyCode, @NotNull final int packageId) {
+        final CurrencyCode exchangeToCode = PackageServiceImpl.getCurrencyCode(this.currencyService, exchangeToCurrencyCode);
+
+        final CompletableFuture<Package> result = supplyAsync(this.databaseExecutor,
+                () -> this.packageService.getPackage(null, packageId));
+
+        return exchangeToCode != null
+                ? result.thenCompose(aPackage -> supplyAsync(this.currencyExecutor, () -> {
+                    aPackage.setPrice(this.currencyService.convertCentsFromUSD(exchangeToCode, aPackage.getPrice()));
+                    return aPackage;
+                }))
+                : result;
+    }
+
+    @Override
+    public CompletableFuture<List<PackageLookupResult>> getPackagesById(final String exchangeToCurrencyCode, @NotNull final List<Integer> packageIds, final Set<PackageField> fields) {
+        final CurrencyCode exchangeToCode = PackageServiceImpl.getCurrencyCode(this.currencyService, exchangeToCurrencyCode);
+
+        final CompletableFuture<List<PackageLookupResult>> result = supplyAsync(this.databaseExecutor,
+                () -> this.packageService.getPackagesById(null, packageIds, fields));
+
+        return exchangeToCode != null
+                ? result.thenCompose(lookupResults -> supplyAsync(this.currencyExecutor, () -> {
+                    // an id given more than once shares its package, which is converted once
+                    final Set<Package> packages = Collections.newSetFromMap(new IdentityHashMap<>());
+                    for (PackageLookupResult lookupResult : lookupResults) {
+                        if (lookupResult.isFound()) {
+                            packages.add(lookupResult.getPackage());
+                        }
+                    }
+                    PackageServiceImpl.convertPrices(this.currencyService, exchangeToCode, new ArrayList<>(packages));
+                    return lookupResults;
+                }))
+                : result;
+    }
+
+    @Override
+    public CompletableFuture<PackageRevision> getPackageRevision(final String exchangeToCurrencyCode, @NotNull final int packageId) {
+        final CurrencyCode exchangeToCode = PackageServiceImpl.getCurrencyCode(this.currencyService, exchangeToCurrencyCode);
+
+        final CompletableFuture<PackageRevision> result = supplyAsync(this.databaseExecutor,
+                () -> this.packageService.getPackageRevision(null, packageId));
+
+        return exchangeToCode != null ? result.thenCompose(revision -> withExchangeRates(revision, exchangeToCode)) : result;
+    }
+
+    @Override
+    public CompletableFuture<PackagePage> getPackages(final String exchangeToCurrencyCode, final String cursor, final int limit) {
+        final CurrencyCode exchangeToCode = PackageServiceImpl.getCurrencyCode(this.currencyService, exchangeToCurrencyCode);
+
+        final CompletableFuture<PackagePage> result = supplyAsync(this.databaseExecutor,
+                () -> this.packageService.getPackages(null, cursor, limit));
+
+        return exchangeToCode != null
+                ? result.thenCompose(page -> supplyAsync(this.currencyExecutor, () -> {
+                    PackageServiceImpl.convertPrices(this.currencyService, exchangeToCode, page.getPackages());
+                    return page;
+                }))
+                : result;
+    }
+
+    @Override
+    public CompletableFuture<PackageRevision> getPackagesRevision(final String exchangeToCurrencyCode, final String cursor, final int limit) {
+        final CurrencyCode exchangeToCode = PackageServiceImpl.getCurrencyCode(this.currencyService, exchangeToCurrencyCode);
+
+        final CompletableFuture<PackageRevision> result = supplyAsync(this.databaseExecutor,
+                () -> this.packageService.getPackagesRevision(null, cursor, limit));
+
+        return exchangeToCode != null ? result.thenCompose(revision -> withExchangeRates(revision, exchangeToCode)) : result;
+    }
+
+    @Override
+    public CompletableFuture<PackagePage> getPackageSummaries(final String exchangeToCurrencyCode, final String cursor, final int limit) {
+        final CurrencyCode exchangeToCode = PackageServiceImpl.getCurrencyCode(this.currencyService, exchangeToCurrencyCode);
+
+        final CompletableFuture<PackagePage> result = supplyAsync(this.databaseExecutor,
+                () -> this.packageService.getPackageSummaries(null, cursor, limit));
+
+        return exchangeToCode != null
+                ? result.thenCompose(page -> supplyAsync(this.currencyExecutor, () -> {
+                    PackageServiceImpl.convertPrices(this.currencyService, exchangeToCode, page.getPackages());
+                    return page;
+                }))
+                : result;
+    }
+
+    @Override
+    public CompletableFuture<PackagePage> getPackagesByPrice(final String exchangeToCurrencyCode, @NotNull final PackagePriceQuery query, final String cursor, final int limit,
+                                                             final Set<PackageField> fields) {
+        final CurrencyCode exchangeToCode = PackageServiceImpl.getCurrencyCode(this.currencyService, exchangeToCurrencyCode);
+        if (exchangeToCode != null && query != null && query.hasBounds()) {
+            // the range needs the exchange rates before the index can be read
+            return supplyAsync(this.databaseExecutor,
+                    () -> this.packageService.getPackagesByPrice(exchangeToCurrencyCode, query, cursor, limit, fields));
+        }
+
+        final CompletableFuture<PackagePage> result = supplyAsync(this.databaseExecutor,
+                () -> this.packageService.getPackagesByPrice(null, query, cursor, limit, fields));
+
+        return exchangeToCode != null
+                ? result.thenCompose(page -> supplyAsync(this.currencyExecutor, () -> {
+                    PackageServiceImpl.convertPrices(this.currencyService, exchangeToCode, page.getPackages());
+                    return page;
+                }))
+                : result;
+    }
+
+    @Override
+    public CompletableFuture<PackageRevision> getPackagesByPriceRevision(final String exchangeToCurrencyCode, @NotNull final PackagePriceQuery query, final String cursor, final int limit) {
+        final CurrencyCode exchangeToCode = PackageServiceImpl.getCurrencyCode(this.currencyService, exchangeToCurrencyCode);
+        if (exchangeToCode != null && query != null && query.hasBounds()) {
+            return supplyAsync(this.databaseExecutor,
+                    () -> this.packageService.getPackagesByPriceRevision(exchangeToCurrencyCode, query, cursor, limit));
+        }
+
+        final CompletableFuture<PackageRevision> result = supplyAsync(this.databaseExecutor,
+                () -> this.packageService.getPackagesByPriceRevision(null, query, cursor, limit));
+
+        return exchangeToCode != null ? result.thenCompose(revision -> withExchangeRates(revision, exchangeToCode)) : result;
+    }
+
+    @Override
+    public CompletableFuture<PackageSearchResult> searchPackages(final String exchangeToCurrencyCode, final String query, final int offset, final int limit,
+                                                                 final Set<PackageField> fields) {
+        final CurrencyCode exchangeToCode = PackageServiceImpl.getCurrencyCode(this.currencyService, exchangeToCurrencyCode);
+
+        final CompletableFuture<PackageSearchResult> result = supplyAsync(this.databaseExecutor,
+                () -> this.packageService.searchPackages(null, query, offset, limit, fields));
+
+        return exchangeToCode != null
+                ? result.thenCompose(searchResult -> supplyAsync(this.currencyExecutor, () -> {
+                    PackageServiceImpl.convertPrices(this.currencyService, exchangeToCode, searchResult.getPackages());
+                    return searchResult;
+                }))
+                : result;
+    }
+
+    private CompletableFuture<PackageRevision> withExchangeRates(final PackageRevision usdRevision, final CurrencyCode exchangeToCode) {
+        // looking up the exchange rates version may refresh them from the Fixer API
+        return supplyAsync(this.currencyExecutor, () -> PackageServiceImpl.withExchangeRates(
+                usdRevision, exchangeToCode, this.currencyService.getExchangeRatesVersion()));
+    }
+
+    /**
+     * Runs a call on an executor. Exceptions, including the executor rejecting the call, complete the future
+     * exceptionally rather than being thrown to the caller.
+     */
+    private static <T> CompletableFuture<T> supplyAsync(final Executor executor, final Callable<T> callable) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return callable.call();
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            final CompletableFuture<T> result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+            return result;
+        }
+    }
+}
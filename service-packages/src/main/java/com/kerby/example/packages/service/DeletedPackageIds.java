@@ -0,0 +1,61 @@
+package com.kerby.example.packages.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Ids of recently deleted packages, so an in memory index can ignore a change to a package which reaches it after
+ * the package was deleted.
+ *
+ * Indexes are changed as each transaction commits, so a change committed before a delete can only arrive a moment
+ * after it. Ids are kept for RETENTION_MILLIS, far longer than that, then pruned as others are added or looked up.
+ * Ids come from a sequence and are never reused, so a pruned id is never seen again.
+ *
+ * Not thread safe, guard it with the lock of the index.
+ */
+final class DeletedPackageIds {
+
+    static final long RETENTION_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    // id -> time deleted in millis, oldest first
+    private final LinkedHashMap<Integer, Long> deletedAt = new LinkedHashMap<>();
+    private final LongSupplier clock;
+
+    DeletedPackageIds() {
+        this(() -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+    }
+
+    /**
+     * @param clock - current time in millis, only compared with itself
+     */
+    DeletedPackageIds(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    void add(int packageId) {
+        final long now = this.clock.getAsLong();
+        this.prune(now);
+        // moved to the end, as deleted most recently
+        this.deletedAt.remove(packageId);
+        this.deletedAt.put(packageId, now);
+    }
+
+    boolean contains(int packageId) {
+        this.prune(this.clock.getAsLong());
+        return this.deletedAt.containsKey(packageId);
+    }
+
+    int size() {
+        return this.deletedAt.size();
+    }
+
+    private void prune(long now) {
+        final Iterator<Map.Entry<Integer, Long>> oldestFirst = this.deletedAt.entrySet().iterator();
+        while (oldestFirst.hasNext() && now - oldestFirst.next().getValue() > RETENTION_MILLIS) {
+            oldestFirst.remove();
+        }
+    }
+}
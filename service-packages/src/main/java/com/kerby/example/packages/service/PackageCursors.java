@@ -0,0 +1,79 @@
+package com.kerby.example.packages.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Cursors for keyset pagination of packages on id, or on price then id, shared by every service paging packages so
+ * clients can page through any of them with the same cursor.
+ *
+ * Cursors are opaque to clients so the paging key can change without breaking them.
+ */
+public final class PackageCursors {
+
+    private static final String CURSOR_PREFIX = "id:";
+    private static final String PRICE_CURSOR_PREFIX = "price:";
+
+    private PackageCursors() {}
+
+    /**
+     * @param lastId - id of the last package in a page
+     * @return cursor for the page after it
+     */
+    public static String encode(int lastId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((CURSOR_PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor - cursor from a previous page
+     * @return id of the last package in that page
+     * @throws IllegalArgumentException if the cursor is invalid
+     */
+    public static int decode(String cursor) {
+        try {
+            final String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (decoded.startsWith(CURSOR_PREFIX)) {
+                final int result = Integer.parseInt(decoded.substring(CURSOR_PREFIX.length()));
+                if (result >= 0) {
+                    return result;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException is an IllegalArgumentException, both mean an invalid cursor
+        }
+        throw new IllegalArgumentException(String.format("The cursor provided: [%s] is invalid", cursor));
+    }
+
+    /**
+     * @param lastUsdTotal - USD total in cents of the last package in a page ordered by price
+     * @param lastId - id of that package
+     * @return cursor for the page after it
+     */
+    public static String encodePrice(long lastUsdTotal, int lastId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((PRICE_CURSOR_PREFIX + lastUsdTotal + ':' + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor - cursor from a previous page ordered by price
+     * @return position in the price index of the last package in that page
+     * @throws IllegalArgumentException if the cursor is invalid, including one for a page in id order
+     */
+    public static PackagePriceIndex.Key decodePrice(String cursor) {
+        try {
+            final String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (decoded.startsWith(PRICE_CURSOR_PREFIX)) {
+                final String[] parts = decoded.substring(PRICE_CURSOR_PREFIX.length()).split(":", -1);
+                if (parts.length == 2) {
+                    final long usdTotal = Long.parseLong(parts[0]);
+                    final int id = Integer.parseInt(parts[1]);
+                    if (usdTotal >= 0 && id >= 0) {
+                        return new PackagePriceIndex.Key(usdTotal, id);
+                    }
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException is an IllegalArgumentException, both mean an invalid cursor
+        }
+        throw new IllegalArgumentException(String.format("The cursor provided: [%s] is invalid", cursor));
+    }
+}
@@ -0,0 +1,236 @@
+package com.kerby.example.packages.service;
+
+import com.kerby.example.database.models.PackagePrice;
+import com.kerby.example.database.repositories.PackageRepository;
+import com.kerby.example.packages.exceptions.PackageIndexNotBuiltException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * An in memory index of packages ordered by their stored USD total, then id, so packages in a price range can be
+ * paged through cheapest or dearest first with a range scan rather than reading and sorting the package table.
+ *
+ * Held in a skip list, so reads don't lock and run alongside changes. Ranges in other currencies are translated to
+ * USD with CurrencyService#convertCentsRangeToUSD, so no package price is converted to look them up.
+ *
+ * Built from the database when the application starts, then kept up to date by PackageService as packages are
+ * created, updated and deleted, and by ProductCatalogue when the price of a product in packages changes. Reading a
+ * range before it is first built throws PackageIndexNotBuiltException rather than missing packages.
+ *
+ * Deleted package ids are kept for a while, like PackageSearchIndex, see DeletedPackageIds, so a price put after the
+ * package was deleted doesn't bring it back to take a place in every range it falls in.
+ */
+@Service
+public class PackagePriceIndex implements MeterBinder {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final PackageRepository packageRepository;
+
+    private final ConcurrentSkipListSet<Key> keys = new ConcurrentSkipListSet<>();
+    // as indexed, so they can be moved when their price changes
+    private final Map<Integer, PackagePrice> prices = new ConcurrentHashMap<>();
+    // guarded by this, as the changes are
+    private final DeletedPackageIds deletedIds = new DeletedPackageIds();
+
+    private volatile boolean built = false;
+
+    public PackagePriceIndex(@Autowired PackageRepository packageRepository) {
+        this.packageRepository = packageRepository;
+    }
+
+    /**
+     * Indexes the price of every package. Changes made while it is built wait, so they are applied after rather
+     * than lost.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true) // the stream reads through a cursor which only lives as long as the transaction
+    public synchronized void rebuild() {
+        final long start = System.nanoTime();
+        this.keys.clear();
+        this.prices.clear();
+        try (Stream<PackagePrice> packagePrices = this.packageRepository.streamAllPrices()) {
+            final Iterator<PackagePrice> iterator = packagePrices.iterator();
+            while (iterator.hasNext()) {
+                this.put(iterator.next());
+            }
+        }
+        this.built = true;
+        logger.info("Indexed price of: [{}] packages in: [{}]ms", this.prices.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Indexes the price of a package, moving it if indexed already. A price older than the one indexed, or of a
+     * deleted package, is ignored, as changes committed together may be indexed out of order.
+     */
+    public synchronized void put(PackagePrice packagePrice) {
+        final PackagePrice indexed = this.prices.get(packagePrice.getId());
+        if ((indexed != null && indexed.getVersion() > packagePrice.getVersion()) || this.deletedIds.contains(packagePrice.getId())) {
+            return;
+        }
+
+        this.prices.put(packagePrice.getId(), packagePrice);
+        // added before the old key is removed, so a read running alongside sees the package in one place or the other
+        this.keys.add(new Key(packagePrice.getUsdTotal(), packagePrice.getId()));
+        if (indexed != null && indexed.getUsdTotal() != packagePrice.getUsdTotal()) {
+            this.keys.remove(new Key(indexed.getUsdTotal(), indexed.getId()));
+        }
+    }
+
+    /**
+     * Removes a deleted package, and stops its price being indexed again
+     */
+    public synchronized void remove(int packageId) {
+        this.deletedIds.add(packageId);
+        final PackagePrice indexed = this.prices.remove(packageId);
+        if (indexed != null) {
+            this.keys.remove(new Key(indexed.getUsdTotal(), indexed.getId()));
+        }
+    }
+
+    /**
+     * Reindexes the packages with any of the products, after their price changed. Called once the change has
+     * committed, so reads the new totals in a transaction of its own
+     * @param productIds - ids of the products whose price changed
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    public void refreshByProductIdIn(Collection<String> productIds) {
+        final List<PackagePrice> packagePrices = this.packageRepository.findPricesByProductIdIn(productIds);
+        for (PackagePrice packagePrice : packagePrices) {
+            this.put(packagePrice);
+        }
+        logger.debug("Reindexed price of: [{}] packages with: [{}] changed products", packagePrices.size(), productIds.size());
+    }
+
+    /**
+     * @param minUsdTotal - least USD total in cents, inclusive
+     * @param maxUsdTotal - greatest USD total in cents, inclusive
+     * @param descending - whether dearest first rather than cheapest
+     * @param after - key of the last package of the previous page, or null for the first page
+     * @param limit - maximum number of packages to return
+     * @return packages in the range ordered by price then id, reversed if descending
+     * @throws PackageIndexNotBuiltException if the index hasn't been built yet
+     */
+    public List<Key> range(long minUsdTotal, long maxUsdTotal, boolean descending, Key after, int limit) {
+        Assert.isTrue(limit > 0, "limit must be positive to page packages");
+        if (!this.built) {
+            throw new PackageIndexNotBuiltException("Packages are still being indexed by price");
+        }
+        final List<Key> result = new ArrayList<>(Math.min(limit, 1000));
+        if (minUsdTotal > maxUsdTotal) {
+            return result;
+        }
+
+        NavigableSet<Key> range = this.keys.subSet(new Key(minUsdTotal, Integer.MIN_VALUE), true, new Key(maxUsdTotal, Integer.MAX_VALUE), true);
+        if (descending) {
+            range = range.descendingSet();
+        }
+        if (after != null) {
+            range = range.tailSet(after, false);
+        }
+        // a package being moved may be seen at its old price and its new
+        final Set<Integer> ids = new HashSet<>();
+        for (Key key : range) {
+            if (ids.add(key.getId())) {
+                result.add(key);
+            }
+            if (result.size() == limit) {
+                break;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return whether the index has been built, so ranges can be read
+     */
+    public boolean isBuilt() {
+        return built;
+    }
+
+    public int size() {
+        return this.prices.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("packages.price.index.size", this, PackagePriceIndex::size)
+                .description("Packages indexed by price")
+                .register(registry);
+    }
+
+    /**
+     * Position of a package in the index, ordered by USD total then id
+     */
+    public static final class Key implements Comparable<Key> {
+
+        private final long usdTotal;
+        private final int id;
+
+        public Key(long usdTotal, int id) {
+            this.usdTotal = usdTotal;
+            this.id = id;
+        }
+
+        public long getUsdTotal() {
+            return usdTotal;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            final int result = Long.compare(usdTotal, other.usdTotal);
+            return result != 0 ? result : Integer.compare(id, other.id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+
+            return usdTotal == key.usdTotal && id == key.id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(usdTotal) + id;
+        }
+
+        @Override
+        public String toString() {
+            return "Key{" +
+                    "usdTotal=" + usdTotal +
+                    ", id=" + id +
+                    '}';
+        }
+    }
+}
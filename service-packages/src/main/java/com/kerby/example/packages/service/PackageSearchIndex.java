@@ -0,0 +1,459 @@
+package com.kerby.example.packages.service;
+
+import com.kerby.example.database.models.PackageEntity;
+import com.kerby.example.database.models.ProductEntity;
+import com.kerby.example.database.repositories.PackageRepository;
+import com.kerby.example.packages.exceptions.PackageIndexNotBuiltException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * An in memory inverted index of the terms in package names, descriptions and product names, so packages can be
+ * searched by keyword without scanning the package table.
+ *
+ * Terms are the lower cased runs of letters and digits. Each query term matches the terms it equals or is the start
+ * of, e.g. "cam" matches "camera", and a package must match every query term. Packages are ranked by the weight of
+ * the fields matched, a whole term scoring more than a prefix, then by id.
+ *
+ * Products are indexed once by id rather than into every package with them, like ProductCatalogue, so a renamed
+ * product is reindexed without touching its packages.
+ *
+ * Built from the database when the application starts, then kept up to date by PackageService as packages are
+ * created, updated and deleted. Searches share a read lock so run concurrently, changes take the write lock.
+ * Searching before it is first built throws PackageIndexNotBuiltException rather than missing packages.
+ *
+ * Changes may reach the index out of order, so a package or product older than the one indexed is ignored, and
+ * a package indexed after it was deleted, by a change committed before the delete, stays deleted, see
+ * DeletedPackageIds.
+ */
+@Service
+public class PackageSearchIndex implements MeterBinder {
+
+    static final int NAME_WEIGHT = 4;
+    static final int PRODUCT_NAME_WEIGHT = 2;
+    static final int DESCRIPTION_WEIGHT = 1;
+    // a query term equal to a term scores this many times one which is only the start of it
+    static final int WHOLE_TERM_BOOST = 2;
+    static final int MAX_QUERY_TERMS = 10;
+
+    private static final Pattern TERM_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final PackageRepository packageRepository;
+    private final ProductCatalogue productCatalogue;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // sorted so the terms starting with a query term are a range. Term -> package id -> weight in name and description
+    private final TreeMap<String, Map<Integer, Integer>> packageTerms = new TreeMap<>();
+    // term -> product id -> times in the product name
+    private final TreeMap<String, Map<String, Integer>> productTerms = new TreeMap<>();
+    // as indexed, so they can be removed again
+    private final Map<Integer, IndexedPackage> packages = new HashMap<>();
+    private final Map<String, IndexedProduct> products = new HashMap<>();
+    // product id -> package id -> times the package has the product
+    private final Map<String, Map<Integer, Integer>> productPackages = new HashMap<>();
+    private final DeletedPackageIds deletedPackageIds = new DeletedPackageIds();
+
+    private volatile boolean built = false;
+
+    public PackageSearchIndex(@Autowired PackageRepository packageRepository, @Autowired ProductCatalogue productCatalogue) {
+        this.packageRepository = packageRepository;
+        this.productCatalogue = productCatalogue;
+    }
+
+    /**
+     * Indexes every package and their products. The index is locked throughout, so changes made while it is built
+     * are applied after rather than lost.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true) // the stream reads through a cursor which only lives as long as the transaction
+    public void rebuild() {
+        final long start = System.nanoTime();
+        this.lock.writeLock().lock();
+        try {
+            this.clear();
+            final Set<String> productIds = new LinkedHashSet<>();
+            try (Stream<PackageEntity> packageEntities = this.packageRepository.streamAll()) {
+                final Iterator<PackageEntity> iterator = packageEntities.iterator();
+                while (iterator.hasNext()) {
+                    final PackageEntity packageEntity = iterator.next();
+                    this.add(packageEntity);
+                    productIds.addAll(packageEntity.getProductIds());
+                    this.packageRepository.detach(packageEntity);
+                }
+            }
+            // products of every package, loaded in batches
+            for (ProductEntity productEntity : this.productCatalogue.getProducts(productIds).values()) {
+                this.addProduct(productEntity);
+            }
+            this.built = true;
+            logger.info("Indexed: [{}] packages with: [{}] products in: [{}]ms", this.packages.size(), this.products.size(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes a package, replacing it if indexed already. Its products are indexed with indexProducts.
+     * A package older than the one indexed, or deleted, is ignored, as changes committed together may be indexed out
+     * of order.
+     * @param packageEntity - the package as saved, with its product ids
+     */
+    public void indexPackage(PackageEntity packageEntity) {
+        this.lock.writeLock().lock();
+        try {
+            final IndexedPackage indexedPackage = this.packages.get(packageEntity.getId());
+            if (this.deletedPackageIds.contains(packageEntity.getId())) {
+                logger.debug("Package: [{}] was deleted, not indexed", packageEntity.getId());
+            } else if (indexedPackage == null || indexedPackage.version <= packageEntity.getVersion()) {
+                final List<String> removedProductIds = this.remove(packageEntity.getId());
+                this.add(packageEntity);
+                // products the package no longer has, and no other package has either
+                for (String productId : removedProductIds) {
+                    if (!this.productPackages.containsKey(productId)) {
+                        this.removeProduct(productId);
+                    }
+                }
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes the names of products, replacing any indexed already. A product older than the one indexed is ignored,
+     * as with packages. One without a version, i.e. not yet saved, always replaces it
+     */
+    public void indexProducts(Collection<ProductEntity> productEntities) {
+        this.lock.writeLock().lock();
+        try {
+            for (ProductEntity productEntity : productEntities) {
+                final IndexedProduct indexedProduct = this.products.get(productEntity.getId());
+                if (indexedProduct != null && indexedProduct.version != null && productEntity.getVersion() != null
+                        && indexedProduct.version > productEntity.getVersion()) {
+                    logger.debug("Product: [{}] is older than the one indexed, not indexed", productEntity.getId());
+                    continue;
+                }
+                this.removeProduct(productEntity.getId());
+                this.addProduct(productEntity);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a deleted package, and stops it being indexed again
+     */
+    public void removePackage(int packageId) {
+        this.lock.writeLock().lock();
+        try {
+            this.deletedPackageIds.add(packageId);
+            for (String productId : this.remove(packageId)) {
+                this.removeProduct(productId);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param query - terms to search for
+     * @param offset - number of matching packages to skip
+     * @param limit - maximum number of package ids to return
+     * @return ids of packages matching every term, best match first, with the total number matching
+     * @throws IllegalArgumentException if the query has no terms or more than MAX_QUERY_TERMS
+     * @throws PackageIndexNotBuiltException if the index hasn't been built yet
+     */
+    public Hits search(String query, int offset, int limit) {
+        Assert.notNull(query, "query is required to search packages");
+        Assert.isTrue(offset >= 0, "offset must not be negative to search packages");
+        Assert.isTrue(limit > 0, "limit must be positive to search packages");
+        final Set<String> queryTerms = new LinkedHashSet<>(tokenize(query));
+        Assert.notEmpty(queryTerms, "query must have at least one letter or digit to search packages");
+        Assert.isTrue(queryTerms.size() <= MAX_QUERY_TERMS, String.format("query must have at most %d terms to search packages", MAX_QUERY_TERMS));
+        if (!this.built) {
+            throw new PackageIndexNotBuiltException("Packages are still being indexed for search");
+        }
+
+        final List<Map.Entry<Integer, Integer>> ranked;
+        this.lock.readLock().lock();
+        try {
+            Map<Integer, Integer> scores = null;
+            for (String queryTerm : queryTerms) {
+                final Map<Integer, Integer> termScores = this.score(queryTerm);
+                if (scores == null) {
+                    scores = termScores;
+                } else {
+                    // only packages matching every term so far
+                    scores.keySet().retainAll(termScores.keySet());
+                    for (Map.Entry<Integer, Integer> score : scores.entrySet()) {
+                        score.setValue(score.getValue() + termScores.get(score.getKey()));
+                    }
+                }
+                if (scores.isEmpty()) {
+                    break;
+                }
+            }
+            ranked = new ArrayList<>(scores.entrySet());
+        } finally {
+            this.lock.readLock().unlock();
+        }
+
+        ranked.sort((a, b) -> !a.getValue().equals(b.getValue())
+                ? Integer.compare(b.getValue(), a.getValue())
+                : Integer.compare(a.getKey(), b.getKey()));
+        final List<Integer> packageIds = new ArrayList<>(Math.max(0, Math.min(limit, ranked.size() - offset)));
+        for (int i = offset; i < ranked.size() && i < offset + limit; i++) {
+            packageIds.add(ranked.get(i).getKey());
+        }
+
+        return new Hits(packageIds, ranked.size());
+    }
+
+    /**
+     * @return package id -> score of every package with a term the query term equals or is the start of
+     */
+    private Map<Integer, Integer> score(String queryTerm) {
+        final Map<Integer, Integer> result = new HashMap<>();
+
+        // terms starting with the query term sort from it up to it followed by the greatest char
+        final String end = queryTerm + Character.MAX_VALUE;
+        for (Map.Entry<String, Map<Integer, Integer>> term : this.packageTerms.subMap(queryTerm, end).entrySet()) {
+            final int boost = term.getKey().equals(queryTerm) ? WHOLE_TERM_BOOST : 1;
+            for (Map.Entry<Integer, Integer> posting : term.getValue().entrySet()) {
+                result.merge(posting.getKey(), posting.getValue() * boost, Integer::sum);
+            }
+        }
+        for (Map.Entry<String, Map<String, Integer>> term : this.productTerms.subMap(queryTerm, end).entrySet()) {
+            final int boost = term.getKey().equals(queryTerm) ? WHOLE_TERM_BOOST : 1;
+            for (Map.Entry<String, Integer> posting : term.getValue().entrySet()) {
+                final int weight = PRODUCT_NAME_WEIGHT * posting.getValue() * boost;
+                for (Map.Entry<Integer, Integer> productPackage : this.productPackages.getOrDefault(posting.getKey(), Collections.emptyMap()).entrySet()) {
+                    result.merge(productPackage.getKey(), weight * productPackage.getValue(), Integer::sum);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private void add(PackageEntity packageEntity) {
+        final int packageId = packageEntity.getId();
+        final Map<String, Integer> terms = new HashMap<>();
+        for (String term : tokenize(packageEntity.getName())) {
+            terms.merge(term, NAME_WEIGHT, Integer::sum);
+        }
+        for (String term : tokenize(packageEntity.getDescription())) {
+            terms.merge(term, DESCRIPTION_WEIGHT, Integer::sum);
+        }
+        final Map<String, Integer> products = new HashMap<>();
+        for (String productId : packageEntity.getProductIds()) {
+            products.merge(productId, 1, Integer::sum);
+        }
+
+        for (Map.Entry<String, Integer> term : terms.entrySet()) {
+            this.packageTerms.computeIfAbsent(term.getKey(), key -> new HashMap<>()).put(packageId, term.getValue());
+        }
+        for (Map.Entry<String, Integer> product : products.entrySet()) {
+            this.productPackages.computeIfAbsent(product.getKey(), key -> new HashMap<>()).put(packageId, product.getValue());
+        }
+        this.packages.put(packageId, new IndexedPackage(packageEntity.getVersion(), terms.keySet(), products.keySet()));
+    }
+
+    /**
+     * @return ids of products no package has any more. Products are only indexed while a package has them, so they
+     * should be removed unless added again
+     */
+    private List<String> remove(int packageId) {
+        final List<String> result = new ArrayList<>();
+        final IndexedPackage indexedPackage = this.packages.remove(packageId);
+        if (indexedPackage == null) {
+            return result;
+        }
+
+        for (String term : indexedPackage.terms) {
+            removePosting(this.packageTerms, term, packageId);
+        }
+        for (String productId : indexedPackage.productIds) {
+            final Map<Integer, Integer> productPackages = this.productPackages.get(productId);
+            productPackages.remove(packageId);
+            if (productPackages.isEmpty()) {
+                this.productPackages.remove(productId);
+                result.add(productId);
+            }
+        }
+
+        return result;
+    }
+
+    private void addProduct(ProductEntity productEntity) {
+        final Map<String, Integer> terms = new HashMap<>();
+        for (String term : tokenize(productEntity.getName())) {
+            terms.merge(term, 1, Integer::sum);
+        }
+
+        for (Map.Entry<String, Integer> term : terms.entrySet()) {
+            this.productTerms.computeIfAbsent(term.getKey(), key -> new HashMap<>()).put(productEntity.getId(), term.getValue());
+        }
+        this.products.put(productEntity.getId(), new IndexedProduct(productEntity.getVersion(), terms.keySet()));
+    }
+
+    private void removeProduct(String productId) {
+        final IndexedProduct indexedProduct = this.products.remove(productId);
+        if (indexedProduct != null) {
+            for (String term : indexedProduct.terms) {
+                removePosting(this.productTerms, term, productId);
+            }
+        }
+    }
+
+    private static <K> void removePosting(Map<String, ? extends Map<K, Integer>> index, String term, K key) {
+        final Map<K, Integer> postings = index.get(term);
+        if (postings != null) {
+            postings.remove(key);
+            if (postings.isEmpty()) {
+                index.remove(term);
+            }
+        }
+    }
+
+    /**
+     * @return whether the index has been built, so can be searched
+     */
+    public boolean isBuilt() {
+        return built;
+    }
+
+    private void clear() {
+        this.packageTerms.clear();
+        this.productTerms.clear();
+        this.packages.clear();
+        this.products.clear();
+        this.productPackages.clear();
+    }
+
+    /**
+     * @return lower cased runs of letters and digits, in order
+     */
+    static List<String> tokenize(String text) {
+        final List<String> result = new ArrayList<>();
+        if (text != null) {
+            for (String term : TERM_SEPARATOR.split(text.toLowerCase(Locale.ROOT))) {
+                if (!term.isEmpty()) {
+                    result.add(term);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    public int size() {
+        this.lock.readLock().lock();
+        try {
+            return this.packages.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    private int terms() {
+        this.lock.readLock().lock();
+        try {
+            return this.packageTerms.size() + this.productTerms.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("packages.search.index.packages", this, PackageSearchIndex::size)
+                .register(registry);
+        Gauge.builder("packages.search.index.terms", this, PackageSearchIndex::terms)
+                .description("Distinct terms of package and product names and descriptions")
+                .register(registry);
+    }
+
+    private static final class IndexedPackage {
+
+        private final long version;
+        private final Collection<String> terms;
+        private final Collection<String> productIds;
+
+        private IndexedPackage(long version, Collection<String> terms, Collection<String> productIds) {
+            this.version = version;
+            this.terms = terms;
+            this.productIds = productIds;
+        }
+    }
+
+    private static final class IndexedProduct {
+
+        // null if it wasn't saved
+        private final Long version;
+        private final Collection<String> terms;
+
+        private IndexedProduct(Long version, Collection<String> terms) {
+            this.version = version;
+            this.terms = terms;
+        }
+    }
+
+    /**
+     * A page of search results
+     */
+    public static final class Hits {
+
+        private final List<Integer> packageIds;
+        private final int total;
+
+        public Hits(List<Integer> packageIds, int total) {
+            this.packageIds = packageIds;
+            this.total = total;
+        }
+
+        /**
+         * @return ids of the packages in the page, best match first
+         */
+        public List<Integer> getPackageIds() {
+            return packageIds;
+        }
+
+        /**
+         * @return number of packages matching, in every page
+         */
+        public int getTotal() {
+            return total;
+        }
+    }
+}
@@ -1,13 +1,24 @@
 package com.kerby.example.packages.service;
 
+import com.kerby.example.packages.exceptions.PackageModifiedException;
 import com.kerby.example.packages.exceptions.PackageNotFoundException;
 import com.kerby.example.packages.exceptions.PackageServiceException;
 import com.kerby.example.packages.models.Currency;
 import com.kerby.example.packages.models.Package;
+import com.kerby.example.packages.models.PackageCreateResult;
+import com.kerby.example.packages.models.PackageField;
+import com.kerby.example.packages.models.PackageLookupResult;
+import com.kerby.example.packages.models.PackagePage;
+import com.kerby.example.packages.models.PackagePriceQuery;
+import com.kerby.example.packages.models.PackageRevision;
+import com.kerby.example.packages.models.PackageSearchResult;
 import com.kerby.example.packages.models.Product;
 
 import javax.validation.constraints.NotNull;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface PackageService {
 
@@ -15,11 +26,112 @@ public interface PackageService {
 
     int createPackage(@NotNull String name, String description, @NotNull Product... products) throws PackageServiceException;
 
+    /**
+     * Creates a batch of packages. Every package is validated before any is saved, invalid packages are skipped and
+     * the rest saved together in one transaction; either all of them are saved or, on failure, none.
+     * @param packages - names, descriptions and products of the packages to create
+     * @return result of each package, in the same order
+     */
+    List<PackageCreateResult> createPackages(@NotNull List<Package> packages) throws PackageServiceException;
+
     Package getPackage(String exchangeToCurrencyCode, @NotNull int packageId) throws PackageNotFoundException, PackageServiceException;
 
-    List<Package> getPackages(String exchangeToCurrencyCode) throws PackageServiceException;
+    /**
+     * Looks up a batch of packages in one query, with their products loaded together. Prices are converted together
+     * so every package uses the same exchange rates.
+     * @param exchangeToCurrencyCode - currency to convert prices to, USD if blank
+     * @param packageIds - ids of the packages, may repeat
+     * @param fields - fields wanted, or null for every field. Products are only loaded if they are one, otherwise
+     *               they are left null
+     * @return result of each id, in the same order, with the package or that it wasn't found
+     */
+    List<PackageLookupResult> getPackagesById(String exchangeToCurrencyCode, @NotNull List<Integer> packageIds, Set<PackageField> fields) throws PackageServiceException;
+
+    /**
+     * Identifies the current state of what getPackage would return, without loading the package or its products.
+     * @param exchangeToCurrencyCode - currency prices would be converted to, USD if blank
+     * @param packageId - id of the package
+     * @return revision of the package in the currency
+     */
+    PackageRevision getPackageRevision(String exchangeToCurrencyCode, @NotNull int packageId) throws PackageNotFoundException, PackageServiceException;
+
+    /**
+     * Pages through packages in id order.
+     * @param exchangeToCurrencyCode - currency to convert prices to, USD if blank
+     * @param cursor - nextCursor of the previous page, or blank for the first page
+     * @param limit - maximum number of packages in the page
+     * @return page of packages with a cursor for the next page if there are more
+     */
+    PackagePage getPackages(String exchangeToCurrencyCode, String cursor, int limit) throws PackageServiceException;
+
+    /**
+     * Identifies the current state of what getPackages would return, without loading the packages or their products.
+     * @param exchangeToCurrencyCode - currency prices would be converted to, USD if blank
+     * @param cursor - nextCursor of the previous page, or blank for the first page
+     * @param limit - maximum number of packages in the page
+     * @return revision of the page in the currency
+     */
+    PackageRevision getPackagesRevision(String exchangeToCurrencyCode, String cursor, int limit) throws PackageServiceException;
+
+    /**
+     * Pages through packages with prices in a range ordered by price, then id, see PackagePriceIndex.
+     * @param exchangeToCurrencyCode - currency of the price range and to convert prices to, USD if blank
+     * @param query - price range and order
+     * @param cursor - nextCursor of the previous page, or blank for the first page
+     * @param limit - maximum number of packages in the page
+     * @param fields - fields wanted, or null for every field. Products are only loaded if they are one, otherwise
+     *               they are left null
+     * @return page of packages with a cursor for the next page if there are more
+     */
+    PackagePage getPackagesByPrice(String exchangeToCurrencyCode, @NotNull PackagePriceQuery query, String cursor, int limit, Set<PackageField> fields) throws PackageServiceException;
+
+    /**
+     * Identifies the current state of what getPackagesByPrice would return, without loading the packages or their products.
+     * @param exchangeToCurrencyCode - currency of the price range and prices would be converted to, USD if blank
+     * @param query - price range and order
+     * @param cursor - nextCursor of the previous page, or blank for the first page
+     * @param limit - maximum number of packages in the page
+     * @return revision of the page in the currency
+     */
+    PackageRevision getPackagesByPriceRevision(String exchangeToCurrencyCode, @NotNull PackagePriceQuery query, String cursor, int limit) throws PackageServiceException;
+
+    /**
+     * Pages through packages in id order without loading their products, products are left null.
+     * Prices come from the stored package total.
+     * @param exchangeToCurrencyCode - currency to convert prices to, USD if blank
+     * @param cursor - nextCursor of the previous page, or blank for the first page
+     * @param limit - maximum number of packages in the page
+     * @return page of packages with a cursor for the next page if there are more
+     */
+    PackagePage getPackageSummaries(String exchangeToCurrencyCode, String cursor, int limit) throws PackageServiceException;
+
+    /**
+     * Searches the names and descriptions of packages and the names of their products, see PackageSearchIndex.
+     * @param exchangeToCurrencyCode - currency to convert prices to, USD if blank
+     * @param query - terms to search for, each matching whole terms or the start of them
+     * @param offset - number of matching packages to skip
+     * @param limit - maximum number of packages in the page
+     * @param fields - fields wanted, or null for every field. Products are only loaded if they are one, otherwise
+     *               they are left null
+     * @return page of packages matching every term, best match first
+     */
+    PackageSearchResult searchPackages(String exchangeToCurrencyCode, String query, int offset, int limit, Set<PackageField> fields) throws PackageServiceException;
+
+    /**
+     * Streams every package to the consumer one at a time in id order, without holding them all in memory.
+     * @param exchangeToCurrencyCode - currency to convert prices to, USD if blank
+     * @param consumer - called with each package as it is read
+     */
+    void exportPackages(String exchangeToCurrencyCode, @NotNull Consumer<Package> consumer) throws PackageServiceException;
 
-    boolean updatePackage(@NotNull int packageId, String name, String description, Product... products) throws PackageNotFoundException, PackageServiceException;
+    /**
+     * @param packageId - id of the package
+     * @param expectedTags - tags of the revisions in USD, see getPackageRevision, the update was made from. It is
+     *                     only applied if the current revision is one of them, or null to apply it to any revision
+     * @throws PackageModifiedException if the package has changed since any of the expected revisions
+     */
+    boolean updatePackage(@NotNull int packageId, Collection<String> expectedTags, String name, String description, Product... products)
+            throws PackageNotFoundException, PackageModifiedException, PackageServiceException;
 
     boolean deletePackage(@NotNull int packageId) throws PackageNotFoundException, PackageServiceException;
 
@@ -1,46 +1,85 @@
 package com.kerby.example.packages.service;
 
 import com.kerby.example.common.annotations.VisibleForTestMock;
+import com.kerby.example.common.logging.PayloadLogging;
+import com.kerby.example.currency.exceptions.CurrencyConversionException;
 import com.kerby.example.currency.exceptions.InvalidCurrencyCodeException;
 import com.kerby.example.currency.models.CurrencyCode;
+import com.kerby.example.currency.models.ExchangeRates;
 import com.kerby.example.currency.service.CurrencyService;
 import com.kerby.example.database.repositories.PackageRepository;
 import com.kerby.example.database.models.PackageEntity;
+import com.kerby.example.database.models.PackagePrice;
+import com.kerby.example.database.models.PackageSummary;
+import com.kerby.example.database.models.PackageVersion;
 import com.kerby.example.database.models.ProductEntity;
+import com.kerby.example.packages.exceptions.PackageIndexNotBuiltException;
+import com.kerby.example.packages.exceptions.PackageModifiedException;
 import com.kerby.example.packages.exceptions.PackageNotFoundException;
 import com.kerby.example.packages.exceptions.PackageServiceException;
 import com.kerby.example.packages.mapping.PackageMapper;
 import com.kerby.example.packages.mapping.ProductMapper;
 import com.kerby.example.packages.models.Currency;
 import com.kerby.example.packages.models.Package;
+import com.kerby.example.packages.models.PackageCreateResult;
+import com.kerby.example.packages.models.PackageField;
+import com.kerby.example.packages.models.PackageLookupResult;
+import com.kerby.example.packages.models.PackagePage;
+import com.kerby.example.packages.models.PackagePriceQuery;
+import com.kerby.example.packages.models.PackageRevision;
+import com.kerby.example.packages.models.PackageSearchResult;
 import com.kerby.example.packages.models.Product;
+import io.micrometer.core.annotation.Timed;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
+import org.springframework.util.DigestUtils;
 
 import javax.validation.constraints.NotNull;
-import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class PackageServiceImpl implements PackageService  {
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final Logger payloadLogger = LoggerFactory.getLogger(PayloadLogging.LOGGER_NAME);
 
     private CurrencyService currencyService;
     private PackageRepository packageRepository;
+    private ProductCatalogue productCatalogue;
+    private PackageSearchIndex packageSearchIndex;
+    private PackagePriceIndex packagePriceIndex;
 
-    public PackageServiceImpl(@Autowired CurrencyService currencyService, @Autowired PackageRepository packageRepository) {
+    public PackageServiceImpl(@Autowired CurrencyService currencyService, @Autowired PackageRepository packageRepository,
+                              @Autowired ProductCatalogue productCatalogue, @Autowired PackageSearchIndex packageSearchIndex,
+                              @Autowired PackagePriceIndex packagePriceIndex) {
         this.currencyService = currencyService;
         this.packageRepository = packageRepository;
+        this.productCatalogue = productCatalogue;
+        this.packageSearchIndex = packageSearchIndex;
+        this.packagePriceIndex = packagePriceIndex;
     }
 
     @Override
@@ -51,26 +90,27 @@ public class PackageServiceImpl implements PackageService  {
     }
 
     @Override
+    @Transactional(rollbackFor = PackageServiceException.class) // the products and the package are saved together
+    @Timed("packages.service")
     public int createPackage(@NotNull final String name, final String description, @NotNull final Product... products) throws PackageServiceException {
-        Assert.isTrue(StringUtils.isNotBlank(name), "name is required to create a package");
-        Assert.notNull(products, "One or more products are required to create a package");
-        Assert.notEmpty(products, "One or more products are required to create a package");
-        for (Product product : products) {
-            Assert.isTrue(product.isValid(), "One or more products are invalid");
-        }
+        validatePackage(name, products);
+        final List<ProductEntity> productEntities = toProductEntities(products, new HashMap<>());
         final int result;
 
         PackageEntity packageEntity = null;
         try {
             // create package
-            logger.debug(String.format("Creating package with name: [%s] description: [%s] products: [%s]", name, description, products));
-            final List<ProductEntity> productEntities = Arrays.stream(products)
-                    .map(ProductMapper.INSTANCE::productToEntity)
-                    .collect(Collectors.toList());
-            packageEntity = new PackageEntity(name, description, productEntities);
-            // save package
-            result = this.packageRepository.save(packageEntity).getId();
-            logger.info(String.format("Created package: [%d]", result));
+            logger.debug("Creating package with name: [{}] and: [{}] products", name, products.length);
+            if (payloadLogger.isDebugEnabled()) {
+                payloadLogger.debug("Creating package with name: [{}] description: [{}] products: [{}]", name, description, Arrays.toString(products));
+            }
+            packageEntity = newPackageEntity(name, description, productEntities);
+            // save products, shared with other packages, then the package
+            this.productCatalogue.saveProducts(productEntities);
+            final PackageEntity saved = this.packageRepository.save(packageEntity);
+            result = saved.getId();
+            indexOnCommit(Collections.singletonList(saved), productEntities);
+            logger.info("Created package: [{}]", result);
         } catch (Exception e) {
             throw new PackageServiceException(String.format("Something went wrong saving package: [%s]", packageEntity), e);
         }
@@ -79,34 +119,156 @@ public class PackageServiceImpl implements PackageService  {
     }
 
     @Override
-    public Package getPackage(final String exchangeToCurrencyCode, @NotNull final int packageId) throws PackageNotFoundException, PackageServiceException {
-        Assert.isTrue(packageId > 0, "packageId is required to create a package");
-        CurrencyCode exchangeToCode = null;
-        if (StringUtils.isNotBlank(exchangeToCurrencyCode)) {
+    @Transactional(rollbackFor = PackageServiceException.class) // the products and the packages are saved together
+    @Timed("packages.service")
+    public List<PackageCreateResult> createPackages(@NotNull final List<Package> packages) throws PackageServiceException {
+        Assert.notNull(packages, "packages are required to create packages");
+        final long start = System.nanoTime();
+        final PackageCreateResult[] results = new PackageCreateResult[packages.size()];
+
+        // validate every package before saving any
+        final List<Integer> validIndexes = new ArrayList<>(packages.size());
+        final List<PackageEntity> packageEntities = new ArrayList<>(packages.size());
+        // products of every valid package by id, each saved once however many packages have it
+        final Map<String, ProductEntity> productEntities = new HashMap<>();
+        for (int i = 0; i < packages.size(); i++) {
+            final Package aPackage = packages.get(i);
             try {
-                exchangeToCode = this.currencyService.getCurrencyCodeFromString(exchangeToCurrencyCode);
-            } catch (InvalidCurrencyCodeException e) {
-                throw new IllegalArgumentException("The currency code provided is invalid", e);
+                Assert.notNull(aPackage, "package is required");
+                final Product[] products = aPackage.getProducts() != null
+                        ? aPackage.getProducts().toArray(new Product[0])
+                        : null;
+                validatePackage(aPackage.getName(), products);
+                packageEntities.add(newPackageEntity(aPackage.getName(), aPackage.getDescription(), toProductEntities(products, productEntities)));
+                validIndexes.add(i);
+            } catch (IllegalArgumentException e) {
+                results[i] = PackageCreateResult.invalid(e.getMessage());
+            }
+        }
+
+        try {
+            // save products, then packages, in JDBC batches
+            logger.debug("Creating: [{}] of: [{}] packages with: [{}] products", packageEntities.size(), packages.size(), productEntities.size());
+            this.productCatalogue.saveProducts(productEntities.values());
+            final List<PackageEntity> saved = this.packageRepository.insertAll(packageEntities);
+            for (int i = 0; i < saved.size(); i++) {
+                results[validIndexes.get(i)] = PackageCreateResult.created(saved.get(i).getId());
+            }
+            indexOnCommit(saved, productEntities.values());
+            if (logger.isInfoEnabled()) {
+                logger.info("Created: [{}] of: [{}] packages in: [{}]ms", saved.size(), packages.size(), elapsedMillis(start));
+            }
+        } catch (Exception e) {
+            throw new PackageServiceException(String.format("Something went wrong saving: [%d] packages", packageEntities.size()), e);
+        }
+
+        return Arrays.asList(results);
+    }
+
+    /**
+     * @throws IllegalArgumentException describing why the package is invalid
+     */
+    private static void validatePackage(final String name, final Product[] products) {
+        Assert.isTrue(StringUtils.isNotBlank(name), "name is required to create a package");
+        Assert.notNull(products, "One or more products are required to create a package");
+        Assert.notEmpty(products, "One or more products are required to create a package");
+        for (Product product : products) {
+            Assert.isTrue(product != null && product.isValid(), "One or more products are invalid");
+        }
+    }
+
+    /**
+     * Maps products to entities. Products are shared between packages by id, so one given more than once, in this
+     * package or any before it, must have the same name and price each time
+     * @param given - products already given by id, the products mapped are added to it
+     * @throws IllegalArgumentException if a product has a different name or price to one given before
+     */
+    private static List<ProductEntity> toProductEntities(final Product[] products, final Map<String, ProductEntity> given) {
+        Assert.notNull(products, "products are required");
+        final List<ProductEntity> result = new ArrayList<>(products.length);
+        for (Product product : products) {
+            result.add(ProductMapper.INSTANCE.productToEntity(product));
+        }
+
+        // checked before any are added, so the products of an invalid package are left out
+        final Map<String, ProductEntity> added = new HashMap<>();
+        for (ProductEntity productEntity : result) {
+            final ProductEntity before = given.containsKey(productEntity.getId())
+                    ? given.get(productEntity.getId())
+                    : added.putIfAbsent(productEntity.getId(), productEntity);
+            Assert.isTrue(before == null || before.hasSameValues(productEntity),
+                    String.format("Product: [%s] is given more than once with a different name or price", productEntity.getId()));
+        }
+        given.putAll(added);
+
+        return result;
+    }
+
+    private static PackageEntity newPackageEntity(final String name, final String description, final List<ProductEntity> productEntities) {
+        final PackageEntity result = new PackageEntity(name, description, toProductIds(productEntities));
+        result.setUsdTotal(PackageMapper.INSTANCE.sumUsdPrices(productEntities));
+
+        return result;
+    }
+
+    /**
+     * Indexes packages for search and by price once the transaction commits, or straight away outside of one, so the
+     * indexes only have changes which were saved. Products are indexed too as their names may have changed
+     */
+    private void indexOnCommit(final List<PackageEntity> packageEntities, final Collection<ProductEntity> productEntities) {
+        afterCommit(() -> {
+            for (PackageEntity packageEntity : packageEntities) {
+                this.packageSearchIndex.indexPackage(packageEntity);
+                this.packagePriceIndex.put(new PackagePrice(packageEntity.getId(), packageEntity.getUsdTotal(), packageEntity.getVersion()));
             }
+            this.packageSearchIndex.indexProducts(productEntities);
+        });
+    }
+
+    private static void afterCommit(final Runnable runnable) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    runnable.run();
+                }
+            });
+        } else {
+            runnable.run();
         }
+    }
+
+    private static List<String> toProductIds(final List<ProductEntity> productEntities) {
+        final List<String> result = new ArrayList<>(productEntities.size());
+        for (ProductEntity productEntity : productEntities) {
+            result.add(productEntity.getId());
+        }
+
+        return result;
+    }
+
+    @Override
+    @Timed("packages.service")
+    public Package getPackage(final String exchangeToCurrencyCode, @NotNull final int packageId) throws PackageNotFoundException, PackageServiceException {
+        Assert.isTrue(packageId > 0, "packageId is required to create a package");
+        final CurrencyCode exchangeToCode = getCurrencyCode(exchangeToCurrencyCode);
         final Package result;
 
         try {
-            // find package
-            logger.debug(String.format("Getting package with id: [%d", packageId));
-            final PackageEntity packageEntity = this.packageRepository.findById(packageId)
+            // find package, product ids are fetched in the same query as reads may run outside of a session
+            logger.debug("Getting package with id: [{}]", packageId);
+            final PackageEntity packageEntity = this.packageRepository.findWithProductsById(packageId)
                     .orElseThrow(() -> new PackageNotFoundException(String.format("No package found with id: [%d]", packageId)));
-            result = PackageMapper.INSTANCE.entityToPackage(packageEntity);
-            logger.debug(String.format("Found package: [%s]", result));
+            // then its products, most are cached
+            result = PackageMapper.INSTANCE.entityToPackage(packageEntity, this.productCatalogue.getProducts(packageEntity.getProductIds()));
             if (exchangeToCode != null) {
-                final BigDecimal usdTotalPrice = result.getPrice();
-                logger.debug(String.format("Converting price: [%s] of package from USD to currency: [%s]", usdTotalPrice, exchangeToCode));
-                result.setPrice(currencyService.convertFromUSD(exchangeToCode, usdTotalPrice));
+                final long usdTotalPrice = result.getPrice();
+                logger.debug("Converting price of package from USD to currency: [{}]", exchangeToCode);
+                result.setPrice(currencyService.convertCentsFromUSD(exchangeToCode, usdTotalPrice));
             }
 
-            result.setPrice(shiftCurrencyDenomination(result.getPrice()));
-
-            logger.info(String.format("Returning package: [%s]", result));
+            logger.info("Returning package: [{}]", packageId);
+            payloadLogger.debug("Returning package: [{}]", result);
         } catch (PackageNotFoundException e) {
            throw e;
         } catch (Exception e) {
@@ -117,33 +279,91 @@ public class PackageServiceImpl implements PackageService  {
     }
 
     @Override
-    public List<Package> getPackages(final String exchangeToCurrencyCode) throws PackageServiceException {
-        final AtomicReference<CurrencyCode> exchangeToCode = new AtomicReference<>();
-        if (StringUtils.isNotBlank(exchangeToCurrencyCode)) {
-            try {
-                exchangeToCode.set(this.currencyService.getCurrencyCodeFromString(exchangeToCurrencyCode));
-            } catch (InvalidCurrencyCodeException e) {
-                throw new IllegalArgumentException("The currency code provided is invalid", e);
+    @Timed("packages.service")
+    public List<PackageLookupResult> getPackagesById(final String exchangeToCurrencyCode, @NotNull final List<Integer> packageIds, final Set<PackageField> fields) throws PackageServiceException {
+        Assert.notEmpty(packageIds, "packageIds are required to look up packages");
+        for (Integer packageId : packageIds) {
+            Assert.isTrue(packageId != null && packageId > 0, "packageIds must all be positive to look up packages");
+        }
+        final CurrencyCode exchangeToCode = getCurrencyCode(exchangeToCurrencyCode);
+        final long start = System.nanoTime();
+        final List<PackageLookupResult> result = new ArrayList<>(packageIds.size());
+
+        try {
+            // find the packages, a query or two whatever the number of ids
+            logger.debug("Getting: [{}] packages by id", packageIds.size());
+            final Map<Integer, Package> packagesById = loadPackages(new LinkedHashSet<>(packageIds), fields);
+            // in the order requested, with those not found reported in place
+            for (Integer packageId : packageIds) {
+                final Package aPackage = packagesById.get(packageId);
+                result.add(aPackage != null ? PackageLookupResult.found(aPackage) : PackageLookupResult.notFound(packageId));
             }
+            // an id given more than once shares its package, which is converted once
+            final List<Package> packages = new ArrayList<>(packagesById.values());
+            convertPrices(exchangeToCode, packages);
+            if (logger.isInfoEnabled()) {
+                logger.info("Returning: [{}] of: [{}] packages by id in: [{}]ms", packages.size(), packageIds.size(), elapsedMillis(start));
+            }
+            payloadLogger.debug("Returning packages by id: [{}]", result);
+        } catch (Exception e) {
+            throw new PackageServiceException(String.format("Something went wrong looking up: [%d] packages by id", packageIds.size()), e);
+        }
+
+        return result;
+    }
+
+    @Override
+    @Timed("packages.service")
+    public PackageRevision getPackageRevision(final String exchangeToCurrencyCode, @NotNull final int packageId) throws PackageNotFoundException, PackageServiceException {
+        Assert.isTrue(packageId > 0, "packageId is required to look up a package revision");
+        final CurrencyCode exchangeToCode = getCurrencyCode(exchangeToCurrencyCode);
+        final PackageRevision result;
+
+        try {
+            // find package version, only the package table is read
+            logger.debug("Getting version of package with id: [{}]", packageId);
+            final PackageVersion packageVersion = this.packageRepository.findVersionById(packageId)
+                    .orElseThrow(() -> new PackageNotFoundException(String.format("No package found with id: [%d]", packageId)));
+            result = toRevision(exchangeToCode, toState(packageVersion.getId(), packageVersion.getVersion()), packageVersion.getLastModified());
+        } catch (PackageNotFoundException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new PackageServiceException(String.format("Something went wrong looking up revision of package: [%d]", packageId), e);
         }
-        final List<Package> result;
+
+        return result;
+    }
+
+    @Override
+    @Timed("packages.service")
+    public PackagePage getPackages(final String exchangeToCurrencyCode, final String cursor, final int limit) throws PackageServiceException {
+        Assert.isTrue(limit > 0, "limit must be positive to page packages");
+        final int afterId = StringUtils.isNotBlank(cursor) ? decodeCursor(cursor) : 0;
+        final CurrencyCode exchangeToCode = getCurrencyCode(exchangeToCurrencyCode);
+        final long start = System.nanoTime();
+        final PackagePage result;
 
         try {
-            // find packages
-            logger.debug("Getting packages");
-            final List<Package> packages = new ArrayList<>();
-            for (PackageEntity packageEntity : this.packageRepository.findAll()) {
-                final Package aPackage = PackageMapper.INSTANCE.entityToPackage(packageEntity);
-                if (exchangeToCode.get() != null) {
-                    final BigDecimal usdTotalPrice = aPackage.getPrice();
-                    logger.debug(String.format("Converting price: [%s] of package from USD to currency: [%s]", usdTotalPrice, exchangeToCode));
-                    aPackage.setPrice(currencyService.convertFromUSD(exchangeToCode.get(), usdTotalPrice));
-                }
-                aPackage.setPrice(shiftCurrencyDenomination(aPackage.getPrice()));
-                packages.add(aPackage);
+            // find a page of package ids, one extra to know if there is a next page
+            logger.debug("Getting: [{}] packages after id: [{}]", limit, afterId);
+            final List<Integer> packageIds = this.packageRepository.findIdsByIdGreaterThan(afterId, PageRequest.of(0, limit + 1));
+            final boolean hasNext = packageIds.size() > limit;
+            // then the packages with their product ids, two queries whatever the size of the page
+            final List<PackageEntity> packageEntities = packageIds.isEmpty()
+                    ? Collections.emptyList()
+                    : this.packageRepository.findAllWithProductsByIdIn(hasNext ? packageIds.subList(0, limit) : packageIds);
+            // and the products of the whole page together, those not cached loaded in batches
+            final Map<String, ProductEntity> productEntities = this.productCatalogue.getProductsOf(packageEntities);
+            final List<Package> packages = new ArrayList<>(packageEntities.size());
+            for (PackageEntity packageEntity : packageEntities) {
+                packages.add(PackageMapper.INSTANCE.entityToPackage(packageEntity, productEntities));
             }
-            result = packages;
-            logger.info(String.format("Returning packages: [%s]", result));
+            convertPrices(exchangeToCode, packages);
+            result = new PackagePage(packages, hasNext ? encodeCursor(packages.get(packages.size() - 1).getId()) : null);
+            if (logger.isInfoEnabled()) {
+                logger.info("Returning: [{}] packages after id: [{}] in: [{}]ms", packages.size(), afterId, elapsedMillis(start));
+            }
+            payloadLogger.debug("Returning packages: [{}]", result);
         } catch (Exception e) {
             throw new PackageServiceException("Something went wrong looking up packages", e);
         }
@@ -152,36 +372,422 @@ public class PackageServiceImpl implements PackageService  {
     }
 
     @Override
-    public boolean updatePackage(@NotNull final int packageId, String name, final String description, final Product... products) throws PackageNotFoundException, PackageServiceException {
+    @Timed("packages.service")
+    public PackageRevision getPackagesRevision(final String exchangeToCurrencyCode, final String cursor, final int limit) throws PackageServiceException {
+        Assert.isTrue(limit > 0, "limit must be positive to page packages");
+        final int afterId = StringUtils.isNotBlank(cursor) ? decodeCursor(cursor) : 0;
+        final CurrencyCode exchangeToCode = getCurrencyCode(exchangeToCurrencyCode);
+        final PackageRevision result;
+
+        try {
+            // find versions of the same page getPackages would return, one extra to know if there is a next page
+            logger.debug("Getting versions of: [{}] packages after id: [{}]", limit, afterId);
+            final List<PackageVersion> packageVersions = this.packageRepository.findVersionsByIdGreaterThan(afterId, PageRequest.of(0, limit + 1));
+            final boolean hasNext = packageVersions.size() > limit;
+            final StringBuilder state = new StringBuilder();
+            for (PackageVersion packageVersion : hasNext ? packageVersions.subList(0, limit) : packageVersions) {
+                state.append(packageVersion.getId()).append(':').append(packageVersion.getVersion()).append(',');
+            }
+            state.append(hasNext);
+            // tag only, a package deleted from the page or moving into it from the next changes which packages are
+            // in it but not the latest time one of them was modified
+            result = toRevision(exchangeToCode, state, 0);
+        } catch (Exception e) {
+            throw new PackageServiceException("Something went wrong looking up revision of packages", e);
+        }
+
+        return result;
+    }
+
+    @Override
+    @Timed("packages.service")
+    public PackagePage getPackagesByPrice(final String exchangeToCurrencyCode, @NotNull final PackagePriceQuery query, final String cursor, final int limit,
+                                          final Set<PackageField> fields) throws PackageServiceException {
+        validatePriceQuery(query, limit);
+        final PackagePriceIndex.Key after = StringUtils.isNotBlank(cursor) ? PackageCursors.decodePrice(cursor) : null;
+        final CurrencyCode exchangeToCode = getCurrencyCode(exchangeToCurrencyCode);
+        final long start = System.nanoTime();
+        final PackagePage result;
+
+        try {
+            // find a page of package ids in price order from the index, one extra to know if there is a next page
+            logger.debug("Getting: [{}] packages by price: [{}] after: [{}]", limit, query, after);
+            final List<PackagePriceIndex.Key> keys = findPriceRange(exchangeToCode, query, after, limit + 1);
+            final boolean hasNext = keys.size() > limit;
+            final List<PackagePriceIndex.Key> pageKeys = hasNext ? keys.subList(0, limit) : keys;
+            // then the packages, a query or two whatever the size of the page
+            final Map<Integer, Package> packagesById = pageKeys.isEmpty()
+                    ? Collections.emptyMap()
+                    : loadPackages(toIds(pageKeys), fields);
+            // in price order, leaving out any deleted since they were found
+            final List<Package> packages = new ArrayList<>(packagesById.size());
+            for (PackagePriceIndex.Key key : pageKeys) {
+                final Package aPackage = packagesById.get(key.getId());
+                if (aPackage != null) {
+                    packages.add(aPackage);
+                }
+            }
+            convertPrices(exchangeToCode, packages);
+            final PackagePriceIndex.Key last = hasNext ? pageKeys.get(pageKeys.size() - 1) : null;
+            result = new PackagePage(packages, last != null ? PackageCursors.encodePrice(last.getUsdTotal(), last.getId()) : null);
+            if (logger.isInfoEnabled()) {
+                logger.info("Returning: [{}] packages by price after: [{}] in: [{}]ms", packages.size(), after, elapsedMillis(start));
+            }
+            payloadLogger.debug("Returning packages by price: [{}]", result);
+        } catch (PackageIndexNotBuiltException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new PackageServiceException("Something went wrong looking up packages by price", e);
+        }
+
+        return result;
+    }
+
+    @Override
+    @Timed("packages.service")
+    public PackageRevision getPackagesByPriceRevision(final String exchangeToCurrencyCode, @NotNull final PackagePriceQuery query, final String cursor, final int limit) throws PackageServiceException {
+        validatePriceQuery(query, limit);
+        final PackagePriceIndex.Key after = StringUtils.isNotBlank(cursor) ? PackageCursors.decodePrice(cursor) : null;
+        final CurrencyCode exchangeToCode = getCurrencyCode(exchangeToCurrencyCode);
+        final PackageRevision result;
+
+        try {
+            // find versions of the same page getPackagesByPrice would return, one extra to know if there is a next page
+            logger.debug("Getting versions of: [{}] packages by price: [{}] after: [{}]", limit, query, after);
+            final List<PackagePriceIndex.Key> keys = findPriceRange(exchangeToCode, query, after, limit + 1);
+            final boolean hasNext = keys.size() > limit;
+            final List<PackagePriceIndex.Key> pageKeys = hasNext ? keys.subList(0, limit) : keys;
+            final List<PackageVersion> packageVersions = pageKeys.isEmpty()
+                    ? Collections.emptyList()
+                    : this.packageRepository.findVersionsByIdIn(toIds(pageKeys));
+            // a package changing price gets a new version, so the versions cover the order too
+            final StringBuilder state = new StringBuilder();
+            for (PackageVersion packageVersion : packageVersions) {
+                state.append(packageVersion.getId()).append(':').append(packageVersion.getVersion()).append(',');
+            }
+            state.append(hasNext);
+            // tag only, as for pages in id order. A package repriced out of the range lets an older one into the
+            // page without the latest time one in it was modified changing
+            result = toRevision(exchangeToCode, state, 0);
+        } catch (PackageIndexNotBuiltException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new PackageServiceException("Something went wrong looking up revision of packages by price", e);
+        }
+
+        return result;
+    }
+
+    /**
+     * @throws IllegalArgumentException describing why the query is invalid
+     */
+    private static void validatePriceQuery(final PackagePriceQuery query, final int limit) {
+        Assert.isTrue(limit > 0, "limit must be positive to page packages");
+        Assert.notNull(query, "query is required to get packages by price");
+        Assert.isTrue(query.getMinPrice() == null || query.getMinPrice() >= 0, "minPrice must not be negative");
+        Assert.isTrue(query.getMaxPrice() == null || query.getMaxPrice() >= 0, "maxPrice must not be negative");
+        Assert.isTrue(query.getMinPrice() == null || query.getMaxPrice() == null || query.getMinPrice() <= query.getMaxPrice(),
+                "minPrice must not be greater than maxPrice");
+    }
+
+    /**
+     * A range in another currency is translated to the USD totals which convert to within it with the current
+     * exchange rates, so it is found with a scan of the index rather than converting the price of every package
+     * @param exchangeToCode - currency of the range, or null for USD
+     */
+    private List<PackagePriceIndex.Key> findPriceRange(final CurrencyCode exchangeToCode, final PackagePriceQuery query,
+                                                       final PackagePriceIndex.Key after, final int limit) throws CurrencyConversionException {
+        final long minPrice = query.getMinPrice() != null ? query.getMinPrice() : 0;
+        final long maxPrice = query.getMaxPrice() != null ? query.getMaxPrice() : Long.MAX_VALUE;
+        final long[] usdRange = exchangeToCode != null && query.hasBounds()
+                ? this.currencyService.convertCentsRangeToUSD(exchangeToCode, minPrice, maxPrice)
+                : new long[] {minPrice, maxPrice};
+
+        return this.packagePriceIndex.range(usdRange[0], usdRange[1], query.isDescending(), after, limit);
+    }
+
+    private static List<Integer> toIds(final List<PackagePriceIndex.Key> keys) {
+        final List<Integer> result = new ArrayList<>(keys.size());
+        for (PackagePriceIndex.Key key : keys) {
+            result.add(key.getId());
+        }
+
+        return result;
+    }
+
+    /**
+     * @return state of one package for its revision
+     */
+    private static StringBuilder toState(final int packageId, final long version) {
+        return new StringBuilder().append(packageId).append(':').append(version);
+    }
+
+    /**
+     * @param exchangeToCode - currency prices are converted to, or null for USD
+     * @param state - ids and versions of the packages
+     * @param lastModified - latest last modified time of the packages, 0 if it can't tell whether they changed
+     * @return revision with a tag hashed from the state and, as converted prices change with them, the exchange rates
+     */
+    private PackageRevision toRevision(final CurrencyCode exchangeToCode, final StringBuilder state, final long lastModified) throws CurrencyConversionException {
+        final PackageRevision result = new PackageRevision(md5Hex(state.toString()), lastModified);
+
+        return exchangeToCode != null
+                ? withExchangeRates(result, exchangeToCode, currencyService.getExchangeRatesVersion())
+                : result;
+    }
+
+    /**
+     * Shared with AsyncPackageServiceImpl, which looks up the exchange rates separately from the packages
+     * @param usdRevision - revision of the packages with prices in USD
+     * @param exchangeToCode - currency prices are converted to
+     * @param exchangeRatesVersion - version of the exchange rates prices are converted with
+     * @return revision of the packages with prices converted, without a last modified time if the USD revision has none
+     */
+    static PackageRevision withExchangeRates(final PackageRevision usdRevision, final CurrencyCode exchangeToCode, final long exchangeRatesVersion) {
+        return new PackageRevision(
+                md5Hex(usdRevision.getTag() + ';' + exchangeToCode + ':' + exchangeRatesVersion),
+                usdRevision.getLastModified() > 0 ? Math.max(usdRevision.getLastModified(), exchangeRatesVersion) : 0);
+    }
+
+    private static String md5Hex(final String value) {
+        return DigestUtils.md5DigestAsHex(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    @Timed("packages.service")
+    public PackagePage getPackageSummaries(final String exchangeToCurrencyCode, final String cursor, final int limit) throws PackageServiceException {
+        Assert.isTrue(limit > 0, "limit must be positive to page packages");
+        final int afterId = StringUtils.isNotBlank(cursor) ? decodeCursor(cursor) : 0;
+        final CurrencyCode exchangeToCode = getCurrencyCode(exchangeToCurrencyCode);
+        final long start = System.nanoTime();
+        final PackagePage result;
+
+        try {
+            // find a page of package summaries, one extra to know if there is a next page
+            logger.debug("Getting: [{}] package summaries after id: [{}]", limit, afterId);
+            final List<PackageSummary> summaries = this.packageRepository.findSummariesByIdGreaterThan(afterId, PageRequest.of(0, limit + 1));
+            final boolean hasNext = summaries.size() > limit;
+            final List<Package> packages = new ArrayList<>(Math.min(summaries.size(), limit));
+            for (PackageSummary summary : hasNext ? summaries.subList(0, limit) : summaries) {
+                packages.add(PackageMapper.INSTANCE.summaryToPackage(summary));
+            }
+            convertPrices(exchangeToCode, packages);
+            result = new PackagePage(packages, hasNext ? encodeCursor(packages.get(packages.size() - 1).getId()) : null);
+            if (logger.isInfoEnabled()) {
+                logger.info("Returning: [{}] package summaries after id: [{}] in: [{}]ms", packages.size(), afterId, elapsedMillis(start));
+            }
+            payloadLogger.debug("Returning package summaries: [{}]", result);
+        } catch (Exception e) {
+            throw new PackageServiceException("Something went wrong looking up package summaries", e);
+        }
+
+        return result;
+    }
+
+    @Override
+    @Timed("packages.service")
+    public PackageSearchResult searchPackages(final String exchangeToCurrencyCode, final String query, final int offset, final int limit,
+                                              final Set<PackageField> fields) throws PackageServiceException {
+        final CurrencyCode exchangeToCode = getCurrencyCode(exchangeToCurrencyCode);
+        final long start = System.nanoTime();
+        // ids of the matching packages from the index, without touching the package table
+        final PackageSearchIndex.Hits hits = this.packageSearchIndex.search(query, offset, limit);
+        final PackageSearchResult result;
+
+        try {
+            // then the page of packages
+            logger.debug("Getting: [{}] of: [{}] packages matching: [{}]", hits.getPackageIds().size(), hits.getTotal(), query);
+            final Map<Integer, Package> packagesById = hits.getPackageIds().isEmpty()
+                    ? Collections.emptyMap()
+                    : loadPackages(hits.getPackageIds(), fields);
+            // in the order they were ranked, leaving out any deleted since they were found
+            final List<Package> packages = new ArrayList<>(packagesById.size());
+            for (Integer packageId : hits.getPackageIds()) {
+                final Package aPackage = packagesById.get(packageId);
+                if (aPackage != null) {
+                    packages.add(aPackage);
+                }
+            }
+            convertPrices(exchangeToCode, packages);
+            result = new PackageSearchResult(packages, hits.getTotal());
+            if (logger.isInfoEnabled()) {
+                logger.info("Returning: [{}] of: [{}] packages matching search in: [{}]ms", packages.size(), hits.getTotal(), elapsedMillis(start));
+            }
+            payloadLogger.debug("Returning packages matching: [{}] : [{}]", query, result);
+        } catch (Exception e) {
+            throw new PackageServiceException("Something went wrong searching packages", e);
+        }
+
+        return result;
+    }
+
+    /**
+     * Loads packages found some other way, e.g. from an index. With products the packages and their product ids are
+     * read in one query and the products together from the catalogue, without them only the package table is read
+     * @param packageIds - ids of the packages
+     * @param fields - fields wanted, or null for every field
+     * @return packages by id, any which don't exist are left out
+     */
+    private Map<Integer, Package> loadPackages(final Collection<Integer> packageIds, final Set<PackageField> fields) {
+        final Map<Integer, Package> result = new HashMap<>();
+        if (PackageField.withProducts(fields)) {
+            final List<PackageEntity> packageEntities = this.packageRepository.findAllWithProductsByIdIn(packageIds);
+            final Map<String, ProductEntity> productEntities = this.productCatalogue.getProductsOf(packageEntities);
+            for (PackageEntity packageEntity : packageEntities) {
+                result.put(packageEntity.getId(), PackageMapper.INSTANCE.entityToPackage(packageEntity, productEntities));
+            }
+        } else {
+            for (PackageSummary summary : this.packageRepository.findSummariesByIdIn(packageIds)) {
+                result.put(summary.getId(), PackageMapper.INSTANCE.summaryToPackage(summary));
+            }
+        }
+
+        return result;
+    }
+
+    private void convertPrices(final CurrencyCode exchangeToCode, final List<Package> packages) throws CurrencyConversionException {
+        if (exchangeToCode != null) {
+            logger.debug("Converting prices of: [{}] packages from USD to currency: [{}]", packages.size(), exchangeToCode);
+        }
+        convertPrices(this.currencyService, exchangeToCode, packages);
+    }
+
+    /**
+     * Converts every price in one call so they all use the same exchange rates.
+     * Shared with AsyncPackageServiceImpl, which converts on its own executor
+     * @param currencyService - service to convert with
+     * @param exchangeToCode - currency to convert to, or null to leave prices in USD
+     * @param packages - packages with prices in USD
+     */
+    static void convertPrices(final CurrencyService currencyService, final CurrencyCode exchangeToCode, final List<Package> packages) throws CurrencyConversionException {
+        if (exchangeToCode != null && !packages.isEmpty()) {
+            final long[] prices = new long[packages.size()];
+            for (int i = 0; i < prices.length; i++) {
+                prices[i] = packages.get(i).getPrice();
+            }
+            final long[] convertedPrices = currencyService.convertCentsFromUSD(exchangeToCode, prices);
+            for (int i = 0; i < convertedPrices.length; i++) {
+                packages.get(i).setPrice(convertedPrices[i]);
+            }
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true) // the stream reads through a cursor which only lives as long as the transaction
+    @Timed("packages.service")
+    public void exportPackages(final String exchangeToCurrencyCode, @NotNull final Consumer<Package> consumer) throws PackageServiceException {
+        Assert.notNull(consumer, "consumer is required to export packages");
+        final CurrencyCode exchangeToCode = getCurrencyCode(exchangeToCurrencyCode);
+
+        final long start = System.nanoTime();
+        int count = 0;
+        logger.debug("Exporting packages in currency: [{}]", exchangeToCode);
+        try (Stream<PackageEntity> packageEntities = this.packageRepository.streamAll()) {
+            // every package is converted with the same rates, however long the export takes
+            final ExchangeRates exchangeRates = exchangeToCode != null ? this.currencyService.getExchangeRates() : null;
+            final Iterator<PackageEntity> iterator = packageEntities.iterator();
+            while (iterator.hasNext()) {
+                final PackageEntity packageEntity = iterator.next();
+                // products are loaded unmanaged, so don't build up in the persistence context either
+                final Package aPackage = PackageMapper.INSTANCE.entityToPackage(packageEntity,
+                        this.productCatalogue.getProducts(packageEntity.getProductIds()));
+                // mapped, so nothing else needs the entity
+                this.packageRepository.detach(packageEntity);
+                if (exchangeRates != null) {
+                    aPackage.setPrice(exchangeRates.convertCentsFromUSD(exchangeToCode, aPackage.getPrice()));
+                }
+                consumer.accept(aPackage);
+                count++;
+            }
+            logger.info("Exported: [{}] packages in: [{}]ms", count, elapsedMillis(start));
+        } catch (Exception e) {
+            throw new PackageServiceException(String.format("Something went wrong exporting packages after: [%d] packages", count), e);
+        }
+    }
+
+    private static long elapsedMillis(final long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private CurrencyCode getCurrencyCode(final String currencyCode) {
+        return getCurrencyCode(this.currencyService, currencyCode);
+    }
+
+    /**
+     * Shared with AsyncPackageServiceImpl
+     * @return the currency, or null for USD if blank
+     * @throws IllegalArgumentException if the currency code is invalid
+     */
+    static CurrencyCode getCurrencyCode(final CurrencyService currencyService, final String currencyCode) {
+        CurrencyCode result = null;
+        if (StringUtils.isNotBlank(currencyCode)) {
+            try {
+                result = currencyService.getCurrencyCodeFromString(currencyCode);
+            } catch (InvalidCurrencyCodeException e) {
+                throw new IllegalArgumentException("The currency code provided is invalid", e);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @param lastId - id of the last package in a page
+     * @return cursor for the page after it, see PackageCursors
+     */
+    @VisibleForTestMock
+    String encodeCursor(int lastId) {
+        return PackageCursors.encode(lastId);
+    }
+
+    @VisibleForTestMock
+    int decodeCursor(String cursor) {
+        return PackageCursors.decode(cursor);
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class) // the products and package are changed in place and written when the transaction commits
+    @Timed("packages.service")
+    public boolean updatePackage(@NotNull final int packageId, final Collection<String> expectedTags, String name, final String description, final Product... products)
+            throws PackageNotFoundException, PackageModifiedException, PackageServiceException {
         Assert.isTrue(packageId > 0, "packageId is required for update");
+        // before any product is saved, as products are shared with every package which has them
+        validatePackage(name, products);
+        final List<ProductEntity> productEntities = toProductEntities(products, new HashMap<>());
         boolean result = false;
 
         try {
-            // find packages
-            logger.debug(String.format("Getting package with id: [%d] to update", packageId));
-            final Package aPackage = this.getPackage(null, packageId);
-            logger.debug(String.format("Found package: [%s] to update", aPackage));
-            if (aPackage != null) {
-                // find packages
-                logger.debug(String.format("Updating package id: [%d] with name: [%s] description: [%s] products: [%s]", packageId, name, description, products));
-                aPackage.setName(name);
-                aPackage.setDescription(description);
-                aPackage.setProducts(Arrays.asList(products));
-
-                PackageEntity packageEntity = null;
-                try {
-                    // update package
-                    packageEntity = PackageMapper.INSTANCE.packageToEntity(aPackage);
-                    this.packageRepository.save(packageEntity);
-                    logger.info(String.format("Updated package: [%s]", packageEntity));
-                    result = true;
-                } catch (Exception e) {
-                    this.logger.error(String.format("Something went wrong updating package: [%d] with object: [%s]", packageId, packageEntity), e);
-                    throw e;
-                }
+            if (expectedTags != null) {
+                // checked before the products are saved, as changing one of them changes the package's version
+                checkRevision(packageId, expectedTags, productEntities);
+            }
+            // save products first, as any other packages with a changed product are refreshed
+            this.productCatalogue.saveProducts(productEntities);
+            // then find package, with its product ids, as the entity managed by this transaction
+            logger.debug("Getting package with id: [{}] to update", packageId);
+            final PackageEntity packageEntity = this.packageRepository.findWithProductsById(packageId)
+                    .orElseThrow(() -> new PackageNotFoundException(String.format("No package found with id: [%d]", packageId)));
+            payloadLogger.debug("Found package: [{}] to update", packageEntity);
+
+            logger.debug("Updating package id: [{}] with name: [{}]", packageId, name);
+            if (payloadLogger.isDebugEnabled()) {
+                payloadLogger.debug("Updating package id: [{}] with name: [{}] description: [{}] products: [{}]", packageId, name, description, Arrays.toString(products));
             }
+            packageEntity.setName(name);
+            packageEntity.setDescription(description);
+            // only positions whose product changed are written
+            packageEntity.updateProductIds(toProductIds(productEntities));
+            packageEntity.setUsdTotal(PackageMapper.INSTANCE.sumUsdPrices(productEntities));
+            // written now rather than on commit, so a stale version or broken constraint fails the update here
+            this.packageRepository.flush();
+            indexOnCommit(Collections.singletonList(packageEntity), productEntities);
+            logger.info("Updated package: [{}]", packageId);
+            payloadLogger.debug("Updated package: [{}]", packageEntity);
+            result = true;
         } catch (PackageNotFoundException e) {
             throw new PackageNotFoundException(String.format("No package found with id: [%d] for update", packageId), e);
+        } catch (PackageModifiedException e) {
+            throw e;
         } catch (Exception e) {
             throw new PackageServiceException(String.format("Something went wrong looking up package: [%d] for update", packageId), e);
         }
@@ -189,15 +795,36 @@ public class PackageServiceImpl implements PackageService  {
         return result;
     }
 
+    /**
+     * Locks the package, after the products it's updated with, so it stays at the revision checked until the update
+     * commits
+     * @throws PackageModifiedException if the package isn't at any of the expected revisions
+     */
+    private void checkRevision(final int packageId, final Collection<String> expectedTags, final List<ProductEntity> productEntities)
+            throws PackageNotFoundException, PackageModifiedException, CurrencyConversionException {
+        this.productCatalogue.lockProducts(toProductIds(productEntities));
+        final PackageEntity packageEntity = this.packageRepository.findLockedById(packageId)
+                .orElseThrow(() -> new PackageNotFoundException(String.format("No package found with id: [%d]", packageId)));
+        final PackageRevision revision = toRevision(null, toState(packageId, packageEntity.getVersion()), packageEntity.getLastModified());
+        if (!expectedTags.contains(revision.getTag())) {
+            throw new PackageModifiedException(String.format("Package: [%d] has changed since revision: %s", packageId, expectedTags));
+        }
+    }
+
     @Override
+    @Timed("packages.service")
     public boolean deletePackage(@NotNull final int packageId) throws PackageNotFoundException, PackageServiceException {
         Assert.isTrue(packageId > 0, "id of package is required for delete");
         boolean result = false;
 
         try {
-            logger.debug(String.format("Deleting package with id: [%d]", packageId));
+            logger.debug("Deleting package with id: [{}]", packageId);
             this.packageRepository.deleteById(packageId);
-            logger.info(String.format("Deleted package: [%d]", packageId));
+            afterCommit(() -> {
+                this.packageSearchIndex.removePackage(packageId);
+                this.packagePriceIndex.remove(packageId);
+            });
+            logger.info("Deleted package: [{}]", packageId);
             result = true;
         } catch (IllegalArgumentException | EmptyResultDataAccessException e) {
             throw new PackageNotFoundException(String.format("No package was found with id: [%d] to delete", packageId));
@@ -207,21 +834,4 @@ public class PackageServiceImpl implements PackageService  {
 
         return result;
     }
-
-    /**
-     * Products are stored in cents but packages ideally need presenting in base 10 decimal format.
-     * Otherwise this can cause problems:
-     *  - Clients thinking a returned value of 99.99 is $99.99 when it is really $9.99 (09.99)
-     *  - Relying on clients to perform decimal shifting which may be performed in flawed currency types (float/double) and offering incorrect prices
-     * @param centAmount - amount to convert from cents to dollars
-     * @return correct decimal location for dollars
-     */
-    @VisibleForTestMock
-    BigDecimal shiftCurrencyDenomination(BigDecimal centAmount) {
-        if (centAmount.intValue() > 0) {
-            return centAmount.movePointLeft(2);
-        } else {
-            return centAmount;
-        }
-    }
 }
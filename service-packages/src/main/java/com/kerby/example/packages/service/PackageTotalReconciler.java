@@ -0,0 +1,179 @@
+package com.kerby.example.packages.service;
+
+import com.kerby.example.database.models.PackageEntity;
+import com.kerby.example.database.models.PackagePrice;
+import com.kerby.example.database.models.ProductEntity;
+import com.kerby.example.database.repositories.PackageRepository;
+import com.kerby.example.packages.mapping.PackageMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Checks the stored USD total of every package against the sum of the prices of its products, with sumUsdPrices,
+ * and corrects any which differ.
+ *
+ * Totals are kept up to date by adding the change in price of a product to every package with it, see
+ * ProductCatalogue#saveProducts, rather than summing every product again. This is the summation kept to verify them,
+ * run in the background every packages.total-reconcile.interval-ms.
+ *
+ * Products are read from the database rather than the cache, after their packages, and a package is only corrected
+ * if it is still at the version checked. So a package changed while it is checked is left for the next run rather
+ * than given a total which no longer applies.
+ */
+@Service
+public class PackageTotalReconciler implements MeterBinder {
+
+    private static final int BATCH_SIZE = ProductCatalogue.LOAD_BATCH_SIZE;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final PackageRepository packageRepository;
+    private final ProductCatalogue productCatalogue;
+    private final PackagePriceIndex packagePriceIndex;
+
+    private long corrections = 0;
+
+    public PackageTotalReconciler(@Autowired PackageRepository packageRepository,
+                                  @Autowired ProductCatalogue productCatalogue,
+                                  @Autowired PackagePriceIndex packagePriceIndex) {
+        this.packageRepository = packageRepository;
+        this.productCatalogue = productCatalogue;
+        this.packagePriceIndex = packagePriceIndex;
+    }
+
+    /**
+     * @return number of packages whose total was corrected
+     */
+    @Scheduled(initialDelayString = "${packages.total-reconcile.interval-ms:3600000}", fixedDelayString = "${packages.total-reconcile.interval-ms:3600000}")
+    @Transactional // the stream reads through a cursor which only lives as long as the transaction
+    public int reconcile() {
+        final long start = System.nanoTime();
+        // corrected once the stream is closed, as the update clears the persistence context the stream reads into
+        final List<PackagePrice> incorrect = new ArrayList<>();
+        int checked = 0;
+        try (Stream<PackageEntity> packageEntities = this.packageRepository.streamAll()) {
+            final Iterator<PackageEntity> iterator = packageEntities.iterator();
+            final List<PackageEntity> batch = new ArrayList<>(BATCH_SIZE);
+            while (iterator.hasNext()) {
+                final PackageEntity packageEntity = iterator.next();
+                this.packageRepository.detach(packageEntity);
+                batch.add(packageEntity);
+                if (batch.size() == BATCH_SIZE || !iterator.hasNext()) {
+                    incorrect.addAll(this.check(batch));
+                    checked += batch.size();
+                    batch.clear();
+                }
+            }
+        }
+
+        final long now = System.currentTimeMillis();
+        final List<PackagePrice> corrected = new ArrayList<>(incorrect.size());
+        for (PackagePrice packagePrice : incorrect) {
+            if (this.packageRepository.correctUsdTotal(packagePrice.getId(), packagePrice.getVersion(), packagePrice.getUsdTotal(), now) > 0) {
+                corrected.add(new PackagePrice(packagePrice.getId(), packagePrice.getUsdTotal(), packagePrice.getVersion() + 1));
+            }
+        }
+        this.onCommit(corrected);
+        logger.info("Checked total of: [{}] packages, corrected: [{}] in: [{}]ms", checked, corrected.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        return corrected.size();
+    }
+
+    /**
+     * @return packages whose stored total differs from the sum of their products, with the sum as their total
+     */
+    private List<PackagePrice> check(final List<PackageEntity> packageEntities) {
+        final Set<String> productIds = new LinkedHashSet<>();
+        for (PackageEntity packageEntity : packageEntities) {
+            productIds.addAll(packageEntity.getProductIds());
+        }
+        final Map<String, ProductEntity> productsById = this.productCatalogue.loadProducts(new ArrayList<>(productIds)).stream()
+                .collect(Collectors.toMap(ProductEntity::getId, Function.identity()));
+
+        final List<PackagePrice> result = new ArrayList<>();
+        for (PackageEntity packageEntity : packageEntities) {
+            // once for each time the package has the product, as the total is kept
+            final List<ProductEntity> products = new ArrayList<>(packageEntity.getProductIds().size());
+            for (String productId : packageEntity.getProductIds()) {
+                final ProductEntity productEntity = productsById.get(productId);
+                if (productEntity == null) {
+                    logger.warn("Package: [{}] has product: [{}] which doesn't exist, total not checked", packageEntity.getId(), productId);
+                    break;
+                }
+                products.add(productEntity);
+            }
+            if (products.size() < packageEntity.getProductIds().size()) {
+                continue;
+            }
+
+            final long usdTotal = PackageMapper.INSTANCE.sumUsdPrices(products);
+            if (usdTotal != packageEntity.getUsdTotal()) {
+                logger.warn("Package: [{}] has total: [{}] but its products sum to: [{}]", packageEntity.getId(), packageEntity.getUsdTotal(), usdTotal);
+                result.add(new PackagePrice(packageEntity.getId(), usdTotal, packageEntity.getVersion()));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Moves the corrected packages in the price index once the corrections have committed
+     */
+    private void onCommit(final List<PackagePrice> corrected) {
+        if (corrected.isEmpty()) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    applyCorrections(corrected);
+                }
+            });
+        } else {
+            this.applyCorrections(corrected);
+        }
+    }
+
+    private void applyCorrections(final List<PackagePrice> corrected) {
+        for (PackagePrice packagePrice : corrected) {
+            this.packagePriceIndex.put(packagePrice);
+        }
+        synchronized (this) {
+            this.corrections += corrected.size();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("packages.total.corrections", this, PackageTotalReconciler::getCorrections)
+                .description("Packages whose stored total differed from the sum of their products")
+                .register(registry);
+    }
+
+    private synchronized double getCorrections() {
+        return corrections;
+    }
+}
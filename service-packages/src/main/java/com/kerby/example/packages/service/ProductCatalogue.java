@@ -0,0 +1,315 @@
+package com.kerby.example.packages.service;
+
+import com.kerby.example.database.models.PackageEntity;
+import com.kerby.example.database.models.ProductEntity;
+import com.kerby.example.database.repositories.PackageRepository;
+import com.kerby.example.database.repositories.ProductRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The Products shared by every package, see ProductEntity, with those most recently used held in memory.
+ *
+ * Reads look up the products of a whole page of packages at once. Products which aren't cached are loaded
+ * LOAD_BATCH_SIZE ids per query rather than one query each, and hot products, i.e. those in many packages, are
+ * served without a query at all.
+ *
+ * The cache is bounded by the number of products held. Least recently used products are evicted first.
+ * Changed products are evicted once the transaction changing them completes. A load which overlaps an eviction
+ * isn't cached, as it may have read the product from before the change.
+ *
+ * Products returned are shared between callers and must not be modified.
+ */
+@Service
+public class ProductCatalogue implements MeterBinder {
+
+    private static final int DEFAULT_MAX_SIZE = 10000;
+    // ids per query when loading products, matching the @BatchSize of package product ids
+    static final int LOAD_BATCH_SIZE = 100;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final ProductRepository productRepository;
+    private final PackageRepository packageRepository;
+    private final PackagePriceIndex packagePriceIndex;
+    private final int maxSize;
+
+    // access ordered, so iteration starts at the least recently used
+    private final LinkedHashMap<String, ProductEntity> products = new LinkedHashMap<>(16, 0.75f, true);
+    // incremented on every eviction, so a load can tell whether one happened while it ran
+    private long invalidations = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public ProductCatalogue(@Autowired ProductRepository productRepository,
+                            @Autowired PackageRepository packageRepository,
+                            @Autowired PackagePriceIndex packagePriceIndex,
+                            @Value("${packages.product-cache.max-size:" + DEFAULT_MAX_SIZE + "}") int maxSize) {
+        Assert.isTrue(maxSize >= 0, "Product cache size must not be negative");
+        this.productRepository = productRepository;
+        this.packageRepository = packageRepository;
+        this.packagePriceIndex = packagePriceIndex;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param packageEntities - packages to look up the products of
+     * @return products of every package by id, loaded together
+     */
+    public Map<String, ProductEntity> getProductsOf(Collection<PackageEntity> packageEntities) {
+        final List<String> productIds = new ArrayList<>();
+        for (PackageEntity packageEntity : packageEntities) {
+            productIds.addAll(packageEntity.getProductIds());
+        }
+
+        return this.getProducts(productIds);
+    }
+
+    /**
+     * @param productIds - ids of the products, may repeat
+     * @return products by id, any which don't exist are left out
+     */
+    public Map<String, ProductEntity> getProducts(Collection<String> productIds) {
+        final Map<String, ProductEntity> result = new HashMap<>();
+        final Set<String> missingIds = new LinkedHashSet<>();
+        final long invalidationsBefore;
+
+        synchronized (this) {
+            for (String productId : productIds) {
+                if (result.containsKey(productId) || missingIds.contains(productId)) {
+                    continue;
+                }
+                final ProductEntity productEntity = this.products.get(productId);
+                if (productEntity != null) {
+                    this.hits++;
+                    result.put(productId, productEntity);
+                } else {
+                    this.misses++;
+                    missingIds.add(productId);
+                }
+            }
+            invalidationsBefore = this.invalidations;
+        }
+
+        if (!missingIds.isEmpty()) {
+            logger.debug("Loading: [{}] of: [{}] products", missingIds.size(), missingIds.size() + result.size());
+            final List<ProductEntity> loaded = this.loadProducts(new ArrayList<>(missingIds));
+            synchronized (this) {
+                final boolean current = this.invalidations == invalidationsBefore;
+                for (ProductEntity productEntity : loaded) {
+                    result.put(productEntity.getId(), productEntity);
+                    if (current) {
+                        this.put(productEntity);
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Loads products from the database, bypassing the cache
+     * @return products, loaded unmanaged LOAD_BATCH_SIZE ids per query
+     */
+    List<ProductEntity> loadProducts(List<String> productIds) {
+        final List<ProductEntity> result = new ArrayList<>(productIds.size());
+        for (int i = 0; i < productIds.size(); i += LOAD_BATCH_SIZE) {
+            result.addAll(this.productRepository.findUnmanagedByIdIn(productIds.subList(i, Math.min(i + LOAD_BATCH_SIZE, productIds.size()))));
+        }
+
+        return result;
+    }
+
+    private void put(ProductEntity productEntity) {
+        if (this.maxSize == 0) {
+            return;
+        }
+
+        this.products.put(productEntity.getId(), productEntity);
+        final Iterator<ProductEntity> leastRecentlyUsed = this.products.values().iterator();
+        while (this.products.size() > this.maxSize) {
+            leastRecentlyUsed.next();
+            leastRecentlyUsed.remove();
+            this.evictions++;
+        }
+    }
+
+    /**
+     * Locks products until the transaction ends, in id order, as saveProducts does. Lock the products of a package
+     * before locking the package, as saving products locks them before the packages with them are brought up to date.
+     * @param productIds - ids of the products, may repeat
+     * @return managed products which exist, by id
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Map<String, ProductEntity> lockProducts(Collection<String> productIds) {
+        final List<String> ids = new ArrayList<>(new HashSet<>(productIds));
+        Collections.sort(ids);
+        final Map<String, ProductEntity> result = new HashMap<>();
+        for (int i = 0; i < ids.size(); i += LOAD_BATCH_SIZE) {
+            for (ProductEntity productEntity : this.productRepository.findLockedByIdIn(ids.subList(i, Math.min(i + LOAD_BATCH_SIZE, ids.size())))) {
+                result.put(productEntity.getId(), productEntity);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Saves products to the catalogue, inserting those which are new and updating those whose name or price changed.
+     * Every package with a changed product is brought up to date, so in a transaction save products before loading
+     * any package with them.
+     *
+     * Every product given is locked until the transaction ends, changed or not, so a package saved with their prices
+     * commits before they can be repriced and is brought up to date with the rest. Otherwise a package saved with a
+     * product at its old price, alongside the change, would keep a total the change never reached.
+     *
+     * Joins the caller's transaction if there is one.
+     * @param productEntities - products to save, a product given more than once must always have the same values.
+     *                        Each is given the version it is saved at, so the search index can tell it from an older one
+     * @return number of products inserted or updated
+     * @throws IllegalArgumentException if a product is given more than once with a different name or price
+     */
+    @Transactional
+    public int saveProducts(Collection<ProductEntity> productEntities) {
+        final Map<String, ProductEntity> distinct = new LinkedHashMap<>();
+        for (ProductEntity productEntity : productEntities) {
+            final ProductEntity given = distinct.putIfAbsent(productEntity.getId(), productEntity);
+            Assert.isTrue(given == null || given.hasSameValues(productEntity),
+                    String.format("Product: [%s] is given more than once with a different name or price", productEntity.getId()));
+        }
+
+        // the products as stored, managed so changes to them are written
+        final Map<String, ProductEntity> saved = this.lockProducts(distinct.keySet());
+
+        final List<ProductEntity> inserted = new ArrayList<>();
+        final List<String> updatedIds = new ArrayList<>();
+        // updated products grouped by how much their price changed, so packages are updated a statement per change
+        final Map<Long, List<String>> updatedIdsByPriceChange = new HashMap<>();
+        for (ProductEntity productEntity : distinct.values()) {
+            final ProductEntity savedProductEntity = saved.get(productEntity.getId());
+            if (savedProductEntity == null) {
+                inserted.add(new ProductEntity(productEntity.getId(), productEntity.getName(), productEntity.getUsdPrice()));
+            } else if (!savedProductEntity.hasSameValues(productEntity)) {
+                final long priceChange = Math.subtractExact(productEntity.getUsdPrice(), savedProductEntity.getUsdPrice());
+                savedProductEntity.setName(productEntity.getName());
+                savedProductEntity.setUsdPrice(productEntity.getUsdPrice());
+                updatedIds.add(productEntity.getId());
+                updatedIdsByPriceChange.computeIfAbsent(priceChange, change -> new ArrayList<>()).add(productEntity.getId());
+            }
+        }
+
+        this.productRepository.saveAll(inserted);
+        // written before the totals of packages, so a product changed or inserted concurrently fails here rather
+        // than its price change being added twice
+        this.productRepository.flush();
+        for (ProductEntity insertedProductEntity : inserted) {
+            saved.put(insertedProductEntity.getId(), insertedProductEntity);
+        }
+        for (ProductEntity productEntity : productEntities) {
+            productEntity.setVersion(saved.get(productEntity.getId()).getVersion());
+        }
+        if (!updatedIds.isEmpty()) {
+            final long now = System.currentTimeMillis();
+            int refreshed = 0;
+            for (Map.Entry<Long, List<String>> priceChange : updatedIdsByPriceChange.entrySet()) {
+                refreshed += this.packageRepository.addToUsdTotalByProductIdIn(priceChange.getValue(), priceChange.getKey(), now);
+            }
+            logger.info("Updated: [{}] products, refreshing packages: [{}] times", updatedIds.size(), refreshed);
+            final List<String> repricedIds = new ArrayList<>(updatedIds);
+            repricedIds.removeAll(updatedIdsByPriceChange.getOrDefault(0L, Collections.emptyList()));
+            this.onCompletion(updatedIds, repricedIds);
+        }
+
+        return inserted.size() + updatedIds.size();
+    }
+
+    /**
+     * Once the transaction completes evicts the changed products, and if it committed moves the packages with a
+     * product whose price changed in the price index
+     */
+    private void onCompletion(final List<String> productIds, final List<String> repricedIds) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(productIds);
+                    if (status == STATUS_COMMITTED && !repricedIds.isEmpty()) {
+                        packagePriceIndex.refreshByProductIdIn(repricedIds);
+                    }
+                }
+            });
+        } else {
+            this.evict(productIds);
+            if (!repricedIds.isEmpty()) {
+                this.packagePriceIndex.refreshByProductIdIn(repricedIds);
+            }
+        }
+    }
+
+    /**
+     * @param productIds - ids of changed products
+     */
+    public synchronized void evict(Collection<String> productIds) {
+        this.invalidations++;
+        for (String productId : productIds) {
+            this.products.remove(productId);
+        }
+    }
+
+    public synchronized void clear() {
+        this.invalidations++;
+        this.products.clear();
+    }
+
+    public synchronized int size() {
+        return this.products.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("packages.product.cache.hits", this, catalogue -> catalogue.getCount(true))
+                .register(registry);
+        FunctionCounter.builder("packages.product.cache.misses", this, catalogue -> catalogue.getCount(false))
+                .description("Products loaded from the database")
+                .register(registry);
+        FunctionCounter.builder("packages.product.cache.evictions", this, ProductCatalogue::getEvictions)
+                .description("Products evicted to keep the cache within its size")
+                .register(registry);
+        Gauge.builder("packages.product.cache.size", this, ProductCatalogue::size)
+                .register(registry);
+    }
+
+    private synchronized double getCount(boolean hit) {
+        return hit ? hits : misses;
+    }
+
+    private synchronized double getEvictions() {
+        return evictions;
+    }
+}
@@ -0,0 +1,121 @@
+package com.kerby.example.packages.service;
+
+import com.kerby.example.currency.exceptions.InvalidCurrencyCodeException;
+import com.kerby.example.currency.models.CurrencyCode;
+import com.kerby.example.currency.service.CurrencyService;
+import com.kerby.example.packages.exceptions.PackageNotFoundException;
+import com.kerby.example.packages.models.Package;
+import com.kerby.example.packages.models.PackageRevision;
+import org.hamcrest.Matchers;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+public class AsyncPackageServiceImplTest extends TestUtility {
+
+    private final PackageService packageService = Mockito.mock(PackageService.class);
+    private final CurrencyService currencyService = Mockito.mock(CurrencyService.class);
+
+    // run on the calling thread, recording which executor ran what
+    private final List<String> executed = new ArrayList<>();
+    private final Executor databaseExecutor = command -> {
+        executed.add("database");
+        command.run();
+    };
+    private final Executor currencyExecutor = command -> {
+        executed.add("currency");
+        command.run();
+    };
+
+    private AsyncPackageServiceImpl asyncPackageService;
+
+    @Before
+    public void beforeTest() throws InvalidCurrencyCodeException {
+        asyncPackageService = new AsyncPackageServiceImpl(packageService, currencyService, databaseExecutor, currencyExecutor);
+        Mockito.when(currencyService.getCurrencyCodeFromString("GBP")).thenReturn(CurrencyCode.GBP);
+    }
+
+    @Test
+    public void when_getPackageInCurrency_expectLoadedThenConvertedOnSeparateExecutors() throws Exception {
+        final Package aPackage = new Package("Foo", "Foo test", Arrays.asList(PRODUCT_ALPHA));
+        aPackage.setPrice(100);
+        Mockito.when(packageService.getPackage(null, 1)).thenReturn(aPackage);
+        Mockito.when(currencyService.convertCentsFromUSD(CurrencyCode.GBP, 100L)).thenReturn(75L);
+
+        final Package result = asyncPackageService.getPackage("GBP", 1).get();
+
+        Assert.assertEquals(75, result.getPrice());
+        Assert.assertEquals(Arrays.asList("database", "currency"), executed);
+    }
+
+    @Test
+    public void when_getPackageInUSD_expectDatabaseExecutorOnly() throws Exception {
+        final Package aPackage = new Package("Foo", "Foo test", Arrays.asList(PRODUCT_ALPHA));
+        aPackage.setPrice(100);
+        Mockito.when(packageService.getPackage(null, 1)).thenReturn(aPackage);
+
+        Assert.assertEquals(100, asyncPackageService.getPackage(null, 1).get().getPrice());
+        Assert.assertEquals(Arrays.asList("database"), executed);
+        Mockito.verifyZeroInteractions(currencyService);
+    }
+
+    @Test
+    public void when_getPackageRevisionInCurrency_expectSameAsPackageService() throws Exception {
+        final PackageRevision usdRevision = new PackageRevision("foo", 1000);
+        Mockito.when(packageService.getPackageRevision(null, 1)).thenReturn(usdRevision);
+        Mockito.when(currencyService.getExchangeRatesVersion()).thenReturn(2000L);
+
+        final PackageRevision result = asyncPackageService.getPackageRevision("GBP", 1).get();
+
+        Assert.assertEquals(PackageServiceImpl.withExchangeRates(usdRevision, CurrencyCode.GBP, 2000).getTag(), result.getTag());
+        Assert.assertNotEquals(usdRevision.getTag(), result.getTag());
+        Assert.assertEquals(2000, result.getLastModified());
+        Assert.assertEquals(Arrays.asList("database", "currency"), executed);
+    }
+
+    @Test
+    public void when_getPackageNotFound_expectFutureCompletedExceptionally() throws Exception {
+        Mockito.when(packageService.getPackage(null, 1)).thenThrow(new PackageNotFoundException("foo"));
+
+        final CompletableFuture<Package> result = asyncPackageService.getPackage("GBP", 1);
+
+        try {
+            result.get();
+            Assert.fail("Expected exception");
+        } catch (ExecutionException e) {
+            Assert.assertThat(e.getCause(), Matchers.instanceOf(PackageNotFoundException.class));
+        }
+        // no conversion attempted
+        Assert.assertEquals(Arrays.asList("database"), executed);
+    }
+
+    @Test
+    public void when_executorSaturated_expectFutureCompletedExceptionally() throws Exception {
+        final Executor saturated = command -> {
+            throw new RejectedExecutionException("foo");
+        };
+        asyncPackageService = new AsyncPackageServiceImpl(packageService, currencyService, saturated, currencyExecutor);
+
+        final CompletableFuture<Package> result = asyncPackageService.getPackage(null, 1);
+
+        Assert.assertTrue(result.isCompletedExceptionally());
+        Mockito.verifyZeroInteractions(packageService);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void when_getPackageInInvalidCurrency_expectException() throws Exception {
+        Mockito.when(currencyService.getCurrencyCodeFromString("FOO")).thenThrow(new InvalidCurrencyCodeException("FOO"));
+
+        asyncPackageService.getPackage("FOO", 1);
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.kerby.example.packages.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class DeletedPackageIdsTest {
+
+    private final AtomicLong now = new AtomicLong(1000);
+    private final DeletedPackageIds deletedPackageIds = new DeletedPackageIds(now::get);
+
+    @Test
+    public void when_deletedRecently_expectKept() {
+        deletedPackageIds.add(1);
+        now.addAndGet(DeletedPackageIds.RETENTION_MILLIS);
+
+        Assert.assertTrue(deletedPackageIds.contains(1));
+        Assert.assertFalse(deletedPackageIds.contains(2));
+    }
+
+    @Test
+    public void when_deletedLongerThanRetention_expectPruned() {
+        deletedPackageIds.add(1);
+        now.addAndGet(DeletedPackageIds.RETENTION_MILLIS / 2);
+        deletedPackageIds.add(2);
+        now.addAndGet(DeletedPackageIds.RETENTION_MILLIS / 2 + 1);
+
+        // pruned as others are looked up, oldest first
+        Assert.assertFalse(deletedPackageIds.contains(1));
+        Assert.assertTrue(deletedPackageIds.contains(2));
+        Assert.assertEquals(1, deletedPackageIds.size());
+        now.addAndGet(DeletedPackageIds.RETENTION_MILLIS);
+        deletedPackageIds.add(3);
+        Assert.assertEquals(1, deletedPackageIds.size());
+    }
+}
@@ -0,0 +1,114 @@
+package com.kerby.example.packages.service;
+
+import com.kerby.example.database.models.PackagePrice;
+import com.kerby.example.database.repositories.PackageRepository;
+import com.kerby.example.packages.exceptions.PackageIndexNotBuiltException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class PackagePriceIndexTest {
+
+    private final PackageRepository packageRepository = Mockito.mock(PackageRepository.class);
+
+    private final PackagePriceIndex packagePriceIndex = new PackagePriceIndex(packageRepository);
+
+    private static List<Integer> ids(List<PackagePriceIndex.Key> keys) {
+        return keys.stream().map(PackagePriceIndex.Key::getId).collect(Collectors.toList());
+    }
+
+    @Before
+    public void beforeTest() {
+        // built from an empty database, then packages indexed as they're created
+        packagePriceIndex.rebuild();
+        packagePriceIndex.put(new PackagePrice(1, 300, 0));
+        packagePriceIndex.put(new PackagePrice(2, 100, 0));
+        packagePriceIndex.put(new PackagePrice(3, 200, 0));
+        packagePriceIndex.put(new PackagePrice(4, 200, 0));
+    }
+
+    @Test
+    public void when_gettingRange_expectPackagesWithinItByPriceThenId() {
+        Assert.assertEquals(Arrays.asList(2, 3, 4, 1), ids(packagePriceIndex.range(0, Long.MAX_VALUE, false, null, 10)));
+        // bounds are inclusive
+        Assert.assertEquals(Arrays.asList(3, 4), ids(packagePriceIndex.range(101, 200, false, null, 10)));
+        Assert.assertEquals(Collections.emptyList(), ids(packagePriceIndex.range(201, 299, false, null, 10)));
+        Assert.assertEquals(Collections.emptyList(), ids(packagePriceIndex.range(300, 100, false, null, 10)));
+    }
+
+    @Test
+    public void when_gettingRangeDescending_expectDearestFirst() {
+        Assert.assertEquals(Arrays.asList(1, 4, 3, 2), ids(packagePriceIndex.range(0, Long.MAX_VALUE, true, null, 10)));
+        Assert.assertEquals(Arrays.asList(4, 3), ids(packagePriceIndex.range(0, 299, true, null, 2)));
+    }
+
+    @Test
+    public void when_gettingPages_expectEachStartingAfterTheLast() {
+        final List<PackagePriceIndex.Key> first = packagePriceIndex.range(0, Long.MAX_VALUE, false, null, 2);
+        Assert.assertEquals(Arrays.asList(2, 3), ids(first));
+
+        final List<PackagePriceIndex.Key> second = packagePriceIndex.range(0, Long.MAX_VALUE, false, first.get(1), 2);
+        Assert.assertEquals(Arrays.asList(4, 1), ids(second));
+        Assert.assertEquals(Arrays.asList(4), ids(packagePriceIndex.range(0, Long.MAX_VALUE, true, second.get(1), 1)));
+    }
+
+    @Test
+    public void when_priceChangedAndPackageRemoved_expectIndexChanged() {
+        packagePriceIndex.put(new PackagePrice(2, 250, 1));
+        // an older price indexed after is ignored
+        packagePriceIndex.put(new PackagePrice(2, 100, 0));
+        Assert.assertEquals(Arrays.asList(3, 4, 2, 1), ids(packagePriceIndex.range(0, Long.MAX_VALUE, false, null, 10)));
+
+        packagePriceIndex.remove(3);
+        Assert.assertEquals(Arrays.asList(4, 2, 1), ids(packagePriceIndex.range(0, Long.MAX_VALUE, false, null, 10)));
+        Assert.assertEquals(3, packagePriceIndex.size());
+    }
+
+    @Test
+    public void when_pricePutAfterRemoved_expectStaysRemoved() {
+        packagePriceIndex.remove(3);
+        // an update committed before the delete, indexed after it
+        packagePriceIndex.put(new PackagePrice(3, 200, 1));
+
+        // no place taken in the page by the deleted package
+        Assert.assertEquals(Arrays.asList(2, 4), ids(packagePriceIndex.range(0, Long.MAX_VALUE, false, null, 2)));
+        Assert.assertEquals(3, packagePriceIndex.size());
+    }
+
+    @Test
+    public void when_productPricesChanged_expectPackagesWithThemReindexed() {
+        Mockito.when(packageRepository.findPricesByProductIdIn(Collections.singletonList("alpha_1")))
+                .thenReturn(Arrays.asList(new PackagePrice(1, 50, 1), new PackagePrice(4, 400, 1)));
+
+        packagePriceIndex.refreshByProductIdIn(Collections.singletonList("alpha_1"));
+
+        Assert.assertEquals(Arrays.asList(1, 2, 3, 4), ids(packagePriceIndex.range(0, Long.MAX_VALUE, false, null, 10)));
+    }
+
+    @Test
+    public void when_rebuilding_expectOnlyStoredPricesIndexed() {
+        Mockito.when(packageRepository.streamAllPrices()).thenReturn(Stream.of(new PackagePrice(5, 500, 0)));
+
+        packagePriceIndex.rebuild();
+
+        Assert.assertEquals(1, packagePriceIndex.size());
+        Assert.assertEquals(Arrays.asList(5), ids(packagePriceIndex.range(0, Long.MAX_VALUE, false, null, 10)));
+    }
+
+    @Test(expected = PackageIndexNotBuiltException.class)
+    public void when_gettingRangeBeforeBuilt_expectException() {
+        new PackagePriceIndex(packageRepository).range(0, Long.MAX_VALUE, false, null, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void when_gettingRangeWithoutLimit_expectException() {
+        packagePriceIndex.range(0, Long.MAX_VALUE, false, null, 0);
+    }
+}
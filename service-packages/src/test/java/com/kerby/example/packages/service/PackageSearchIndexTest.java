@@ -0,0 +1,148 @@
+package com.kerby.example.packages.service;
+
+import com.kerby.example.database.models.PackageEntity;
+import com.kerby.example.database.models.ProductEntity;
+import com.kerby.example.database.repositories.PackageRepository;
+import com.kerby.example.packages.exceptions.PackageIndexNotBuiltException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+public class PackageSearchIndexTest extends TestUtility {
+
+    private final PackageRepository packageRepository = Mockito.mock(PackageRepository.class);
+    private final ProductCatalogue productCatalogue = Mockito.mock(ProductCatalogue.class);
+
+    private final PackageSearchIndex packageSearchIndex = new PackageSearchIndex(packageRepository, productCatalogue);
+
+    private static PackageEntity aPackageEntity(int id, String name, String description, String... productIds) {
+        final PackageEntity result = new PackageEntity(name, description, Arrays.asList(productIds));
+        result.setId(id);
+        return result;
+    }
+
+    @Before
+    public void beforeTest() {
+        // built from an empty database, then packages indexed as they're created
+        packageSearchIndex.rebuild();
+        packageSearchIndex.indexPackage(aPackageEntity(1, "Camera kit", "Everything to get started", "alpha_1"));
+        packageSearchIndex.indexPackage(aPackageEntity(2, "Travel bundle", "Camera bag and straps", "beta_1"));
+        packageSearchIndex.indexPackage(aPackageEntity(3, "Holiday", "For the beach", "alpha_1", "beta_1"));
+        packageSearchIndex.indexProducts(Arrays.asList(
+                new ProductEntity("alpha_1", "Camera strap", 100),
+                new ProductEntity("beta_1", "Lens cap", 150)));
+    }
+
+    @Test
+    public void when_searchingTerm_expectPackagesRankedByFieldMatched() {
+        final PackageSearchIndex.Hits hits = packageSearchIndex.search("camera", 0, 10);
+
+        // name and product beat product alone, which beats product and description
+        Assert.assertEquals(Arrays.asList(1, 3, 2), hits.getPackageIds());
+        Assert.assertEquals(3, hits.getTotal());
+    }
+
+    @Test
+    public void when_searchingPrefix_expectWholeTermsRankedFirst() {
+        // strap in package 1, 3 but straps in package 2 only
+        Assert.assertEquals(Arrays.asList(1, 3, 2), packageSearchIndex.search("Strap", 0, 10).getPackageIds());
+        Assert.assertEquals(Arrays.asList(2), packageSearchIndex.search("trav", 0, 10).getPackageIds());
+    }
+
+    @Test
+    public void when_searchingManyTerms_expectPackagesMatchingEvery() {
+        Assert.assertEquals(Arrays.asList(3), packageSearchIndex.search("lens, beach!", 0, 10).getPackageIds());
+        Assert.assertEquals(Collections.emptyList(), packageSearchIndex.search("lens kit", 0, 10).getPackageIds());
+    }
+
+    @Test
+    public void when_searchingPages_expectOffsetAndLimitApplied() {
+        final PackageSearchIndex.Hits hits = packageSearchIndex.search("camera", 1, 1);
+
+        Assert.assertEquals(Arrays.asList(3), hits.getPackageIds());
+        Assert.assertEquals(3, hits.getTotal());
+        Assert.assertEquals(Collections.emptyList(), packageSearchIndex.search("camera", 3, 1).getPackageIds());
+    }
+
+    @Test
+    public void when_packageUpdatedAndDeleted_expectIndexChanged() {
+        final PackageEntity updated = aPackageEntity(2, "Travel bundle", "Bag and straps", "beta_1");
+        updated.setVersion(1);
+        packageSearchIndex.indexPackage(updated);
+        // an older copy indexed after is ignored
+        packageSearchIndex.indexPackage(aPackageEntity(2, "Travel bundle", "Camera bag and straps", "beta_1"));
+        Assert.assertEquals(Arrays.asList(1, 3), packageSearchIndex.search("camera", 0, 10).getPackageIds());
+
+        packageSearchIndex.removePackage(1);
+        Assert.assertEquals(Arrays.asList(3), packageSearchIndex.search("camera", 0, 10).getPackageIds());
+        Assert.assertEquals(2, packageSearchIndex.size());
+    }
+
+    @Test
+    public void when_packageUpdatedAfterDeleted_expectStaysDeleted() {
+        packageSearchIndex.removePackage(2);
+        // an update committed before the delete, indexed after it
+        final PackageEntity updated = aPackageEntity(2, "Travel bundle", "Camera bag and straps", "beta_1");
+        updated.setVersion(1);
+        packageSearchIndex.indexPackage(updated);
+
+        Assert.assertEquals(Arrays.asList(1, 3), packageSearchIndex.search("camera", 0, 10).getPackageIds());
+        Assert.assertEquals(2, packageSearchIndex.size());
+    }
+
+    @Test
+    public void when_productRenamed_expectEveryPackageWithItFound() {
+        packageSearchIndex.indexProducts(Collections.singletonList(new ProductEntity("beta_1", "Tripod", 150)));
+
+        Assert.assertEquals(Arrays.asList(2, 3), packageSearchIndex.search("tripod", 0, 10).getPackageIds());
+        Assert.assertEquals(Collections.emptyList(), packageSearchIndex.search("lens", 0, 10).getPackageIds());
+    }
+
+    @Test
+    public void when_olderProductIndexedAfter_expectIgnored() {
+        packageSearchIndex.indexProducts(Collections.singletonList(new ProductEntity("beta_1", "Tripod", 150, 2L)));
+        packageSearchIndex.indexProducts(Collections.singletonList(new ProductEntity("beta_1", "Lens cap", 150, 1L)));
+
+        Assert.assertEquals(Arrays.asList(2, 3), packageSearchIndex.search("tripod", 0, 10).getPackageIds());
+        Assert.assertEquals(Collections.emptyList(), packageSearchIndex.search("lens", 0, 10).getPackageIds());
+    }
+
+    @Test
+    public void when_productInNoPackage_expectNotFound() {
+        packageSearchIndex.removePackage(2);
+        packageSearchIndex.removePackage(3);
+
+        Assert.assertEquals(Collections.emptyList(), packageSearchIndex.search("lens", 0, 10).getPackageIds());
+        // a package with it again needs it indexed again
+        packageSearchIndex.indexPackage(aPackageEntity(4, "Lenses", null, "beta_1"));
+        packageSearchIndex.indexProducts(Collections.singletonList(new ProductEntity("beta_1", "Lens cap", 150)));
+        Assert.assertEquals(Arrays.asList(4), packageSearchIndex.search("cap", 0, 10).getPackageIds());
+    }
+
+    @Test
+    public void when_rebuilding_expectEveryPackageAndProductIndexed() {
+        Mockito.when(packageRepository.streamAll()).thenReturn(Stream.of(aPackageEntity(5, "Foo", "Foo test", "alpha_1", "beta_1")));
+        Mockito.when(productCatalogue.getProducts(Mockito.any())).thenReturn(productEntitiesById(PRODUCT_ENTITY_ALPHA, PRODUCT_ENTITY_BETA));
+
+        packageSearchIndex.rebuild();
+
+        Assert.assertEquals(1, packageSearchIndex.size());
+        Assert.assertEquals(Arrays.asList(5), packageSearchIndex.search("beta", 0, 10).getPackageIds());
+        Assert.assertEquals(Collections.emptyList(), packageSearchIndex.search("camera", 0, 10).getPackageIds());
+    }
+
+    @Test(expected = PackageIndexNotBuiltException.class)
+    public void when_searchingBeforeBuilt_expectException() {
+        new PackageSearchIndex(packageRepository, productCatalogue).search("camera", 0, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void when_searchingWithoutTerms_expectException() {
+        packageSearchIndex.search(" - ", 0, 10);
+    }
+}
@@ -1,23 +1,48 @@
 package com.kerby.example.packages.service;
 
+import com.kerby.example.currency.exceptions.CurrencyConversionException;
+import com.kerby.example.currency.exceptions.InvalidCurrencyCodeException;
+import com.kerby.example.currency.models.CurrencyCode;
+import com.kerby.example.currency.models.ExchangeRates;
+import com.kerby.example.currency.service.CurrencyService;
 import com.kerby.example.database.models.PackageEntity;
+import com.kerby.example.database.models.PackageSummary;
+import com.kerby.example.database.models.PackageVersion;
+import com.kerby.example.database.models.ProductEntity;
 import com.kerby.example.database.repositories.PackageRepository;
+import com.kerby.example.packages.exceptions.PackageModifiedException;
 import com.kerby.example.packages.exceptions.PackageNotFoundException;
 import com.kerby.example.packages.exceptions.PackageServiceException;
-import org.hamcrest.Matchers;
+import com.kerby.example.packages.models.PackageCreateResult;
+import com.kerby.example.packages.models.PackageField;
+import com.kerby.example.packages.models.PackageLookupResult;
+import com.kerby.example.packages.models.PackagePage;
+import com.kerby.example.packages.models.PackagePriceQuery;
+import com.kerby.example.packages.models.PackageRevision;
+import com.kerby.example.packages.models.PackageSearchResult;
+import com.kerby.example.packages.models.Product;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.*;
 import org.springframework.boot.SpringBootConfiguration;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.junit4.SpringRunner;
 import com.kerby.example.packages.models.Package;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
@@ -27,10 +52,92 @@ public class PackageServiceImplTest extends TestUtility {
     @Mock
     PackageRepository packageRepository;
 
+    @Mock
+    CurrencyService currencyService;
+
+    @Mock
+    ProductCatalogue productCatalogue;
+
+    @Mock
+    PackageSearchIndex packageSearchIndex;
+
+    @Mock
+    PackagePriceIndex packagePriceIndex;
+
     @Spy
     @InjectMocks
     PackageServiceImpl packageService;
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void when_createPackages_expectValidPackagesSavedTogether() throws PackageServiceException {
+        // mock saving of items, giving them ids in order
+        Mockito.when(packageRepository.insertAll(Mockito.anyList())).thenAnswer(invocation -> {
+            final List<PackageEntity> packageEntities = invocation.getArgument(0);
+            for (int i = 0; i < packageEntities.size(); i++) {
+                packageEntities.get(i).setId(i + 1);
+            }
+            return packageEntities;
+        });
+
+        final List<PackageCreateResult> results = this.packageService.createPackages(Arrays.asList(
+                new Package("Foo", "Foo description", Arrays.asList(PRODUCT_ALPHA, PRODUCT_BETA)),
+                new Package(" ", "No name", Arrays.asList(PRODUCT_ALPHA)),
+                new Package("Bar", "No products", new ArrayList<>()),
+                new Package("Baz", "Baz description", Arrays.asList(PRODUCT_BETA))
+        ));
+
+        // invalid packages reported in place, the rest saved in one call
+        Assert.assertEquals(4, results.size());
+        Assert.assertTrue(results.get(0).isCreated());
+        Assert.assertEquals(1, results.get(0).getId());
+        Assert.assertFalse(results.get(1).isCreated());
+        Assert.assertEquals("name is required to create a package", results.get(1).getError());
+        Assert.assertFalse(results.get(2).isCreated());
+        Assert.assertTrue(results.get(3).isCreated());
+        Assert.assertEquals(2, results.get(3).getId());
+        final ArgumentCaptor<List<PackageEntity>> argument = ArgumentCaptor.forClass((Class) List.class);
+        Mockito.verify(packageRepository, Mockito.times(1)).insertAll(argument.capture());
+        Assert.assertEquals(250, argument.getValue().get(0).getUsdTotal());
+        Assert.assertEquals(Arrays.asList("alpha_1", "beta_1"), argument.getValue().get(0).getProductIds());
+        Mockito.verify(packageRepository, Mockito.never()).save(Mockito.any(PackageEntity.class));
+        // products shared by the packages are saved once
+        final ArgumentCaptor<Collection<ProductEntity>> products = ArgumentCaptor.forClass((Class) Collection.class);
+        Mockito.verify(productCatalogue, Mockito.times(1)).saveProducts(products.capture());
+        Assert.assertEquals(2, products.getValue().size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void when_createPackagesWithConflictingProducts_expectLaterPackageInvalid() throws PackageServiceException {
+        Mockito.when(packageRepository.insertAll(Mockito.anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        final List<PackageCreateResult> results = this.packageService.createPackages(Arrays.asList(
+                new Package("Foo", "Foo description", Arrays.asList(PRODUCT_ALPHA, PRODUCT_BETA)),
+                new Package("Bar", "Bar description", Arrays.asList(new Product("beta_1", "Beta", 175))),
+                new Package("Baz", "Baz description", Arrays.asList(PRODUCT_BETA))
+        ));
+
+        // a product is stored once, so can't have two prices
+        Assert.assertTrue(results.get(0).isCreated());
+        Assert.assertFalse(results.get(1).isCreated());
+        Assert.assertEquals("Product: [beta_1] is given more than once with a different name or price", results.get(1).getError());
+        Assert.assertTrue(results.get(2).isCreated());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void when_createPackageWithConflictingProducts_expectException() throws PackageServiceException {
+        this.packageService.createPackage("Foo", "Foo description", PRODUCT_BETA, new Product("beta_1", "Beta", 175));
+    }
+
+    @Test(expected = PackageServiceException.class)
+    public void when_createPackagesFailsToSave_expectException() throws PackageServiceException {
+        Mockito.when(packageRepository.insertAll(Mockito.anyList())).thenThrow(new RuntimeException("foo"));
+
+        this.packageService.createPackages(Arrays.asList(
+                new Package("Foo", "Foo description", Arrays.asList(PRODUCT_ALPHA, PRODUCT_BETA))));
+    }
+
     @Test
     public void when_createNewPackage_expectSuccess() {
         // mock saving of item
@@ -52,14 +159,174 @@ public class PackageServiceImplTest extends TestUtility {
 
         // assert created
         Assert.assertEquals(mockedResponse.getId(), packageId);
+        final ArgumentCaptor<PackageEntity> argument = ArgumentCaptor.forClass(PackageEntity.class);
+        Mockito.verify(packageRepository).save(argument.capture());
+        Assert.assertEquals(250, argument.getValue().getUsdTotal());
+        Assert.assertEquals(Arrays.asList("alpha_1", "beta_1"), argument.getValue().getProductIds());
+        Mockito.verify(productCatalogue).saveProducts(Arrays.asList(PRODUCT_ENTITY_ALPHA, PRODUCT_ENTITY_BETA));
+        // outside of a transaction indexed for search straight away
+        Mockito.verify(packageSearchIndex).indexPackage(mockedResponse);
+        Mockito.verify(packageSearchIndex).indexProducts(Arrays.asList(PRODUCT_ENTITY_ALPHA, PRODUCT_ENTITY_BETA));
+    }
+
+    @Test
+    public void when_searchPackages_expectPackagesInRankedOrder() throws PackageServiceException {
+        final PackageEntity packageFoo = new PackageEntity("Foo", "Foo test", Arrays.asList("alpha_1"));
+        packageFoo.setId(1);
+        final PackageEntity packageBar = new PackageEntity("Bar", "Bar test", Arrays.asList("beta_1"));
+        packageBar.setId(2);
+        // 3 was deleted after it was indexed
+        Mockito.when(packageSearchIndex.search("test", 0, 10)).thenReturn(new PackageSearchIndex.Hits(Arrays.asList(2, 3, 1), 3));
+        Mockito.when(packageRepository.findAllWithProductsByIdIn(Arrays.asList(2, 3, 1))).thenReturn(Arrays.asList(packageFoo, packageBar));
+        Mockito.when(productCatalogue.getProductsOf(Mockito.any())).thenReturn(productEntitiesById(PRODUCT_ENTITY_ALPHA, PRODUCT_ENTITY_BETA));
+
+        final PackageSearchResult result = this.packageService.searchPackages(null, "test", 0, 10, null);
+
+        Assert.assertEquals(3, result.getTotal());
+        Assert.assertEquals(2, result.getPackages().size());
+        Assert.assertEquals(2, result.getPackages().get(0).getId());
+        Assert.assertEquals(1, result.getPackages().get(1).getId());
+    }
+
+    @Test
+    public void when_searchPackagesMatchingNone_expectNoPackagesLoaded() throws PackageServiceException {
+        Mockito.when(packageSearchIndex.search("nothing", 0, 10)).thenReturn(new PackageSearchIndex.Hits(new ArrayList<>(), 0));
+
+        final PackageSearchResult result = this.packageService.searchPackages(null, "nothing", 0, 10, null);
+
+        Assert.assertEquals(0, result.getTotal());
+        Assert.assertTrue(result.getPackages().isEmpty());
+        Mockito.verifyZeroInteractions(packageRepository);
+    }
+
+    @Test
+    public void when_getPackagesByPriceInCurrency_expectRangeTranslatedToUSDAndPackagesInPriceOrder() throws Exception {
+        final PackageEntity packageFoo = new PackageEntity("Foo", "Foo test", Arrays.asList("alpha_1"));
+        packageFoo.setId(1);
+        packageFoo.setUsdTotal(150);
+        final PackageEntity packageBar = new PackageEntity("Bar", "Bar test", Arrays.asList("beta_1"));
+        packageBar.setId(2);
+        packageBar.setUsdTotal(150);
+        Mockito.when(currencyService.getCurrencyCodeFromString("GBP")).thenReturn(CurrencyCode.GBP);
+        Mockito.when(currencyService.convertCentsRangeToUSD(CurrencyCode.GBP, 100, Long.MAX_VALUE)).thenReturn(new long[] {125, Long.MAX_VALUE});
+        // dearest first, with one more than the limit so there is a next page
+        Mockito.when(packagePriceIndex.range(125, Long.MAX_VALUE, true, null, 3)).thenReturn(Arrays.asList(
+                new PackagePriceIndex.Key(150, 2), new PackagePriceIndex.Key(150, 1), new PackagePriceIndex.Key(125, 3)));
+        Mockito.when(packageRepository.findAllWithProductsByIdIn(Arrays.asList(2, 1))).thenReturn(Arrays.asList(packageFoo, packageBar));
+        Mockito.when(productCatalogue.getProductsOf(Mockito.any())).thenReturn(productEntitiesById(PRODUCT_ENTITY_ALPHA, PRODUCT_ENTITY_BETA));
+        Mockito.when(currencyService.convertCentsFromUSD(Mockito.eq(CurrencyCode.GBP), AdditionalMatchers.aryEq(new long[] {150, 150})))
+                .thenReturn(new long[] {120, 120});
+
+        final PackagePage page = this.packageService.getPackagesByPrice("GBP", new PackagePriceQuery(100L, null, true), null, 2, null);
+
+        // in the order of the index, not the order loaded
+        Assert.assertEquals(2, page.getPackages().get(0).getId());
+        Assert.assertEquals(120, page.getPackages().get(0).getPrice());
+        Assert.assertEquals(1, page.getPackages().get(1).getId());
+        // the next page starts after the last package of this one
+        Assert.assertEquals(new PackagePriceIndex.Key(150, 1), PackageCursors.decodePrice(page.getNextCursor()));
+    }
+
+    @Test
+    public void when_lookupPackagesByPriceRevisionAfterRepricing_expectNewTagWithoutLastModified() throws Exception {
+        final PackagePriceQuery query = new PackagePriceQuery(100L, 200L, false);
+        Mockito.when(packagePriceIndex.range(100, 200, false, null, 3))
+                .thenReturn(Arrays.asList(new PackagePriceIndex.Key(150, 1), new PackagePriceIndex.Key(160, 2)))
+                // package 2 repriced out of the range, so the older package 3 moves into the page
+                .thenReturn(Arrays.asList(new PackagePriceIndex.Key(150, 1), new PackagePriceIndex.Key(170, 3)));
+        Mockito.when(packageRepository.findVersionsByIdIn(Arrays.asList(1, 2)))
+                .thenReturn(Arrays.asList(new PackageVersion(1, 0, 2000), new PackageVersion(2, 0, 3000)));
+        Mockito.when(packageRepository.findVersionsByIdIn(Arrays.asList(1, 3)))
+                .thenReturn(Arrays.asList(new PackageVersion(1, 0, 2000), new PackageVersion(3, 0, 1000)));
+
+        final PackageRevision revision = this.packageService.getPackagesByPriceRevision(null, query, null, 2);
+        final PackageRevision repricedRevision = this.packageService.getPackagesByPriceRevision(null, query, null, 2);
+
+        Assert.assertNotEquals(revision.getTag(), repricedRevision.getTag());
+        Assert.assertEquals(0, revision.getLastModified());
+        Assert.assertEquals(0, repricedRevision.getLastModified());
+    }
+
+    @Test
+    public void when_getPackagesByPriceAfterCursor_expectPageAfterItInUSD() throws Exception {
+        Mockito.when(packagePriceIndex.range(0, 500, false, new PackagePriceIndex.Key(150, 1), 11)).thenReturn(new ArrayList<>());
+
+        final PackagePage page = this.packageService.getPackagesByPrice(null, new PackagePriceQuery(null, 500L, false),
+                PackageCursors.encodePrice(150, 1), 10, null);
+
+        Assert.assertTrue(page.getPackages().isEmpty());
+        Assert.assertFalse(page.hasNext());
+        Mockito.verifyZeroInteractions(packageRepository, currencyService);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void when_getPackagesByPriceWithIdCursor_expectException() throws Exception {
+        this.packageService.getPackagesByPrice(null, new PackagePriceQuery(null, null, false), PackageCursors.encode(1), 10, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void when_getPackagesByPriceWithMinAboveMax_expectException() throws Exception {
+        this.packageService.getPackagesByPrice(null, new PackagePriceQuery(500L, 100L, false), null, 10, null);
+    }
+
+    @Test
+    public void when_getPackagesById_expectOneQueryAndNotFoundReportedInPlace() throws Exception {
+        final PackageEntity packageFoo = new PackageEntity("Foo", "Foo test", Arrays.asList("alpha_1"));
+        packageFoo.setId(1);
+        packageFoo.setUsdTotal(100);
+        final PackageEntity packageBar = new PackageEntity("Bar", "Bar test", Arrays.asList("beta_1"));
+        packageBar.setId(2);
+        packageBar.setUsdTotal(150);
+        Mockito.when(packageRepository.findAllWithProductsByIdIn(new LinkedHashSet<>(Arrays.asList(2, 3, 1))))
+                .thenReturn(Arrays.asList(packageFoo, packageBar));
+        Mockito.when(productCatalogue.getProductsOf(Mockito.any())).thenReturn(productEntitiesById(PRODUCT_ENTITY_ALPHA, PRODUCT_ENTITY_BETA));
+        Mockito.when(currencyService.getCurrencyCodeFromString("GBP")).thenReturn(CurrencyCode.GBP);
+        Mockito.when(currencyService.convertCentsFromUSD(Mockito.eq(CurrencyCode.GBP), AdditionalMatchers.aryEq(new long[] {100, 150})))
+                .thenReturn(new long[] {80, 120});
+
+        final List<PackageLookupResult> results = this.packageService.getPackagesById("GBP", Arrays.asList(2, 3, 1, 2), null);
+
+        // in the order requested, repeats included
+        Assert.assertEquals(4, results.size());
+        Assert.assertEquals(2, results.get(0).getPackage().getId());
+        Assert.assertEquals(120, results.get(0).getPackage().getPrice());
+        Assert.assertFalse(results.get(1).isFound());
+        Assert.assertEquals(3, results.get(1).getId());
+        Assert.assertEquals(80, results.get(2).getPackage().getPrice());
+        Assert.assertEquals(120, results.get(3).getPackage().getPrice());
+        // every price converted with the same rates
+        Mockito.verify(currencyService, Mockito.times(1)).convertCentsFromUSD(Mockito.any(), Mockito.any());
+        Mockito.verify(packageRepository, Mockito.times(1)).findAllWithProductsByIdIn(Mockito.any());
+    }
+
+    @Test
+    public void when_searchPackagesWithoutProducts_expectOnlyPackageTableRead() throws PackageServiceException {
+        Mockito.when(packageSearchIndex.search("test", 0, 10)).thenReturn(new PackageSearchIndex.Hits(Arrays.asList(2, 1), 2));
+        Mockito.when(packageRepository.findSummariesByIdIn(Arrays.asList(2, 1))).thenReturn(Arrays.asList(
+                new PackageSummary(1, "Foo", "Foo test", 100), new PackageSummary(2, "Bar", "Bar test", 150)));
+
+        final PackageSearchResult result = this.packageService.searchPackages(null, "test", 0, 10,
+                EnumSet.of(PackageField.ID, PackageField.NAME, PackageField.PRICE));
+
+        Assert.assertEquals(2, result.getPackages().get(0).getId());
+        Assert.assertEquals(150, result.getPackages().get(0).getPrice());
+        Assert.assertNull(result.getPackages().get(0).getProducts());
+        Mockito.verify(packageRepository, Mockito.never()).findAllWithProductsByIdIn(Mockito.any());
+        Mockito.verifyZeroInteractions(productCatalogue);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void when_getPackagesByIdWithoutIds_expectException() throws Exception {
+        this.packageService.getPackagesById(null, new ArrayList<>(), null);
     }
 
     @Test
     public void when_lookupPackage_expectSuccess() throws PackageNotFoundException, PackageServiceException {
         // mock retrieval of item
-        final PackageEntity mockedResponse = new PackageEntity("Foo", "Foo test", Arrays.asList(PRODUCT_ENTITY_ALPHA));
+        final PackageEntity mockedResponse = new PackageEntity("Foo", "Foo test", Arrays.asList("alpha_1"));
         mockedResponse.setId(1);
-        Mockito.when(packageRepository.findById(1)).thenReturn(Optional.of(mockedResponse));
+        Mockito.when(packageRepository.findWithProductsById(1)).thenReturn(Optional.of(mockedResponse));
+        Mockito.when(productCatalogue.getProducts(Arrays.asList("alpha_1"))).thenReturn(productEntitiesById(PRODUCT_ENTITY_ALPHA));
 
         // lookup
         final Package aPackage = this.packageService.getPackage(null, 1);
@@ -71,35 +338,161 @@ public class PackageServiceImplTest extends TestUtility {
         Assert.assertEquals(new ArrayList<>(Arrays.asList(PRODUCT_ALPHA)), aPackage.getProducts());
     }
 
+    @Test
+    public void when_lookupPackageInCurrency_expectPriceConvertedAlone() throws PackageNotFoundException, PackageServiceException, CurrencyConversionException, InvalidCurrencyCodeException {
+        final PackageEntity mockedResponse = new PackageEntity("Foo", "Foo test", Arrays.asList("alpha_1"));
+        mockedResponse.setId(1);
+        mockedResponse.setUsdTotal(100);
+        Mockito.when(packageRepository.findWithProductsById(1)).thenReturn(Optional.of(mockedResponse));
+        Mockito.when(productCatalogue.getProducts(Arrays.asList("alpha_1"))).thenReturn(productEntitiesById(PRODUCT_ENTITY_ALPHA));
+        Mockito.when(currencyService.getCurrencyCodeFromString("GBP")).thenReturn(CurrencyCode.GBP);
+        Mockito.when(currencyService.convertCentsFromUSD(CurrencyCode.GBP, 100L)).thenReturn(75L);
+
+        final Package aPackage = this.packageService.getPackage("GBP", 1);
+
+        Assert.assertEquals(75, aPackage.getPrice());
+        // a single price isn't converted in an array
+        Mockito.verify(currencyService, Mockito.never()).convertCentsFromUSD(Mockito.any(), Mockito.any(long[].class));
+    }
+
 
     @Test
-    public void when_updatePackageAnyValues_expectSuccess() throws PackageNotFoundException, PackageServiceException {
+    public void when_updatePackageAnyValues_expectSuccess() throws PackageNotFoundException, PackageModifiedException, PackageServiceException {
         // mock retrieval of item
-        final PackageEntity mockedResponse = new PackageEntity("Foo", "Foo test", Arrays.asList(PRODUCT_ENTITY_ALPHA));
+        final PackageEntity mockedResponse = new PackageEntity("Foo", "Foo test", new ArrayList<>(Arrays.asList("alpha_1")));
         mockedResponse.setId(1);
-        Mockito.when(packageRepository.findById(1)).thenReturn(Optional.of(mockedResponse));
+        Mockito.when(packageRepository.findWithProductsById(1)).thenReturn(Optional.of(mockedResponse));
 
         this.packageService.updatePackage(
                 1,
+                null,
                 "Foo updated",
                 "Foo test updated",
                 PRODUCT_ALPHA, PRODUCT_BETA
         );
 
-        final ArgumentCaptor<PackageEntity> argument = ArgumentCaptor.forClass(PackageEntity.class);
-        Mockito.verify(packageRepository).save(argument.capture());
+        // the managed package is changed in place, and flushed rather than saved
+        Mockito.verify(packageRepository, Mockito.never()).save(Mockito.any(PackageEntity.class));
+        Mockito.verify(packageRepository).flush();
+        Assert.assertEquals("Foo updated", mockedResponse.getName());
+        Assert.assertEquals("Foo test updated", mockedResponse.getDescription());
+        Assert.assertEquals(Arrays.asList("alpha_1", "beta_1"), mockedResponse.getProductIds());
+        Assert.assertEquals(250, mockedResponse.getUsdTotal());
+        // products saved before the package is loaded, so it's loaded after any refresh
+        final InOrder inOrder = Mockito.inOrder(productCatalogue, packageRepository);
+        inOrder.verify(productCatalogue).saveProducts(Arrays.asList(PRODUCT_ENTITY_ALPHA, PRODUCT_ENTITY_BETA));
+        inOrder.verify(packageRepository).findWithProductsById(1);
+    }
+
+    @Test
+    public void when_updatePackageProducts_expectUnchangedProductsKept() throws PackageNotFoundException, PackageModifiedException, PackageServiceException {
+        // mock retrieval of item
+        final List<String> productIds = new ArrayList<>(Arrays.asList("alpha_1", "beta_1", "gamma_1"));
+        final PackageEntity mockedResponse = new PackageEntity("Foo", "Foo test", productIds);
+        mockedResponse.setId(1);
+        Mockito.when(packageRepository.findWithProductsById(1)).thenReturn(Optional.of(mockedResponse));
+
+        // same id but a new price, and one product fewer
+        this.packageService.updatePackage(1, null, "Foo", "Foo test", PRODUCT_ALPHA, new Product("beta_1", "Beta", 175));
 
-        Assert.assertEquals("Foo updated", argument.getValue().getName());
-        Assert.assertEquals("Foo test updated", argument.getValue().getDescription());
-        Assert.assertEquals(new ArrayList<>(Arrays.asList(PRODUCT_ENTITY_ALPHA, PRODUCT_ENTITY_BETA)), argument.getValue().getProductEntities());
+        Assert.assertSame(productIds, mockedResponse.getProductIds());
+        Assert.assertEquals(Arrays.asList("alpha_1", "beta_1"), productIds);
+        Assert.assertEquals(275, mockedResponse.getUsdTotal());
+        // the new price is saved to the product shared by every package
+        final ArgumentCaptor<Collection<ProductEntity>> products = ArgumentCaptor.forClass((Class) Collection.class);
+        Mockito.verify(productCatalogue).saveProducts(products.capture());
+        Assert.assertEquals(175, new ArrayList<>(products.getValue()).get(1).getUsdPrice());
+    }
+
+    @Test
+    public void when_updateStalePackage_expectServiceExceptionAndNotIndexed() throws PackageNotFoundException, PackageModifiedException {
+        final PackageEntity mockedResponse = new PackageEntity("Foo", "Foo test", new ArrayList<>(Arrays.asList("alpha_1")));
+        mockedResponse.setId(1);
+        Mockito.when(packageRepository.findWithProductsById(1)).thenReturn(Optional.of(mockedResponse));
+        // updated by someone else since it was loaded
+        Mockito.doThrow(new ObjectOptimisticLockingFailureException(PackageEntity.class, 1)).when(packageRepository).flush();
+
+        try {
+            this.packageService.updatePackage(1, null, "Foo updated", "Foo test updated", PRODUCT_ALPHA);
+            Assert.fail("Expected exception");
+        } catch (PackageServiceException e) {
+            Assert.assertTrue(e.getCause() instanceof ObjectOptimisticLockingFailureException);
+        }
+
+        Mockito.verifyZeroInteractions(packageSearchIndex, packagePriceIndex);
+    }
+
+    @Test
+    public void when_updatePackageAtExpectedRevision_expectCheckedUnderLockAndUpdated() throws PackageNotFoundException, PackageModifiedException, PackageServiceException {
+        final PackageEntity mockedResponse = new PackageEntity("Foo", "Foo test", new ArrayList<>(Arrays.asList("alpha_1")));
+        mockedResponse.setId(1);
+        mockedResponse.setVersion(3);
+        Mockito.when(packageRepository.findVersionById(1)).thenReturn(Optional.of(new PackageVersion(1, 3, 1000)));
+        Mockito.when(packageRepository.findLockedById(1)).thenReturn(Optional.of(mockedResponse));
+        Mockito.when(packageRepository.findWithProductsById(1)).thenReturn(Optional.of(mockedResponse));
+        final String tag = this.packageService.getPackageRevision(null, 1).getTag();
+
+        this.packageService.updatePackage(1, Arrays.asList("foo", tag), "Foo updated", "Foo test updated", PRODUCT_ALPHA);
+
+        Assert.assertEquals("Foo updated", mockedResponse.getName());
+        // products locked before the package, then the package checked before any product is saved
+        final InOrder inOrder = Mockito.inOrder(productCatalogue, packageRepository);
+        inOrder.verify(productCatalogue).lockProducts(Collections.singletonList("alpha_1"));
+        inOrder.verify(packageRepository).findLockedById(1);
+        inOrder.verify(productCatalogue).saveProducts(Collections.singletonList(PRODUCT_ENTITY_ALPHA));
+    }
+
+    @Test
+    public void when_updatePackageChangedSinceExpectedRevision_expectModifiedAndProductsNotSaved() throws PackageNotFoundException, PackageServiceException {
+        final PackageEntity mockedResponse = new PackageEntity("Foo", "Foo test", new ArrayList<>(Arrays.asList("alpha_1")));
+        mockedResponse.setId(1);
+        mockedResponse.setVersion(3);
+        Mockito.when(packageRepository.findVersionById(1)).thenReturn(Optional.of(new PackageVersion(1, 2, 1000)));
+        Mockito.when(packageRepository.findLockedById(1)).thenReturn(Optional.of(mockedResponse));
+        // read at version 2, updated to 3 since
+        final String tag = this.packageService.getPackageRevision(null, 1).getTag();
+
+        try {
+            this.packageService.updatePackage(1, Collections.singletonList(tag), "Foo updated", "Foo test updated", PRODUCT_ALPHA);
+            Assert.fail("Expected exception");
+        } catch (PackageModifiedException e) {
+            // expected
+        }
+
+        Assert.assertEquals("Foo", mockedResponse.getName());
+        Mockito.verify(productCatalogue, Mockito.never()).saveProducts(Mockito.any());
+        Mockito.verifyZeroInteractions(packageSearchIndex, packagePriceIndex);
+    }
+
+    @Test
+    public void when_updatePackageInvalidProduct_expectIllegalArgumentAndProductsNotSaved() throws PackageNotFoundException, PackageModifiedException, PackageServiceException {
+        try {
+            this.packageService.updatePackage(1, null, "Foo", "Foo test", PRODUCT_ALPHA, new Product("beta_1", "Beta", -100));
+            Assert.fail("Expected exception");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            this.packageService.updatePackage(1, null, null, "Foo test", PRODUCT_ALPHA);
+            Assert.fail("Expected exception");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        Mockito.verifyZeroInteractions(productCatalogue, packageRepository);
+    }
+
+    @Test(expected = PackageNotFoundException.class)
+    public void when_updateInvalidPackageId_expectedException() throws PackageNotFoundException, PackageModifiedException, PackageServiceException {
+        this.packageService.updatePackage(18, null, "Foo", "Foo test", PRODUCT_ALPHA);
     }
 
     @Test(expected = PackageNotFoundException.class)
     public void when_lookupInvalidPackageId_expectedException() throws PackageNotFoundException, PackageServiceException {
         // mock retrieval of item
-        final PackageEntity mockedResponse = new PackageEntity("Foo", "Foo test", Arrays.asList(PRODUCT_ENTITY_ALPHA));
+        final PackageEntity mockedResponse = new PackageEntity("Foo", "Foo test", Arrays.asList("alpha_1"));
         mockedResponse.setId(1);
-        Mockito.when(packageRepository.findById(1)).thenReturn(Optional.of(mockedResponse));
+        Mockito.when(packageRepository.findWithProductsById(1)).thenReturn(Optional.of(mockedResponse));
 
         this.packageService.getPackage(
                 null,
@@ -110,37 +503,198 @@ public class PackageServiceImplTest extends TestUtility {
     }
 
     @Test
-    public void when_shiftingCurrencyDenomination_expectCorrectResults() {
-        Assert.assertThat(
-                new BigDecimal(0),
-                Matchers.comparesEqualTo(this.packageService.shiftCurrencyDenomination(new BigDecimal(0)))
-        );
-        Assert.assertThat(
-                new BigDecimal(0.01),
-                Matchers.closeTo(this.packageService.shiftCurrencyDenomination(new BigDecimal(1)), new BigDecimal(0.001))
-        );
-        Assert.assertThat(
-                new BigDecimal(0.10),
-                Matchers.closeTo(this.packageService.shiftCurrencyDenomination(new BigDecimal(10)), new BigDecimal(0.001))
-        );
-        Assert.assertThat(
-                new BigDecimal(1.00),
-                Matchers.closeTo(this.packageService.shiftCurrencyDenomination(new BigDecimal(100)), new BigDecimal(0.001))
-        );
-        Assert.assertThat(
-                new BigDecimal(10.00),
-                Matchers.closeTo(this.packageService.shiftCurrencyDenomination(new BigDecimal(1000)), new BigDecimal(0.001))
-        );
-        Assert.assertThat(
-                new BigDecimal(100.00),
-                Matchers.closeTo(this.packageService.shiftCurrencyDenomination(new BigDecimal(10000)), new BigDecimal(0.001))
-        );
-        Assert.assertThat(
-                new BigDecimal(1000.00),
-                Matchers.closeTo(this.packageService.shiftCurrencyDenomination(new BigDecimal(100000)), new BigDecimal(0.001))
-        );
+    public void when_lookupPackagesInCurrency_expectSingleBatchConversion() throws PackageServiceException, CurrencyConversionException, InvalidCurrencyCodeException {
+        final PackageEntity packageFoo = new PackageEntity("Foo", "Foo test", Arrays.asList("alpha_1"));
+        packageFoo.setId(1);
+        packageFoo.setUsdTotal(100);
+        final PackageEntity packageBar = new PackageEntity("Bar", "Bar test", Arrays.asList("alpha_1", "beta_1"));
+        packageBar.setId(2);
+        packageBar.setUsdTotal(250);
+        Mockito.when(productCatalogue.getProductsOf(Mockito.any())).thenReturn(productEntitiesById(PRODUCT_ENTITY_ALPHA, PRODUCT_ENTITY_BETA));
+        Mockito.when(packageRepository.findIdsByIdGreaterThan(0, PageRequest.of(0, 11))).thenReturn(Arrays.asList(1, 2));
+        Mockito.when(packageRepository.findAllWithProductsByIdIn(Arrays.asList(1, 2))).thenReturn(Arrays.asList(packageFoo, packageBar));
+        Mockito.when(currencyService.getCurrencyCodeFromString("GBP")).thenReturn(CurrencyCode.GBP);
+        Mockito.when(currencyService.convertCentsFromUSD(Mockito.eq(CurrencyCode.GBP), AdditionalMatchers.aryEq(new long[] {100, 250})))
+                .thenReturn(new long[] {200, 500});
+
+        final PackagePage page = this.packageService.getPackages("GBP", null, 10);
+
+        Assert.assertEquals(200, page.getPackages().get(0).getPrice());
+        Assert.assertEquals(500, page.getPackages().get(1).getPrice());
+        Mockito.verify(currencyService, Mockito.times(1)).convertCentsFromUSD(Mockito.any(), Mockito.any());
+        Mockito.verify(currencyService, Mockito.never()).convertFromUSD(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void when_lookupPackagesPages_expectCursorToNextPage() throws PackageServiceException {
+        final PackageEntity packageFoo = new PackageEntity("Foo", "Foo test", Arrays.asList("alpha_1"));
+        packageFoo.setId(1);
+        final PackageEntity packageBar = new PackageEntity("Bar", "Bar test", Arrays.asList("beta_1"));
+        packageBar.setId(2);
+        final PackageEntity packageBaz = new PackageEntity("Baz", "Baz test", Arrays.asList("alpha_1"));
+        packageBaz.setId(3);
+        Mockito.when(productCatalogue.getProductsOf(Mockito.any())).thenReturn(productEntitiesById(PRODUCT_ENTITY_ALPHA, PRODUCT_ENTITY_BETA));
+        Mockito.when(packageRepository.findIdsByIdGreaterThan(0, PageRequest.of(0, 3))).thenReturn(Arrays.asList(1, 2, 3));
+        Mockito.when(packageRepository.findIdsByIdGreaterThan(2, PageRequest.of(0, 3))).thenReturn(Arrays.asList(3));
+        Mockito.when(packageRepository.findAllWithProductsByIdIn(Arrays.asList(1, 2))).thenReturn(Arrays.asList(packageFoo, packageBar));
+        Mockito.when(packageRepository.findAllWithProductsByIdIn(Arrays.asList(3))).thenReturn(Arrays.asList(packageBaz));
+
+        // first page has one more package than the limit available so a cursor is returned
+        final PackagePage firstPage = this.packageService.getPackages(null, null, 2);
+        Assert.assertEquals(2, firstPage.getPackages().size());
+        Assert.assertEquals(2, firstPage.getPackages().get(1).getId());
+        Assert.assertTrue(firstPage.hasNext());
+
+        // last page
+        final PackagePage secondPage = this.packageService.getPackages(null, firstPage.getNextCursor(), 2);
+        Assert.assertEquals(1, secondPage.getPackages().size());
+        Assert.assertEquals(3, secondPage.getPackages().get(0).getId());
+        Assert.assertFalse(secondPage.hasNext());
+    }
+
+    @Test
+    public void when_lookupPackageSummaries_expectPricesFromStoredTotalWithoutProducts() throws PackageServiceException, CurrencyConversionException, InvalidCurrencyCodeException {
+        final PackageSummary summaryFoo = new PackageSummary(1, "Foo", "Foo test", 100);
+        final PackageSummary summaryBar = new PackageSummary(2, "Bar", "Bar test", 250);
+        Mockito.when(packageRepository.findSummariesByIdGreaterThan(0, PageRequest.of(0, 2))).thenReturn(Arrays.asList(summaryFoo, summaryBar));
+        Mockito.when(currencyService.getCurrencyCodeFromString("GBP")).thenReturn(CurrencyCode.GBP);
+        Mockito.when(currencyService.convertCentsFromUSD(Mockito.eq(CurrencyCode.GBP), AdditionalMatchers.aryEq(new long[] {100})))
+                .thenReturn(new long[] {80});
+
+        final PackagePage page = this.packageService.getPackageSummaries("GBP", null, 1);
+
+        Assert.assertEquals(1, page.getPackages().size());
+        Assert.assertEquals("Foo", page.getPackages().get(0).getName());
+        Assert.assertEquals(80, page.getPackages().get(0).getPrice());
+        Assert.assertNull(page.getPackages().get(0).getProducts());
+        Assert.assertTrue(page.hasNext());
+        Mockito.verify(packageRepository, Mockito.never()).findAllWithProductsByIdIn(Mockito.any());
+    }
+
+    @Test
+    public void when_lookupPackageRevision_expectTagChangesWithVersionAndExchangeRates() throws PackageNotFoundException, PackageServiceException, CurrencyConversionException, InvalidCurrencyCodeException {
+        Mockito.when(packageRepository.findVersionById(1))
+                .thenReturn(Optional.of(new PackageVersion(1, 0, 1000)))
+                .thenReturn(Optional.of(new PackageVersion(1, 0, 1000)))
+                .thenReturn(Optional.of(new PackageVersion(1, 1, 2000)))
+                .thenReturn(Optional.of(new PackageVersion(1, 1, 2000)))
+                .thenReturn(Optional.of(new PackageVersion(1, 1, 2000)));
+        Mockito.when(currencyService.getCurrencyCodeFromString("GBP")).thenReturn(CurrencyCode.GBP);
+        Mockito.when(currencyService.getExchangeRatesVersion()).thenReturn(1500L).thenReturn(3000L);
+
+        final PackageRevision revision = this.packageService.getPackageRevision(null, 1);
+        final PackageRevision sameRevision = this.packageService.getPackageRevision(null, 1);
+        final PackageRevision updatedRevision = this.packageService.getPackageRevision(null, 1);
+        final PackageRevision gbpRevision = this.packageService.getPackageRevision("GBP", 1);
+        final PackageRevision newRatesRevision = this.packageService.getPackageRevision("GBP", 1);
+
+        Assert.assertEquals(revision.getTag(), sameRevision.getTag());
+        Assert.assertEquals(1000, revision.getLastModified());
+        Assert.assertNotEquals(revision.getTag(), updatedRevision.getTag());
+        Assert.assertEquals(2000, updatedRevision.getLastModified());
+        Assert.assertNotEquals(updatedRevision.getTag(), gbpRevision.getTag());
+        Assert.assertEquals(2000, gbpRevision.getLastModified());
+        Assert.assertNotEquals(gbpRevision.getTag(), newRatesRevision.getTag());
+        Assert.assertEquals(3000, newRatesRevision.getLastModified());
+        // nothing is loaded beyond the version
+        Mockito.verify(packageRepository, Mockito.never()).findWithProductsById(Mockito.anyInt());
+    }
+
+    @Test(expected = PackageNotFoundException.class)
+    public void when_lookupRevisionOfInvalidPackageId_expectException() throws PackageNotFoundException, PackageServiceException {
+        Mockito.when(packageRepository.findVersionById(18)).thenReturn(Optional.empty());
+
+        this.packageService.getPackageRevision(null, 18);
+    }
+
+    @Test
+    public void when_lookupPackagesRevision_expectTagOfPageOnly() throws PackageServiceException {
+        Mockito.when(packageRepository.findVersionsByIdGreaterThan(0, PageRequest.of(0, 3)))
+                .thenReturn(Arrays.asList(new PackageVersion(1, 0, 1000), new PackageVersion(2, 0, 3000), new PackageVersion(3, 0, 2000)))
+                // package after the page updated
+                .thenReturn(Arrays.asList(new PackageVersion(1, 0, 1000), new PackageVersion(2, 0, 3000), new PackageVersion(3, 1, 4000)))
+                // package in the page updated
+                .thenReturn(Arrays.asList(new PackageVersion(1, 1, 4000), new PackageVersion(2, 0, 3000), new PackageVersion(3, 1, 4000)))
+                // package after the page deleted, so no next page
+                .thenReturn(Arrays.asList(new PackageVersion(1, 1, 4000), new PackageVersion(2, 0, 3000)))
+                // package in the page deleted, so an older one moves into it
+                .thenReturn(Arrays.asList(new PackageVersion(1, 1, 4000), new PackageVersion(3, 0, 2000)));
+
+        final PackageRevision revision = this.packageService.getPackagesRevision(null, null, 2);
+        final PackageRevision nextPageUpdatedRevision = this.packageService.getPackagesRevision(null, null, 2);
+        final PackageRevision updatedRevision = this.packageService.getPackagesRevision(null, null, 2);
+        final PackageRevision lastPageRevision = this.packageService.getPackagesRevision(null, null, 2);
+        final PackageRevision deletedRevision = this.packageService.getPackagesRevision(null, null, 2);
+
+        Assert.assertEquals(revision.getTag(), nextPageUpdatedRevision.getTag());
+        Assert.assertNotEquals(revision.getTag(), updatedRevision.getTag());
+        Assert.assertNotEquals(updatedRevision.getTag(), lastPageRevision.getTag());
+        Assert.assertNotEquals(lastPageRevision.getTag(), deletedRevision.getTag());
+        // the latest time a package in the page was modified doesn't change when one is deleted, so none is given
+        Assert.assertEquals(0, revision.getLastModified());
+        Assert.assertEquals(0, deletedRevision.getLastModified());
+        Mockito.verify(packageRepository, Mockito.never()).findAllWithProductsByIdIn(Mockito.any());
+    }
+
+    @Test
+    public void when_encodingCursor_expectSameIdDecoded() {
+        for (int id : new int[] {0, 1, 99, Integer.MAX_VALUE}) {
+            Assert.assertEquals(id, this.packageService.decodeCursor(this.packageService.encodeCursor(id)));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void when_lookupPackagesWithInvalidCursor_expectException() throws PackageServiceException {
+        this.packageService.getPackages(null, "not a cursor", 10);
+    }
+
+    @Test
+    public void when_exportPackages_expectEachPackageConsumedAndDetached() throws PackageServiceException {
+        final PackageEntity packageFoo = new PackageEntity("Foo", "Foo test", Arrays.asList("alpha_1"));
+        packageFoo.setId(1);
+        packageFoo.setUsdTotal(100);
+        final PackageEntity packageBar = new PackageEntity("Bar", "Bar test", Arrays.asList("alpha_1", "beta_1"));
+        packageBar.setId(2);
+        packageBar.setUsdTotal(250);
+        Mockito.when(productCatalogue.getProducts(Mockito.any())).thenReturn(productEntitiesById(PRODUCT_ENTITY_ALPHA, PRODUCT_ENTITY_BETA));
+        Mockito.when(packageRepository.streamAll()).thenReturn(Stream.of(packageFoo, packageBar));
+
+        final List<Package> exported = new ArrayList<>();
+        this.packageService.exportPackages(null, exported::add);
+
+        Assert.assertEquals(2, exported.size());
+        Assert.assertEquals("Foo", exported.get(0).getName());
+        Assert.assertEquals(100, exported.get(0).getPrice());
+        Assert.assertEquals("Bar", exported.get(1).getName());
+        Assert.assertEquals(250, exported.get(1).getPrice());
+        Mockito.verify(packageRepository).detach(packageFoo);
+        Mockito.verify(packageRepository).detach(packageBar);
+        Mockito.verify(packageRepository, Mockito.never()).findAll();
+    }
+
+    @Test
+    public void when_exportPackagesInCurrency_expectRatesLookedUpOnce() throws PackageServiceException, CurrencyConversionException, InvalidCurrencyCodeException {
+        final PackageEntity packageFoo = new PackageEntity("Foo", "Foo test", Arrays.asList("alpha_1"));
+        packageFoo.setId(1);
+        packageFoo.setUsdTotal(100);
+        final PackageEntity packageBar = new PackageEntity("Bar", "Bar test", Arrays.asList("alpha_1", "beta_1"));
+        packageBar.setId(2);
+        packageBar.setUsdTotal(250);
+        Mockito.when(productCatalogue.getProducts(Mockito.any())).thenReturn(productEntitiesById(PRODUCT_ENTITY_ALPHA, PRODUCT_ENTITY_BETA));
+        Mockito.when(packageRepository.streamAll()).thenReturn(Stream.of(packageFoo, packageBar));
+        Mockito.when(currencyService.getCurrencyCodeFromString("GBP")).thenReturn(CurrencyCode.GBP);
+        final HashMap<CurrencyCode, BigDecimal> eurRates = new HashMap<>();
+        eurRates.put(CurrencyCode.USD, new BigDecimal("2"));
+        eurRates.put(CurrencyCode.GBP, new BigDecimal("1"));
+        Mockito.when(currencyService.getExchangeRates()).thenReturn(new ExchangeRates(eurRates, 1000));
 
+        final List<Package> exported = new ArrayList<>();
+        this.packageService.exportPackages("GBP", exported::add);
 
+        Assert.assertEquals(50, exported.get(0).getPrice());
+        Assert.assertEquals(125, exported.get(1).getPrice());
+        Mockito.verify(currencyService, Mockito.times(1)).getExchangeRates();
+        Mockito.verify(currencyService, Mockito.never()).convertCentsFromUSD(Mockito.any(), Mockito.any());
     }
 
     // TODO tests on currency conversion, invalid inputs, different character encoding etc
@@ -0,0 +1,71 @@
+package com.kerby.example.packages.service;
+
+import com.kerby.example.database.models.PackageEntity;
+import com.kerby.example.database.models.PackagePrice;
+import com.kerby.example.database.models.ProductEntity;
+import com.kerby.example.database.repositories.PackageRepository;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+public class PackageTotalReconcilerTest extends TestUtility {
+
+    private final PackageRepository packageRepository = Mockito.mock(PackageRepository.class);
+    private final ProductCatalogue productCatalogue = Mockito.mock(ProductCatalogue.class);
+    private final PackagePriceIndex packagePriceIndex = Mockito.mock(PackagePriceIndex.class);
+
+    private final PackageTotalReconciler packageTotalReconciler = new PackageTotalReconciler(packageRepository, productCatalogue, packagePriceIndex);
+
+    private static PackageEntity aPackageEntity(int id, long usdTotal, long version, String... productIds) {
+        final PackageEntity result = new PackageEntity("Package " + id, null, Arrays.asList(productIds));
+        result.setId(id);
+        result.setUsdTotal(usdTotal);
+        result.setVersion(version);
+        return result;
+    }
+
+    @Test
+    public void when_totalDiffersFromProducts_expectCorrectedAndReindexed() {
+        Mockito.when(packageRepository.streamAll()).thenReturn(Stream.of(
+                aPackageEntity(1, 250, 0, "alpha_1", "beta_1"),
+                // saved with the old price of beta alongside its change
+                aPackageEntity(2, 200, 3, "beta_1", "alpha_1", "beta_1")));
+        Mockito.when(productCatalogue.loadProducts(Arrays.asList("alpha_1", "beta_1"))).thenReturn(Arrays.asList(PRODUCT_ENTITY_ALPHA, PRODUCT_ENTITY_BETA));
+        Mockito.when(packageRepository.correctUsdTotal(Mockito.eq(2), Mockito.eq(3L), Mockito.eq(400L), Mockito.anyLong())).thenReturn(1);
+
+        Assert.assertEquals(1, packageTotalReconciler.reconcile());
+
+        // products counted once for each time the package has them
+        Mockito.verify(packageRepository).correctUsdTotal(Mockito.eq(2), Mockito.eq(3L), Mockito.eq(400L), Mockito.anyLong());
+        Mockito.verify(packageRepository, Mockito.never()).correctUsdTotal(Mockito.eq(1), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyLong());
+        final ArgumentCaptor<PackagePrice> packagePrice = ArgumentCaptor.forClass(PackagePrice.class);
+        Mockito.verify(packagePriceIndex).put(packagePrice.capture());
+        Assert.assertEquals(400, packagePrice.getValue().getUsdTotal());
+        Assert.assertEquals(4, packagePrice.getValue().getVersion());
+    }
+
+    @Test
+    public void when_packageChangedSinceChecked_expectLeftForNextRun() {
+        Mockito.when(packageRepository.streamAll()).thenReturn(Stream.of(aPackageEntity(1, 999, 0, "alpha_1")));
+        Mockito.when(productCatalogue.loadProducts(Arrays.asList("alpha_1"))).thenReturn(Arrays.asList(PRODUCT_ENTITY_ALPHA));
+        Mockito.when(packageRepository.correctUsdTotal(Mockito.anyInt(), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyLong())).thenReturn(0);
+
+        Assert.assertEquals(0, packageTotalReconciler.reconcile());
+
+        Mockito.verifyZeroInteractions(packagePriceIndex);
+    }
+
+    @Test
+    public void when_productMissing_expectPackageNotCorrected() {
+        Mockito.when(packageRepository.streamAll()).thenReturn(Stream.of(aPackageEntity(1, 999, 0, "alpha_1", "missing_1")));
+        Mockito.when(productCatalogue.loadProducts(Mockito.any())).thenReturn(Arrays.<ProductEntity>asList(PRODUCT_ENTITY_ALPHA));
+
+        Assert.assertEquals(0, packageTotalReconciler.reconcile());
+
+        Mockito.verify(packageRepository, Mockito.never()).correctUsdTotal(Mockito.anyInt(), Mockito.anyLong(), Mockito.anyLong(), Mockito.anyLong());
+    }
+}
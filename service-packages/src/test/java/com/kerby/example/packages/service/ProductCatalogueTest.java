@@ -0,0 +1,175 @@
+package com.kerby.example.packages.service;
+
+import com.kerby.example.database.models.PackageEntity;
+import com.kerby.example.database.models.ProductEntity;
+import com.kerby.example.database.repositories.PackageRepository;
+import com.kerby.example.database.repositories.ProductRepository;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class ProductCatalogueTest extends TestUtility {
+
+    private final ProductRepository productRepository = Mockito.mock(ProductRepository.class);
+    private final PackageRepository packageRepository = Mockito.mock(PackageRepository.class);
+    private final PackagePriceIndex packagePriceIndex = Mockito.mock(PackagePriceIndex.class);
+
+    // room for 2 products
+    private final ProductCatalogue productCatalogue = new ProductCatalogue(productRepository, packageRepository, packagePriceIndex, 2);
+
+    @Test
+    public void when_gettingProductsOfPackages_expectLoadedTogetherThenCached() {
+        Mockito.when(productRepository.findUnmanagedByIdIn(Arrays.asList("alpha_1", "beta_1")))
+                .thenReturn(Arrays.asList(PRODUCT_ENTITY_ALPHA, PRODUCT_ENTITY_BETA));
+        final List<PackageEntity> packageEntities = Arrays.asList(
+                new PackageEntity("Foo", "Foo test", Arrays.asList("alpha_1")),
+                new PackageEntity("Bar", "Bar test", Arrays.asList("alpha_1", "beta_1")));
+
+        final Map<String, ProductEntity> loaded = productCatalogue.getProductsOf(packageEntities);
+        final Map<String, ProductEntity> cached = productCatalogue.getProductsOf(packageEntities);
+
+        Assert.assertEquals(productEntitiesById(PRODUCT_ENTITY_ALPHA, PRODUCT_ENTITY_BETA), loaded);
+        Assert.assertSame(loaded.get("alpha_1"), cached.get("alpha_1"));
+        // each product once, in one query
+        Mockito.verify(productRepository, Mockito.times(1)).findUnmanagedByIdIn(Mockito.any());
+    }
+
+    @Test
+    public void when_gettingManyProducts_expectLoadedInBatches() {
+        final List<String> productIds = new ArrayList<>();
+        for (int i = 0; i < ProductCatalogue.LOAD_BATCH_SIZE * 2 + 1; i++) {
+            productIds.add("product_" + i);
+        }
+
+        productCatalogue.getProducts(productIds);
+
+        Mockito.verify(productRepository, Mockito.times(3)).findUnmanagedByIdIn(Mockito.any());
+    }
+
+    @Test
+    public void when_cachingOverMaxSize_expectLeastRecentlyUsedEvicted() {
+        final ProductEntity gamma = new ProductEntity("gamma_1", "Gamma", 200);
+        Mockito.when(productRepository.findUnmanagedByIdIn(Mockito.any())).thenAnswer(invocation -> {
+            final List<ProductEntity> result = new ArrayList<>();
+            for (ProductEntity productEntity : Arrays.asList(PRODUCT_ENTITY_ALPHA, PRODUCT_ENTITY_BETA, gamma)) {
+                if (invocation.<List<String>>getArgument(0).contains(productEntity.getId())) {
+                    result.add(productEntity);
+                }
+            }
+            return result;
+        });
+
+        productCatalogue.getProducts(Arrays.asList("alpha_1", "beta_1"));
+        // alpha is now more recently used than beta
+        productCatalogue.getProducts(Collections.singletonList("alpha_1"));
+        productCatalogue.getProducts(Collections.singletonList("gamma_1"));
+        Assert.assertEquals(2, productCatalogue.size());
+
+        Mockito.reset(productRepository);
+        productCatalogue.getProducts(Arrays.asList("alpha_1", "gamma_1"));
+        Mockito.verify(productRepository, Mockito.never()).findUnmanagedByIdIn(Mockito.any());
+        productCatalogue.getProducts(Collections.singletonList("beta_1"));
+        Mockito.verify(productRepository).findUnmanagedByIdIn(Collections.singletonList("beta_1"));
+    }
+
+    @Test
+    public void when_savingProducts_expectNewInsertedAndChangedUpdatedWithTheirPackages() {
+        final ProductEntity savedAlpha = new ProductEntity("alpha_1", "Alpha", 100);
+        final ProductEntity savedBeta = new ProductEntity("beta_1", "Beta", 150);
+        Mockito.when(productRepository.findLockedByIdIn(Arrays.asList("alpha_1", "beta_1", "gamma_1")))
+                .thenReturn(Arrays.asList(savedAlpha, savedBeta));
+        Mockito.when(productRepository.findUnmanagedByIdIn(Collections.singletonList("beta_1")))
+                .thenReturn(Collections.singletonList(PRODUCT_ENTITY_BETA));
+        productCatalogue.getProducts(Collections.singletonList("beta_1"));
+
+        final int saved = productCatalogue.saveProducts(Arrays.asList(
+                PRODUCT_ENTITY_ALPHA, new ProductEntity("beta_1", "Beta", 175), new ProductEntity("gamma_1", "Gamma", 200)));
+
+        // unchanged alpha left alone, beta changed in place and gamma inserted
+        Assert.assertEquals(2, saved);
+        Assert.assertEquals(175, savedBeta.getUsdPrice());
+        Mockito.verify(productRepository).saveAll(Collections.singletonList(new ProductEntity("gamma_1")));
+        Mockito.verify(productRepository).flush();
+        // the change in price is added to the packages with beta
+        Mockito.verify(packageRepository).addToUsdTotalByProductIdIn(Mockito.eq(Collections.singletonList("beta_1")), Mockito.eq(25L), Mockito.anyLong());
+        // the old price is no longer cached
+        Assert.assertEquals(0, productCatalogue.size());
+    }
+
+    @Test
+    public void when_savingProductsWithDifferentPriceChanges_expectPackagesUpdatedOncePerChange() {
+        Mockito.when(productRepository.findLockedByIdIn(Mockito.any())).thenReturn(Arrays.asList(
+                new ProductEntity("alpha_1", "Alpha", 100),
+                new ProductEntity("beta_1", "Beta", 150),
+                new ProductEntity("gamma_1", "Gamma", 200),
+                new ProductEntity("delta_1", "Delta", 250)));
+
+        productCatalogue.saveProducts(Arrays.asList(
+                new ProductEntity("alpha_1", "Alpha", 110),
+                new ProductEntity("beta_1", "Beta", 160),
+                new ProductEntity("gamma_1", "Gamma", 150),
+                new ProductEntity("delta_1", "Delta renamed", 250)));
+
+        Mockito.verify(packageRepository).addToUsdTotalByProductIdIn(Mockito.eq(Arrays.asList("alpha_1", "beta_1")), Mockito.eq(10L), Mockito.anyLong());
+        Mockito.verify(packageRepository).addToUsdTotalByProductIdIn(Mockito.eq(Collections.singletonList("gamma_1")), Mockito.eq(-50L), Mockito.anyLong());
+        // renamed only, the packages with it still get a new version
+        Mockito.verify(packageRepository).addToUsdTotalByProductIdIn(Mockito.eq(Collections.singletonList("delta_1")), Mockito.eq(0L), Mockito.anyLong());
+        Mockito.verifyNoMoreInteractions(packageRepository);
+        // the packages with a product whose price changed move in the price index
+        Mockito.verify(packagePriceIndex).refreshByProductIdIn(Arrays.asList("alpha_1", "beta_1", "gamma_1"));
+    }
+
+    @Test
+    public void when_savingProducts_expectGivenTheVersionSaved() {
+        Mockito.when(productRepository.findLockedByIdIn(Mockito.any()))
+                .thenReturn(Collections.singletonList(new ProductEntity("alpha_1", "Alpha", 100, 3L)));
+        // inserted as a copy, which is given its first version when saved
+        Mockito.when(productRepository.saveAll(Mockito.any())).thenAnswer(invocation -> {
+            for (ProductEntity inserted : invocation.<Iterable<ProductEntity>>getArgument(0)) {
+                inserted.setVersion(0L);
+            }
+            return invocation.getArgument(0);
+        });
+        final ProductEntity alpha = new ProductEntity("alpha_1", "Alpha", 100);
+        final ProductEntity gamma = new ProductEntity("gamma_1", "Gamma", 200);
+
+        productCatalogue.saveProducts(Arrays.asList(alpha, gamma, alpha));
+
+        Assert.assertEquals(Long.valueOf(3), alpha.getVersion());
+        Assert.assertEquals(Long.valueOf(0), gamma.getVersion());
+    }
+
+    @Test
+    public void when_savingUnchangedProducts_expectNoPackagesRefreshed() {
+        Mockito.when(productRepository.findLockedByIdIn(Mockito.any()))
+                .thenReturn(Collections.singletonList(new ProductEntity("alpha_1", "Alpha", 100)));
+
+        Assert.assertEquals(0, productCatalogue.saveProducts(Arrays.asList(PRODUCT_ENTITY_ALPHA, PRODUCT_ENTITY_ALPHA)));
+
+        Mockito.verify(packageRepository, Mockito.never()).addToUsdTotalByProductIdIn(Mockito.any(), Mockito.anyLong(), Mockito.anyLong());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void when_savingConflictingProducts_expectException() {
+        productCatalogue.saveProducts(Arrays.asList(PRODUCT_ENTITY_BETA, new ProductEntity("beta_1", "Beta", 175)));
+    }
+
+    @Test
+    public void when_productChangesWhileLoading_expectLoadNotCached() {
+        Mockito.when(productRepository.findUnmanagedByIdIn(Collections.singletonList("alpha_1"))).thenAnswer(invocation -> {
+            // the product changes after it was read
+            productCatalogue.evict(Collections.singletonList("alpha_1"));
+            return Collections.singletonList(PRODUCT_ENTITY_ALPHA);
+        });
+
+        Assert.assertSame(PRODUCT_ENTITY_ALPHA, productCatalogue.getProducts(Collections.singletonList("alpha_1")).get("alpha_1"));
+        Assert.assertEquals(0, productCatalogue.size());
+    }
+
+}
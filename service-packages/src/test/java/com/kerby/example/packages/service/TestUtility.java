@@ -3,15 +3,28 @@ package com.kerby.example.packages.service;
 import com.kerby.example.database.models.ProductEntity;
 import com.kerby.example.packages.models.Product;
 
-import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
 
 public class TestUtility {
 
     // reusable products to use throughout tests without repetition
-    protected static final Product PRODUCT_ALPHA = new Product("alpha_1", "Alpha", new BigDecimal(100));
-    protected static final Product PRODUCT_BETA = new Product("beta_1", "Beta", new BigDecimal(150));
+    protected static final Product PRODUCT_ALPHA = new Product("alpha_1", "Alpha", 100);
+    protected static final Product PRODUCT_BETA = new Product("beta_1", "Beta", 150);
 
-    protected static final ProductEntity PRODUCT_ENTITY_ALPHA = new ProductEntity("alpha_1", "Alpha", new BigDecimal(100));
-    protected static final ProductEntity PRODUCT_ENTITY_BETA = new ProductEntity("beta_1", "Beta", new BigDecimal(150));
+    protected static final ProductEntity PRODUCT_ENTITY_ALPHA = new ProductEntity("alpha_1", "Alpha", 100);
+    protected static final ProductEntity PRODUCT_ENTITY_BETA = new ProductEntity("beta_1", "Beta", 150);
+
+    /**
+     * @return the products by id, as ProductCatalogue looks them up
+     */
+    protected static Map<String, ProductEntity> productEntitiesById(ProductEntity... productEntities) {
+        final Map<String, ProductEntity> result = new HashMap<>();
+        for (ProductEntity productEntity : productEntities) {
+            result.put(productEntity.getId(), productEntity);
+        }
+
+        return result;
+    }
 
 }
@@ -1,10 +1,10 @@
 package com.kerby.example.packages.service.mapping;
 
 import com.kerby.example.database.models.PackageEntity;
+import com.kerby.example.database.models.ProductEntity;
 import com.kerby.example.packages.mapping.PackageMapper;
 import com.kerby.example.packages.models.Package;
 import com.kerby.example.packages.service.TestUtility;
-import org.hamcrest.Matchers;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -15,6 +15,8 @@ import org.springframework.test.context.junit4.SpringRunner;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
@@ -25,16 +27,44 @@ public class PackageMapperTest extends TestUtility {
     public void when_mappingPackageEntityToPackage_expectSuccess() {
         // repository entity
         final PackageEntity packageEntity = new PackageEntity(
-                "Foo", "Foo description", Arrays.asList(PRODUCT_ENTITY_ALPHA, PRODUCT_ENTITY_BETA));
+                "Foo", "Foo description", Arrays.asList("alpha_1", "beta_1"));
         packageEntity.setId(1);
+        packageEntity.setUsdTotal(250);
 
-        final Package aPackage = PackageMapper.INSTANCE.entityToPackage(packageEntity);
+        final Package aPackage = PackageMapper.INSTANCE.entityToPackage(packageEntity, productEntitiesById(PRODUCT_ENTITY_ALPHA, PRODUCT_ENTITY_BETA));
 
         Assert.assertEquals(1, aPackage.getId());
         Assert.assertEquals("Foo", aPackage.getName());
         Assert.assertEquals("Foo description", aPackage.getDescription());
         Assert.assertEquals( new ArrayList<>(Arrays.asList(PRODUCT_ALPHA, PRODUCT_BETA)), aPackage.getProducts());
-        Assert.assertThat( new BigDecimal(250), Matchers.comparesEqualTo(aPackage.getPrice()));
+        Assert.assertEquals(250, aPackage.getPrice());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void when_mappingPackageEntityWithMissingProduct_expectException() {
+        final PackageEntity packageEntity = new PackageEntity(
+                "Foo", "Foo description", Arrays.asList("alpha_1", "beta_1"));
+        packageEntity.setId(1);
+
+        PackageMapper.INSTANCE.entityToPackage(packageEntity, productEntitiesById(PRODUCT_ENTITY_ALPHA));
+    }
+
+    @Test
+    public void when_summingProductPrices_expectSameTotalAsBigDecimalSum() {
+        // fixed seed so failures can be reproduced
+        final Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            final List<ProductEntity> productEntities = new ArrayList<>();
+            BigDecimal expectedTotal = BigDecimal.ZERO;
+            for (int j = 0; j <= random.nextInt(20); j++) {
+                final long usdPrice = i % 10 == 0 ? random.nextInt(Integer.MAX_VALUE) * 1000L : random.nextInt(100000);
+                productEntities.add(new ProductEntity("product_" + j, "Product " + j, usdPrice));
+                expectedTotal = expectedTotal.add(new BigDecimal(usdPrice));
+            }
+
+            Assert.assertEquals(String.format("Total of products: [%s]", productEntities),
+                    expectedTotal.longValueExact(), PackageMapper.INSTANCE.sumUsdPrices(productEntities));
+        }
     }
 
     @Test
@@ -48,7 +78,7 @@ public class PackageMapperTest extends TestUtility {
         Assert.assertEquals(1, packageEntity.getId());
         Assert.assertEquals("Foo", packageEntity.getName());
         Assert.assertEquals("Foo description", packageEntity.getDescription());
-        Assert.assertEquals( new ArrayList<>(Arrays.asList(PRODUCT_ENTITY_ALPHA, PRODUCT_ENTITY_BETA)), packageEntity.getProductEntities());
+        Assert.assertEquals(Arrays.asList("alpha_1", "beta_1"), packageEntity.getProductIds());
     }
 
 }